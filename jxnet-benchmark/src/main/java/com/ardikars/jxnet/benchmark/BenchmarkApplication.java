@@ -53,6 +53,58 @@ public class BenchmarkApplication implements CommandLineRunner {
     @Qualifier("springJxnetWithThreadPoolRunner")
     Runner springJxnetWithThreadPoolRunner;
 
+    @Autowired
+    @Qualifier("jxnetRawRunner")
+    Runner jxnetRawRunner;
+
+    @Autowired
+    @Qualifier("jxnetBatchRunner")
+    Runner jxnetBatchRunner;
+
+    @Autowired
+    @Qualifier("jxnetReusableRunner")
+    Runner jxnetReusableRunner;
+
+    @Autowired
+    @Qualifier("jxnetCallOverheadRunner")
+    Runner jxnetCallOverheadRunner;
+
+    @Autowired
+    @Qualifier("jxnetPacketRingRunner")
+    Runner jxnetPacketRingRunner;
+
+    @Autowired
+    @Qualifier("jxnetDispatchOneRunner")
+    Runner jxnetDispatchOneRunner;
+
+    @Autowired
+    @Qualifier("jxnetFileReaderRunner")
+    Runner jxnetFileReaderRunner;
+
+    @Autowired
+    @Qualifier("jxnetParallelFileRunner")
+    Runner jxnetParallelFileRunner;
+
+    @Autowired
+    @Qualifier("jxnetCompressedFileRunner")
+    Runner jxnetCompressedFileRunner;
+
+    @Autowired
+    @Qualifier("jxnetFileWriterRunner")
+    Runner jxnetFileWriterRunner;
+
+    @Autowired
+    @Qualifier("jxnetSendBatchRunner")
+    Runner jxnetSendBatchRunner;
+
+    @Autowired
+    @Qualifier("jxnetBpfInterpreterRunner")
+    Runner jxnetBpfInterpreterRunner;
+
+    @Autowired
+    @Qualifier("jxnetPacketClassifierRunner")
+    Runner jxnetPacketClassifierRunner;
+
     @Autowired
     @Qualifier("pcap4jRunner")
     Runner pcap4jRunner;
@@ -104,6 +156,23 @@ public class BenchmarkApplication implements CommandLineRunner {
             LOGGER.info("IS Jxnet packet with thread pool runner more fast? {} : {}",
                     moreFastPacketThreadPool ? "YES" : "NO",
                     jxnetPacketThreadPoolRunnerRes + " and " + pcap4jPacketThreadPoolRunnerRes);
+            long jxnetRawRunnerRes = jxnetRawRunner.run();
+            long jxnetBatchRunnerRes = jxnetBatchRunner.run();
+            LOGGER.info("PcapLoop x PcapLoop0 x PcapDispatchBatch : {}",
+                    jxnetRunnerRes + ", " + jxnetRawRunnerRes + " and " + jxnetBatchRunnerRes);
+            long jxnetReusableRunnerRes = jxnetReusableRunner.run();
+            LOGGER.info("PcapLoop x PcapLoopReusable : {}", jxnetRunnerRes + " and " + jxnetReusableRunnerRes);
+            LOGGER.info("Native call overhead : {}", jxnetCallOverheadRunner.run());
+            LOGGER.info("PcapLoop0 x PacketRing : {}", jxnetPacketRingRunner.run());
+            LOGGER.info("PcapOpenOffline and PcapDispatch(1) : {}", jxnetDispatchOneRunner.run());
+            LOGGER.info("PcapLoop x PcapFileReader : {}", jxnetFileReaderRunner.run());
+            LOGGER.info("PcapFileProcessor 1 to N workers : {}", jxnetParallelFileRunner.run());
+            LOGGER.info("Block gzip PcapStreamReader 1 to N inflaters : {}", jxnetCompressedFileRunner.run());
+            LOGGER.info("PcapDump x PcapFileWriter : {}", jxnetFileWriterRunner.run());
+            LOGGER.info("PcapSendPacket x PcapSendBatch : {}", jxnetSendBatchRunner.run());
+            LOGGER.info("PcapOfflineFilter x BpfInterpreter x BpfCompiler : {}", jxnetBpfInterpreterRunner.run());
+            LOGGER.info("PcapOfflineFilter x BpfCompiler x PacketClassifier (10, 100, 1000 filters) : {}",
+                    jxnetPacketClassifierRunner.run());
             LOGGER.info("**********************************\n");
         }
         LOGGER.info("Total jxnet more fast                                 : {}/{}", totalMoreFast, maxIteration);
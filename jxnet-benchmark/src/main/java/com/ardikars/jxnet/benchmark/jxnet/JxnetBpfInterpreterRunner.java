@@ -0,0 +1,139 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ardikars.jxnet.benchmark.jxnet;
+
+import com.ardikars.jxnet.BpfCompiler;
+import com.ardikars.jxnet.BpfInterpreter;
+import com.ardikars.jxnet.BpfProgram;
+import com.ardikars.jxnet.DataLinkType;
+import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.PacketFilter;
+import com.ardikars.jxnet.PcapFileReader;
+import com.ardikars.jxnet.PcapPktHdr;
+import com.ardikars.jxnet.benchmark.Runner;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Measure filter cost per packet (ns) of {@link Jxnet#PcapOfflineFilter(BpfProgram, PcapPktHdr, ByteBuffer)}
+ * versus {@link BpfInterpreter} and {@link BpfCompiler} on the packets of the benchmark file,
+ * verdicts are checked to be equal.
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ */
+@Component("jxnetBpfInterpreterRunner")
+public class JxnetBpfInterpreterRunner implements Runner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JxnetBpfInterpreterRunner.class);
+
+    private static final String[] FILTERS = { "icmp", "tcp port 80", "icmp[icmptype] == icmp-echo or udp" };
+
+    private static final int MAX_PACKETS = 4096;
+
+    private static final int EVALUATIONS = 10000000;
+
+    @Value("${jxnet.file}")
+    private String pcapFile;
+
+    @Override
+    public long run() {
+        final List<PcapPktHdr> headers = new ArrayList<PcapPktHdr>();
+        final List<ByteBuffer> packets = new ArrayList<ByteBuffer>();
+        try {
+            PcapFileReader reader = PcapFileReader.open(pcapFile);
+            try {
+                PcapPktHdr header = new PcapPktHdr();
+                ByteBuffer bytes;
+                while (headers.size() < MAX_PACKETS && (bytes = reader.next(header)) != null) {
+                    ByteBuffer packet = ByteBuffer.allocateDirect(bytes.remaining());
+                    packet.put(bytes).flip();
+                    headers.add(header.copy());
+                    packets.add(packet);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn(e.getMessage());
+            return 0;
+        }
+        if (headers.isEmpty()) {
+            return 0;
+        }
+        long total = 0;
+        for (String filter : FILTERS) {
+            BpfProgram program = new BpfProgram();
+            try {
+                if (Jxnet.PcapCompileNoPcap(65535, DataLinkType.EN10MB.getValue(), program, filter, 1,
+                        0xffffff00) != 0) {
+                    LOGGER.warn("Unable to compile: {}", filter);
+                    continue;
+                }
+                BpfInterpreter interpreter = BpfInterpreter.of(program);
+                PacketFilter compiled = BpfCompiler.compile(program);
+                for (int i = 0; i < headers.size(); i++) {
+                    int verdict = Jxnet.PcapOfflineFilter(program, headers.get(i), packets.get(i));
+                    if (interpreter.filter(headers.get(i), packets.get(i)) != verdict
+                            || compiled.filter(headers.get(i), packets.get(i)) != verdict) {
+                        LOGGER.warn("Verdict mismatch at packet {}: {}", i, filter);
+                    }
+                }
+                long before = System.nanoTime();
+                for (int i = 0; i < EVALUATIONS; i++) {
+                    int index = i % headers.size();
+                    Jxnet.PcapOfflineFilter(program, headers.get(index), packets.get(index));
+                }
+                long baseline = System.nanoTime() - before;
+                long interpreted = measure(interpreter, headers, packets);
+                long elapsed = measure(compiled, headers, packets);
+                LOGGER.info("{} ({} instructions): PcapOfflineFilter {} ns, BpfInterpreter {} ns, "
+                        + "BpfCompiler {} ns per packet.", filter, interpreter.length(), baseline / EVALUATIONS,
+                        interpreted / EVALUATIONS, elapsed / EVALUATIONS);
+                total += elapsed / 1000000;
+            } finally {
+                try {
+                    program.close();
+                } catch (IOException e) {
+                    LOGGER.warn(e.getMessage());
+                }
+            }
+        }
+        return total;
+    }
+
+    private static long measure(PacketFilter filter, List<PcapPktHdr> headers, List<ByteBuffer> packets) {
+        long accepted = 0;
+        long before = System.nanoTime();
+        for (int i = 0; i < EVALUATIONS; i++) {
+            int index = i % headers.size();
+            if (filter.filter(headers.get(index), packets.get(index)) != 0) {
+                accepted++;
+            }
+        }
+        long elapsed = System.nanoTime() - before;
+        if (accepted < 0) {
+            LOGGER.info("{}", accepted); // Keep the result alive.
+        }
+        return elapsed;
+    }
+
+}
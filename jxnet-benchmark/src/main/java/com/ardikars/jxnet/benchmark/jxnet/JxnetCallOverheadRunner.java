@@ -0,0 +1,97 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.benchmark.jxnet;
+
+import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.benchmark.Runner;
+import java.util.concurrent.CountDownLatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Measure per call overhead of resolving native handle (PcapSnapshot on offline handle),
+ * with one thread and with several threads sharing the same handle.
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ */
+@Component("jxnetCallOverheadRunner")
+public class JxnetCallOverheadRunner implements Runner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JxnetCallOverheadRunner.class);
+
+    private static final int CALLS = 1000000;
+
+    private static final int THREADS = 4;
+
+    @Value("${jxnet.file}")
+    private String pcapFile;
+
+    @Override
+    public long run() {
+        final StringBuilder errbuf = new StringBuilder();
+        final Pcap pcap = Jxnet.PcapOpenOffline(pcapFile, errbuf);
+        if (pcap == null) {
+            LOGGER.warn(errbuf.toString());
+            return 0;
+        }
+
+        long before = System.nanoTime();
+        call(pcap);
+        long single = System.nanoTime() - before;
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        call(pcap);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        before = System.nanoTime();
+        start.countDown();
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        long contended = System.nanoTime() - before;
+        Jxnet.PcapClose(pcap);
+
+        LOGGER.info("PcapSnapshot : {} ns/call (1 thread), {} ns/call ({} threads).",
+                single / CALLS, contended / ((long) CALLS * THREADS), THREADS);
+        return (single + contended) / 1000000;
+    }
+
+    private static void call(Pcap pcap) {
+        for (int i = 0; i < CALLS; i++) {
+            Jxnet.PcapSnapshot(pcap);
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ardikars.jxnet.benchmark.jxnet;
+
+import com.ardikars.jxnet.BgzfOutputStream;
+import com.ardikars.jxnet.PcapFileReader;
+import com.ardikars.jxnet.PcapOfflineReader;
+import com.ardikars.jxnet.PcapStreamReader;
+import com.ardikars.jxnet.PcapTimestampPrecision;
+import com.ardikars.jxnet.RawPcapHandler;
+import com.ardikars.jxnet.benchmark.Runner;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Measure throughput (MB/s of uncompressed savefile) of {@link PcapStreamReader} on gzip and block compressed gzip
+ * files, versus decompressing to a temporary file then reading it with {@link PcapFileReader}.
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ */
+@Component("jxnetCompressedFileRunner")
+public class JxnetCompressedFileRunner implements Runner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JxnetCompressedFileRunner.class);
+
+    private static final long CORPUS_SIZE = 1L << 27;
+
+    private final RawPcapHandler<long[]> handler = new RawPcapHandler<long[]>() {
+        @Override
+        public void nextPacket(long[] user, int capLen, int len, int tvSec, long tvUsec, long memoryAddress) {
+            user[0]++;
+            user[1] += capLen;
+        }
+    };
+
+    @Override
+    public long run() {
+        File gzip = null;
+        File bgzf = null;
+        try {
+            gzip = generate(false);
+            bgzf = generate(true);
+            long baseline = decompressThenRead(gzip);
+            long elapsed = read(PcapStreamReader.open(gzip.getPath(), 1, PcapTimestampPrecision.MICRO));
+            LOGGER.info("PcapStreamReader on gzip : {} ms ({} MB/s).", elapsed, throughput(elapsed));
+            int processors = Runtime.getRuntime().availableProcessors();
+            for (int parallelism = 1; parallelism <= processors;
+                 parallelism = parallelism < processors ? Math.min(parallelism << 1, processors) : parallelism + 1) {
+                elapsed = read(PcapStreamReader.open(bgzf.getPath(), parallelism, PcapTimestampPrecision.MICRO));
+                LOGGER.info("PcapStreamReader on block gzip with {} inflater(s) : {} ms ({} MB/s).",
+                        parallelism, elapsed, throughput(elapsed));
+            }
+            LOGGER.info("Decompress then PcapFileReader : {} ms ({} MB/s).", baseline, throughput(baseline));
+            return elapsed;
+        } catch (Exception e) {
+            LOGGER.warn(e.getMessage());
+            return 0;
+        } finally {
+            delete(gzip);
+            delete(bgzf);
+        }
+    }
+
+    private long decompressThenRead(File gzip) throws IOException {
+        long before = System.nanoTime();
+        File file = File.createTempFile("jxnet-corpus", ".pcap");
+        try {
+            InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(gzip), 1 << 16), 1 << 16);
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20);
+            try {
+                byte[] buffer = new byte[1 << 16];
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    out.write(buffer, 0, n);
+                }
+            } finally {
+                in.close();
+                out.close();
+            }
+            read(PcapFileReader.open(file.getPath()));
+            return (System.nanoTime() - before) / 1000000;
+        } finally {
+            delete(file);
+        }
+    }
+
+    private long read(PcapOfflineReader reader) throws IOException {
+        long[] result = new long[2];
+        long before = System.nanoTime();
+        try {
+            reader.loop(-1, handler, result);
+        } finally {
+            reader.close();
+        }
+        return (System.nanoTime() - before) / 1000000;
+    }
+
+    private static long throughput(long elapsed) {
+        return elapsed == 0 ? 0 : (CORPUS_SIZE >> 20) * 1000 / elapsed;
+    }
+
+    private static void delete(File file) {
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    private static File generate(boolean block) throws IOException {
+        File file = File.createTempFile("jxnet-corpus", ".pcap.gz");
+        ByteBuffer record = ByteBuffer.allocate(PcapFileReader.RECORD_HEADER_SIZE + 1514).order(ByteOrder.nativeOrder());
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20);
+        out = block ? new BgzfOutputStream(out) : new GZIPOutputStream(out, 1 << 16);
+        try {
+            record.putInt(PcapFileReader.MAGIC_MICRO).putShort((short) 2).putShort((short) 4)
+                    .putInt(0).putInt(0).putInt(65535).putInt(1);
+            out.write(record.array(), 0, PcapFileReader.GLOBAL_HEADER_SIZE);
+            long size = PcapFileReader.GLOBAL_HEADER_SIZE;
+            for (int i = 0; size < CORPUS_SIZE; i++) {
+                int caplen = 60 + (i * 31) % 1455;
+                record.clear();
+                record.putInt(1500000000 + i / 1000).putInt((i % 1000) * 1000).putInt(caplen).putInt(caplen);
+                for (int j = 0; j + 4 <= caplen; j += 4) {
+                    record.putInt(i ^ (j * 0x9e3779b9));
+                }
+                out.write(record.array(), 0, PcapFileReader.RECORD_HEADER_SIZE + caplen);
+                size += PcapFileReader.RECORD_HEADER_SIZE + caplen;
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+}
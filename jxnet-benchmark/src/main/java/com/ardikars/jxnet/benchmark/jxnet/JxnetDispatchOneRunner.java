@@ -0,0 +1,82 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.benchmark.jxnet;
+
+import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.PcapHandler;
+import com.ardikars.jxnet.PcapPktHdr;
+import com.ardikars.jxnet.benchmark.Runner;
+import java.nio.ByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Measure handle creation (PcapOpenOffline) and short PcapDispatch(1) calls,
+ * where per call JNI lookups dominate the cost.
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ */
+@Component("jxnetDispatchOneRunner")
+public class JxnetDispatchOneRunner implements Runner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JxnetDispatchOneRunner.class);
+
+    private static final int OPENS = 10000;
+
+    private final PcapHandler<long[]> handler = new PcapHandler<long[]>() {
+        @Override
+        public void nextPacket(long[] user, PcapPktHdr h, ByteBuffer bytes) {
+            user[0] += h.getCapLen();
+        }
+    };
+
+    @Value("${jxnet.file}")
+    private String pcapFile;
+
+    @Override
+    public long run() {
+        final StringBuilder errbuf = new StringBuilder();
+        final long[] bytes = new long[1];
+        long open = 0;
+        long dispatch = 0;
+        long calls = 0;
+        for (int i = 0; i < OPENS; i++) {
+            long before = System.nanoTime();
+            Pcap pcap = Jxnet.PcapOpenOffline(pcapFile, errbuf);
+            open += System.nanoTime() - before;
+            if (pcap == null) {
+                LOGGER.warn(errbuf.toString());
+                return 0;
+            }
+            int result;
+            before = System.nanoTime();
+            do {
+                result = Jxnet.PcapDispatch(pcap, 1, handler, bytes);
+                calls++;
+            } while (result > 0);
+            dispatch += System.nanoTime() - before;
+            Jxnet.PcapClose(pcap);
+        }
+        LOGGER.info("PcapOpenOffline : {} ns/call, PcapDispatch(1) : {} ns/call ({} bytes).",
+                open / OPENS, dispatch / calls, bytes[0]);
+        return (open + dispatch) / 1000000;
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ardikars.jxnet.benchmark.jxnet;
+
+import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.PcapFileReader;
+import com.ardikars.jxnet.PcapHandler;
+import com.ardikars.jxnet.PcapPktHdr;
+import com.ardikars.jxnet.benchmark.Runner;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compare offline reading through libpcap (PcapLoop) with the pure Java memory mapped reader.
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ */
+@Component("jxnetFileReaderRunner")
+public class JxnetFileReaderRunner implements Runner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JxnetFileReaderRunner.class);
+
+    private static final int ROUNDS = 1000;
+
+    private final PcapHandler<long[]> handler = new PcapHandler<long[]>() {
+        @Override
+        public void nextPacket(long[] user, PcapPktHdr h, ByteBuffer bytes) {
+            user[0] += bytes.get(0) + h.getCapLen();
+        }
+    };
+
+    @Value("${jxnet.file}")
+    private String pcapFile;
+
+    @Override
+    public long run() {
+        final StringBuilder errbuf = new StringBuilder();
+        final long[] bytes = new long[1];
+        long pcapLoop = 0;
+        long fileReader = 0;
+        for (int i = 0; i < ROUNDS; i++) {
+            long before = System.nanoTime();
+            Pcap pcap = Jxnet.PcapOpenOffline(pcapFile, errbuf);
+            if (pcap == null) {
+                LOGGER.warn(errbuf.toString());
+                return 0;
+            }
+            Jxnet.PcapLoop(pcap, -1, handler, bytes);
+            Jxnet.PcapClose(pcap);
+            pcapLoop += System.nanoTime() - before;
+            before = System.nanoTime();
+            try {
+                PcapFileReader reader = PcapFileReader.open(pcapFile);
+                try {
+                    reader.loop(-1, handler, bytes);
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                LOGGER.warn(e.getMessage());
+                return 0;
+            }
+            fileReader += System.nanoTime() - before;
+        }
+        LOGGER.info("PcapLoop : {} us/file, PcapFileReader : {} us/file ({} bytes).",
+                pcapLoop / ROUNDS / 1000, fileReader / ROUNDS / 1000, bytes[0]);
+        return fileReader / 1000000;
+    }
+
+}
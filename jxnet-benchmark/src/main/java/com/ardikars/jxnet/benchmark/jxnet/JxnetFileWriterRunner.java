@@ -0,0 +1,153 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ardikars.jxnet.benchmark.jxnet;
+
+import com.ardikars.jxnet.DataLinkType;
+import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.PcapBatchHandler;
+import com.ardikars.jxnet.PcapDumper;
+import com.ardikars.jxnet.PcapFileWriter;
+import com.ardikars.jxnet.PcapPktHdr;
+import com.ardikars.jxnet.PcapTimestampPrecision;
+import com.ardikars.jxnet.benchmark.Runner;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Measure write throughput (MB/s) of {@link Jxnet#PcapDump(PcapDumper, PcapPktHdr, ByteBuffer)} versus
+ * {@link PcapFileWriter} per packet, per batch (gather write) and mapped.
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ */
+@Component("jxnetFileWriterRunner")
+public class JxnetFileWriterRunner implements Runner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JxnetFileWriterRunner.class);
+
+    private static final long CORPUS_SIZE = 1L << 28;
+
+    private static final int BATCH_SIZE = 256;
+
+    private final PcapPktHdr[] headers = new PcapPktHdr[BATCH_SIZE];
+
+    private final ByteBuffer[] packets = new ByteBuffer[BATCH_SIZE];
+
+    private final ByteBuffer batchHeaders = ByteBuffer.allocateDirect(BATCH_SIZE * PcapBatchHandler.HEADER_SIZE)
+            .order(ByteOrder.nativeOrder());
+
+    private final ByteBuffer batchPackets = ByteBuffer.allocateDirect(BATCH_SIZE * 1514);
+
+    /**
+     * One batch of packets, written repeatedly until {@link JxnetFileWriterRunner#CORPUS_SIZE} bytes.
+     */
+    public JxnetFileWriterRunner() {
+        int offset = 0;
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            int caplen = 60 + (i * 31) % 1455;
+            headers[i] = new PcapPktHdr(caplen, caplen, 1500000000, i);
+            packets[i] = ByteBuffer.allocateDirect(caplen);
+            for (int j = 0; j + 4 <= caplen; j += 4) {
+                packets[i].putInt(i ^ (j * 0x9e3779b9));
+            }
+            packets[i].clear();
+            int index = i * PcapBatchHandler.HEADER_SIZE;
+            batchHeaders.putInt(index + PcapBatchHandler.CAPLEN_OFFSET, caplen);
+            batchHeaders.putInt(index + PcapBatchHandler.LEN_OFFSET, caplen);
+            batchHeaders.putInt(index + PcapBatchHandler.TV_SEC_OFFSET, 1500000000);
+            batchHeaders.putInt(index + PcapBatchHandler.DATA_OFFSET, offset);
+            batchHeaders.putLong(index + PcapBatchHandler.TV_USEC_OFFSET, i);
+            batchPackets.position(offset);
+            batchPackets.put(packets[i].duplicate());
+            offset += caplen;
+        }
+        batchPackets.clear();
+    }
+
+    @Override
+    public long run() {
+        File file = null;
+        try {
+            file = File.createTempFile("jxnet-writer", ".pcap");
+            long baseline = pcapDump(file);
+            LOGGER.info("PcapDump : {} ms ({} MB/s).", baseline, throughput(baseline));
+            long elapsed = write(PcapFileWriter.open(file.getPath(), DataLinkType.EN10MB, 65535,
+                    PcapTimestampPrecision.MICRO), false);
+            LOGGER.info("PcapFileWriter per packet : {} ms ({} MB/s).", elapsed, throughput(elapsed));
+            elapsed = write(PcapFileWriter.openMapped(file.getPath(), DataLinkType.EN10MB, 65535,
+                    PcapTimestampPrecision.MICRO, PcapFileWriter.DEFAULT_REGION_SIZE), false);
+            LOGGER.info("PcapFileWriter mapped : {} ms ({} MB/s).", elapsed, throughput(elapsed));
+            elapsed = write(PcapFileWriter.open(file.getPath(), DataLinkType.EN10MB, 65535,
+                    PcapTimestampPrecision.MICRO), true);
+            LOGGER.info("PcapFileWriter gather batch : {} ms ({} MB/s).", elapsed, throughput(elapsed));
+            return elapsed;
+        } catch (Exception e) {
+            LOGGER.warn(e.getMessage());
+            return 0;
+        } finally {
+            if (file != null && !file.delete()) {
+                file.deleteOnExit();
+            }
+        }
+    }
+
+    private long pcapDump(File file) {
+        Pcap pcap = Jxnet.PcapOpenDead(DataLinkType.EN10MB.getValue(), 65535);
+        PcapDumper dumper = Jxnet.PcapDumpOpen(pcap, file.getPath());
+        long before = System.nanoTime();
+        try {
+            for (long size = 0; size < CORPUS_SIZE; ) {
+                for (int i = 0; i < BATCH_SIZE; i++) {
+                    Jxnet.PcapDump(dumper, headers[i], packets[i]);
+                    size += 16 + headers[i].getCapLen();
+                }
+            }
+            Jxnet.PcapDumpFlush(dumper);
+        } finally {
+            Jxnet.PcapDumpClose(dumper);
+            Jxnet.PcapClose(pcap);
+        }
+        return (System.nanoTime() - before) / 1000000;
+    }
+
+    private long write(PcapFileWriter writer, boolean batch) throws IOException {
+        long before = System.nanoTime();
+        try {
+            while (writer.getPosition() < CORPUS_SIZE) {
+                if (batch) {
+                    writer.write(BATCH_SIZE, batchHeaders, batchPackets);
+                } else {
+                    for (int i = 0; i < BATCH_SIZE; i++) {
+                        writer.write(headers[i], packets[i]);
+                    }
+                }
+            }
+        } finally {
+            writer.close();
+        }
+        return (System.nanoTime() - before) / 1000000;
+    }
+
+    private static long throughput(long elapsed) {
+        return elapsed == 0 ? 0 : (CORPUS_SIZE >> 20) * 1000 / elapsed;
+    }
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ardikars.jxnet.benchmark.jxnet;
+
+import com.ardikars.jxnet.BpfCompiler;
+import com.ardikars.jxnet.BpfFilter;
+import com.ardikars.jxnet.BpfProgram;
+import com.ardikars.jxnet.DataLinkType;
+import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.PcapFileReader;
+import com.ardikars.jxnet.PcapPktHdr;
+import com.ardikars.jxnet.benchmark.Runner;
+import com.ardikars.jxnet.context.PacketClassifier;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Measure cost per packet (ns) of matching 10, 100 and 1000 filters ("tcp port N", "udp port N" and "host X")
+ * with one {@link Jxnet#PcapOfflineFilter(BpfProgram, PcapPktHdr, ByteBuffer)} or {@link BpfCompiler} filter
+ * per filter versus a single {@link PacketClassifier} pass, match sets are checked to be equal.
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ */
+@Component("jxnetPacketClassifierRunner")
+public class JxnetPacketClassifierRunner implements Runner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JxnetPacketClassifierRunner.class);
+
+    private static final int[] FILTER_COUNTS = { 10, 100, 1000 };
+
+    private static final int MAX_PACKETS = 4096;
+
+    private static final int EVALUATIONS = 10000000;
+
+    private static final int PACKETS = 1000000;
+
+    @Value("${jxnet.file}")
+    private String pcapFile;
+
+    @Override
+    public long run() {
+        final List<PcapPktHdr> headers = new ArrayList<PcapPktHdr>();
+        final List<ByteBuffer> packets = new ArrayList<ByteBuffer>();
+        try {
+            PcapFileReader reader = PcapFileReader.open(pcapFile);
+            try {
+                PcapPktHdr header = new PcapPktHdr();
+                ByteBuffer bytes;
+                while (headers.size() < MAX_PACKETS && (bytes = reader.next(header)) != null) {
+                    ByteBuffer packet = ByteBuffer.allocateDirect(bytes.remaining());
+                    packet.put(bytes).flip();
+                    headers.add(header.copy());
+                    packets.add(packet);
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn(e.getMessage());
+            return 0;
+        }
+        if (headers.isEmpty()) {
+            return 0;
+        }
+        long total = 0;
+        for (int count : FILTER_COUNTS) {
+            BpfProgram[] programs = new BpfProgram[count];
+            try {
+                BpfFilter[] compiled = new BpfFilter[count];
+                for (int i = 0; i < count; i++) {
+                    programs[i] = new BpfProgram();
+                    String filter = filter(i);
+                    if (Jxnet.PcapCompileNoPcap(65535, DataLinkType.EN10MB.getValue(), programs[i], filter, 1,
+                            0xffffff00) != 0) {
+                        LOGGER.warn("Unable to compile: {}", filter);
+                        return total;
+                    }
+                    compiled[i] = BpfCompiler.compile(programs[i]);
+                }
+                long before = System.nanoTime();
+                PacketClassifier classifier = PacketClassifier.of(programs);
+                long build = System.nanoTime() - before;
+                BitSet matches = new BitSet(count);
+                for (int i = 0; i < headers.size(); i++) {
+                    classifier.classify(headers.get(i), packets.get(i), matches);
+                    for (int j = 0; j < count; j++) {
+                        if (matches.get(j) != (Jxnet.PcapOfflineFilter(programs[j], headers.get(i), packets.get(i)) != 0)) {
+                            LOGGER.warn("Match mismatch at packet {}: {}", i, filter(j));
+                        }
+                    }
+                }
+                int loops = EVALUATIONS / count;
+                before = System.nanoTime();
+                for (int i = 0; i < loops; i++) {
+                    int index = i % headers.size();
+                    for (int j = 0; j < count; j++) {
+                        Jxnet.PcapOfflineFilter(programs[j], headers.get(index), packets.get(index));
+                    }
+                }
+                long baseline = System.nanoTime() - before;
+                long accepted = 0;
+                before = System.nanoTime();
+                for (int i = 0; i < loops; i++) {
+                    int index = i % headers.size();
+                    for (int j = 0; j < count; j++) {
+                        if (compiled[j].filter(headers.get(index), packets.get(index)) != 0) {
+                            accepted++;
+                        }
+                    }
+                }
+                long looped = System.nanoTime() - before;
+                before = System.nanoTime();
+                for (int i = 0; i < PACKETS; i++) {
+                    int index = i % headers.size();
+                    classifier.classify(headers.get(index), packets.get(index), matches);
+                    accepted += matches.cardinality();
+                }
+                long elapsed = System.nanoTime() - before;
+                LOGGER.info("{} filters ({} nodes, built in {} us): PcapOfflineFilter {} ns, BpfCompiler {} ns, "
+                        + "PacketClassifier {} ns per packet ({} matches).", count, classifier.getNodeCount(),
+                        build / 1000, baseline / loops, looped / loops, elapsed / PACKETS, accepted);
+                total += elapsed / 1000000;
+            } finally {
+                for (BpfProgram program : programs) {
+                    if (program != null) {
+                        try {
+                            program.close();
+                        } catch (IOException e) {
+                            LOGGER.warn(e.getMessage());
+                        }
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    private static String filter(int index) {
+        switch (index % 3) {
+            case 0:
+                return "tcp port " + (1000 + index);
+            case 1:
+                return "udp port " + (1000 + index);
+            default:
+                return "host 10.0." + (index >> 8) + "." + (index & 0xff);
+        }
+    }
+
+}
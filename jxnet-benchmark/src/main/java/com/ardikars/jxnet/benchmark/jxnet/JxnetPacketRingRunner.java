@@ -0,0 +1,125 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.benchmark.jxnet;
+
+import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.PacketRing;
+import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.RawPcapHandler;
+import com.ardikars.jxnet.benchmark.Runner;
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compare PcapLoop0 (libpcap per packet callback) with PacketRing (TPACKET_V3 blocks)
+ * while a sender thread floods loopback interface with UDP datagrams (Linux only).
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ */
+@Component("jxnetPacketRingRunner")
+public class JxnetPacketRingRunner implements Runner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JxnetPacketRingRunner.class);
+
+    private static final String SOURCE = "lo";
+
+    private static final int PACKETS = 1000000;
+
+    private static final int PORT = 45678;
+
+    private final RawPcapHandler<long[]> handler = new RawPcapHandler<long[]>() {
+        @Override
+        public void nextPacket(long[] user, int capLen, int len, int tvSec, long tvUsec, long memoryAddress) {
+            user[0] += capLen;
+        }
+    };
+
+    @Override
+    public long run() {
+        final StringBuilder errbuf = new StringBuilder();
+        final Pcap pcap = Jxnet.PcapOpenLive(SOURCE, 65535, 1, 1, errbuf);
+        if (pcap == null) {
+            LOGGER.warn(errbuf.toString());
+            return 0;
+        }
+        final PacketRing ring;
+        try {
+            ring = PacketRing.builder().source(SOURCE).build();
+        } catch (RuntimeException e) {
+            LOGGER.warn(e.getMessage());
+            Jxnet.PcapClose(pcap);
+            return 0;
+        }
+
+        long[] bytes = new long[1];
+        AtomicBoolean sending = flood();
+        long before = System.nanoTime();
+        Jxnet.PcapLoop0(pcap, PACKETS, handler, bytes);
+        long pcapLoop = System.nanoTime() - before;
+        sending.set(false);
+        Jxnet.PcapClose(pcap);
+
+        sending = flood();
+        before = System.nanoTime();
+        ring.loop(PACKETS, handler, bytes);
+        long packetRing = System.nanoTime() - before;
+        sending.set(false);
+        try {
+            ring.close();
+        } catch (IOException e) {
+            LOGGER.warn(e.getMessage());
+        }
+
+        LOGGER.info("PcapLoop0 : {} ns/packet, PacketRing : {} ns/packet ({} bytes).",
+                pcapLoop / PACKETS, packetRing / PACKETS, bytes[0]);
+        return (pcapLoop + packetRing) / 1000000;
+    }
+
+    private static AtomicBoolean flood() {
+        final AtomicBoolean sending = new AtomicBoolean(true);
+        Thread sender = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                DatagramSocket socket = null;
+                try {
+                    socket = new DatagramSocket();
+                    byte[] data = new byte[64];
+                    DatagramPacket packet = new DatagramPacket(data, data.length, InetAddress.getByName("127.0.0.1"), PORT);
+                    while (sending.get()) {
+                        socket.send(packet);
+                    }
+                } catch (IOException e) {
+                    LOGGER.warn(e.getMessage());
+                } finally {
+                    if (socket != null) {
+                        socket.close();
+                    }
+                }
+            }
+        }, "jxnet-benchmark-sender");
+        sender.setDaemon(true);
+        sender.start();
+        return sending;
+    }
+
+}
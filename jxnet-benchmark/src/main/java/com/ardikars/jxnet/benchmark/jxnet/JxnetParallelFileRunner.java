@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ardikars.jxnet.benchmark.jxnet;
+
+import com.ardikars.jxnet.PcapChunkHandler;
+import com.ardikars.jxnet.PcapFileProcessor;
+import com.ardikars.jxnet.PcapFileReader;
+import com.ardikars.jxnet.benchmark.Runner;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Measure scaling of {@link PcapFileProcessor} from 1 to N workers on a generated savefile.
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ */
+@Component("jxnetParallelFileRunner")
+public class JxnetParallelFileRunner implements Runner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JxnetParallelFileRunner.class);
+
+    private static final long CORPUS_SIZE = 1L << 28;
+
+    private static final long CHUNK_SIZE = 16L << 20;
+
+    private final PcapChunkHandler<long[]> handler = new PcapChunkHandler<long[]>() {
+        @Override
+        public long[] initialValue(int chunk) {
+            return new long[2];
+        }
+
+        @Override
+        public long[] merge(long[] left, long[] right) {
+            left[0] += right[0];
+            left[1] += right[1];
+            return left;
+        }
+
+        @Override
+        public void nextPacket(long[] user, int capLen, int len, int tvSec, long tvUsec, long memoryAddress) {
+            user[0]++;
+            user[1] += capLen;
+        }
+    };
+
+    @Override
+    public long run() {
+        File corpus = null;
+        try {
+            corpus = generate();
+            long elapsed = 0;
+            int processors = Runtime.getRuntime().availableProcessors();
+            for (int parallelism = 1; parallelism <= processors;
+                 parallelism = parallelism < processors ? Math.min(parallelism << 1, processors) : parallelism + 1) {
+                PcapFileProcessor processor = PcapFileProcessor.builder()
+                        .fileName(corpus.getPath())
+                        .parallelism(parallelism)
+                        .chunkSize(CHUNK_SIZE)
+                        .build();
+                long before = System.nanoTime();
+                long[] result = processor.process(handler);
+                elapsed = (System.nanoTime() - before) / 1000000;
+                LOGGER.info("PcapFileProcessor with {} worker(s) : {} ms ({} packets, {} bytes).",
+                        parallelism, elapsed, result[0], result[1]);
+            }
+            return elapsed;
+        } catch (Exception e) {
+            LOGGER.warn(e.getMessage());
+            return 0;
+        } finally {
+            if (corpus != null && !corpus.delete()) {
+                corpus.deleteOnExit();
+            }
+        }
+    }
+
+    private static File generate() throws IOException {
+        File file = File.createTempFile("jxnet-corpus", ".pcap");
+        ByteBuffer record = ByteBuffer.allocate(PcapFileReader.RECORD_HEADER_SIZE + 1514).order(ByteOrder.nativeOrder());
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(file), 1 << 20);
+        try {
+            record.putInt(PcapFileReader.MAGIC_MICRO).putShort((short) 2).putShort((short) 4)
+                    .putInt(0).putInt(0).putInt(65535).putInt(1);
+            out.write(record.array(), 0, PcapFileReader.GLOBAL_HEADER_SIZE);
+            long size = PcapFileReader.GLOBAL_HEADER_SIZE;
+            for (int i = 0; size < CORPUS_SIZE; i++) {
+                int caplen = 60 + (i * 31) % 1455;
+                record.clear();
+                record.putInt(1500000000 + i / 1000).putInt((i % 1000) * 1000).putInt(caplen).putInt(caplen);
+                out.write(record.array(), 0, PcapFileReader.RECORD_HEADER_SIZE + caplen);
+                size += PcapFileReader.RECORD_HEADER_SIZE + caplen;
+            }
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+}
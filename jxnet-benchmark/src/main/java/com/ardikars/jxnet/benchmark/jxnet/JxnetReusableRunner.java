@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.benchmark.jxnet;
+
+import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.PcapHandler;
+import com.ardikars.jxnet.PcapPktHdr;
+import com.ardikars.jxnet.PcapTimestampPrecision;
+import com.ardikars.jxnet.benchmark.Runner;
+import com.ardikars.jxnet.context.Application;
+import com.ardikars.jxnet.context.Context;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ */
+@Component("jxnetReusableRunner")
+public class JxnetReusableRunner implements Runner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JxnetReusableRunner.class);
+
+    @Value("${jxnet.file}")
+    private String pcapFile;
+
+    private long packets;
+
+    @Override
+    public long run() {
+        final StringBuilder errbuf = new StringBuilder();
+        final Pcap.Builder builder = new Pcap.Builder()
+                .timestampPrecision(PcapTimestampPrecision.NANO)
+                .fileName(pcapFile)
+                .errbuf(errbuf)
+                .pcapType(Pcap.PcapType.OFFLINE);
+
+        final com.sun.management.ThreadMXBean threadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        final long threadId = Thread.currentThread().getId();
+
+        packets = 0;
+        Application.run("application", "Application", "", builder);
+        Context context = Application.getApplicationContext();
+        final long allocatedBefore = threadMXBean.getThreadAllocatedBytes(threadId);
+        final long before = System.currentTimeMillis();
+        context.pcapLoopReusable(-1, new PcapHandler<String>() {
+            @Override
+            public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                packets++;
+            }
+        }, "");
+        long now = System.currentTimeMillis();
+        final long allocated = threadMXBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+        context.pcapClose();
+        LOGGER.info("PcapLoopReusable allocated {} bytes for {} packets ({} bytes/packet).",
+                allocated, packets, packets == 0 ? 0 : allocated / packets);
+        return now - before;
+    }
+
+}
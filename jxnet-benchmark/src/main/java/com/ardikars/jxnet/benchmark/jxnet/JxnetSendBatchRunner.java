@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.ardikars.jxnet.benchmark.jxnet;
+
+import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.PcapSendBuffer;
+import com.ardikars.jxnet.benchmark.Runner;
+import java.nio.ByteBuffer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Compare packets per second of PcapSendPacket (one native call per frame) with PcapSendBatch
+ * (one native call per batch, sendmmsg on Linux) on loopback interface.
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ */
+@Component("jxnetSendBatchRunner")
+public class JxnetSendBatchRunner implements Runner {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JxnetSendBatchRunner.class);
+
+    private static final String SOURCE = "lo";
+
+    private static final int PACKETS = 1000000;
+
+    private static final int FRAME_SIZE = 64;
+
+    private static final int[] BATCH_SIZES = { 8, 64, 256 };
+
+    @Override
+    public long run() {
+        final StringBuilder errbuf = new StringBuilder();
+        final Pcap pcap = Jxnet.PcapOpenLive(SOURCE, 65535, 1, 1, errbuf);
+        if (pcap == null) {
+            LOGGER.warn(errbuf.toString());
+            return 0;
+        }
+        try {
+            ByteBuffer frame = ByteBuffer.allocateDirect(FRAME_SIZE);
+            for (int i = 0; i < 6; i++) {
+                frame.put(i, (byte) 0xff); // Broadcast destination.
+            }
+            long before = System.nanoTime();
+            int sent = 0;
+            for (int i = 0; i < PACKETS; i++) {
+                if (Jxnet.PcapSendPacket(pcap, frame, FRAME_SIZE) == 0) {
+                    sent++;
+                }
+            }
+            long single = System.nanoTime() - before;
+            LOGGER.info("PcapSendPacket : {} pps ({} of {} sent).", pps(sent, single), sent, PACKETS);
+            long elapsed = 0;
+            for (int batchSize : BATCH_SIZES) {
+                PcapSendBuffer buffer = PcapSendBuffer.allocate(batchSize * (PcapSendBuffer.LENGTH_SIZE + FRAME_SIZE));
+                while (buffer.add(frame)) {
+                    // The same batch is sent repeatedly.
+                }
+                sent = 0;
+                before = System.nanoTime();
+                for (int i = 0; i < PACKETS; i += batchSize) {
+                    int result = Jxnet.PcapSendBatch(pcap, buffer.buffer(), buffer.size());
+                    if (result > 0) {
+                        sent += result;
+                    }
+                }
+                elapsed = System.nanoTime() - before;
+                LOGGER.info("PcapSendBatch ({} frames per call) : {} pps ({} sent).", batchSize, pps(sent, elapsed), sent);
+            }
+            return elapsed / 1000000;
+        } finally {
+            Jxnet.PcapClose(pcap);
+        }
+    }
+
+    private static long pps(long packets, long nanos) {
+        return nanos == 0 ? 0 : packets * 1000000000L / nanos;
+    }
+
+}
@@ -19,7 +19,9 @@ package com.ardikars.jxnet.context;
 
 import com.ardikars.common.util.Builder;
 import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.PacketRing;
 import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.PcapOfflineReader;
 
 /**
  * Helper class for bootstraping jxnet application.
@@ -71,6 +73,39 @@ public final class Application {
         instance.context = new ApplicationContext(aplicationName, applicationDisplayName, applicationVersion, builder);
     }
 
+    /**
+     * Bootstraping application, raw packet and block loops read from a memory mapped ring (Linux only).
+     * @param aplicationName application name.
+     * @param applicationDisplayName application display name.
+     * @param applicationVersion application version.
+     * @param builder pcap builder.
+     * @param packetRingBuilder packet ring builder.
+     * @since 1.5.4
+     */
+    public static void run(String aplicationName, String applicationDisplayName, String applicationVersion,
+                           Builder<Pcap, Void> builder, PacketRing.Builder packetRingBuilder) {
+        Validate.notIllegalArgument(builder != null,
+                new IllegalArgumentException("Pcap builder should be not null."));
+        instance.context = new ApplicationContext(aplicationName, applicationDisplayName, applicationVersion,
+                builder, packetRingBuilder);
+    }
+
+    /**
+     * Bootstraping application, packets read by a pure Java offline reader without native library
+     * (memory mapped savefile, pcapng file or compressed savefile stream).
+     * @param aplicationName application name.
+     * @param applicationDisplayName application display name.
+     * @param applicationVersion application version.
+     * @param fileReader offline reader.
+     * @since 1.5.4
+     */
+    public static void run(String aplicationName, String applicationDisplayName, String applicationVersion,
+                           PcapOfflineReader fileReader) {
+        Validate.notIllegalArgument(fileReader != null,
+                new IllegalArgumentException("Offline reader should be not null."));
+        instance.context = new ApplicationContext(aplicationName, applicationDisplayName, applicationVersion, fileReader);
+    }
+
     /**
      * Get application context.
      * @return application context.
@@ -23,19 +23,33 @@ import com.ardikars.common.net.Inet4Address;
 import com.ardikars.common.util.Builder;
 import com.ardikars.common.util.Validate;
 import com.ardikars.jxnet.BpfProgram;
+import com.ardikars.jxnet.BpfProgramCache;
 import com.ardikars.jxnet.DataLinkType;
 import com.ardikars.jxnet.Jxnet;
 import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.PacketBuffer;
+import com.ardikars.jxnet.PacketBlockHandler;
+import com.ardikars.jxnet.PacketBufferHandler;
+import com.ardikars.jxnet.PacketBufferPool;
+import com.ardikars.jxnet.PacketRing;
+import com.ardikars.jxnet.PcapAsyncDumper;
+import com.ardikars.jxnet.PcapBatchHandler;
 import com.ardikars.jxnet.PcapCode;
 import com.ardikars.jxnet.PcapDirection;
 import com.ardikars.jxnet.PcapDumper;
+import com.ardikars.jxnet.PcapFileIndex;
 import com.ardikars.jxnet.PcapHandler;
+import com.ardikars.jxnet.PcapOfflineReader;
 import com.ardikars.jxnet.PcapPktHdr;
+import com.ardikars.jxnet.PcapRotatingDumper;
+import com.ardikars.jxnet.PcapSendBuffer;
 import com.ardikars.jxnet.PcapStat;
 import com.ardikars.jxnet.PcapTimestampPrecision;
 import com.ardikars.jxnet.PcapTimestampType;
 import com.ardikars.jxnet.RawPcapHandler;
 import com.ardikars.jxnet.exception.BpfProgramCloseException;
+import com.ardikars.jxnet.exception.NativeException;
+import com.ardikars.jxnet.exception.PacketRingCloseException;
 import com.ardikars.jxnet.exception.PcapCloseException;
 import com.ardikars.jxnet.exception.PcapDumperCloseException;
 import com.ardikars.jxnet.exception.PlatformNotSupportedException;
@@ -46,7 +60,9 @@ import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Executor;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
@@ -64,6 +80,26 @@ public final class ApplicationContext implements Context {
 	private static final IllegalArgumentException NULL_EXECUTOR_EXCEPTION =
 			new IllegalArgumentException("Executor should be not null.");
 
+	private static final IllegalArgumentException NULL_POOL_EXCEPTION =
+			new IllegalArgumentException("Packet buffer pool should be not null.");
+
+	private static final IllegalStateException NO_PACKET_RING_EXCEPTION =
+			new IllegalStateException("Packet ring is not configured.");
+
+	private static final IllegalStateException FILE_READER_EXCEPTION =
+			new IllegalStateException("Operation needs a pcap handle, it's not supported by the offline file reader.");
+
+	private static final int PCAP_ERROR_BREAK = -2;
+
+	private static final int CAPTURE_IDLE = 0;
+
+	private static final int CAPTURE_LOOP = 1;
+
+	/**
+	 * Dispatch or read of the next packet, a swap is installed once it returns.
+	 */
+	private static final int CAPTURE_DISPATCH = 2;
+
 	private final String applicationName;
 
 	private final String applicationDisplayName;
@@ -72,11 +108,54 @@ public final class ApplicationContext implements Context {
 
 	private final Pcap pcap;
 
+	private final Builder<Pcap, Void> builder;
+
+	private final CaptureHandle captureHandle;
+
+	private volatile CaptureHandle[] fanoutHandles = new CaptureHandle[0];
+
+	private final PacketRing packetRing;
+
+	private final PcapOfflineReader fileReader;
+
 	private BpfProgram bpfProgram;
 
+	/**
+	 * Serialize filter swaps.
+	 */
+	private final ReentrantLock swapLock = new ReentrantLock();
+
+	/**
+	 * Guard the capture state of the handles and the pending swaps, held while a program is installed.
+	 */
+	private final ReentrantLock filterLock = new ReentrantLock();
+
 	private PcapDumper pcapDumper;
 
+	private PcapFileIndex.Writer indexWriter;
+
+	private PcapAsyncDumper asyncDumper;
+
+	private PcapRotatingDumper rotatingDumper;
+
+	private PcapSendBuffer sendBuffer;
+
 	protected ApplicationContext(String applicationName, String applicationDisplayName, String applicationVersion, Builder<Pcap, Void> builder) {
+		this(applicationName, applicationDisplayName, applicationVersion, builder, null);
+	}
+
+	protected ApplicationContext(String applicationName, String applicationDisplayName, String applicationVersion,
+								 PcapOfflineReader fileReader) {
+		this(applicationName, applicationDisplayName, applicationVersion, null, null, fileReader);
+	}
+
+	protected ApplicationContext(String applicationName, String applicationDisplayName, String applicationVersion,
+								 Builder<Pcap, Void> builder, PacketRing.Builder packetRingBuilder) {
+		this(applicationName, applicationDisplayName, applicationVersion, builder, packetRingBuilder, null);
+	}
+
+	private ApplicationContext(String applicationName, String applicationDisplayName, String applicationVersion,
+							   Builder<Pcap, Void> builder, PacketRing.Builder packetRingBuilder, PcapOfflineReader fileReader) {
 		Runtime.getRuntime().addShutdownHook(new Thread() {
 			@Override
 			public void run() {
@@ -90,16 +169,33 @@ public final class ApplicationContext implements Context {
 		this.applicationName = applicationName;
 		this.applicationDisplayName = applicationDisplayName;
 		this.applicationVersion = applicationVersion;
-		Validate.notIllegalArgument(builder != null, new IllegalArgumentException("Pcap builder should be not null."));
-		Pcap pcap;
-		try {
-			pcap = builder.build();
-			LOGGER.debug("Create new application context instance.");
-		} catch (Exception e) {
-			pcap = null;
-			LOGGER.error(e.getMessage());
+		Validate.notIllegalArgument(builder != null || fileReader != null,
+				new IllegalArgumentException("Pcap builder should be not null."));
+		Pcap pcap = null;
+		if (fileReader == null) {
+			try {
+				pcap = builder.build();
+				LOGGER.debug("Create new application context instance.");
+			} catch (Exception e) {
+				LOGGER.error(e.getMessage());
+			}
+		} else {
+			LOGGER.debug("Create new application context instance for {}.", fileReader);
 		}
 		this.pcap = pcap;
+		this.captureHandle = new CaptureHandle(pcap);
+		this.fileReader = fileReader;
+		this.builder = builder;
+		PacketRing packetRing = null;
+		if (packetRingBuilder != null) {
+			try {
+				packetRing = packetRingBuilder.build();
+				LOGGER.debug("Packet ring: {}.", packetRing);
+			} catch (Exception e) {
+				LOGGER.error(e.getMessage());
+			}
+		}
+		this.packetRing = packetRing;
 	}
 
     @Override
@@ -124,7 +220,7 @@ public final class ApplicationContext implements Context {
 
 	@Override
 	public <T> PcapCode pcapLoop(int cnt, PcapHandler<T> callback, T user) throws PcapCloseException {
-		int result = Jxnet.PcapLoop(pcap, cnt, callback, user);
+		int result = loop(cnt, callback, user);
 		if (result == 0) {
 			return PcapCode.PCAP_OK;
 		}
@@ -135,7 +231,7 @@ public final class ApplicationContext implements Context {
 	public <T> PcapCode pcapLoop(final int cnt, final PcapHandler<T> callback, final T user, final Executor executor)
 			throws PcapCloseException {
 		Validate.notIllegalArgument(executor != null, NULL_EXECUTOR_EXCEPTION);
-		int result = Jxnet.PcapLoop(pcap, cnt, new PcapHandler<T>() {
+		int result = loop(cnt, new PcapHandler<T>() {
 			@Override
 			public void nextPacket(final T user, final PcapPktHdr h, final ByteBuffer bytes) {
 				executor.execute(new Runnable() {
@@ -152,11 +248,143 @@ public final class ApplicationContext implements Context {
 		return PcapCode.PCAP_ERROR;
 	}
 
+	@Override
+	public <T> PcapCode pcapLoop(final int cnt, final PacketBufferHandler<T> callback, final T user,
+								 final Executor executor, final PacketBufferPool pool) throws PcapCloseException {
+		Validate.notIllegalArgument(executor != null, NULL_EXECUTOR_EXCEPTION);
+		Validate.notIllegalArgument(pool != null, NULL_POOL_EXCEPTION);
+		int result = loopReusable(cnt, new PacketBufferHandOff<T>(callback, user, executor, pool), user);
+		if (result == 0) {
+			return PcapCode.PCAP_OK;
+		}
+		return PcapCode.PCAP_ERROR;
+	}
+
+	@Override
+	public <T> PcapCode pcapLoopFanout(final int handles, final int cnt, final PcapHandler<T> callback, final T user)
+			throws PcapCloseException {
+		return fanout(handles, cnt, new FanoutLoop() {
+			@Override
+			public int run(CaptureHandle handle, int cnt) {
+				return loop(handle, cnt, callback, user);
+			}
+		});
+	}
+
+	@Override
+	public <T> PcapCode pcapLoopFanout(final int handles, final int cnt, final RawPcapHandler<T> callback, final T user)
+			throws PcapCloseException {
+		return fanout(handles, cnt, new FanoutLoop() {
+			@Override
+			public int run(CaptureHandle handle, int cnt) {
+				return loop0(handle, cnt, callback, user);
+			}
+		});
+	}
+
+	private PcapCode fanout(final int handles, final int cnt, final FanoutLoop loop) throws PcapCloseException {
+		checkPcapHandle();
+		Validate.notIllegalArgument(handles > 0, new IllegalArgumentException("Number of handles should be greater than zero."));
+		if (handles > 1 && (!(builder instanceof Pcap.Builder) || ((Pcap.Builder) builder).getFanoutMode() == null)) {
+			// Without a fanout group every handle would see every packet.
+			throw new IllegalStateException("Pcap builder should configure a fanout mode.");
+		}
+		final CaptureHandle[] members = new CaptureHandle[handles - 1];
+		swapLock.lock(); // A running swap is installed before the members get the program.
+		try {
+			for (int i = 0; i < members.length; i++) {
+				members[i] = new CaptureHandle(builder.build());
+				if (bpfProgram != null && Jxnet.PcapSetFilter(members[i].pcap, bpfProgram) != 0) {
+					LOGGER.error(Jxnet.PcapGetErr(members[i].pcap));
+					closeFanoutHandles(members);
+					return PcapCode.PCAP_ERROR;
+				}
+			}
+			setFanoutHandles(members);
+		} catch (RuntimeException e) {
+			closeFanoutHandles(members);
+			throw e;
+		} finally {
+			swapLock.unlock();
+		}
+		final int[] results = new int[handles];
+		final Thread[] threads = new Thread[members.length];
+		for (int i = 0; i < members.length; i++) {
+			final int index = i;
+			threads[i] = new Thread(new Runnable() {
+				@Override
+				public void run() {
+					int result = -1;
+					try {
+						result = loop.run(members[index], cnt);
+					} finally {
+						results[index + 1] = result;
+						if (result < 0) {
+							pcapBreakLoop(); // a failed member terminates the whole group
+						}
+					}
+				}
+			}, "jxnet-fanout-" + (i + 1));
+			threads[i].setDaemon(true);
+			threads[i].start();
+		}
+		results[0] = -1;
+		boolean interrupted = false;
+		try {
+			results[0] = loop.run(captureHandle, cnt);
+		} finally {
+			if (results[0] < 0) {
+				pcapBreakLoop();
+			}
+			for (int i = 0; i < threads.length; i++) {
+				try {
+					threads[i].join();
+				} catch (InterruptedException e) {
+					interrupted = true;
+					pcapBreakLoop();
+					i--; // wait until the loop returns before closing its handle
+				}
+			}
+			setFanoutHandles(new CaptureHandle[0]);
+			closeFanoutHandles(members);
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		for (int result : results) {
+			if (result != 0) {
+				return PcapCode.PCAP_ERROR;
+			}
+		}
+		return PcapCode.PCAP_OK;
+	}
+
+	/**
+	 * Register the handles of a fanout loop, so swaps are installed on them as well.
+	 * @param members handles, excluding this context handle.
+	 */
+	private void setFanoutHandles(CaptureHandle[] members) {
+		filterLock.lock();
+		try {
+			fanoutHandles = members;
+		} finally {
+			filterLock.unlock();
+		}
+	}
+
+	private static void closeFanoutHandles(CaptureHandle[] handles) {
+		for (CaptureHandle handle : handles) {
+			if (handle != null && !handle.pcap.isClosed()) {
+				Jxnet.PcapClose(handle.pcap);
+			}
+		}
+	}
+
 	@Override
 	public <T> PcapCode pcapLoop(final int cnt, final PcapHandler<T> callback, final T user, final ExecutorService executor)
 			throws PcapCloseException {
 		Validate.notIllegalArgument(executor != null, NULL_EXECUTOR_EXCEPTION);
-		int result = Jxnet.PcapLoop(pcap, cnt, new PcapHandler<T>() {
+		int result = loop(cnt, new PcapHandler<T>() {
 			@Override
 			public void nextPacket(final T user, final PcapPktHdr h, final ByteBuffer bytes) {
 				executor.submit(new Runnable() {
@@ -175,18 +403,30 @@ public final class ApplicationContext implements Context {
 
 	@Override
 	public <T> PcapCode pcapLoop(int cnt, RawPcapHandler<T> callback, T user) throws PcapCloseException {
-		int result = Jxnet.PcapLoop0(pcap, cnt, callback, user);
+		int result = loop0(cnt, callback, user);
 		if (result == 0) {
 			return PcapCode.PCAP_OK;
 		}
 		return PcapCode.PCAP_ERROR;
 	}
 
+	@Override
+	public <T> PcapCode pcapLoop(int cnt, PacketBlockHandler<T> callback, T user)
+			throws IllegalStateException, PacketRingCloseException {
+		if (packetRing == null) {
+			throw NO_PACKET_RING_EXCEPTION;
+		}
+		if (packetRing.loop(cnt, callback, user) == 0) {
+			return PcapCode.PCAP_OK;
+		}
+		return PcapCode.PCAP_ERROR;
+	}
+
 	@Override
 	public <T> PcapCode pcapLoop(final int cnt, final RawPcapHandler<T> callback, final T user, final Executor executor)
 			throws PcapCloseException {
 		Validate.notIllegalArgument(executor != null, NULL_EXECUTOR_EXCEPTION);
-		int result = Jxnet.PcapLoop0(pcap, cnt, new RawPcapHandler<T>() {
+		int result = loop0(cnt, new RawPcapHandler<T>() {
 			@Override
 			public void nextPacket(final T user, final int capLen, final int len, final int tvSec, final long tvUsec,
 								   final long memoryAddress) {
@@ -208,7 +448,7 @@ public final class ApplicationContext implements Context {
 	public <T> PcapCode pcapLoop(final int cnt, final RawPcapHandler<T> callback, final T user, final ExecutorService executor)
 			throws PcapCloseException {
 		Validate.notIllegalArgument(executor != null, NULL_EXECUTOR_EXCEPTION);
-		int result = Jxnet.PcapLoop0(pcap, cnt, new RawPcapHandler<T>() {
+		int result = loop0(cnt, new RawPcapHandler<T>() {
 			@Override
 			public void nextPacket(final T user, final int capLen, final int len, final int tvSec, final long tvUsec,
 								   final long memoryAddress) {
@@ -228,7 +468,7 @@ public final class ApplicationContext implements Context {
 
 	@Override
 	public <T> PcapCode pcapDispatch(int cnt, PcapHandler<T> callback, T user) throws PcapCloseException {
-		int result = Jxnet.PcapDispatch(pcap, cnt, callback, user);
+		int result = dispatch(cnt, callback, user);
 		if (result == 0) {
 			return PcapCode.PCAP_OK;
 		}
@@ -239,7 +479,7 @@ public final class ApplicationContext implements Context {
 	public <T> PcapCode pcapDispatch(final int cnt, final PcapHandler<T> callback, final T user, final Executor executor)
 			throws PcapCloseException {
 		Validate.notIllegalArgument(executor != null, NULL_EXECUTOR_EXCEPTION);
-		int result = Jxnet.PcapDispatch(pcap, cnt, new PcapHandler<T>() {
+		int result = dispatch(cnt, new PcapHandler<T>() {
 			@Override
 			public void nextPacket(final T user, final PcapPktHdr h, final ByteBuffer bytes) {
 				executor.execute(new Runnable() {
@@ -256,9 +496,21 @@ public final class ApplicationContext implements Context {
 		return PcapCode.PCAP_ERROR;
 	}
 
+	@Override
+	public <T> PcapCode pcapDispatch(final int cnt, final PacketBufferHandler<T> callback, final T user,
+									 final Executor executor, final PacketBufferPool pool) throws PcapCloseException {
+		Validate.notIllegalArgument(executor != null, NULL_EXECUTOR_EXCEPTION);
+		Validate.notIllegalArgument(pool != null, NULL_POOL_EXCEPTION);
+		int result = dispatchReusable(cnt, new PacketBufferHandOff<T>(callback, user, executor, pool), user);
+		if (result >= 0) {
+			return PcapCode.PCAP_OK;
+		}
+		return PcapCode.PCAP_ERROR;
+	}
+
     @Override
     public <T> PcapCode pcapDispatch(int cnt, RawPcapHandler<T> callback, T user) throws PcapCloseException {
-        int result = Jxnet.PcapDispatch0(pcap, cnt, callback, user);
+        int result = dispatch0(cnt, callback, user);
         if (result == 0) {
             return PcapCode.PCAP_OK;
         }
@@ -269,7 +521,7 @@ public final class ApplicationContext implements Context {
     public <T> PcapCode pcapDispatch(final int cnt, final RawPcapHandler<T> callback, final T user, final Executor executor)
             throws PcapCloseException {
         Validate.notIllegalArgument(executor != null, NULL_EXECUTOR_EXCEPTION);
-        int result = Jxnet.PcapDispatch0(pcap, cnt, new RawPcapHandler<T>() {
+        int result = dispatch0(cnt, new RawPcapHandler<T>() {
             @Override
             public void nextPacket(T user, int capLen, int len, int tvSec, long tvUsec, long memoryAddress) {
                 callback.nextPacket(user, capLen, len, tvSec, tvUsec, memoryAddress);
@@ -281,8 +533,45 @@ public final class ApplicationContext implements Context {
         return PcapCode.PCAP_ERROR;
     }
 
+    @Override
+    public <T> PcapCode pcapDispatchBatch(int cnt, final PcapBatchHandler<T> callback, final T user,
+                                          final ByteBuffer headers, final ByteBuffer packets) throws PcapCloseException {
+        checkPcapHandle();
+        int result = capture(captureHandle, CAPTURE_DISPATCH, cnt, new Capture() {
+            @Override
+            public int run(int cnt) {
+                return Jxnet.PcapDispatchBatch(pcap, cnt, callback, user, headers, packets);
+            }
+        });
+        if (result >= 0) {
+            return PcapCode.PCAP_OK;
+        }
+        return PcapCode.PCAP_ERROR;
+    }
+
+    @Override
+    public <T> PcapCode pcapLoopReusable(int cnt, PcapHandler<T> callback, T user) throws PcapCloseException {
+        int result = loopReusable(cnt, callback, user);
+        if (result == 0) {
+            return PcapCode.PCAP_OK;
+        }
+        return PcapCode.PCAP_ERROR;
+    }
+
+    @Override
+    public <T> PcapCode pcapDispatchReusable(int cnt, PcapHandler<T> callback, T user) throws PcapCloseException {
+        int result = dispatchReusable(cnt, callback, user);
+        if (result >= 0) {
+            return PcapCode.PCAP_OK;
+        }
+        return PcapCode.PCAP_ERROR;
+    }
+
 	@Override
 	public PcapCode pcapDumpOpen(String fname) throws PcapCloseException {
+		checkPcapHandle();
+		closeIndexWriter();
+		closeAsyncDumper();
 		pcapDumper = Jxnet.PcapDumpOpen(pcap, fname);
 		if (pcapDumper == null) {
 			return PcapCode.PCAP_ERROR;
@@ -290,41 +579,289 @@ public final class ApplicationContext implements Context {
 		return PcapCode.PCAP_OK;
 	}
 
+	@Override
+	public PcapCode pcapDumpOpen(String fname, long indexInterval) throws PcapCloseException {
+		checkPcapHandle();
+		// Check everything the index writer needs first, so the dumper is not left open.
+		Validate.notIllegalArgument(indexInterval > 0,
+				new IllegalArgumentException("Index interval should be greater than 0."));
+		final PcapTimestampPrecision precision = pcapGetTStampPrecision();
+		if (pcapDumpOpen(fname) != PcapCode.PCAP_OK) {
+			return PcapCode.PCAP_ERROR;
+		}
+		try {
+			indexWriter = new PcapFileIndex.Writer(fname + PcapFileIndex.FILE_EXTENSION, indexInterval,
+					Jxnet.PcapDumpFTell(pcapDumper), precision);
+		} catch (IOException e) {
+			LOGGER.error(e.getMessage());
+			Jxnet.PcapDumpClose(pcapDumper);
+			return PcapCode.PCAP_ERROR;
+		}
+		return PcapCode.PCAP_OK;
+	}
+
+	@Override
+	public PcapCode pcapDumpOpenAsync(String fname, int capacity) throws PcapCloseException {
+		if (pcapDumpOpen(fname) != PcapCode.PCAP_OK) {
+			return PcapCode.PCAP_ERROR;
+		}
+		asyncDumper = PcapAsyncDumper.builder()
+				.pcapDumper(pcapDumper)
+				.capacity(capacity)
+				.build();
+		return PcapCode.PCAP_OK;
+	}
+
+	@Override
+	public PcapAsyncDumper getAsyncDumper() {
+		return asyncDumper;
+	}
+
+	@Override
+	public PcapCode pcapDumpOpenRotating(PcapRotatingDumper.Builder builder, int capacity) throws PcapCloseException {
+		checkPcapHandle();
+		closeIndexWriter();
+		closeAsyncDumper();
+		rotatingDumper = builder.pcap(pcap).build();
+		asyncDumper = PcapAsyncDumper.builder()
+				.sink(rotatingDumper)
+				.capacity(capacity)
+				.build();
+		return PcapCode.PCAP_OK;
+	}
+
+	@Override
+	public PcapRotatingDumper getRotatingDumper() {
+		return rotatingDumper;
+	}
+
 	@Override
 	public void pcapDump(PcapPktHdr h, ByteBuffer sp) throws PcapDumperCloseException {
-		if (pcapDumper == null || pcapDumper.isClosed()) {
+		if (rotatingDumper == null && (pcapDumper == null || pcapDumper.isClosed())) {
 			throw new PcapDumperCloseException();
 		}
+		if (asyncDumper != null) {
+			asyncDumper.dump(h, sp);
+			return;
+		}
 		Jxnet.PcapDump(pcapDumper, h, sp);
+		if (indexWriter != null) {
+			try {
+				indexWriter.add(h);
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+				closeIndexWriter();
+			}
+		}
 	}
 
 	@Override
 	public PcapCode pcapCompile(String str, BpfProgram.BpfCompileMode optimize, int netmask) throws PcapCloseException, BpfProgramCloseException {
-		if (bpfProgram == null) {
-			bpfProgram = new BpfProgram();
-		}
+		checkPcapHandle();
 		Validate.notIllegalArgument(optimize != null, new IllegalArgumentException("Bpf compile mode should be not null."));
-		int result = Jxnet.PcapCompile(pcap, bpfProgram, str, optimize.getValue(), netmask);
-		if (result == 0) {
-			return PcapCode.PCAP_OK;
+		final BpfProgram program;
+		try {
+			program = BpfProgramCache.getDefault().acquire(pcap, str, optimize, netmask);
+		} catch (NativeException e) {
+			return PcapCode.PCAP_ERROR;
 		}
-		return PcapCode.PCAP_ERROR;
+		releaseBpfProgram();
+		bpfProgram = program;
+		return PcapCode.PCAP_OK;
 	}
 
 	@Override
 	public PcapCode pcapSetFilter() throws PcapCloseException, BpfProgramCloseException {
+		checkPcapHandle();
 		if (bpfProgram == null) {
 			bpfProgram = new BpfProgram();
 		}
 		int result = Jxnet.PcapSetFilter(pcap, bpfProgram);
+		if (result == 0 && packetRing != null) {
+			try {
+				packetRing.setFilter(bpfProgram);
+			} catch (NativeException e) {
+				LOGGER.error(e.getMessage());
+				result = -1;
+			}
+		}
 		if (result == 0) {
 			return PcapCode.PCAP_OK;
 		}
 		return PcapCode.PCAP_ERROR;
 	}
 
+	@Override
+	public PcapSwapFilterStat pcapSwapFilter(String str, BpfProgram.BpfCompileMode optimize, int netmask)
+			throws PcapCloseException, InterruptedException {
+		Validate.notIllegalArgument(optimize != null, new IllegalArgumentException("Bpf compile mode should be not null."));
+		if (fileReader != null) {
+			throw new IllegalStateException("Offline reader doesn't support capture filter.");
+		}
+		if (isCaptureThread()) {
+			// The loop would wait for the callback to return, and the callback for the program to be installed.
+			throw new IllegalStateException("Filter can't be swapped by a capture callback.");
+		}
+		final long start = System.nanoTime();
+		final BpfProgram program;
+		try {
+			// Compiled without the handle, pcap_compile() would use its state while the loop is running.
+			program = BpfProgramCache.getDefault().acquire(Jxnet.PcapSnapshot(pcap),
+					DataLinkType.valueOf((short) Jxnet.PcapDataLink(pcap)), str, optimize, netmask);
+		} catch (NativeException e) {
+			return new PcapSwapFilterStat(PcapCode.PCAP_ERROR, System.nanoTime() - start, 0, 0, false);
+		}
+		try {
+			swapLock.lockInterruptibly();
+		} catch (InterruptedException e) {
+			releaseBpfProgram(program);
+			throw e;
+		}
+		final FilterSwap swap;
+		try {
+			final CaptureHandle[] handles;
+			filterLock.lock();
+			try {
+				handles = captureHandles();
+				swap = new FilterSwap(program, System.nanoTime(), handles.length);
+				for (CaptureHandle handle : handles) {
+					if (handle.state == CAPTURE_IDLE) {
+						installFilter(handle, swap, false);
+					} else {
+						handle.pendingSwap = swap;
+						handle.swapPending = true;
+						if (handle.state == CAPTURE_LOOP) {
+							handle.swapBreak = true;
+							Jxnet.PcapBreakLoop(handle.pcap);
+						}
+					}
+				}
+			} finally {
+				filterLock.unlock();
+			}
+			try {
+				swap.installed.await();
+			} catch (InterruptedException e) {
+				cancelSwap(handles, swap);
+				throw e;
+			}
+		} finally {
+			swapLock.unlock();
+		}
+		return new PcapSwapFilterStat(swap.code, swap.requestTime - start, swap.installTime - swap.requestTime,
+				swap.transitionPackets, swap.captureThread);
+	}
+
+	/**
+	 * Cancel a swap which is not installed by any handle yet, otherwise wait until it is installed by all handles,
+	 * their loops are already broken.
+	 * @param handles handles of the swap.
+	 * @param swap swap.
+	 */
+	private void cancelSwap(CaptureHandle[] handles, FilterSwap swap) {
+		filterLock.lock();
+		try {
+			if (swap.remaining == handles.length) {
+				for (CaptureHandle handle : handles) {
+					handle.pendingSwap = null;
+					handle.swapPending = false;
+				}
+				releaseBpfProgram(swap.program);
+				return;
+			}
+		} finally {
+			filterLock.unlock();
+		}
+		boolean installed = false;
+		while (!installed) {
+			try {
+				swap.installed.await();
+				installed = true;
+			} catch (InterruptedException e) {
+				// The caller throws InterruptedException anyway.
+			}
+		}
+	}
+
+	/**
+	 * Install a swapped program on a handle, called with filter lock held while no loop is running on the handle.
+	 * Once installed by all handles, the previous program is released if the new one is installed by this context handle,
+	 * otherwise the new one is released.
+	 * @param handle handle.
+	 * @param swap swap.
+	 * @param captureThread true if called by the capture thread of the handle.
+	 */
+	private void installFilter(CaptureHandle handle, FilterSwap swap, boolean captureThread) {
+		int result;
+		try {
+			result = Jxnet.PcapSetFilter(handle.pcap, swap.program);
+		} catch (PcapCloseException e) {
+			result = -1;
+		}
+		handle.swapPending = false;
+		if (result != 0) {
+			swap.code = PcapCode.PCAP_ERROR;
+		} else if (handle == captureHandle) {
+			swap.programInstalled = true;
+			if (packetRing != null) {
+				// the ring socket captures with its own filter, keep it in sync with the pcap handle.
+				try {
+					packetRing.setFilter(swap.program);
+				} catch (NativeException e) {
+					LOGGER.error(e.getMessage());
+					swap.code = PcapCode.PCAP_ERROR;
+				} catch (PacketRingCloseException e) {
+					swap.code = PcapCode.PCAP_ERROR;
+				}
+			}
+		}
+		if (captureThread) {
+			swap.captureThread = true;
+			swap.transitionPackets += handle.transitionPackets;
+			handle.transitionPackets = 0;
+		}
+		if (--swap.remaining == 0) {
+			if (swap.programInstalled) {
+				releaseBpfProgram();
+				bpfProgram = swap.program;
+			} else {
+				releaseBpfProgram(swap.program);
+			}
+			swap.installTime = System.nanoTime();
+			swap.installed.countDown();
+		}
+	}
+
+	/**
+	 * Handles of this context, including the handles of a running fanout loop.
+	 * @return returns handles, this context handle first.
+	 */
+	private CaptureHandle[] captureHandles() {
+		final CaptureHandle[] members = fanoutHandles;
+		final CaptureHandle[] handles = new CaptureHandle[members.length + 1];
+		handles[0] = captureHandle;
+		System.arraycopy(members, 0, handles, 1, members.length);
+		return handles;
+	}
+
+	private boolean isCaptureThread() {
+		final Thread thread = Thread.currentThread();
+		filterLock.lock();
+		try {
+			for (CaptureHandle handle : captureHandles()) {
+				if (handle.thread == thread) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			filterLock.unlock();
+		}
+	}
+
 	@Override
 	public PcapCode pcapSendPacket(ByteBuffer buf, int size) throws PcapCloseException {
+		checkPcapHandle();
 		int result = Jxnet.PcapSendPacket(pcap, buf, size);
 		if (result == 0) {
 			return PcapCode.PCAP_OK;
@@ -332,16 +869,134 @@ public final class ApplicationContext implements Context {
 		return PcapCode.PCAP_ERROR;
 	}
 
+	@Override
+	public int pcapSendBatch(PcapSendBuffer buffer) throws PcapCloseException {
+		checkPcapHandle();
+		return buffer.send(pcap);
+	}
+
+	@Override
+	public int pcapSendBatch(ByteBuffer[] frames, int offset, int length) throws PcapCloseException {
+		checkPcapHandle();
+		Validate.notIllegalArgument(frames != null && offset >= 0 && length >= 0 && offset + length <= frames.length,
+				new IllegalArgumentException("Offset and length should be inside the array."));
+		if (sendBuffer == null) {
+			sendBuffer = PcapSendBuffer.allocate(PcapSendBuffer.DEFAULT_CAPACITY);
+		}
+		sendBuffer.clear();
+		int sent = 0;
+		int i = offset;
+		while (i < offset + length) {
+			if (sendBuffer.add(frames[i])) {
+				i++;
+				if (i < offset + length) {
+					continue;
+				}
+			} else {
+				Validate.notIllegalArgument(sendBuffer.count() > 0,
+						new IllegalArgumentException("Frame is larger than send buffer."));
+			}
+			int queued = sendBuffer.count();
+			int result = sendBuffer.send(pcap);
+			if (result > 0) {
+				sent += result;
+			}
+			if (result != queued) {
+				sendBuffer.clear();
+				break;
+			}
+		}
+		return sent;
+	}
+
 	@Override
 	public ByteBuffer pcapNext(PcapPktHdr h) throws PcapCloseException {
-		return Jxnet.PcapNext(pcap, h);
+		if (fileReader != null) {
+			try {
+				return fileReader.next(h);
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+				return null;
+			}
+		}
+		captureHandle.userBreak = false;
+		ByteBuffer packet = null;
+		boolean resume;
+		do {
+			final boolean stale = enter(captureHandle, CAPTURE_DISPATCH);
+			try {
+				packet = Jxnet.PcapNext(pcap, h);
+			} finally {
+				resume = exit(captureHandle, CAPTURE_DISPATCH, packet == null ? 0 : 1, stale);
+			}
+		} while (resume);
+		return packet;
 	}
 
 	@Override
 	public PcapCode pcapNextEx(PcapPktHdr pktHeader, ByteBuffer pktData) throws PcapCloseException {
-		int result = Jxnet.PcapNextEx(pcap, pktHeader, pktData);
-		if (result == 0) {
+		int result;
+		if (fileReader != null) {
+			try {
+				result = fileReader.nextEx(pktHeader, pktData);
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+				result = -1;
+			}
+		} else {
+			captureHandle.userBreak = false;
+			boolean resume;
+			do {
+				final boolean stale = enter(captureHandle, CAPTURE_DISPATCH);
+				result = -1;
+				try {
+					result = Jxnet.PcapNextEx(pcap, pktHeader, pktData);
+				} finally {
+					resume = exit(captureHandle, CAPTURE_DISPATCH, result, stale);
+				}
+			} while (resume);
+		}
+		return nextExCode(result);
+	}
+
+	@Override
+	public PcapCode pcapNextEx0(PcapPktHdr pktHeader, long[] pktData) throws PcapCloseException {
+		int result;
+		if (fileReader != null) {
+			try {
+				result = fileReader.nextEx0(pktHeader, pktData);
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+				result = -1;
+			}
+		} else {
+			captureHandle.userBreak = false;
+			boolean resume;
+			do {
+				final boolean stale = enter(captureHandle, CAPTURE_DISPATCH);
+				result = -1;
+				try {
+					result = Jxnet.PcapNextEx0(pcap, pktHeader, pktData);
+				} finally {
+					resume = exit(captureHandle, CAPTURE_DISPATCH, result, stale);
+				}
+			} while (resume);
+		}
+		return nextExCode(result);
+	}
+
+	/**
+	 * Map the result of pcap_next_ex(), or of the offline reader, to a pcap code.
+	 * @param result result.
+	 * @return returns PCAP_OK, PCAP_FALSE, PCAP_ERROR_BREAK or PCAP_ERROR.
+	 */
+	private static PcapCode nextExCode(int result) {
+		if (result == 1) {
 			return PcapCode.PCAP_OK;
+		} else if (result == 0) {
+			return PcapCode.PCAP_FALSE;
+		} else if (result == -2) {
+			return PcapCode.PCAP_ERROR_BREAK;
 		}
 		return PcapCode.PCAP_ERROR;
 	}
@@ -351,14 +1006,26 @@ public final class ApplicationContext implements Context {
 		if (pcap != null && !pcap.isClosed()) {
 			Jxnet.PcapClose(pcap);
 		}
+		closeFileReader();
 	}
 
 	@Override
 	public PcapCode pcapDumpFlush() throws PcapDumperCloseException {
-		if (pcapDumper == null || pcapDumper.isClosed()) {
+		if (rotatingDumper == null && (pcapDumper == null || pcapDumper.isClosed())) {
 			throw new PcapDumperCloseException();
 		}
+		if (asyncDumper != null) {
+			asyncDumper.flush();
+			return PcapCode.PCAP_OK;
+		}
 		int result = Jxnet.PcapDumpFlush(pcapDumper);
+		if (indexWriter != null) {
+			try {
+				indexWriter.flush();
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+			}
+		}
 		if (result == 0) {
 			return PcapCode.PCAP_OK;
 		}
@@ -367,18 +1034,28 @@ public final class ApplicationContext implements Context {
 
 	@Override
 	public void pcapDumpClose(PcapDumper pcapDumper) throws PcapDumperCloseException {
+		if (pcapDumper == this.pcapDumper) {
+			closeAsyncDumper();
+		}
 		if (pcapDumper != null && !pcapDumper.isClosed()) {
 			Jxnet.PcapDumpClose(pcapDumper);
 		}
+		if (pcapDumper == this.pcapDumper) {
+			closeIndexWriter();
+		}
 	}
 
 	@Override
 	public DataLinkType pcapDataLink() throws PcapCloseException {
+		if (fileReader != null) {
+			return fileReader.getDataLinkType();
+		}
 		return DataLinkType.valueOf((short) Jxnet.PcapDataLink(pcap));
 	}
 
 	@Override
 	public PcapCode pcapSetDataLink(DataLinkType dataLinkType) throws PcapCloseException {
+		checkPcapHandle();
 		Validate.notIllegalArgument(dataLinkType != null);
 		int result = Jxnet.PcapSetDataLink(pcap, dataLinkType.getValue());
 		if (result == 0) {
@@ -389,36 +1066,66 @@ public final class ApplicationContext implements Context {
 
 	@Override
 	public void pcapBreakLoop() throws PcapCloseException {
+		if (fileReader != null) {
+			fileReader.breakLoop();
+			return;
+		}
+		captureHandle.userBreak = true;
 		Jxnet.PcapBreakLoop(pcap);
+		if (packetRing != null) {
+			packetRing.breakLoop();
+		}
+		for (CaptureHandle handle : fanoutHandles) {
+			handle.userBreak = true;
+			if (!handle.pcap.isClosed()) {
+				Jxnet.PcapBreakLoop(handle.pcap);
+			}
+		}
 	}
 
 	@Override
 	public String pcapGetErr() throws PcapCloseException {
+		if (fileReader != null) {
+			return fileReader.getErr();
+		}
 		return Jxnet.PcapGetErr(pcap);
 	}
 
 	@Override
 	public PcapCode pcapIsSwapped() throws PcapCloseException {
+		if (fileReader != null) {
+			return fileReader.isSwapped() ? PcapCode.PCAP_TRUE : PcapCode.PCAP_FALSE;
+		}
 		return Jxnet.PcapIsSwapped(pcap) == 1 ? PcapCode.PCAP_TRUE : PcapCode.PCAP_FALSE;
 	}
 
 	@Override
 	public int pcapSnapshot() throws PcapCloseException {
+		if (fileReader != null) {
+			return fileReader.getSnaplen();
+		}
 		return Jxnet.PcapSnapshot(pcap);
 	}
 
 	@Override
 	public int pcapMajorVersion() throws PcapCloseException {
+		if (fileReader != null) {
+			return fileReader.getMajorVersion();
+		}
 		return Jxnet.PcapMajorVersion(pcap);
 	}
 
 	@Override
 	public int pcapMinorVersion() throws PcapCloseException {
+		if (fileReader != null) {
+			return fileReader.getMinorVersion();
+		}
 		return Jxnet.PcapMinorVersion(pcap);
 	}
 
 	@Override
 	public PcapCode pcapSetNonBlock(boolean nonblock, StringBuilder errbuf) throws PcapCloseException {
+		checkPcapHandle();
 		int result = Jxnet.PcapSetNonBlock(pcap, nonblock ? 1 : 0, errbuf);
 		if (result == 0) {
 			return PcapCode.PCAP_OK;
@@ -428,6 +1135,7 @@ public final class ApplicationContext implements Context {
 
 	@Override
 	public PcapCode pcapGetNonBlock(StringBuilder errbuf) throws PcapCloseException {
+		checkPcapHandle();
 		return Jxnet.PcapGetNonBlock(pcap, errbuf) == 1 ? PcapCode.PCAP_TRUE : PcapCode.PCAP_FALSE;
 	}
 
@@ -441,13 +1149,28 @@ public final class ApplicationContext implements Context {
 
 	@Override
 	public void pcapFreeCode() throws BpfProgramCloseException {
-		if (bpfProgram != null && !bpfProgram.isClosed()) {
-			Jxnet.PcapFreeCode(bpfProgram);
+		releaseBpfProgram();
+	}
+
+	/**
+	 * Give the current program back to the cache, programs which are not owned by the cache are freed.
+	 */
+	private void releaseBpfProgram() {
+		if (bpfProgram != null) {
+			releaseBpfProgram(bpfProgram);
+			bpfProgram = null;
+		}
+	}
+
+	private static void releaseBpfProgram(BpfProgram program) {
+		if (!BpfProgramCache.getDefault().release(program) && !program.isClosed()) {
+			Jxnet.PcapFreeCode(program);
 		}
 	}
 
 	@Override
 	public PcapCode pcapStats(PcapStat pcapStat) throws PcapCloseException {
+		checkPcapHandle();
 		int result = Jxnet.PcapStats(pcap, pcapStat);
 		if (result == 0) {
 			return PcapCode.PCAP_OK;
@@ -459,24 +1182,28 @@ public final class ApplicationContext implements Context {
 	public PcapCode pcapCompileNoPcap(int snaplen, DataLinkType dataLinkType, String filter,
 									  BpfProgram.BpfCompileMode optimize, Inet4Address mask)
 			throws BpfProgramCloseException {
-		if (bpfProgram == null) {
-			bpfProgram = new BpfProgram();
-		}
 		Validate.notIllegalArgument(optimize != null, new IllegalArgumentException("Bpf compile mode should be not null."));
-		int result = Jxnet.PcapCompileNoPcap(snaplen, dataLinkType.getValue(), bpfProgram, filter, optimize.getValue(), mask.toInt());
-		if (result == 0) {
-			return PcapCode.PCAP_OK;
+		Validate.notIllegalArgument(mask != null, new IllegalArgumentException("Netmask should be not null."));
+		final BpfProgram program;
+		try {
+			program = BpfProgramCache.getDefault().acquire(snaplen, dataLinkType, filter, optimize, mask.toInt());
+		} catch (NativeException e) {
+			return PcapCode.PCAP_ERROR;
 		}
-		return PcapCode.PCAP_ERROR;
+		releaseBpfProgram();
+		bpfProgram = program;
+		return PcapCode.PCAP_OK;
 	}
 
 	@Override
 	public void pcapPError(String prefix) throws PcapCloseException {
+		checkPcapHandle();
 		Jxnet.PcapPError(pcap, prefix);
 	}
 
 	@Override
 	public PcapCode pcapCanSetRfMon() throws PcapCloseException {
+		checkPcapHandle();
 		int result = Jxnet.PcapCanSetRfMon(pcap);
 		switch (result) {
 			case 0: return PcapCode.PCAP_FALSE;
@@ -490,6 +1217,7 @@ public final class ApplicationContext implements Context {
 
 	@Override
 	public PcapCode pcapSetDirection(PcapDirection direction) throws PcapCloseException, PlatformNotSupportedException {
+		checkPcapHandle();
 		Validate.notIllegalArgument(direction != null);
 		int result = Jxnet.PcapSetDirection(pcap, direction);
 		if (result == 0) {
@@ -500,6 +1228,9 @@ public final class ApplicationContext implements Context {
 
 	@Override
 	public PcapTimestampPrecision pcapGetTStampPrecision() throws PcapCloseException, PlatformNotSupportedException {
+		if (fileReader != null) {
+			return fileReader.getTimestampPrecision();
+		}
 		if (Jxnet.PcapGetTStampPrecision(pcap) == 0) {
 			return PcapTimestampPrecision.MICRO;
 		}
@@ -508,6 +1239,7 @@ public final class ApplicationContext implements Context {
 
 	@Override
 	public PcapCode pcapListDataLinks(List<DataLinkType> dtlBuffer) throws PcapCloseException, PlatformNotSupportedException {
+		checkPcapHandle();
 		List<Integer> buffers = new ArrayList<Integer>();
 		int result = Jxnet.PcapListDataLinks(pcap, buffers);
 		if (result == 0) {
@@ -523,6 +1255,7 @@ public final class ApplicationContext implements Context {
 
 	@Override
 	public PcapCode pcapListTStampTypes(List<PcapTimestampType> tstampTypesp) throws PcapCloseException, PlatformNotSupportedException {
+		checkPcapHandle();
 		List<Integer> buffers = new ArrayList<Integer>();
 		int result = Jxnet.PcapListTStampTypes(pcap, buffers);
 		if (result == 0) {
@@ -566,28 +1299,453 @@ public final class ApplicationContext implements Context {
 
 	@Override
 	public PcapCode pcapInject(ByteBuffer buf, int size) throws PcapCloseException, PlatformNotSupportedException {
+		checkPcapHandle();
 		int result = Jxnet.PcapInject(pcap, buf, size);
-		if (result == 0) {
+		if (result >= 0) {
 			return PcapCode.PCAP_OK;
 		}
 		return PcapCode.PCAP_ERROR;
 	}
 
+	/**
+	 * Fail fast for operations which need a pcap handle when the context wraps an offline file reader.
+	 * @throws IllegalStateException the context wraps an offline file reader.
+	 */
+	private void checkPcapHandle() {
+		if (fileReader != null) {
+			throw FILE_READER_EXCEPTION;
+		}
+	}
+
+	private <T> int loop(int cnt, PcapHandler<T> callback, final T user) throws PcapCloseException {
+		if (fileReader != null) {
+			try {
+				return fileReader.loop(cnt, callback, user);
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+				return -1;
+			}
+		}
+		return loop(captureHandle, cnt, callback, user);
+	}
+
+	private <T> int loop(final CaptureHandle handle, int cnt, PcapHandler<T> callback, final T user)
+			throws PcapCloseException {
+		final CountingPcapHandler<T> handler = new CountingPcapHandler<T>(callback, handle);
+		return capture(handle, CAPTURE_LOOP, cnt, new Capture() {
+			@Override
+			public int run(int cnt) {
+				return Jxnet.PcapLoop(handle.pcap, cnt, handler, user);
+			}
+		});
+	}
+
+	private <T> int loopReusable(int cnt, PcapHandler<T> callback, final T user) throws PcapCloseException {
+		if (fileReader != null) {
+			return loop(cnt, callback, user); // Slices of the mapped file are never copied.
+		}
+		final CountingPcapHandler<T> handler = new CountingPcapHandler<T>(callback, captureHandle);
+		return capture(captureHandle, CAPTURE_LOOP, cnt, new Capture() {
+			@Override
+			public int run(int cnt) {
+				return Jxnet.PcapLoopReusable(pcap, cnt, handler, user);
+			}
+		});
+	}
+
+	private <T> int loop0(int cnt, RawPcapHandler<T> callback, final T user) throws PcapCloseException {
+		if (fileReader != null) {
+			try {
+				return fileReader.loop(cnt, callback, user);
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+				return -1;
+			}
+		}
+		if (packetRing != null) {
+			return packetRing.loop(cnt, callback, user);
+		}
+		return loop0(captureHandle, cnt, callback, user);
+	}
+
+	private <T> int loop0(final CaptureHandle handle, int cnt, RawPcapHandler<T> callback, final T user)
+			throws PcapCloseException {
+		final CountingRawPcapHandler<T> handler = new CountingRawPcapHandler<T>(callback, handle);
+		return capture(handle, CAPTURE_LOOP, cnt, new Capture() {
+			@Override
+			public int run(int cnt) {
+				return Jxnet.PcapLoop0(handle.pcap, cnt, handler, user);
+			}
+		});
+	}
+
+	private <T> int dispatch(int cnt, final PcapHandler<T> callback, final T user) throws PcapCloseException {
+		if (fileReader != null) {
+			try {
+				return fileReader.dispatch(cnt, callback, user);
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+				return -1;
+			}
+		}
+		return capture(captureHandle, CAPTURE_DISPATCH, cnt, new Capture() {
+			@Override
+			public int run(int cnt) {
+				return Jxnet.PcapDispatch(pcap, cnt, callback, user);
+			}
+		});
+	}
+
+	private <T> int dispatchReusable(int cnt, final PcapHandler<T> callback, final T user) throws PcapCloseException {
+		if (fileReader != null) {
+			return dispatch(cnt, callback, user);
+		}
+		return capture(captureHandle, CAPTURE_DISPATCH, cnt, new Capture() {
+			@Override
+			public int run(int cnt) {
+				return Jxnet.PcapDispatchReusable(pcap, cnt, callback, user);
+			}
+		});
+	}
+
+	private <T> int dispatch0(int cnt, final RawPcapHandler<T> callback, final T user) throws PcapCloseException {
+		if (fileReader != null) {
+			try {
+				return fileReader.dispatch(cnt, callback, user);
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+				return -1;
+			}
+		}
+		return capture(captureHandle, CAPTURE_DISPATCH, cnt, new Capture() {
+			@Override
+			public int run(int cnt) {
+				return Jxnet.PcapDispatch0(pcap, cnt, callback, user);
+			}
+		});
+	}
+
+	/**
+	 * Run a native loop or dispatch on a handle. A loop broken to install a swapped program
+	 * is resumed with the remaining count, packets arrived meanwhile stay in the capture buffer.
+	 * A break requested by a swap after the loop returned is left in the handle,
+	 * it is consumed by the next call, which is resumed as well.
+	 * @param handle handle.
+	 * @param state loop or dispatch.
+	 * @param cnt count.
+	 * @param capture native call.
+	 * @return returns the result of the native call.
+	 */
+	private int capture(CaptureHandle handle, int state, int cnt, Capture capture) {
+		handle.userBreak = false;
+		final long first = handle.packets;
+		int remaining = cnt;
+		int result;
+		boolean resume;
+		do {
+			final boolean stale = enter(handle, state);
+			result = -1;
+			try {
+				result = capture.run(remaining);
+			} finally {
+				resume = exit(handle, state, result, stale);
+			}
+			if (resume && state == CAPTURE_LOOP && cnt > 0) {
+				remaining = cnt - (int) (handle.packets - first);
+				if (remaining <= 0) {
+					return 0;
+				}
+			}
+		} while (resume);
+		return result;
+	}
+
+	/**
+	 * Mark a handle as captured by the calling thread, before a native call.
+	 * @param handle handle.
+	 * @param state loop or dispatch.
+	 * @return returns true if a break requested by a previous swap is still pending in the handle.
+	 */
+	private boolean enter(CaptureHandle handle, int state) {
+		filterLock.lock();
+		try {
+			final boolean stale = handle.staleBreak;
+			handle.state = state;
+			handle.thread = Thread.currentThread();
+			handle.staleBreak = false;
+			return stale;
+		} finally {
+			filterLock.unlock();
+		}
+	}
+
+	/**
+	 * Mark a handle as idle after a native call, and install the pending swap.
+	 * @param handle handle.
+	 * @param state loop or dispatch.
+	 * @param result result of the native call, number of packets for a dispatch.
+	 * @param stale the value returned by {@link ApplicationContext#enter(CaptureHandle, int)}.
+	 * @return returns true if the native call was broken by a swap and should be resumed.
+	 */
+	private boolean exit(CaptureHandle handle, int state, int result, boolean stale) {
+		filterLock.lock();
+		try {
+			handle.state = CAPTURE_IDLE;
+			handle.thread = null;
+			if (state == CAPTURE_DISPATCH && result > 0) {
+				handle.packets += result;
+				if (handle.swapPending) {
+					handle.transitionPackets += result;
+				}
+			}
+			final boolean breakPending = stale || handle.swapBreak;
+			handle.swapBreak = false;
+			handle.staleBreak = breakPending && result != PCAP_ERROR_BREAK;
+			if (handle.pendingSwap != null) {
+				final FilterSwap swap = handle.pendingSwap;
+				handle.pendingSwap = null;
+				installFilter(handle, swap, true);
+			} else {
+				handle.transitionPackets = 0;
+			}
+			return breakPending && result == PCAP_ERROR_BREAK && !handle.userBreak;
+		} finally {
+			filterLock.unlock();
+		}
+	}
+
+	private void closeIndexWriter() {
+		if (indexWriter != null) {
+			try {
+				indexWriter.close();
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+			}
+			indexWriter = null;
+		}
+	}
+
+	private void closeAsyncDumper() {
+		if (asyncDumper != null) {
+			try {
+				asyncDumper.close();
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+			}
+			LOGGER.debug("Asynchronous dumper closed: {}.", asyncDumper);
+			asyncDumper = null;
+		}
+		if (rotatingDumper != null) {
+			try {
+				rotatingDumper.close();
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+			}
+			LOGGER.debug("Rotating dumper closed: {}.", rotatingDumper);
+			rotatingDumper = null;
+		}
+	}
+
+	private void closeFileReader() {
+		if (fileReader != null && !fileReader.isClosed()) {
+			try {
+				fileReader.close();
+			} catch (IOException e) {
+				LOGGER.error(e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Copy each packet into a pooled slab on the capture thread, then hand it over to the executor.
+	 * A pooled slab is always the same {@link PacketBuffer} instance, so one task per slab is reused.
+	 */
+	private static final class PacketBufferHandOff<T> implements PcapHandler<T> {
+
+		private final PacketBufferHandler<T> callback;
+		private final T user;
+		private final Executor executor;
+		private final PacketBufferPool pool;
+		private final Runnable[] tasks;
+
+		PacketBufferHandOff(PacketBufferHandler<T> callback, T user, Executor executor, PacketBufferPool pool) {
+			this.callback = callback;
+			this.user = user;
+			this.executor = executor;
+			this.pool = pool;
+			this.tasks = new Runnable[pool.getPoolSize()];
+		}
+
+		@Override
+		public void nextPacket(T user, PcapPktHdr h, ByteBuffer bytes) {
+			PacketBuffer packet = pool.copyOf(h, bytes);
+			if (packet == null) {
+				return; // dropped, pool exhausted
+			}
+			int index = packet.getIndex();
+			if (index < 0) {
+				executor.execute(newTask(packet));
+				return;
+			}
+			Runnable task = tasks[index];
+			if (task == null) {
+				task = newTask(packet);
+				tasks[index] = task;
+			}
+			executor.execute(task);
+		}
+
+		private Runnable newTask(final PacketBuffer packet) {
+			return new Runnable() {
+				@Override
+				public void run() {
+					callback.nextPacket(user, packet);
+				}
+			};
+		}
+
+	}
+
 	@Override
 	public void close() throws IOException {
 		LOGGER.debug("Shuting down jxnet application context.");
 		if (LOCK.readLock().tryLock() && LOCK.writeLock().tryLock()) {
 			if (pcap != null && !pcap.isClosed()) {
 				pcapBreakLoop(); // Force the loop in "pcap_read()" or "pcap_read_offline()" to terminate.
-				Jxnet.PcapClose(pcap);
+				filterLock.lock(); // Don't close while a swapped program is installed.
+				try {
+					Jxnet.PcapClose(pcap);
+				} finally {
+					filterLock.unlock();
+				}
 			}
-			if (bpfProgram != null && !bpfProgram.isClosed()) {
-				Jxnet.PcapFreeCode(bpfProgram);
+			if (packetRing != null && !packetRing.isClosed()) {
+				packetRing.breakLoop();
+				packetRing.close();
 			}
+			if (fileReader != null && !fileReader.isClosed()) {
+				fileReader.breakLoop();
+				fileReader.close();
+			}
+			releaseBpfProgram();
+			closeAsyncDumper();
 			if (pcapDumper != null && !pcapDumper.isClosed()) {
 				Jxnet.PcapDumpClose(pcapDumper);
 			}
+			closeIndexWriter();
+		}
+	}
+
+	private interface Capture {
+
+		int run(int cnt);
+
+	}
+
+	/**
+	 * Loop of one handle of a fanout group.
+	 */
+	private interface FanoutLoop {
+
+		int run(CaptureHandle handle, int cnt);
+
+	}
+
+	/**
+	 * Capture state of a handle, guarded by the filter lock unless noted.
+	 */
+	private static final class CaptureHandle {
+
+		private final Pcap pcap;
+
+		private int state = CAPTURE_IDLE;
+		private Thread thread;
+		private FilterSwap pendingSwap;
+		private boolean swapBreak;
+		private boolean staleBreak;
+		private volatile boolean userBreak;
+
+		/**
+		 * Set while a swap is pending, so the callbacks count transition packets only then.
+		 */
+		private volatile boolean swapPending;
+
+		/**
+		 * Written by the capture thread only.
+		 */
+		private long packets;
+		private long transitionPackets;
+
+		private CaptureHandle(Pcap pcap) {
+			this.pcap = pcap;
+		}
+
+	}
+
+	/**
+	 * Pending filter swap, guarded by the filter lock.
+	 */
+	private static final class FilterSwap {
+
+		private final BpfProgram program;
+		private final long requestTime;
+		private final CountDownLatch installed = new CountDownLatch(1);
+
+		private int remaining;
+		private PcapCode code = PcapCode.PCAP_OK;
+		private boolean programInstalled;
+		private boolean captureThread;
+		private long installTime;
+		private long transitionPackets;
+
+		private FilterSwap(BpfProgram program, long requestTime, int handles) {
+			this.program = program;
+			this.requestTime = requestTime;
+			this.remaining = handles;
+		}
+
+	}
+
+	private static final class CountingPcapHandler<T> implements PcapHandler<T> {
+
+		private final PcapHandler<T> callback;
+		private final CaptureHandle handle;
+
+		private CountingPcapHandler(PcapHandler<T> callback, CaptureHandle handle) {
+			this.callback = callback;
+			this.handle = handle;
+		}
+
+		@Override
+		public void nextPacket(T user, PcapPktHdr h, ByteBuffer bytes) {
+			handle.packets++;
+			if (handle.swapPending) {
+				handle.transitionPackets++;
+			}
+			callback.nextPacket(user, h, bytes);
+		}
+
+	}
+
+	private static final class CountingRawPcapHandler<T> implements RawPcapHandler<T> {
+
+		private final RawPcapHandler<T> callback;
+		private final CaptureHandle handle;
+
+		private CountingRawPcapHandler(RawPcapHandler<T> callback, CaptureHandle handle) {
+			this.callback = callback;
+			this.handle = handle;
+		}
+
+		@Override
+		public void nextPacket(T user, int capLen, int len, int tvSec, long tvUsec, long memoryAddress) {
+			handle.packets++;
+			if (handle.swapPending) {
+				handle.transitionPackets++;
+			}
+			callback.nextPacket(user, capLen, len, tvSec, tvUsec, memoryAddress);
 		}
+
 	}
 
 }
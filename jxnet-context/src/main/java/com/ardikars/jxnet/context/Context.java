@@ -22,17 +22,27 @@ import com.ardikars.common.util.Builder;
 import com.ardikars.common.util.Factory;
 import com.ardikars.jxnet.BpfProgram;
 import com.ardikars.jxnet.DataLinkType;
+import com.ardikars.jxnet.PacketRing;
+import com.ardikars.jxnet.PcapAsyncDumper;
 import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.PacketBlockHandler;
+import com.ardikars.jxnet.PacketBufferHandler;
+import com.ardikars.jxnet.PacketBufferPool;
+import com.ardikars.jxnet.PcapBatchHandler;
 import com.ardikars.jxnet.PcapCode;
 import com.ardikars.jxnet.PcapDirection;
 import com.ardikars.jxnet.PcapDumper;
+import com.ardikars.jxnet.PcapFileIndex;
 import com.ardikars.jxnet.PcapHandler;
 import com.ardikars.jxnet.PcapPktHdr;
+import com.ardikars.jxnet.PcapRotatingDumper;
+import com.ardikars.jxnet.PcapSendBuffer;
 import com.ardikars.jxnet.PcapStat;
 import com.ardikars.jxnet.PcapTimestampPrecision;
 import com.ardikars.jxnet.PcapTimestampType;
 import com.ardikars.jxnet.RawPcapHandler;
 import com.ardikars.jxnet.exception.BpfProgramCloseException;
+import com.ardikars.jxnet.exception.PacketRingCloseException;
 import com.ardikars.jxnet.exception.PcapCloseException;
 import com.ardikars.jxnet.exception.PcapDumperCloseException;
 import com.ardikars.jxnet.exception.PlatformNotSupportedException;
@@ -95,6 +105,61 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 	 */
 	<T> PcapCode pcapLoop(int cnt, PcapHandler<T> callback, T user, Executor executor) throws PcapCloseException;
 
+	/**
+	 * Collect a group of packets, each packet is copied into a slab taken from the pool
+	 * and processed by the executor, so the callback never see memory owned by libpcap.
+	 * The callback owns one reference of the packet and must release it.
+	 * @param cnt maximum iteration, -1 is infinite iteration.
+	 * @param callback callback funtion.
+	 * @param user args
+	 * @param executor executor.
+	 * @param pool packet buffer pool.
+	 * @param <T> args type.
+	 * @return returns PCAP_OK if cnt is exhausted or if, when reading from a
+	 * savefile, no more packets are available, PCAP_ERROR otherwise.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	<T> PcapCode pcapLoop(int cnt, PacketBufferHandler<T> callback, T user, Executor executor, PacketBufferPool pool)
+			throws PcapCloseException;
+
+	/**
+	 * Collect packets with several live handles on the same interface, sharing one Linux PACKET_FANOUT group.
+	 * The pcap builder of this context must configure the group with {@link Pcap.Builder#fanout},
+	 * additional handles are built from the same builder and get the program of this context, if any,
+	 * as well as the programs given to {@link Context#pcapSwapFilter} while the loops are running.
+	 * Each handle runs its own loop thread (this context handle runs on the calling thread),
+	 * so the callback must be thread safe.
+	 * {@link Context#pcapBreakLoop()} terminates all loops, and so does a loop which fails.
+	 * Loop threads are daemon threads.
+	 * @param handles number of handles, including this context handle.
+	 * @param cnt maximum iteration of each loop, -1 is infinite iteration.
+	 * @param callback callback function, shared by all loop threads.
+	 * @param user args
+	 * @param <T> args type.
+	 * @return returns PCAP_OK if all loops returned 0, PCAP_ERROR otherwise.
+	 * @throws PcapCloseException pcap close exception.
+	 * @throws IllegalStateException more than one handle and the pcap builder has no fanout mode.
+	 * @since 1.5.4
+	 */
+	<T> PcapCode pcapLoopFanout(int handles, int cnt, PcapHandler<T> callback, T user) throws PcapCloseException;
+
+	/**
+	 * Collect packets with several live handles sharing one Linux PACKET_FANOUT group,
+	 * see {@link Context#pcapLoopFanout(int, int, PcapHandler, Object)}.
+	 * Each callback gets the memory address of the packet, valid only while the callback runs.
+	 * @param handles number of handles, including this context handle.
+	 * @param cnt maximum iteration of each loop, -1 is infinite iteration.
+	 * @param callback callback function, shared by all loop threads.
+	 * @param user args
+	 * @param <T> args type.
+	 * @return returns PCAP_OK if all loops returned 0, PCAP_ERROR otherwise.
+	 * @throws PcapCloseException pcap close exception.
+	 * @throws IllegalStateException more than one handle and the pcap builder has no fanout mode.
+	 * @since 1.5.4
+	 */
+	<T> PcapCode pcapLoopFanout(int handles, int cnt, RawPcapHandler<T> callback, T user) throws PcapCloseException;
+
 	/**
 	 * Collect a group of packets.
 	 * @param cnt maximum iteration, -1 is infinite iteration.
@@ -124,11 +189,26 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 	 * occurs or -2 if the loop terminated due to a call to PcapBreakLoop()
 	 * before any packets were processed.  It does not return when live packet
 	 * buffer timeouts occur; instead, it attempts to read more packets.
+	 * If this context has a {@link PacketRing}, packets are read from the memory mapped ring instead.
 	 * @throws PcapCloseException pcap close exception.
 	 * @since 1.1.4
 	 */
 	<T> PcapCode pcapLoop(int cnt, RawPcapHandler<T> callback, T user) throws PcapCloseException;
 
+	/**
+	 * Process retired blocks of the memory mapped ring of this context.
+	 * @param cnt maximum number of blocks, -1 is infinite iteration.
+	 * @param callback block handler.
+	 * @param user args
+	 * @param <T> args type.
+	 * @return returns PCAP_OK if cnt is exhausted, PCAP_ERROR otherwise.
+	 * @throws IllegalStateException this context has no {@link PacketRing}.
+	 * @throws PacketRingCloseException packet ring close exception.
+	 * @since 1.5.4
+	 */
+	<T> PcapCode pcapLoop(int cnt, PacketBlockHandler<T> callback, T user)
+			throws IllegalStateException, PacketRingCloseException;
+
 	/**
 	 * Collect a group of packets.
 	 * @param cnt maximum iteration, -1 is infinite iteration.
@@ -210,6 +290,24 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 	 */
 	<T> PcapCode pcapDispatch(int cnt, PcapHandler<T> callback, T user, Executor executor) throws PcapCloseException;
 
+	/**
+	 * Collect a group of packets, each packet is copied into a slab taken from the pool
+	 * and processed by the executor, so the callback never see memory owned by libpcap.
+	 * The callback owns one reference of the packet and must release it.
+	 * @param cnt maximum iteration, -1 to infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param executor executor.
+	 * @param pool packet buffer pool.
+	 * @param <T> args type.
+	 * @return returns PCAP_OK on success (including when no packets were read), or PCAP_ERROR if an error
+	 * occurs or the loop terminated due to a call to PcapBreakLoop() before any packets were processed.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	<T> PcapCode pcapDispatch(int cnt, PacketBufferHandler<T> callback, T user, Executor executor, PacketBufferPool pool)
+			throws PcapCloseException;
+
 	/**
 	 * Collect a group of packets.
 	 * @param cnt maximum iteration, -1 to infinite.
@@ -257,6 +355,55 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 	 */
 	<T> PcapCode pcapDispatch(int cnt, RawPcapHandler<T> callback, T user, Executor executor) throws PcapCloseException;
 
+	/**
+	 * Collect a group of packets and deliver them to the callback in batches.
+	 * Packets are copied into the packets slab and described by fixed size records in headers region,
+	 * see {@link PcapBatchHandler} for the layout. Both buffers should be direct and
+	 * are reused for every batch.
+	 * @param cnt maximum iteration, -1 to infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param headers direct buffer for packet headers.
+	 * @param packets direct buffer for packet data.
+	 * @param <T> args type.
+	 * @return returns PCAP_OK on success (including when no packets were read), or PCAP_ERROR if an error
+	 * occurs or the loop terminated due to a call to PcapBreakLoop() before any packets were processed.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	<T> PcapCode pcapDispatchBatch(int cnt, PcapBatchHandler<T> callback, T user, ByteBuffer headers, ByteBuffer packets)
+			throws PcapCloseException;
+
+	/**
+	 * Collect a group of packets, reusing single header and buffer instance for every packet.
+	 * Header and buffer passed to the callback are only valid until the callback returns,
+	 * copy them if they need to be retained or processed by other thread.
+	 * @param cnt maximum iteration, -1 is infinite iteration.
+	 * @param callback callback function.
+	 * @param user args
+	 * @param <T> args type.
+	 * @return returns PCAP_OK if cnt is exhausted or if, when reading from a
+	 * savefile, no more packets are available, PCAP_ERROR otherwise.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	<T> PcapCode pcapLoopReusable(int cnt, PcapHandler<T> callback, T user) throws PcapCloseException;
+
+	/**
+	 * Collect a group of packets, reusing single header and buffer instance for every packet.
+	 * Header and buffer passed to the callback are only valid until the callback returns,
+	 * copy them if they need to be retained or processed by other thread.
+	 * @param cnt maximum iteration, -1 to infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> args type.
+	 * @return returns PCAP_OK on success (including when no packets were read), or PCAP_ERROR if an error
+	 * occurs or the loop terminated due to a call to PcapBreakLoop() before any packets were processed.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	<T> PcapCode pcapDispatchReusable(int cnt, PcapHandler<T> callback, T user) throws PcapCloseException;
+
 	/**
 	 * Open a file to write packets.
 	 * @param fname fname specifies the name of the file to open. The file will have the same format
@@ -267,6 +414,53 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 	 */
 	PcapCode pcapDumpOpen(String fname) throws PcapCloseException;
 
+	/**
+	 * Open a file to write packets, and write a sidecar time index ({@link PcapFileIndex}) alongside it.
+	 * @param fname file name, the index is written to fname + {@link PcapFileIndex#FILE_EXTENSION}.
+	 * @param indexInterval index bucket interval in microseconds.
+	 * @return pcap code.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	PcapCode pcapDumpOpen(String fname, long indexInterval) throws PcapCloseException;
+
+	/**
+	 * Open a file to write packets asynchronously, {@link Context#pcapDump(PcapPktHdr, ByteBuffer)} copies packets
+	 * into an off heap ring written by a dedicated thread ({@link PcapAsyncDumper}), so it never blocks on file I/O.
+	 * @param fname file name.
+	 * @param capacity ring capacity in bytes, packets are dropped when the ring is full.
+	 * @return pcap code.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	PcapCode pcapDumpOpenAsync(String fname, int capacity) throws PcapCloseException;
+
+	/**
+	 * Asynchronous dumper opened by {@link Context#pcapDumpOpenAsync(String, int)}, used to read its statistics.
+	 * @return returns asynchronous dumper, or null.
+	 * @since 1.5.4
+	 */
+	PcapAsyncDumper getAsyncDumper();
+
+	/**
+	 * Open a rotating set of files to write packets asynchronously, the writer thread of a {@link PcapAsyncDumper}
+	 * writes to a {@link PcapRotatingDumper}, so rolling to the next file never blocks {@link Context#pcapDump(PcapPktHdr, ByteBuffer)}.
+	 * Files are written with the datalink type, snapshot length and timestamp precision of this context.
+	 * @param builder rotating dumper configuration (file name, rotation and retention limits).
+	 * @param capacity ring capacity in bytes, packets are dropped when the ring is full.
+	 * @return pcap code.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	PcapCode pcapDumpOpenRotating(PcapRotatingDumper.Builder builder, int capacity) throws PcapCloseException;
+
+	/**
+	 * Rotating dumper opened by {@link Context#pcapDumpOpenRotating(PcapRotatingDumper.Builder, int)}, used to read its statistics.
+	 * @return returns rotating dumper, or null.
+	 * @since 1.5.4
+	 */
+	PcapRotatingDumper getRotatingDumper();
+
 	/**
 	 * Save a packet to disk.
 	 * @param h pcap packet header.
@@ -280,6 +474,8 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 	 * Compile a packet filter, converting an high level filtering expression
 	 * (see Filtering expression syntax) in a program that can be interpreted
 	 * by the kernel-level filtering engine.
+	 * Compiled programs are shared through {@link com.ardikars.jxnet.BpfProgramCache#getDefault()},
+	 * the previous program is released once the new one is compiled.
 	 * @param str filter expression.
 	 * @param optimize optimize (0/1).
 	 * @param netmask netmask.
@@ -292,6 +488,8 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 
 	/**
 	 * Associate a filter to a capture.
+	 * If this context has a {@link PacketRing}, the program is attached to the ring socket as well.
+	 * It must not be called while a loop is running on another thread, see {@link Context#pcapSwapFilter}.
 	 * @return -1 on error, 0 otherwise.
 	 * @throws PcapCloseException pcap close exception.
 	 * @throws BpfProgramCloseException bpf program close exception.
@@ -299,6 +497,29 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 	 */
 	PcapCode pcapSetFilter() throws PcapCloseException, BpfProgramCloseException;
 
+	/**
+	 * Replace the filter of this capture, while a loop may be running on another thread.
+	 * The new program is compiled (through {@link com.ardikars.jxnet.BpfProgramCache#getDefault()}) on the calling thread.
+	 * If a loop is running, it is broken, the program is installed by the capture thread and the loop
+	 * is resumed with the remaining count, so the loop doesn't return and packets arrived meanwhile
+	 * stay in the capture buffer. Otherwise the program is installed by the calling thread.
+	 * The previous program is released only after the new one is installed.
+	 * A running dispatch or read of the next packet is not broken, the program is installed once it returns.
+	 * The program is installed on every handle of a running {@link Context#pcapLoopFanout}.
+	 * @param str filter expression.
+	 * @param optimize optimize (0/1).
+	 * @param netmask netmask.
+	 * @return returns swap statistics, the code is PCAP_ERROR if the expression can't be compiled or installed.
+	 * @throws PcapCloseException pcap close exception.
+	 * @throws InterruptedException if interrupted while waiting for the capture thread, the swap is canceled
+	 * unless already installed by a handle, then it is completed first.
+	 * @throws IllegalStateException called by a capture callback of this context, the loop can't be broken
+	 * until the callback returns.
+	 * @since 1.5.4
+	 */
+	PcapSwapFilterStat pcapSwapFilter(String str, BpfProgram.BpfCompileMode optimize, int netmask)
+			throws PcapCloseException, InterruptedException;
+
 	/**
 	 * Send a raw packet.
 	 * @param buf packet buffer.
@@ -309,6 +530,28 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 	 */
 	PcapCode pcapSendPacket(ByteBuffer buf, int size) throws PcapCloseException;
 
+	/**
+	 * Send all frames of a send buffer with a single native call ({@link com.ardikars.jxnet.Jxnet#PcapSendBatch(Pcap, ByteBuffer, int)}),
+	 * sent frames are removed from the buffer.
+	 * @param buffer length prefixed frames.
+	 * @return returns number of frames sent, or -1 if no frame was sent.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	int pcapSendBatch(PcapSendBuffer buffer) throws PcapCloseException;
+
+	/**
+	 * Send frames in batches, frames are copied into a reusable {@link PcapSendBuffer}
+	 * and each full buffer is sent with a single native call. Sending stops at the first frame that can't be sent.
+	 * @param frames frames, remaining bytes of each buffer are sent.
+	 * @param offset index of the first frame.
+	 * @param length number of frames.
+	 * @return returns number of frames sent.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	int pcapSendBatch(ByteBuffer[] frames, int offset, int length) throws PcapCloseException;
+
 	/**
 	 * Return the next available packet.
 	 * @param h packet header.
@@ -322,9 +565,9 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 	 * Read a packet from an interface or from an offline capture.
 	 * @param pktHeader packet header.
 	 * @param pktData packet buffer.
-	 * @return PcapNextEx() returns 1 if the packet was read without problems, 0 if
+	 * @return returns PCAP_OK if the packet was read without problems, PCAP_FALSE if
 	 * packets are being read from a live capture and the packet buffer time-
-	 * out expired, -1 if an error occurred while reading the packet, and -2
+	 * out expired, PCAP_ERROR if an error occurred while reading the packet, and PCAP_ERROR_BREAK
 	 * if packets are being read from a savefile and there are no more
 	 * packets to read from the savefile.
 	 * @throws PcapCloseException pcap close exception.
@@ -332,6 +575,20 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 	 */
 	PcapCode pcapNextEx(PcapPktHdr pktHeader, ByteBuffer pktData) throws PcapCloseException;
 
+	/**
+	 * Read a packet from an interface or from an offline capture without copying it.
+	 * On success, pktData[0] is the packet memory address and pktData[1] is the captured length,
+	 * only valid until the next read.
+	 * @param pktHeader packet header.
+	 * @param pktData reusable array with length at least 2.
+	 * @return returns PCAP_OK if the packet was read without problems, PCAP_FALSE if the packet
+	 * buffer timeout expired, PCAP_ERROR_BREAK if there are no more packets to read from the savefile,
+	 * and PCAP_ERROR if an error occurred while reading the packet.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	PcapCode pcapNextEx0(PcapPktHdr pktHeader, long[] pktData) throws PcapCloseException;
+
 	/**
 	 * Close the files associated with pcap and deallocates resources.
 	 * @throws PcapCloseException pcap close exception.
@@ -458,7 +715,7 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 	long pcapDumpFTell() throws PcapDumperCloseException;
 
 	/**
-	 * Free a filter.
+	 * Free a filter, a cached program is freed when no other context uses it.
 	 * @throws BpfProgramCloseException bpf program close exception.
 	 * @since 1.1.4
 	 */
@@ -478,6 +735,7 @@ public interface Context extends Factory<Context, Builder<Pcap, Void>> {
 	 * Compile a packet filter without the need of opening an adapter.
 	 * This function converts an high level filtering expression (see Filtering expression syntax)
 	 * in a program that can be interpreted by the kernel-level filtering engine.
+	 * Compiled programs are shared through {@link com.ardikars.jxnet.BpfProgramCache#getDefault()}.
 	 * @param snaplen snapshot length.
 	 * @param dataLinkType link type.
 	 * @param filter str.
@@ -0,0 +1,829 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.context;
+
+import static com.ardikars.jxnet.BpfInstruction.BPF_A;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ABS;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ADD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ALU;
+import static com.ardikars.jxnet.BpfInstruction.BPF_AND;
+import static com.ardikars.jxnet.BpfInstruction.BPF_B;
+import static com.ardikars.jxnet.BpfInstruction.BPF_DIV;
+import static com.ardikars.jxnet.BpfInstruction.BPF_H;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IMM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IND;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JEQ;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGE;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGT;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JMP;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JSET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_K;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LDX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LEN;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MEM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MEMWORDS;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MISC;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MOD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MUL;
+import static com.ardikars.jxnet.BpfInstruction.BPF_NEG;
+import static com.ardikars.jxnet.BpfInstruction.BPF_OR;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ST;
+import static com.ardikars.jxnet.BpfInstruction.BPF_STX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_SUB;
+import static com.ardikars.jxnet.BpfInstruction.BPF_TAX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_TXA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_W;
+import static com.ardikars.jxnet.BpfInstruction.BPF_X;
+import static com.ardikars.jxnet.BpfInstruction.BPF_XOR;
+
+import com.ardikars.common.annotation.Immutable;
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.BpfFilter;
+import com.ardikars.jxnet.BpfInstruction;
+import com.ardikars.jxnet.BpfInterpreter;
+import com.ardikars.jxnet.BpfProgram;
+import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.PcapPktHdr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Evaluate many BPF programs (for example one capture filter per tenant) in a single pass per packet.
+ * <p>
+ * Programs are merged into a shared decision graph: programs which execute the same instruction from the same
+ * state (starting with the same instructions, like the link and network protocol checks libpcap emits)
+ * share a single evaluation, and a group of programs comparing the same value with different constants
+ * ({@code jeq #k}, like "tcp port N" or "host X" for many N or X) is resolved by a binary search instead of
+ * one comparison per program. Only where the programs execute different instructions are the branches evaluated
+ * one after the other, so the cost grows with the number of distinct checks, not with the number of programs.
+ * </p>
+ * A program matches a packet when its verdict (see {@link Jxnet#PcapOfflineFilter(BpfProgram, PcapPktHdr, ByteBuffer)})
+ * is not zero. Only forward jumps are supported, like programs compiled by libpcap.
+ * Thread safe, the decision graph is built once when the classifier is created.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Immutable
+public final class PacketClassifier {
+
+	private static final long UNSIGNED_MASK = 0xffffffffL;
+
+	private static final int OPERATION = 0;
+	private static final int JUMP = 1;
+	private static final int DISPATCH = 2;
+	private static final int FORK = 3;
+	private static final int RETURN = 4;
+
+	private static final ThreadLocal<Evaluation> EVALUATION = new ThreadLocal<Evaluation>() {
+		@Override
+		protected Evaluation initialValue() {
+			return new Evaluation();
+		}
+	};
+
+	private final int size;
+	private final int nodeCount;
+	private final Node root;
+
+	private PacketClassifier(final BpfInstruction[][] programs) {
+		final Merger merger = new Merger(programs);
+		final long[] threads = new long[programs.length];
+		for (int i = 0; i < programs.length; i++) {
+			threads[i] = thread(i, 0);
+		}
+		this.size = programs.length;
+		this.root = merger.node(threads);
+		this.nodeCount = merger.count();
+	}
+
+	/**
+	 * Create classifier for compiled programs, the index of a program is its bit in the match set.
+	 * A program without instructions never matches.
+	 * @param programs compiled programs.
+	 * @return returns PacketClassifier.
+	 * @throws IllegalArgumentException invalid program.
+	 */
+	public static PacketClassifier of(final BpfProgram... programs) {
+		Validate.notIllegalArgument(programs != null && programs.length > 0,
+				new IllegalArgumentException("Programs should be not empty."));
+		final BpfInstruction[][] instructions = new BpfInstruction[programs.length][];
+		for (int i = 0; i < programs.length; i++) {
+			// Validated (and empty program replaced) by the interpreter.
+			instructions[i] = BpfInterpreter.of(programs[i]).getInstructions();
+		}
+		return new PacketClassifier(instructions);
+	}
+
+	/**
+	 * Create classifier for already validated programs, the index of a filter is its bit in the match set.
+	 * @param filters filters ({@link BpfInterpreter} or {@link com.ardikars.jxnet.BpfCompiler} filters).
+	 * @return returns PacketClassifier.
+	 * @throws IllegalArgumentException a program has a backward jump.
+	 */
+	public static PacketClassifier of(final BpfFilter... filters) {
+		Validate.notIllegalArgument(filters != null && filters.length > 0,
+				new IllegalArgumentException("Filters should be not empty."));
+		final BpfInstruction[][] instructions = new BpfInstruction[filters.length][];
+		for (int i = 0; i < filters.length; i++) {
+			Validate.notIllegalArgument(filters[i] != null,
+					new IllegalArgumentException("Filter " + i + " should be not null."));
+			instructions[i] = filters[i].getInstructions();
+		}
+		return new PacketClassifier(instructions);
+	}
+
+	/**
+	 * Get the set of programs matching a packet.
+	 * @param header packet header.
+	 * @param packet packet buffer, from index 0 to caplen (bounded by the buffer limit).
+	 * @return returns indexes of matching programs.
+	 */
+	public BitSet classify(final PcapPktHdr header, final ByteBuffer packet) {
+		final BitSet matches = new BitSet(size);
+		classify(header, packet, matches);
+		return matches;
+	}
+
+	/**
+	 * Get the set of programs matching a packet, without allocation.
+	 * @param header packet header.
+	 * @param packet packet buffer, from index 0 to caplen (bounded by the buffer limit).
+	 * @param matches cleared, then filled with indexes of matching programs.
+	 */
+	public void classify(final PcapPktHdr header, final ByteBuffer packet, final BitSet matches) {
+		if (header == null || packet == null || matches == null) {
+			throw new IllegalArgumentException("Header, packet and matches should be not null.");
+		}
+		classify0(packet, 0, Math.max(0, Math.min(header.getCapLen(), packet.limit())), header.getLen(), matches);
+	}
+
+	/**
+	 * Get the set of programs matching a packet, without allocation.
+	 * @param packet packet buffer.
+	 * @param offset index of the first byte of the packet.
+	 * @param caplen number of captured bytes.
+	 * @param len length of the packet on the wire.
+	 * @param matches cleared, then filled with indexes of matching programs.
+	 */
+	public void classify(final ByteBuffer packet, final int offset, final int caplen, final int len,
+						 final BitSet matches) {
+		if (packet == null || matches == null) {
+			throw new IllegalArgumentException("Packet and matches should be not null.");
+		}
+		if (offset < 0 || caplen < 0 || offset > packet.limit() - caplen) {
+			throw new IllegalArgumentException("Offset and caplen should be inside the buffer limit.");
+		}
+		classify0(packet, offset, caplen, len, matches);
+	}
+
+	/**
+	 * Get number of programs.
+	 * @return returns number of programs.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Get number of nodes of the decision graph, a measure of how much the programs have in common.
+	 * @return returns number of nodes.
+	 */
+	public int getNodeCount() {
+		return nodeCount;
+	}
+
+	private void classify0(final ByteBuffer packet, final int offset, final int caplen, final int len,
+						   final BitSet matches) {
+		matches.clear();
+		final Evaluation evaluation = EVALUATION.get();
+		evaluation.packet = packet;
+		evaluation.base = offset;
+		evaluation.buflen = caplen;
+		evaluation.wirelen = len;
+		evaluation.swap = packet.order() != ByteOrder.BIG_ENDIAN;
+		evaluation.matches = matches;
+		if (root.writesMemory) {
+			Arrays.fill(evaluation.memory, 0, BPF_MEMWORDS, 0);
+		}
+		try {
+			evaluate(evaluation, root, 0, 0, 0);
+		} finally {
+			evaluation.packet = null;
+			evaluation.matches = null;
+		}
+	}
+
+	/**
+	 * Evaluate a branch from the current state, scratch memory is copied if the branch may change it.
+	 */
+	private static void branch(final Evaluation e, final Node node, final int a, final int x, final int m) {
+		if (node.writesMemory) {
+			final int next = m + BPF_MEMWORDS;
+			if (next + BPF_MEMWORDS > e.memory.length) {
+				e.memory = Arrays.copyOf(e.memory, e.memory.length * 2);
+			}
+			System.arraycopy(e.memory, m, e.memory, next, BPF_MEMWORDS);
+			evaluate(e, node, a, x, next);
+		} else {
+			evaluate(e, node, a, x, m);
+		}
+	}
+
+	/**
+	 * Same semantic as {@link BpfInterpreter}, a rejected packet (out of bounds load or division by zero)
+	 * rejects every program sharing the evaluation.
+	 */
+	private static void evaluate(final Evaluation e, final Node start, final int initialA, final int initialX,
+								 final int m) {
+		final ByteBuffer p = e.packet;
+		final int base = e.base;
+		final int buflen = e.buflen;
+		Node node = start;
+		int a = initialA;
+		int x = initialX;
+		long i;
+		while (true) {
+			if (!node.mayMatch) {
+				// Every remaining path rejects.
+				return;
+			}
+			final int k = node.k;
+			switch (node.kind) {
+				case RETURN:
+					for (int program : node.accepts) {
+						e.matches.set(program);
+					}
+					if (a != 0) {
+						for (int program : node.accumulators) {
+							e.matches.set(program);
+						}
+					}
+					return;
+				case FORK: {
+					final Node[] children = node.children;
+					final int last = children.length - 1;
+					for (int c = 0; c < last; c++) {
+						branch(e, children[c], a, x, m);
+					}
+					node = children[last];
+					continue;
+				}
+				case DISPATCH: {
+					final int index = Arrays.binarySearch(node.keys, a);
+					if (index < 0) {
+						node = node.jumpFalse;
+						continue;
+					}
+					// Programs comparing with other constants take the false branch, so do the matching programs
+					// in that evaluation, their bits are recomputed by the true branch.
+					if (node.jumpFalse.mayMatch) {
+						branch(e, node.jumpFalse, a, x, m);
+						for (int program : node.programs[index]) {
+							e.matches.clear(program);
+						}
+					}
+					node = node.targets[index];
+					continue;
+				}
+				case JUMP: {
+					final boolean taken;
+					switch (node.code) {
+						case BPF_JMP | BPF_JGT | BPF_K:
+							taken = (a ^ Integer.MIN_VALUE) > (k ^ Integer.MIN_VALUE);
+							break;
+						case BPF_JMP | BPF_JGE | BPF_K:
+							taken = (a ^ Integer.MIN_VALUE) >= (k ^ Integer.MIN_VALUE);
+							break;
+						case BPF_JMP | BPF_JEQ | BPF_K:
+							taken = a == k;
+							break;
+						case BPF_JMP | BPF_JSET | BPF_K:
+							taken = (a & k) != 0;
+							break;
+						case BPF_JMP | BPF_JGT | BPF_X:
+							taken = (a ^ Integer.MIN_VALUE) > (x ^ Integer.MIN_VALUE);
+							break;
+						case BPF_JMP | BPF_JGE | BPF_X:
+							taken = (a ^ Integer.MIN_VALUE) >= (x ^ Integer.MIN_VALUE);
+							break;
+						case BPF_JMP | BPF_JEQ | BPF_X:
+							taken = a == x;
+							break;
+						default:
+							taken = (a & x) != 0;
+							break;
+					}
+					node = taken ? node.jumpTrue : node.jumpFalse;
+					continue;
+				}
+				default:
+					break;
+			}
+			switch (node.code) {
+				case BPF_LD | BPF_W | BPF_ABS:
+					i = k & UNSIGNED_MASK;
+					if (i + 4 > buflen) {
+						return;
+					}
+					a = getInt(p, base + (int) i, e.swap);
+					break;
+				case BPF_LD | BPF_H | BPF_ABS:
+					i = k & UNSIGNED_MASK;
+					if (i + 2 > buflen) {
+						return;
+					}
+					a = getShort(p, base + (int) i, e.swap);
+					break;
+				case BPF_LD | BPF_B | BPF_ABS:
+					i = k & UNSIGNED_MASK;
+					if (i >= buflen) {
+						return;
+					}
+					a = p.get(base + (int) i) & 0xff;
+					break;
+				case BPF_LD | BPF_W | BPF_LEN:
+					a = e.wirelen;
+					break;
+				case BPF_LDX | BPF_W | BPF_LEN:
+					x = e.wirelen;
+					break;
+				case BPF_LD | BPF_W | BPF_IND:
+					i = (x & UNSIGNED_MASK) + (k & UNSIGNED_MASK);
+					if (i + 4 > buflen) {
+						return;
+					}
+					a = getInt(p, base + (int) i, e.swap);
+					break;
+				case BPF_LD | BPF_H | BPF_IND:
+					i = (x & UNSIGNED_MASK) + (k & UNSIGNED_MASK);
+					if (i + 2 > buflen) {
+						return;
+					}
+					a = getShort(p, base + (int) i, e.swap);
+					break;
+				case BPF_LD | BPF_B | BPF_IND:
+					i = (x & UNSIGNED_MASK) + (k & UNSIGNED_MASK);
+					if (i >= buflen) {
+						return;
+					}
+					a = p.get(base + (int) i) & 0xff;
+					break;
+				case BPF_LDX | BPF_MSH | BPF_B:
+					i = k & UNSIGNED_MASK;
+					if (i >= buflen) {
+						return;
+					}
+					x = (p.get(base + (int) i) & 0xf) << 2;
+					break;
+				case BPF_LD | BPF_IMM:
+					a = k;
+					break;
+				case BPF_LDX | BPF_IMM:
+					x = k;
+					break;
+				case BPF_LD | BPF_MEM:
+					a = e.memory[m + k];
+					break;
+				case BPF_LDX | BPF_MEM:
+					x = e.memory[m + k];
+					break;
+				case BPF_ST:
+					e.memory[m + k] = a;
+					break;
+				case BPF_STX:
+					e.memory[m + k] = x;
+					break;
+				case BPF_ALU | BPF_ADD | BPF_X:
+					a += x;
+					break;
+				case BPF_ALU | BPF_SUB | BPF_X:
+					a -= x;
+					break;
+				case BPF_ALU | BPF_MUL | BPF_X:
+					a *= x;
+					break;
+				case BPF_ALU | BPF_DIV | BPF_X:
+					if (x == 0) {
+						return;
+					}
+					a = (int) ((a & UNSIGNED_MASK) / (x & UNSIGNED_MASK));
+					break;
+				case BPF_ALU | BPF_MOD | BPF_X:
+					if (x == 0) {
+						return;
+					}
+					a = (int) ((a & UNSIGNED_MASK) % (x & UNSIGNED_MASK));
+					break;
+				case BPF_ALU | BPF_AND | BPF_X:
+					a &= x;
+					break;
+				case BPF_ALU | BPF_OR | BPF_X:
+					a |= x;
+					break;
+				case BPF_ALU | BPF_XOR | BPF_X:
+					a ^= x;
+					break;
+				case BPF_ALU | BPF_LSH | BPF_X:
+					a <<= x;
+					break;
+				case BPF_ALU | BPF_RSH | BPF_X:
+					a >>>= x;
+					break;
+				case BPF_ALU | BPF_ADD | BPF_K:
+					a += k;
+					break;
+				case BPF_ALU | BPF_SUB | BPF_K:
+					a -= k;
+					break;
+				case BPF_ALU | BPF_MUL | BPF_K:
+					a *= k;
+					break;
+				case BPF_ALU | BPF_DIV | BPF_K:
+					a = (int) ((a & UNSIGNED_MASK) / (k & UNSIGNED_MASK));
+					break;
+				case BPF_ALU | BPF_MOD | BPF_K:
+					a = (int) ((a & UNSIGNED_MASK) % (k & UNSIGNED_MASK));
+					break;
+				case BPF_ALU | BPF_AND | BPF_K:
+					a &= k;
+					break;
+				case BPF_ALU | BPF_OR | BPF_K:
+					a |= k;
+					break;
+				case BPF_ALU | BPF_XOR | BPF_K:
+					a ^= k;
+					break;
+				case BPF_ALU | BPF_LSH | BPF_K:
+					a <<= k;
+					break;
+				case BPF_ALU | BPF_RSH | BPF_K:
+					a >>>= k;
+					break;
+				case BPF_ALU | BPF_NEG:
+					a = -a;
+					break;
+				case BPF_MISC | BPF_TAX:
+					x = a;
+					break;
+				case BPF_MISC | BPF_TXA:
+					a = x;
+					break;
+				default:
+					// Unreachable, every opcode is checked by BpfFilter.
+					throw new IllegalStateException("Invalid BPF opcode: " + node.code);
+			}
+			node = node.next;
+		}
+	}
+
+	private static int getInt(final ByteBuffer p, final int index, final boolean swap) {
+		final int value = p.getInt(index);
+		return swap ? Integer.reverseBytes(value) : value;
+	}
+
+	private static int getShort(final ByteBuffer p, final int index, final boolean swap) {
+		final short value = p.getShort(index);
+		return (swap ? Short.reverseBytes(value) : value) & 0xffff;
+	}
+
+	/**
+	 * A thread is a program at an instruction, program index in the high 32 bit and pc in the low 32 bit.
+	 */
+	private static long thread(final int program, final int pc) {
+		return ((long) program << 32) | pc;
+	}
+
+	private static int program(final long thread) {
+		return (int) (thread >>> 32);
+	}
+
+	private static int pc(final long thread) {
+		return (int) thread;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PacketClassifier{")
+				.append("size=").append(size)
+				.append(", nodeCount=").append(nodeCount)
+				.append('}')
+				.toString();
+	}
+
+	/**
+	 * Per thread evaluation state, scratch memory is a stack of {@link BpfInstruction#BPF_MEMWORDS} words
+	 * per nested branch.
+	 */
+	private static final class Evaluation {
+
+		private ByteBuffer packet;
+		private int base;
+		private int buflen;
+		private int wirelen;
+		private boolean swap;
+		private BitSet matches;
+		private int[] memory = new int[BPF_MEMWORDS * 4];
+
+	}
+
+	/**
+	 * Node of the decision graph, the set of threads it was built from share the same state
+	 * (accumulator, index register and scratch memory) when the node is evaluated.
+	 */
+	private static final class Node {
+
+		private final int kind;
+		private final int code;
+		private final int k;
+
+		private Node next;
+		private Node jumpTrue;
+		private Node jumpFalse;
+		private Node[] children;
+		private int[] keys;
+		private Node[] targets;
+		private int[][] programs;
+		private int[] accepts;
+		private int[] accumulators;
+		private boolean writesMemory;
+		private boolean mayMatch;
+
+		private Node(final int kind, final int code, final int k) {
+			this.kind = kind;
+			this.code = code;
+			this.k = k;
+		}
+
+	}
+
+	/**
+	 * Sorted set of threads, key of the memoized nodes.
+	 */
+	private static final class Threads {
+
+		private final long[] threads;
+		private final int hashCode;
+
+		private Threads(final long[] threads) {
+			this.threads = threads;
+			this.hashCode = Arrays.hashCode(threads);
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			return Arrays.equals(threads, ((Threads) o).threads);
+		}
+
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+	}
+
+	/**
+	 * Build the decision graph, a node is memoized by its set of threads, so the graph is a DAG
+	 * where programs with the same remaining checks share nodes.
+	 */
+	private static final class Merger {
+
+		private final BpfInstruction[][] programs;
+		private final Map<Threads, Node> nodes = new HashMap<Threads, Node>();
+
+		private Merger(final BpfInstruction[][] programs) {
+			for (int i = 0; i < programs.length; i++) {
+				final BpfInstruction[] instructions = programs[i];
+				for (int pc = 0; pc < instructions.length; pc++) {
+					Validate.notIllegalArgument(instructions[pc].getCode() != (BPF_JMP | BPF_JA)
+									|| instructions[pc].getK() >= 0,
+							new IllegalArgumentException("Program " + i + " has a backward jump at " + pc + "."));
+				}
+			}
+			this.programs = programs;
+		}
+
+		private int count() {
+			final Set<Node> distinct = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+			distinct.addAll(nodes.values());
+			return distinct.size();
+		}
+
+		private BpfInstruction instruction(final long thread) {
+			return programs[program(thread)][pc(thread)];
+		}
+
+		private Node node(final long[] threads) {
+			Arrays.sort(threads);
+			final Threads key = new Threads(threads);
+			Node node = nodes.get(key);
+			if (node != null) {
+				return node;
+			}
+			final Map<Long, List<Long>> groups = new LinkedHashMap<Long, List<Long>>();
+			for (long thread : threads) {
+				final Long group = group(instruction(thread));
+				List<Long> members = groups.get(group);
+				if (members == null) {
+					members = new ArrayList<Long>();
+					groups.put(group, members);
+				}
+				members.add(thread);
+			}
+			if (groups.size() == 1) {
+				node = merge(threads);
+			} else {
+				node = new Node(FORK, 0, 0);
+				node.children = new Node[groups.size()];
+				int c = 0;
+				for (List<Long> members : groups.values()) {
+					node.children[c] = node(toArray(members));
+					node.writesMemory |= node.children[c].writesMemory;
+					node.mayMatch |= node.children[c].mayMatch;
+					c++;
+				}
+			}
+			nodes.put(key, node);
+			return node;
+		}
+
+		/**
+		 * Threads executing the same instruction, the conditional jump offsets may differ.
+		 * Comparisons of the accumulator with a constant are grouped whatever the constant is,
+		 * returns are grouped whatever the verdict is and unconditional jumps are grouped whatever the offset is.
+		 */
+		private static Long group(final BpfInstruction instruction) {
+			final int code = instruction.getCode();
+			if (code == (BPF_JMP | BPF_JEQ | BPF_K) || code == (BPF_JMP | BPF_JA)) {
+				return (long) code << 32;
+			}
+			if ((code & 0x07) == BPF_RET) {
+				return (long) BPF_RET << 32;
+			}
+			return ((long) code << 32) | (instruction.getK() & UNSIGNED_MASK);
+		}
+
+		private Node merge(final long[] threads) {
+			final BpfInstruction first = instruction(threads[0]);
+			final int code = first.getCode();
+			final Node node;
+			if ((code & 0x07) == BPF_RET) {
+				final List<Integer> accepts = new ArrayList<Integer>();
+				final List<Integer> accumulators = new ArrayList<Integer>();
+				for (long thread : threads) {
+					final BpfInstruction instruction = instruction(thread);
+					if (instruction.getCode() == (BPF_RET | BPF_A)) {
+						accumulators.add(program(thread));
+					} else if (instruction.getK() != 0) {
+						accepts.add(program(thread));
+					}
+				}
+				node = new Node(RETURN, code, 0);
+				node.accepts = toIntArray(accepts);
+				node.accumulators = toIntArray(accumulators);
+				node.mayMatch = !accepts.isEmpty() || !accumulators.isEmpty();
+			} else if (code == (BPF_JMP | BPF_JA)) {
+				final long[] targets = new long[threads.length];
+				for (int i = 0; i < threads.length; i++) {
+					targets[i] = thread(program(threads[i]), pc(threads[i]) + 1 + instruction(threads[i]).getK());
+				}
+				node = node(targets);
+			} else if (code == (BPF_JMP | BPF_JEQ | BPF_K)) {
+				node = dispatch(threads);
+			} else if ((code & 0x07) == BPF_JMP) {
+				node = jump(threads, code, first.getK());
+			} else {
+				final long[] targets = new long[threads.length];
+				for (int i = 0; i < threads.length; i++) {
+					targets[i] = threads[i] + 1;
+				}
+				node = new Node(OPERATION, code, first.getK());
+				node.next = node(targets);
+				node.writesMemory = code == BPF_ST || code == BPF_STX || node.next.writesMemory;
+				node.mayMatch = node.next.mayMatch;
+			}
+			return node;
+		}
+
+		private Node jump(final long[] threads, final int code, final int k) {
+			final long[] taken = new long[threads.length];
+			final long[] notTaken = new long[threads.length];
+			for (int i = 0; i < threads.length; i++) {
+				final BpfInstruction instruction = instruction(threads[i]);
+				taken[i] = threads[i] + 1 + instruction.getJt();
+				notTaken[i] = threads[i] + 1 + instruction.getJf();
+			}
+			final Node node = new Node(JUMP, code, k);
+			node.jumpTrue = node(taken);
+			node.jumpFalse = node(notTaken);
+			node.writesMemory = node.jumpTrue.writesMemory || node.jumpFalse.writesMemory;
+			node.mayMatch = node.jumpTrue.mayMatch || node.jumpFalse.mayMatch;
+			return node;
+		}
+
+		/**
+		 * {@code jeq #k} of many programs, a table of constants sorted for binary search. Every thread is in
+		 * the false branch, the threads of a constant are also in the true branch of the constant.
+		 */
+		private Node dispatch(final long[] threads) {
+			final TreeMap<Integer, List<Long>> constants = new TreeMap<Integer, List<Long>>();
+			final long[] notTaken = new long[threads.length];
+			for (int i = 0; i < threads.length; i++) {
+				final BpfInstruction instruction = instruction(threads[i]);
+				List<Long> members = constants.get(instruction.getK());
+				if (members == null) {
+					members = new ArrayList<Long>();
+					constants.put(instruction.getK(), members);
+				}
+				members.add(threads[i]);
+				notTaken[i] = threads[i] + 1 + instruction.getJf();
+			}
+			if (constants.size() == 1) {
+				return jump(threads, BPF_JMP | BPF_JEQ | BPF_K, constants.firstKey());
+			}
+			final Node node = new Node(DISPATCH, BPF_JMP | BPF_JEQ | BPF_K, 0);
+			node.keys = new int[constants.size()];
+			node.targets = new Node[constants.size()];
+			node.programs = new int[constants.size()][];
+			node.jumpFalse = node(notTaken);
+			node.writesMemory = node.jumpFalse.writesMemory;
+			node.mayMatch = node.jumpFalse.mayMatch;
+			int c = 0;
+			for (Map.Entry<Integer, List<Long>> constant : constants.entrySet()) {
+				final List<Long> members = constant.getValue();
+				final long[] taken = new long[members.size()];
+				final int[] programs = new int[members.size()];
+				for (int i = 0; i < taken.length; i++) {
+					taken[i] = members.get(i) + 1 + instruction(members.get(i)).getJt();
+					programs[i] = program(members.get(i));
+				}
+				node.keys[c] = constant.getKey();
+				node.targets[c] = node(taken);
+				node.programs[c] = programs;
+				node.writesMemory |= node.targets[c].writesMemory;
+				node.mayMatch |= node.targets[c].mayMatch;
+				c++;
+			}
+			return node;
+		}
+
+		private static long[] toArray(final List<Long> values) {
+			final long[] array = new long[values.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = values.get(i);
+			}
+			return array;
+		}
+
+		private static int[] toIntArray(final List<Integer> values) {
+			final int[] array = new int[values.size()];
+			for (int i = 0; i < array.length; i++) {
+				array[i] = values.get(i);
+			}
+			return array;
+		}
+
+	}
+
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.context;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+import com.ardikars.common.logging.Logger;
+import com.ardikars.common.logging.LoggerFactory;
+import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.PcapCode;
+import com.ardikars.jxnet.PcapDumper;
+import com.ardikars.jxnet.PcapPktHdr;
+import com.ardikars.jxnet.PcapTimestampPrecision;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Synthetic traffic generator. Packets are built from off heap {@link PacketTemplate}s (used round robin)
+ * patched in place by {@link PacketMutator}s, so no buffer is allocated or filled per packet,
+ * and sent with {@link Jxnet#PcapInject(Pcap, ByteBuffer, int)} or written to a {@link PcapDumper}
+ * (for example on a handle from {@link Jxnet#PcapOpenDead(int, int)}) to generate test savefiles.
+ * Generator is not thread safe, except {@link PacketGenerator#stop()}.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable(volatiles = { "stop" })
+public final class PacketGenerator {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PacketGenerator.class);
+
+	private final PacketTemplate[] templates;
+	private final PacketMutator[] mutators;
+	private final PcapReplay.Target target;
+	private final long count;
+
+	private long sequence;
+
+	private volatile boolean stop;
+
+	private PacketGenerator(final Builder builder) {
+		this.templates = builder.templates.toArray(new PacketTemplate[0]);
+		this.mutators = builder.mutators.toArray(new PacketMutator[0]);
+		this.target = builder.target;
+		this.count = builder.count;
+	}
+
+	/**
+	 * Generate packets as fast as possible until count is exhausted or {@link PacketGenerator#stop()}.
+	 * Sequence numbers continue from the previous call.
+	 * @return returns statistics (lateness is always 0).
+	 */
+	public PcapReplayStat generate() {
+		long packets = 0;
+		long bytes = 0;
+		long failures = 0;
+		this.stop = false;
+		long start = System.nanoTime();
+		while ((this.count <= 0 || packets < this.count) && !this.stop) {
+			PacketTemplate template = this.templates[(int) (this.sequence % this.templates.length)];
+			for (PacketMutator mutator : this.mutators) {
+				mutator.mutate(template, this.sequence);
+			}
+			if (this.target.send(template.buffer(), template.length())) {
+				bytes += template.length();
+			} else {
+				failures++;
+			}
+			this.sequence++;
+			packets++;
+		}
+		PcapReplayStat stat = new PcapReplayStat(packets, bytes, failures, System.nanoTime() - start, 0, 0, 0);
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Generator finished: {}.", stat);
+		}
+		return stat;
+	}
+
+	/**
+	 * Stop running generator, can be called from another thread.
+	 */
+	public void stop() {
+		this.stop = true;
+	}
+
+	/**
+	 * Sequence number of the next packet.
+	 * @return returns sequence number.
+	 */
+	public long getSequence() {
+		return this.sequence;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PacketGenerator{")
+				.append("templates=").append(this.templates.length)
+				.append(", mutators=").append(this.mutators.length)
+				.append(", count=").append(this.count)
+				.append(", sequence=").append(this.sequence)
+				.append('}')
+				.toString();
+	}
+
+	public static final class Builder implements com.ardikars.common.util.Builder<PacketGenerator, Void> {
+
+		private final List<PacketTemplate> templates = new ArrayList<PacketTemplate>();
+		private final List<PacketMutator> mutators = new ArrayList<PacketMutator>();
+		private PcapReplay.Target target;
+		private long count = -1;
+
+		/**
+		 * Add a template, templates are used round robin.
+		 * @param template packet template.
+		 * @return returns Builder.
+		 */
+		public Builder template(final PacketTemplate template) {
+			Validate.notIllegalArgument(template != null, new IllegalArgumentException("Template should be not null."));
+			this.templates.add(template);
+			return this;
+		}
+
+		/**
+		 * Add a mutator, mutators are applied in order to every packet.
+		 * @param mutator packet mutator.
+		 * @return returns Builder.
+		 */
+		public Builder mutator(final PacketMutator mutator) {
+			Validate.notIllegalArgument(mutator != null, new IllegalArgumentException("Mutator should be not null."));
+			this.mutators.add(mutator);
+			return this;
+		}
+
+		/**
+		 * Inject packets to a live pcap handle.
+		 * @param pcap pcap handle.
+		 * @return returns Builder.
+		 */
+		public Builder pcap(final Pcap pcap) {
+			Validate.notIllegalArgument(pcap != null, new IllegalArgumentException("Pcap should be not null."));
+			this.target = new PcapReplay.Target() {
+				@Override
+				public boolean send(ByteBuffer buf, int size) {
+					return Jxnet.PcapInject(pcap, buf, size) >= 0;
+				}
+			};
+			return this;
+		}
+
+		/**
+		 * Inject packets to a context.
+		 * @param context context.
+		 * @return returns Builder.
+		 */
+		public Builder context(final Context context) {
+			Validate.notIllegalArgument(context != null, new IllegalArgumentException("Context should be not null."));
+			this.target = new PcapReplay.Target() {
+				@Override
+				public boolean send(ByteBuffer buf, int size) {
+					return context.pcapInject(buf, size) == PcapCode.PCAP_OK;
+				}
+			};
+			return this;
+		}
+
+		/**
+		 * Write packets to a dumper, timestamps start at the current time and advance by interval per packet.
+		 * @param pcapDumper pcap dumper (of a live or dead handle).
+		 * @param precision timestamp precision of the dumper handle.
+		 * @param interval timestamp interval in nanoseconds.
+		 * @return returns Builder.
+		 */
+		public Builder pcapDumper(final PcapDumper pcapDumper, final PcapTimestampPrecision precision, final long interval) {
+			Validate.notIllegalArgument(pcapDumper != null, new IllegalArgumentException("Pcap dumper should be not null."));
+			Validate.notIllegalArgument(precision != null, new IllegalArgumentException("Precision should be not null."));
+			Validate.notIllegalArgument(interval >= 0,
+					new IllegalArgumentException("Interval should be greater than or equal to 0."));
+			final long scale = precision == PcapTimestampPrecision.NANO ? 1L : 1000L;
+			this.target = new PcapReplay.Target() {
+
+				private final PcapPktHdr header = new PcapPktHdr();
+				private final long start = System.currentTimeMillis() * 1000000L;
+				private long elapsed;
+
+				@Override
+				public boolean send(ByteBuffer buf, int size) {
+					long timestamp = start + elapsed;
+					header.set(size, size, (int) (timestamp / 1000000000L), (timestamp % 1000000000L) / scale);
+					Jxnet.PcapDump(pcapDumper, header, buf);
+					elapsed += interval;
+					return true;
+				}
+
+			};
+			return this;
+		}
+
+		public Builder target(final PcapReplay.Target target) {
+			this.target = target;
+			return this;
+		}
+
+		/**
+		 * Number of packets per {@link PacketGenerator#generate()}, 0 or -1 is infinite.
+		 * @param count number of packets.
+		 * @return returns Builder.
+		 */
+		public Builder count(final long count) {
+			this.count = count;
+			return this;
+		}
+
+		@Override
+		public PacketGenerator build() {
+			Validate.notIllegalArgument(!this.templates.isEmpty(),
+					new IllegalArgumentException("Template should be not null."));
+			Validate.notIllegalArgument(this.target != null, new IllegalArgumentException("Target should be not null."));
+			return new PacketGenerator(this);
+		}
+
+		@Override
+		public PacketGenerator build(Void value) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.context;
+
+import com.ardikars.common.annotation.Incubating;
+
+/**
+ * Patch fields of a {@link PacketTemplate} before each packet is sent by {@link PacketGenerator},
+ * see {@link PacketMutators} for common mutators.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public interface PacketMutator {
+
+	/**
+	 * Mutate a template in place, use {@link PacketTemplate#put(int, long, int)} to keep checksums valid.
+	 * @param template packet template.
+	 * @param sequence packet sequence number, starting from 0.
+	 */
+	void mutate(PacketTemplate template, long sequence);
+
+}
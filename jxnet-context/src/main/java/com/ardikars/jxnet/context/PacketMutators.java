@@ -0,0 +1,215 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.context;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.net.Inet4Address;
+import com.ardikars.common.util.Validate;
+
+/**
+ * Common {@link PacketMutator}s. Range mutators take the value start + (sequence / stride) % count,
+ * so combining ranges with strides equal to the product of the previous counts enumerates every combination
+ * (for example source port with stride 1 and source address with stride equal to the port count).
+ * Mutators of fields a template doesn't have (for example ports of an ICMP packet) do nothing.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public final class PacketMutators {
+
+	private PacketMutators() {
+	}
+
+	/**
+	 * Range of IPv4 source addresses.
+	 * @param start first address.
+	 * @param count number of addresses.
+	 * @param stride number of packets per address.
+	 * @return returns PacketMutator.
+	 */
+	public static PacketMutator ipv4Source(final Inet4Address start, final int count, final long stride) {
+		Validate.notIllegalArgument(start != null, new IllegalArgumentException("Start address should be not null."));
+		return ipv4Source(start.toInt(), count, stride);
+	}
+
+	/**
+	 * Range of IPv4 source addresses.
+	 * @param start first address (as int).
+	 * @param count number of addresses.
+	 * @param stride number of packets per address.
+	 * @return returns PacketMutator.
+	 */
+	public static PacketMutator ipv4Source(final int start, final int count, final long stride) {
+		return ipv4Range(12, start, count, stride);
+	}
+
+	/**
+	 * Range of IPv4 destination addresses.
+	 * @param start first address.
+	 * @param count number of addresses.
+	 * @param stride number of packets per address.
+	 * @return returns PacketMutator.
+	 */
+	public static PacketMutator ipv4Destination(final Inet4Address start, final int count, final long stride) {
+		Validate.notIllegalArgument(start != null, new IllegalArgumentException("Start address should be not null."));
+		return ipv4Destination(start.toInt(), count, stride);
+	}
+
+	/**
+	 * Range of IPv4 destination addresses.
+	 * @param start first address (as int).
+	 * @param count number of addresses.
+	 * @param stride number of packets per address.
+	 * @return returns PacketMutator.
+	 */
+	public static PacketMutator ipv4Destination(final int start, final int count, final long stride) {
+		return ipv4Range(16, start, count, stride);
+	}
+
+	/**
+	 * Range of TCP/UDP source ports.
+	 * @param start first port.
+	 * @param count number of ports.
+	 * @param stride number of packets per port.
+	 * @return returns PacketMutator.
+	 */
+	public static PacketMutator sourcePort(final int start, final int count, final long stride) {
+		return portRange(0, start, count, stride);
+	}
+
+	/**
+	 * Range of TCP/UDP destination ports.
+	 * @param start first port.
+	 * @param count number of ports.
+	 * @param stride number of packets per port.
+	 * @return returns PacketMutator.
+	 */
+	public static PacketMutator destinationPort(final int start, final int count, final long stride) {
+		return portRange(2, start, count, stride);
+	}
+
+	/**
+	 * IPv4 identification, incremented for every packet.
+	 * @return returns PacketMutator.
+	 */
+	public static PacketMutator ipv4Identification() {
+		return new PacketMutator() {
+			@Override
+			public void mutate(PacketTemplate template, long sequence) {
+				if (template.getIpOffset() >= 0) {
+					template.put(template.getIpOffset() + 4, sequence, 2);
+				}
+			}
+		};
+	}
+
+	/**
+	 * TCP sequence number, start + sequence * increment (modulo 2^32).
+	 * @param start initial sequence number.
+	 * @param increment increment per packet, usually the payload size.
+	 * @return returns PacketMutator.
+	 */
+	public static PacketMutator tcpSequence(final long start, final long increment) {
+		return new PacketMutator() {
+			@Override
+			public void mutate(PacketTemplate template, long sequence) {
+				if (template.getProtocol() == PacketTemplate.PROTOCOL_TCP && template.getL4Offset() >= 0) {
+					template.put(template.getL4Offset() + 4, start + sequence * increment, 4);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Counter at an arbitrary offset, start + sequence * increment.
+	 * @param offset field offset in the frame.
+	 * @param width field width (1 - 8 bytes).
+	 * @param start initial value.
+	 * @param increment increment per packet.
+	 * @return returns PacketMutator.
+	 */
+	public static PacketMutator counter(final int offset, final int width, final long start, final long increment) {
+		Validate.notIllegalArgument(offset >= 0 && width > 0 && width <= 8,
+				new IllegalArgumentException("Width should be between 1 and 8."));
+		return new PacketMutator() {
+			@Override
+			public void mutate(PacketTemplate template, long sequence) {
+				if (offset + width <= template.length()) {
+					template.put(offset, start + sequence * increment, width);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Pseudo random payload (xorshift), the same seed gives the same packets.
+	 * @param seed random seed.
+	 * @return returns PacketMutator.
+	 */
+	public static PacketMutator randomPayload(final long seed) {
+		return new PacketMutator() {
+			@Override
+			public void mutate(PacketTemplate template, long sequence) {
+				long x = seed ^ (sequence * 0x9e3779b97f4a7c15L);
+				if (x == 0) {
+					x = 0x9e3779b97f4a7c15L;
+				}
+				int end = template.getPayloadEnd();
+				for (int offset = template.getPayloadOffset(); offset < end; offset += 8) {
+					x ^= x << 13;
+					x ^= x >>> 7;
+					x ^= x << 17;
+					template.put(offset, x, Math.min(8, end - offset));
+				}
+			}
+		};
+	}
+
+	private static PacketMutator ipv4Range(final int fieldOffset, final int start, final int count, final long stride) {
+		validateRange(count, stride);
+		return new PacketMutator() {
+			@Override
+			public void mutate(PacketTemplate template, long sequence) {
+				if (template.getIpOffset() >= 0) {
+					template.put(template.getIpOffset() + fieldOffset, start + (sequence / stride) % count, 4);
+				}
+			}
+		};
+	}
+
+	private static PacketMutator portRange(final int fieldOffset, final int start, final int count, final long stride) {
+		validateRange(count, stride);
+		Validate.notIllegalArgument(start >= 0 && start + count <= 0x10000,
+				new IllegalArgumentException("Port range should be inside 0 - 65535."));
+		return new PacketMutator() {
+			@Override
+			public void mutate(PacketTemplate template, long sequence) {
+				if (template.getL4Offset() >= 0) {
+					template.put(template.getL4Offset() + fieldOffset, start + (sequence / stride) % count, 2);
+				}
+			}
+		};
+	}
+
+	private static void validateRange(final int count, final long stride) {
+		Validate.notIllegalArgument(count > 0 && stride > 0,
+				new IllegalArgumentException("Count and stride should be greater than 0."));
+	}
+
+}
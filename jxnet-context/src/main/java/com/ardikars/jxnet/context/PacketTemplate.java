@@ -0,0 +1,245 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.context;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.util.Validate;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Off heap copy of a frame used by {@link PacketGenerator}, fields are patched in place by {@link PacketMutator}s.
+ * IPv4 header and TCP/UDP checksums are updated incrementally (RFC 1624) by {@link PacketTemplate#put(int, long, int)},
+ * so a mutation costs a few additions instead of a checksum over the whole packet.
+ * A UDP checksum of zero (not computed) is left untouched.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public final class PacketTemplate {
+
+	public static final int PROTOCOL_TCP = 6;
+
+	public static final int PROTOCOL_UDP = 17;
+
+	private static final int ETHERNET_HEADER_SIZE = 14;
+	private static final int ETHERTYPE_IPV4 = 0x0800;
+	private static final int ETHERTYPE_VLAN = 0x8100;
+	private static final int ETHERTYPE_QINQ = 0x88a8;
+
+	private final ByteBuffer buffer;
+	private final int length;
+	private final int ipOffset;
+	private final int ipHeaderLength;
+	private final int ipEnd;
+	private final int protocol;
+	private final int l4Offset;
+	private final int l4ChecksumOffset;
+	private final int payloadOffset;
+
+	private PacketTemplate(final ByteBuffer frame, final int ipOffset) {
+		this.length = frame.remaining();
+		this.buffer = ByteBuffer.allocateDirect(this.length);
+		this.buffer.put(frame.duplicate());
+		this.buffer.clear();
+		if (ipOffset >= 0 && ipOffset + 20 <= this.length && (this.buffer.get(ipOffset) & 0xf0) == 0x40) {
+			this.ipOffset = ipOffset;
+			this.ipHeaderLength = (this.buffer.get(ipOffset) & 0x0f) * 4;
+			this.ipEnd = Math.min(this.length, ipOffset + (this.buffer.getShort(ipOffset + 2) & 0xffff));
+			this.protocol = this.buffer.get(ipOffset + 9) & 0xff;
+			int l4 = ipOffset + this.ipHeaderLength;
+			boolean fragment = (this.buffer.getShort(ipOffset + 6) & 0x1fff) != 0;
+			if (!fragment && this.protocol == PROTOCOL_TCP && l4 + 20 <= this.ipEnd) {
+				this.l4Offset = l4;
+				this.l4ChecksumOffset = l4 + 16;
+				this.payloadOffset = Math.min(this.ipEnd, l4 + ((this.buffer.get(l4 + 12) & 0xf0) >> 2));
+			} else if (!fragment && this.protocol == PROTOCOL_UDP && l4 + 8 <= this.ipEnd) {
+				this.l4Offset = l4;
+				this.l4ChecksumOffset = this.buffer.getShort(l4 + 6) == 0 ? -1 : l4 + 6;
+				this.payloadOffset = l4 + 8;
+			} else {
+				this.l4Offset = -1;
+				this.l4ChecksumOffset = -1;
+				this.payloadOffset = l4;
+			}
+		} else {
+			this.ipOffset = -1;
+			this.ipHeaderLength = 0;
+			this.ipEnd = this.length;
+			this.protocol = -1;
+			this.l4Offset = -1;
+			this.l4ChecksumOffset = -1;
+			this.payloadOffset = this.length;
+		}
+	}
+
+	/**
+	 * Create template from an Ethernet frame (optionally VLAN tagged).
+	 * @param frame frame, remaining bytes are copied.
+	 * @return returns PacketTemplate.
+	 */
+	public static PacketTemplate ethernet(final ByteBuffer frame) {
+		Validate.notIllegalArgument(frame != null && frame.remaining() >= ETHERNET_HEADER_SIZE,
+				new IllegalArgumentException("Frame should be not null."));
+		int offset = frame.position() + 12;
+		int etherType = frame.getShort(offset) & 0xffff;
+		while ((etherType == ETHERTYPE_VLAN || etherType == ETHERTYPE_QINQ) && offset + 6 <= frame.limit()) {
+			offset += 4;
+			etherType = frame.getShort(offset) & 0xffff;
+		}
+		return new PacketTemplate(frame, etherType == ETHERTYPE_IPV4 ? offset + 2 - frame.position() : -1);
+	}
+
+	/**
+	 * Create template from a frame with the IPv4 header at a known offset (for example raw IP link type).
+	 * @param frame frame, remaining bytes are copied.
+	 * @param ipOffset offset of IPv4 header, or -1 if the frame has no IPv4 header.
+	 * @return returns PacketTemplate.
+	 */
+	public static PacketTemplate of(final ByteBuffer frame, final int ipOffset) {
+		Validate.notIllegalArgument(frame != null && frame.hasRemaining(),
+				new IllegalArgumentException("Frame should be not null."));
+		return new PacketTemplate(frame, ipOffset);
+	}
+
+	/**
+	 * Write a big endian field of width bytes and update the checksums covering it
+	 * (IPv4 header checksum, and TCP/UDP checksum for the segment and the pseudo header addresses).
+	 * @param offset field offset in the frame.
+	 * @param value field value, low width bytes are written.
+	 * @param width field width (1 - 8 bytes).
+	 */
+	public void put(final int offset, final long value, final int width) {
+		int oldIp = 0;
+		int newIp = 0;
+		int oldL4 = 0;
+		int newL4 = 0;
+		for (int i = 0; i < width; i++) {
+			int position = offset + i;
+			int oldByte = this.buffer.get(position) & 0xff;
+			int newByte = (int) (value >>> ((width - 1 - i) << 3)) & 0xff;
+			if (oldByte == newByte) {
+				continue;
+			}
+			this.buffer.put(position, (byte) newByte);
+			if (this.ipOffset < 0) {
+				continue;
+			}
+			// The IPv4 header length is a multiple of 4, so word alignment is the same for every checksum.
+			int shift = ((position - this.ipOffset) & 1) == 0 ? 8 : 0;
+			if (position >= this.ipOffset && position < this.ipOffset + this.ipHeaderLength) {
+				oldIp += oldByte << shift;
+				newIp += newByte << shift;
+			}
+			if (this.l4ChecksumOffset >= 0 && ((position >= this.l4Offset && position < this.ipEnd)
+					|| (position >= this.ipOffset + 12 && position < this.ipOffset + 20))) {
+				oldL4 += oldByte << shift;
+				newL4 += newByte << shift;
+			}
+		}
+		if (oldIp != newIp) {
+			adjust(this.ipOffset + 10, oldIp, newIp, false);
+		}
+		if (oldL4 != newL4) {
+			adjust(this.l4ChecksumOffset, oldL4, newL4, this.protocol == PROTOCOL_UDP);
+		}
+	}
+
+	/**
+	 * HC' = ~(~HC + ~m + m'), RFC 1624 equation 3.
+	 */
+	private void adjust(final int checksumOffset, final int oldSum, final int newSum, final boolean udp) {
+		int sum = (~this.buffer.getShort(checksumOffset) & 0xffff) + (~fold(oldSum) & 0xffff) + fold(newSum);
+		int checksum = ~fold(sum) & 0xffff;
+		if (udp && checksum == 0) {
+			checksum = 0xffff; // Zero means no checksum for UDP.
+		}
+		this.buffer.putShort(checksumOffset, (short) checksum);
+	}
+
+	private static int fold(final int sum) {
+		int folded = (sum & 0xffff) + (sum >>> 16);
+		return (folded & 0xffff) + (folded >>> 16);
+	}
+
+	/**
+	 * Frame buffer, position 0 and limit {@link PacketTemplate#length()}.
+	 * @return returns direct buffer.
+	 */
+	public ByteBuffer buffer() {
+		return this.buffer;
+	}
+
+	public int length() {
+		return this.length;
+	}
+
+	/**
+	 * Offset of IPv4 header.
+	 * @return returns offset, or -1 if the frame has no IPv4 header.
+	 */
+	public int getIpOffset() {
+		return this.ipOffset;
+	}
+
+	/**
+	 * IPv4 protocol number.
+	 * @return returns protocol, or -1 if the frame has no IPv4 header.
+	 */
+	public int getProtocol() {
+		return this.protocol;
+	}
+
+	/**
+	 * Offset of TCP or UDP header.
+	 * @return returns offset, or -1 if the packet is not TCP or UDP (or is a fragment).
+	 */
+	public int getL4Offset() {
+		return this.l4Offset;
+	}
+
+	/**
+	 * Offset of the first byte after the TCP/UDP header (or after the IPv4 header for other protocols).
+	 * @return returns payload offset.
+	 */
+	public int getPayloadOffset() {
+		return this.payloadOffset;
+	}
+
+	/**
+	 * End of the IPv4 packet, Ethernet padding after it is not covered by checksums.
+	 * @return returns offset of the first byte after the IPv4 packet.
+	 */
+	public int getPayloadEnd() {
+		return this.ipEnd;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PacketTemplate{")
+				.append("length=").append(this.length)
+				.append(", ipOffset=").append(this.ipOffset)
+				.append(", protocol=").append(this.protocol)
+				.append(", l4Offset=").append(this.l4Offset)
+				.append(", payloadOffset=").append(this.payloadOffset)
+				.append('}')
+				.toString();
+	}
+
+}
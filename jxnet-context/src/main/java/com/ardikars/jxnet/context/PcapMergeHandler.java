@@ -0,0 +1,43 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.context;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.jxnet.PcapPktHdr;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Callback function used by {@link PcapMergeReader}, packets are tagged with their source index.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public interface PcapMergeHandler<T> {
+
+	/**
+	 * Next packet in timestamp order.
+	 * @param user user arg.
+	 * @param source index of the source file, in order given to {@link PcapMergeReader#open(java.util.List, int, com.ardikars.jxnet.PcapTimestampPrecision)}.
+	 * @param h packet header.
+	 * @param bytes read only packet buffer, valid until the next packet is read.
+	 */
+	void nextPacket(T user, int source, PcapPktHdr h, ByteBuffer bytes);
+
+}
@@ -0,0 +1,535 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.context;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.BgzfInputStream;
+import com.ardikars.jxnet.DataLinkType;
+import com.ardikars.jxnet.PcapHandler;
+import com.ardikars.jxnet.PcapOfflineReader;
+import com.ardikars.jxnet.PcapPktHdr;
+import com.ardikars.jxnet.PcapStreamReader;
+import com.ardikars.jxnet.PcapTimestampPrecision;
+import com.ardikars.jxnet.RawPcapHandler;
+import com.ardikars.jxnet.util.DirectMemory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Offline source which merges multiple savefiles (plain or compressed, see {@link PcapStreamReader})
+ * into a single stream of packets in timestamp order, like mergecap.
+ * Every file has a cursor holding its next packet and a read ahead buffer, cursors are kept in a heap ordered
+ * by timestamp (ties are broken by source index), so memory use is bounded by number of files x read ahead size.
+ * Block compressed files share one pool of inflater threads, one per available processor.
+ * Can be given to {@link Application#run(String, String, String, PcapOfflineReader)}.
+ * All files must have the same data link type, version and byte order are taken from the first file.
+ * Reader is not thread safe, except {@link PcapMergeReader#breakLoop()}.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable(volatiles = { "breakLoop" })
+public final class PcapMergeReader implements PcapOfflineReader {
+
+	public static final int DEFAULT_READ_AHEAD_SIZE = 1 << 16;
+
+	private static final int INFLATER_READ_AHEAD = 2;
+
+	private static final Comparator<Cursor> TIMESTAMP_ORDER = new Comparator<Cursor>() {
+		@Override
+		public int compare(Cursor left, Cursor right) {
+			long leftSec = left.header.getTvSec() & 0xffffffffL;
+			long rightSec = right.header.getTvSec() & 0xffffffffL;
+			if (leftSec != rightSec) {
+				return leftSec < rightSec ? -1 : 1;
+			}
+			if (left.header.getTvUsec() != right.header.getTvUsec()) {
+				return left.header.getTvUsec() < right.header.getTvUsec() ? -1 : 1;
+			}
+			return left.index < right.index ? -1 : (left.index == right.index ? 0 : 1);
+		}
+	};
+
+	private final List<String> fileNames;
+	private final Cursor[] cursors;
+	private final PriorityQueue<Cursor> heap;
+	private final PcapTimestampPrecision timestampPrecision;
+	private final ExecutorService inflaters;
+
+	private Cursor current;
+	private ByteBuffer direct;
+	private long directAddress;
+	private boolean primed;
+	private volatile boolean breakLoop;
+	private boolean closed;
+	private String err = "";
+
+	private PcapMergeReader(final List<String> fileNames, final int readAheadSize,
+							final PcapTimestampPrecision timestampPrecision) throws IOException {
+		this.fileNames = Collections.unmodifiableList(new ArrayList<String>(fileNames));
+		this.timestampPrecision = timestampPrecision;
+		this.inflaters = BgzfInputStream.newInflaterPool(Runtime.getRuntime().availableProcessors());
+		this.cursors = new Cursor[fileNames.size()];
+		this.heap = new PriorityQueue<Cursor>(Math.max(1, this.cursors.length), TIMESTAMP_ORDER);
+		try {
+			for (int i = 0; i < this.cursors.length; i++) {
+				this.cursors[i] = new Cursor(i, PcapStreamReader.open(this.fileNames.get(i), INFLATER_READ_AHEAD,
+						readAheadSize, timestampPrecision, this.inflaters));
+				final DataLinkType linkType = this.cursors[i].reader.getDataLinkType();
+				final DataLinkType expected = this.cursors[0].reader.getDataLinkType();
+				if (!linkType.getValue().equals(expected.getValue())) {
+					throw new IOException(this.fileNames.get(i) + ": data link type " + linkType
+							+ " doesn't match " + expected + " of " + this.fileNames.get(0) + ".");
+				}
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open savefiles with default read ahead size and microsecond timestamp.
+	 * @param fileNames file names.
+	 * @return returns PcapMergeReader.
+	 * @throws IOException a file can't be read or is not a savefile.
+	 */
+	public static PcapMergeReader open(final String... fileNames) throws IOException {
+		Validate.notIllegalArgument(fileNames != null, new IllegalArgumentException("File names should be not null."));
+		return open(Arrays.asList(fileNames), DEFAULT_READ_AHEAD_SIZE, PcapTimestampPrecision.MICRO);
+	}
+
+	/**
+	 * Open savefiles.
+	 * @param fileNames file names, packets are tagged with index of the file in this list.
+	 * @param readAheadSize initial read ahead buffer size per file.
+	 * @param timestampPrecision precision of timestamp given to the callbacks, converted from the file precision.
+	 * @return returns PcapMergeReader.
+	 * @throws IOException a file can't be read or is not a savefile.
+	 */
+	public static PcapMergeReader open(final List<String> fileNames, final int readAheadSize,
+									   final PcapTimestampPrecision timestampPrecision) throws IOException {
+		Validate.notIllegalArgument(fileNames != null && !fileNames.isEmpty(),
+				new IllegalArgumentException("File names should be not null or empty."));
+		Validate.notIllegalArgument(readAheadSize > 0,
+				new IllegalArgumentException("Read ahead size should be greater than 0."));
+		Validate.notIllegalArgument(timestampPrecision != null,
+				new IllegalArgumentException("Timestamp precision should be not null."));
+		return new PcapMergeReader(fileNames, readAheadSize, timestampPrecision);
+	}
+
+	/**
+	 * Read packets in timestamp order until cnt is exhausted or end of all files,
+	 * see {@link com.ardikars.jxnet.Jxnet#PcapLoop(com.ardikars.jxnet.Pcap, int, PcapHandler, Object)}.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted or there is no more packets, -1 on error,
+	 * -2 if the loop terminated by {@link PcapMergeReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 */
+	public <T> int loop(final int cnt, final PcapHandler<T> callback, final T user) throws IOException {
+		int result = dispatch(cnt, callback, user);
+		return result < 0 ? result : 0;
+	}
+
+	/**
+	 * Read packets in timestamp order until cnt is exhausted or end of all files,
+	 * see {@link com.ardikars.jxnet.Jxnet#PcapDispatch(com.ardikars.jxnet.Pcap, int, PcapHandler, Object)}.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns number of packets read, -1 on error, -2 if the loop terminated by {@link PcapMergeReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 */
+	public <T> int dispatch(final int cnt, final PcapHandler<T> callback, final T user) throws IOException {
+		Validate.notIllegalArgument(callback != null, new IllegalArgumentException("Callback should be not null."));
+		int processed = 0;
+		while (cnt <= 0 || processed < cnt) {
+			if (this.breakLoop) {
+				this.breakLoop = false;
+				return -2;
+			}
+			int result = advance();
+			if (result <= 0) {
+				return result < 0 ? result : processed;
+			}
+			callback.nextPacket(user, this.current.header.copy(), this.current.data);
+			processed++;
+		}
+		return processed;
+	}
+
+	/**
+	 * Read packets in timestamp order until cnt is exhausted or end of all files, packets are tagged with source index.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted or there is no more packets, -1 on error,
+	 * -2 if the loop terminated by {@link PcapMergeReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 */
+	public <T> int loop(final int cnt, final PcapMergeHandler<T> callback, final T user) throws IOException {
+		int result = dispatch(cnt, callback, user);
+		return result < 0 ? result : 0;
+	}
+
+	/**
+	 * Read packets in timestamp order until cnt is exhausted or end of all files, packets are tagged with source index.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns number of packets read, -1 on error, -2 if the loop terminated by {@link PcapMergeReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 */
+	public <T> int dispatch(final int cnt, final PcapMergeHandler<T> callback, final T user) throws IOException {
+		Validate.notIllegalArgument(callback != null, new IllegalArgumentException("Callback should be not null."));
+		int processed = 0;
+		while (cnt <= 0 || processed < cnt) {
+			if (this.breakLoop) {
+				this.breakLoop = false;
+				return -2;
+			}
+			int result = advance();
+			if (result <= 0) {
+				return result < 0 ? result : processed;
+			}
+			callback.nextPacket(user, this.current.index, this.current.header.copy(), this.current.data);
+			processed++;
+		}
+		return processed;
+	}
+
+	/**
+	 * Read packets in timestamp order until cnt is exhausted or end of all files, memory address given to the callback
+	 * point to a direct buffer owned by this reader and valid until the next packet is read.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted or there is no more packets, -1 on error,
+	 * -2 if the loop terminated by {@link PcapMergeReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException address of direct buffer is not accessible on this platform.
+	 */
+	public <T> int loop(final int cnt, final RawPcapHandler<T> callback, final T user)
+			throws IOException, UnsupportedOperationException {
+		int result = dispatch(cnt, callback, user);
+		return result < 0 ? result : 0;
+	}
+
+	/**
+	 * Read packets in timestamp order until cnt is exhausted or end of all files, memory address given to the callback
+	 * point to a direct buffer owned by this reader and valid until the next packet is read.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns number of packets read, -1 on error, -2 if the loop terminated by {@link PcapMergeReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException address of direct buffer is not accessible on this platform.
+	 */
+	public <T> int dispatch(final int cnt, final RawPcapHandler<T> callback, final T user)
+			throws IOException, UnsupportedOperationException {
+		Validate.notIllegalArgument(callback != null, new IllegalArgumentException("Callback should be not null."));
+		int processed = 0;
+		while (cnt <= 0 || processed < cnt) {
+			if (this.breakLoop) {
+				this.breakLoop = false;
+				return -2;
+			}
+			int result = advance();
+			if (result <= 0) {
+				return result < 0 ? result : processed;
+			}
+			PcapPktHdr header = this.current.header;
+			callback.nextPacket(user, header.getCapLen(), header.getLen(), header.getTvSec(), header.getTvUsec(),
+					copyToDirect());
+			processed++;
+		}
+		return processed;
+	}
+
+	/**
+	 * Read next packet in timestamp order.
+	 * @param pktHdr packet header.
+	 * @return returns read only packet buffer (valid until the next packet is read),
+	 * or null if there is no more packets or on error.
+	 * @throws IOException io exception.
+	 */
+	public ByteBuffer next(final PcapPktHdr pktHdr) throws IOException {
+		if (advance() <= 0) {
+			return null;
+		}
+		copy(this.current.header, pktHdr);
+		return this.current.data;
+	}
+
+	/**
+	 * Read next packet in timestamp order and copy it into given buffer.
+	 * On success the buffer position is the captured length and the limit is the capacity.
+	 * @param pktHdr packet header.
+	 * @param pktData packet buffer.
+	 * @return returns 1 on success, -1 on error, -2 if there is no more packets.
+	 * @throws IOException io exception.
+	 */
+	public int nextEx(final PcapPktHdr pktHdr, final ByteBuffer pktData) throws IOException {
+		int result = advance();
+		if (result <= 0) {
+			return result < 0 ? result : -2;
+		}
+		copy(this.current.header, pktHdr);
+		pktData.clear();
+		pktData.put(this.current.data.duplicate());
+		return 1;
+	}
+
+	/**
+	 * Read next packet in timestamp order into a direct buffer owned by this reader.
+	 * @param pktHdr packet header.
+	 * @param pktData pktData[0] is packet memory address (valid until the next packet is read),
+	 * pktData[1] is captured length.
+	 * @return returns 1 on success, -1 on error, -2 if there is no more packets.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException address of direct buffer is not accessible on this platform.
+	 */
+	public int nextEx0(final PcapPktHdr pktHdr, final long[] pktData) throws IOException, UnsupportedOperationException {
+		if (pktData == null || pktData.length < 2) {
+			throw new IllegalArgumentException("Packet data length should be greater than or equal to 2.");
+		}
+		int result = advance();
+		if (result <= 0) {
+			return result < 0 ? result : -2;
+		}
+		copy(this.current.header, pktHdr);
+		pktData[0] = copyToDirect();
+		pktData[1] = this.current.header.getCapLen();
+		return 1;
+	}
+
+	/**
+	 * Terminate running loop.
+	 */
+	public void breakLoop() {
+		this.breakLoop = true;
+	}
+
+	/**
+	 * Move the cursor of previous packet, then take the oldest packet from the heap.
+	 * The previous cursor is moved lazily, so the last packet buffer stay valid until the next read.
+	 * @return returns 1 on success, 0 on end of all files, -1 on error.
+	 * @throws IOException io exception.
+	 */
+	private int advance() throws IOException {
+		if (this.closed) {
+			throw new IOException("Reader already closed.");
+		}
+		if (!this.primed) {
+			this.primed = true;
+			for (Cursor cursor : this.cursors) {
+				if (push(cursor) < 0) {
+					return -1;
+				}
+			}
+		} else if (this.current != null) {
+			Cursor cursor = this.current;
+			this.current = null;
+			if (push(cursor) < 0) {
+				return -1;
+			}
+		}
+		this.current = this.heap.poll();
+		return this.current == null ? 0 : 1;
+	}
+
+	private int push(final Cursor cursor) throws IOException {
+		int result = cursor.advance();
+		if (result > 0) {
+			this.heap.add(cursor);
+		} else if (result < 0) {
+			this.err = this.fileNames.get(cursor.index) + ": " + cursor.reader.getErr();
+		}
+		return result;
+	}
+
+	/**
+	 * Copy the last packet read into the direct buffer of this reader, packets of different files
+	 * are in different read ahead buffers.
+	 * @return returns memory address of the direct buffer.
+	 */
+	private long copyToDirect() {
+		ByteBuffer data = this.current.data.duplicate();
+		if (this.direct == null || this.direct.capacity() < data.remaining()) {
+			this.direct = ByteBuffer.allocateDirect(Math.max(data.remaining(), getSnaplen()));
+			this.directAddress = DirectMemory.address(this.direct);
+		}
+		this.direct.clear();
+		this.direct.put(data);
+		return this.directAddress;
+	}
+
+	private static void copy(final PcapPktHdr src, final PcapPktHdr dst) {
+		dst.set(src.getCapLen(), src.getLen(), src.getTvSec(), src.getTvUsec());
+	}
+
+	/**
+	 * Source index of the last packet read.
+	 * @return returns index of the file, or -1 if there is no packet read yet.
+	 */
+	public int getSource() {
+		return this.current == null ? -1 : this.current.index;
+	}
+
+	/**
+	 * Number of merged files.
+	 * @return returns number of files.
+	 */
+	public int getSourceCount() {
+		return this.cursors.length;
+	}
+
+	/**
+	 * Merged files.
+	 * @return returns file names in source index order.
+	 */
+	public List<String> getFileNames() {
+		return this.fileNames;
+	}
+
+	public boolean isSwapped() {
+		return this.cursors[0].reader.isSwapped();
+	}
+
+	public PcapTimestampPrecision getTimestampPrecision() {
+		return this.timestampPrecision;
+	}
+
+	public int getMajorVersion() {
+		return this.cursors[0].reader.getMajorVersion();
+	}
+
+	public int getMinorVersion() {
+		return this.cursors[0].reader.getMinorVersion();
+	}
+
+	/**
+	 * Biggest snapshot length of merged files.
+	 * @return returns snapshot length.
+	 */
+	public int getSnaplen() {
+		int snaplen = 0;
+		for (Cursor cursor : this.cursors) {
+			snaplen = Math.max(snaplen, cursor.reader.getSnaplen());
+		}
+		return snaplen;
+	}
+
+	public DataLinkType getDataLinkType() {
+		return this.cursors[0].reader.getDataLinkType();
+	}
+
+	/**
+	 * Last error message, prefixed by file name.
+	 * @return returns error message.
+	 */
+	public String getErr() {
+		return this.err;
+	}
+
+	/**
+	 * Check reader.
+	 * @return returns true if closed, false otherwise.
+	 */
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		this.heap.clear();
+		this.current = null;
+		IOException exception = null;
+		for (Cursor cursor : this.cursors) {
+			if (cursor != null) {
+				try {
+					cursor.reader.close();
+				} catch (IOException e) {
+					exception = exception == null ? e : exception;
+				}
+			}
+		}
+		this.inflaters.shutdownNow();
+		if (exception != null) {
+			throw exception;
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PcapMergeReader{")
+				.append("fileNames=").append(this.fileNames)
+				.append(", timestampPrecision=").append(this.timestampPrecision)
+				.append('}')
+				.toString();
+	}
+
+	/**
+	 * Next packet of a file.
+	 */
+	private static final class Cursor {
+
+		private final int index;
+		private final PcapOfflineReader reader;
+		private final PcapPktHdr header = new PcapPktHdr();
+		private ByteBuffer data;
+
+		Cursor(final int index, final PcapOfflineReader reader) {
+			this.index = index;
+			this.reader = reader;
+		}
+
+		int advance() throws IOException {
+			this.data = this.reader.next(this.header);
+			if (this.data == null) {
+				return this.reader.getErr().isEmpty() ? 0 : -1;
+			}
+			return 1;
+		}
+
+	}
+
+}
@@ -0,0 +1,373 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.context;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+import com.ardikars.common.logging.Logger;
+import com.ardikars.common.logging.LoggerFactory;
+import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.PcapCode;
+import com.ardikars.jxnet.PcapOfflineReader;
+import com.ardikars.jxnet.PcapPktHdr;
+import com.ardikars.jxnet.PcapTimestampPrecision;
+import com.ardikars.jxnet.exception.PlatformNotSupportedException;
+import com.ardikars.jxnet.util.DirectMemory;
+
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Replay packets of an offline source to a target, see {@link Jxnet#PcapInject(Pcap, ByteBuffer, int)}.
+ * Packets can be sent at original timing (optionally scaled by a multiplier),
+ * at fixed packet or bit rate, or as fast as possible.
+ * Send times are computed from the start of the replay (no accumulated drift),
+ * the replay thread sleeps until {@link PcapReplay.Builder#spinThreshold(long)} before the send time,
+ * then spins, so inter packet gaps are accurate to a few microseconds.
+ * Replay is not thread safe, except {@link PcapReplay#stop()}.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable(volatiles = { "stop" })
+public final class PcapReplay {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(PcapReplay.class);
+
+	public static final long DEFAULT_SPIN_THRESHOLD = 200000L;
+
+	private static final int MAX_SNAPLEN = 262144;
+
+	private final PcapOfflineReader reader;
+	private final Target target;
+	private final Pacing pacing;
+	private final double rate;
+	private final long spinThreshold;
+	private final int count;
+
+	private volatile boolean stop;
+
+	private PcapReplay(final Builder builder) {
+		this.reader = builder.reader;
+		this.target = builder.target;
+		this.pacing = builder.pacing;
+		this.rate = builder.rate;
+		this.spinThreshold = builder.spinThreshold;
+		this.count = builder.count;
+	}
+
+	/**
+	 * Replay packets until count is exhausted, end of source or {@link PcapReplay#stop()}.
+	 * The reader is not closed.
+	 * @return returns replay statistics.
+	 * @throws IOException error while reading the source.
+	 */
+	public PcapReplayStat replay() throws IOException {
+		// Packets are sent from the memory of the reader when possible, so there is no buffer to outgrow.
+		final boolean view = DirectMemory.isAccessSupported();
+		ByteBuffer buffer = view ? DirectMemory.newView()
+				: ByteBuffer.allocateDirect(Math.max(this.reader.getSnaplen(), MAX_SNAPLEN));
+		long[] pktData = new long[2];
+		PcapPktHdr pktHdr = new PcapPktHdr();
+		long scale = this.reader.getTimestampPrecision() == PcapTimestampPrecision.NANO ? 1L : 1000L;
+		long start = 0;
+		long last = 0;
+		long end = 0;
+		long firstTimestamp = 0;
+		long packets = 0;
+		long bytes = 0;
+		long bits = 0;
+		long failures = 0;
+		long maxLateness = 0;
+		double mean = 0;
+		double m2 = 0;
+		this.stop = false;
+		while ((this.count <= 0 || packets < this.count) && !this.stop) {
+			int result = view ? this.reader.nextEx0(pktHdr, pktData) : nextEx(pktHdr, buffer);
+			if (result == -2) {
+				break;
+			}
+			if (result < 0) {
+				throw new IOException(this.reader.getErr());
+			}
+			long timestamp = (pktHdr.getTvSec() & 0xffffffffL) * 1000000000L + pktHdr.getTvUsec() * scale;
+			if (packets == 0) {
+				start = System.nanoTime();
+				firstTimestamp = timestamp;
+			}
+			long deadline;
+			switch (this.pacing) {
+				case TIMESTAMP:
+					deadline = start + (long) ((timestamp - firstTimestamp) / this.rate);
+					break;
+				case PACKETS_PER_SECOND:
+					deadline = start + (long) (packets * 1e9 / this.rate);
+					break;
+				case BITS_PER_SECOND:
+					deadline = start + (long) (bits * 1e9 / this.rate);
+					break;
+				default:
+					deadline = start;
+					break;
+			}
+			waitUntil(deadline);
+			last = System.nanoTime();
+			if (this.pacing != Pacing.TOP_SPEED) {
+				long lateness = Math.max(0, last - deadline);
+				maxLateness = Math.max(maxLateness, lateness);
+				double delta = lateness - mean;
+				mean += delta / (packets + 1);
+				m2 += delta * (lateness - mean);
+			}
+			if (view) {
+				DirectMemory.view(buffer, pktData[0], (int) pktData[1]);
+			} else {
+				buffer.flip();
+			}
+			if (this.target.send(buffer, pktHdr.getCapLen())) {
+				bytes += pktHdr.getCapLen();
+			} else {
+				failures++;
+			}
+			end = System.nanoTime();
+			bits += pktHdr.getCapLen() * 8L;
+			packets++;
+		}
+		PcapReplayStat stat = new PcapReplayStat(packets, bytes, failures, end - start,
+				(long) mean, maxLateness, packets == 0 ? 0 : (long) Math.sqrt(m2 / packets));
+		if (LOGGER.isDebugEnabled()) {
+			LOGGER.debug("Replay finished: {}.", stat);
+		}
+		return stat;
+	}
+
+	/**
+	 * Copy the next packet into the replay buffer.
+	 */
+	private int nextEx(final PcapPktHdr pktHdr, final ByteBuffer buffer) throws IOException {
+		try {
+			return this.reader.nextEx(pktHdr, buffer);
+		} catch (BufferOverflowException e) {
+			throw new IOException("Packet is larger than replay buffer (" + buffer.capacity() + " bytes).");
+		}
+	}
+
+	private void waitUntil(final long deadline) {
+		long remaining;
+		while ((remaining = deadline - System.nanoTime()) > 0) {
+			if (remaining > this.spinThreshold) {
+				LockSupport.parkNanos(remaining - this.spinThreshold);
+			}
+		}
+	}
+
+	/**
+	 * Stop running replay, can be called from another thread.
+	 */
+	public void stop() {
+		this.stop = true;
+	}
+
+	public Pacing getPacing() {
+		return this.pacing;
+	}
+
+	public double getRate() {
+		return this.rate;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PcapReplay{")
+				.append("reader=").append(this.reader)
+				.append(", pacing=").append(this.pacing)
+				.append(", rate=").append(this.rate)
+				.append(", spinThreshold=").append(this.spinThreshold)
+				.append(", count=").append(this.count)
+				.append('}')
+				.toString();
+	}
+
+	public enum Pacing {
+
+		/**
+		 * Original timing, gaps are divided by the rate (speed multiplier).
+		 */
+		TIMESTAMP,
+
+		/**
+		 * Fixed rate in packets per second.
+		 */
+		PACKETS_PER_SECOND,
+
+		/**
+		 * Fixed rate in bits per second (captured bytes).
+		 */
+		BITS_PER_SECOND,
+
+		/**
+		 * As fast as possible, rate is ignored.
+		 */
+		TOP_SPEED
+
+	}
+
+	/**
+	 * Destination of replayed packets.
+	 */
+	public interface Target {
+
+		/**
+		 * Send a packet.
+		 * @param buf direct buffer, may point to the memory of the reader so it must not be modified.
+		 * @param size packet size.
+		 * @return returns true on success, false otherwise.
+		 */
+		boolean send(ByteBuffer buf, int size);
+
+	}
+
+	public static final class Builder implements com.ardikars.common.util.Builder<PcapReplay, Void> {
+
+		private PcapOfflineReader reader;
+		private Target target;
+		private Pacing pacing = Pacing.TIMESTAMP;
+		private double rate = 1.0;
+		private long spinThreshold = DEFAULT_SPIN_THRESHOLD;
+		private int count = -1;
+
+		/**
+		 * Source of packets.
+		 * @param reader offline reader.
+		 * @return returns Builder.
+		 */
+		public Builder reader(final PcapOfflineReader reader) {
+			this.reader = reader;
+			return this;
+		}
+
+		/**
+		 * Inject packets to a pcap handle (live, or dead for testing).
+		 * @param pcap pcap handle.
+		 * @return returns Builder.
+		 */
+		public Builder pcap(final Pcap pcap) {
+			Validate.notIllegalArgument(pcap != null, new IllegalArgumentException("Pcap should be not null."));
+			this.target = new Target() {
+				@Override
+				public boolean send(ByteBuffer buf, int size) {
+					return Jxnet.PcapInject(pcap, buf, size) >= 0;
+				}
+			};
+			return this;
+		}
+
+		/**
+		 * Inject packets to a context, fall back to {@link Context#pcapSendPacket(ByteBuffer, int)}
+		 * if {@link Context#pcapInject(ByteBuffer, int)} is not supported.
+		 * @param context context.
+		 * @return returns Builder.
+		 */
+		public Builder context(final Context context) {
+			Validate.notIllegalArgument(context != null, new IllegalArgumentException("Context should be not null."));
+			this.target = new Target() {
+
+				private boolean inject = true;
+
+				@Override
+				public boolean send(ByteBuffer buf, int size) {
+					if (inject) {
+						try {
+							return context.pcapInject(buf, size) == PcapCode.PCAP_OK;
+						} catch (PlatformNotSupportedException e) {
+							inject = false;
+						}
+					}
+					return context.pcapSendPacket(buf, size) == PcapCode.PCAP_OK;
+				}
+
+			};
+			return this;
+		}
+
+		public Builder target(final Target target) {
+			this.target = target;
+			return this;
+		}
+
+		/**
+		 * Pacing mode and rate.
+		 * @param pacing pacing mode.
+		 * @param rate speed multiplier for {@link Pacing#TIMESTAMP}, packets or bits per second, ignored for {@link Pacing#TOP_SPEED}.
+		 * @return returns Builder.
+		 */
+		public Builder pacing(final Pacing pacing, final double rate) {
+			this.pacing = pacing;
+			this.rate = rate;
+			return this;
+		}
+
+		/**
+		 * Remaining time to the send time under which the replay thread spins instead of sleeping.
+		 * @param spinThreshold threshold in nanoseconds.
+		 * @return returns Builder.
+		 */
+		public Builder spinThreshold(final long spinThreshold) {
+			this.spinThreshold = spinThreshold;
+			return this;
+		}
+
+		/**
+		 * Maximum number of packets, 0 or -1 is infinite.
+		 * @param count number of packets.
+		 * @return returns Builder.
+		 */
+		public Builder count(final int count) {
+			this.count = count;
+			return this;
+		}
+
+		@Override
+		public PcapReplay build() {
+			Validate.notIllegalArgument(this.reader != null, new IllegalArgumentException("Reader should be not null."));
+			Validate.notIllegalArgument(this.target != null, new IllegalArgumentException("Target should be not null."));
+			Validate.notIllegalArgument(this.pacing != null, new IllegalArgumentException("Pacing should be not null."));
+			Validate.notIllegalArgument(this.pacing == Pacing.TOP_SPEED || this.rate > 0,
+					new IllegalArgumentException("Rate should be greater than 0."));
+			Validate.notIllegalArgument(this.spinThreshold >= 0,
+					new IllegalArgumentException("Spin threshold should be greater than or equal to 0."));
+			return new PcapReplay(this);
+		}
+
+		@Override
+		public PcapReplay build(Void value) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
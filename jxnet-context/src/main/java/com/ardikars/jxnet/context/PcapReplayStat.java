@@ -0,0 +1,142 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.context;
+
+import com.ardikars.common.annotation.Immutable;
+import com.ardikars.common.annotation.Incubating;
+
+/**
+ * Statistics of a {@link PcapReplay} run.
+ * Lateness is the difference between the time a packet is sent and its scheduled time,
+ * jitter is the standard deviation of lateness.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Immutable
+public final class PcapReplayStat {
+
+	private final long packets;
+	private final long bytes;
+	private final long failures;
+	private final long elapsed;
+	private final long meanLateness;
+	private final long maxLateness;
+	private final long jitter;
+
+	PcapReplayStat(final long packets, final long bytes, final long failures, final long elapsed,
+				   final long meanLateness, final long maxLateness, final long jitter) {
+		this.packets = packets;
+		this.bytes = bytes;
+		this.failures = failures;
+		this.elapsed = elapsed;
+		this.meanLateness = meanLateness;
+		this.maxLateness = maxLateness;
+		this.jitter = jitter;
+	}
+
+	/**
+	 * Number of packets read from the source.
+	 * @return returns number of packets.
+	 */
+	public long getPackets() {
+		return this.packets;
+	}
+
+	/**
+	 * Number of bytes sent successfully.
+	 * @return returns number of bytes.
+	 */
+	public long getBytes() {
+		return this.bytes;
+	}
+
+	/**
+	 * Number of packets the target failed to send.
+	 * @return returns number of failures.
+	 */
+	public long getFailures() {
+		return this.failures;
+	}
+
+	/**
+	 * Time between the first and the last packet sent.
+	 * @return returns elapsed time in nanoseconds.
+	 */
+	public long getElapsed() {
+		return this.elapsed;
+	}
+
+	/**
+	 * Achieved packet rate.
+	 * @return returns packets per second.
+	 */
+	public double getPacketsPerSecond() {
+		return this.elapsed == 0 ? 0 : (this.packets - this.failures) * 1e9 / this.elapsed;
+	}
+
+	/**
+	 * Achieved bit rate.
+	 * @return returns bits per second.
+	 */
+	public double getBitsPerSecond() {
+		return this.elapsed == 0 ? 0 : this.bytes * 8e9 / this.elapsed;
+	}
+
+	/**
+	 * Mean lateness.
+	 * @return returns mean lateness in nanoseconds.
+	 */
+	public long getMeanLateness() {
+		return this.meanLateness;
+	}
+
+	/**
+	 * Max lateness.
+	 * @return returns max lateness in nanoseconds.
+	 */
+	public long getMaxLateness() {
+		return this.maxLateness;
+	}
+
+	/**
+	 * Standard deviation of lateness.
+	 * @return returns jitter in nanoseconds.
+	 */
+	public long getJitter() {
+		return this.jitter;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PcapReplayStat{")
+				.append("packets=").append(this.packets)
+				.append(", bytes=").append(this.bytes)
+				.append(", failures=").append(this.failures)
+				.append(", elapsed=").append(this.elapsed)
+				.append(", packetsPerSecond=").append(getPacketsPerSecond())
+				.append(", bitsPerSecond=").append(getBitsPerSecond())
+				.append(", meanLateness=").append(this.meanLateness)
+				.append(", maxLateness=").append(this.maxLateness)
+				.append(", jitter=").append(this.jitter)
+				.append('}')
+				.toString();
+	}
+
+}
@@ -0,0 +1,103 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.context;
+
+import com.ardikars.common.annotation.Immutable;
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.jxnet.PcapCode;
+
+/**
+ * Result of a {@link Context#pcapSwapFilter} call.
+ * Latency is the time between the request and the installation of the new program,
+ * transition packets are the packets delivered by the previous program meanwhile.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Immutable
+public final class PcapSwapFilterStat {
+
+	private final PcapCode code;
+	private final long compileTime;
+	private final long latency;
+	private final long transitionPackets;
+	private final boolean installedByCaptureThread;
+
+	PcapSwapFilterStat(final PcapCode code, final long compileTime, final long latency,
+					   final long transitionPackets, final boolean installedByCaptureThread) {
+		this.code = code;
+		this.compileTime = compileTime;
+		this.latency = latency;
+		this.transitionPackets = transitionPackets;
+		this.installedByCaptureThread = installedByCaptureThread;
+	}
+
+	/**
+	 * Result of the swap, the previous program stays installed on error.
+	 * @return returns PCAP_OK if the new program is installed, PCAP_ERROR otherwise.
+	 */
+	public PcapCode getCode() {
+		return this.code;
+	}
+
+	/**
+	 * Time spent compiling (or looking up) the new program, outside of the capture thread.
+	 * @return returns compile time in nanoseconds.
+	 */
+	public long getCompileTime() {
+		return this.compileTime;
+	}
+
+	/**
+	 * Time between the request and the installation of the new program.
+	 * @return returns latency in nanoseconds.
+	 */
+	public long getLatency() {
+		return this.latency;
+	}
+
+	/**
+	 * Number of packets delivered by the previous program while the swap was pending, on all handles.
+	 * @return returns number of packets.
+	 */
+	public long getTransitionPackets() {
+		return this.transitionPackets;
+	}
+
+	/**
+	 * Whether the new program was installed by a running loop, rather than by the caller.
+	 * @return returns true if installed by the capture thread.
+	 */
+	public boolean isInstalledByCaptureThread() {
+		return this.installedByCaptureThread;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PcapSwapFilterStat{")
+				.append("code=").append(this.code)
+				.append(", compileTime=").append(this.compileTime)
+				.append(", latency=").append(this.latency)
+				.append(", transitionPackets=").append(this.transitionPackets)
+				.append(", installedByCaptureThread=").append(this.installedByCaptureThread)
+				.append('}')
+				.toString();
+	}
+
+}
@@ -0,0 +1,305 @@
+package com.ardikars.jxnet.context;
+
+import static com.ardikars.jxnet.BpfInstruction.BPF_A;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ABS;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ADD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ALU;
+import static com.ardikars.jxnet.BpfInstruction.BPF_AND;
+import static com.ardikars.jxnet.BpfInstruction.BPF_B;
+import static com.ardikars.jxnet.BpfInstruction.BPF_DIV;
+import static com.ardikars.jxnet.BpfInstruction.BPF_H;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IMM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IND;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JEQ;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGE;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGT;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JMP;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JSET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_K;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LDX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LEN;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MEM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MISC;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MOD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MUL;
+import static com.ardikars.jxnet.BpfInstruction.BPF_NEG;
+import static com.ardikars.jxnet.BpfInstruction.BPF_OR;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ST;
+import static com.ardikars.jxnet.BpfInstruction.BPF_STX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_SUB;
+import static com.ardikars.jxnet.BpfInstruction.BPF_TAX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_TXA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_W;
+import static com.ardikars.jxnet.BpfInstruction.BPF_X;
+import static com.ardikars.jxnet.BpfInstruction.BPF_XOR;
+
+import com.ardikars.jxnet.BpfFilter;
+import com.ardikars.jxnet.BpfInstruction;
+import com.ardikars.jxnet.BpfInterpreter;
+import com.ardikars.jxnet.BpfProgram;
+import com.ardikars.jxnet.DataLinkType;
+import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.PcapPktHdr;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.BitSet;
+import java.util.Random;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PacketClassifierTest {
+
+    private static final int SNAPLEN = 262144;
+
+    private static final int[] OPCODES = {
+            BPF_LD | BPF_W | BPF_ABS, BPF_LD | BPF_H | BPF_ABS, BPF_LD | BPF_B | BPF_ABS, BPF_LD | BPF_W | BPF_LEN,
+            BPF_LDX | BPF_W | BPF_LEN, BPF_LD | BPF_W | BPF_IND, BPF_LD | BPF_H | BPF_IND, BPF_LD | BPF_B | BPF_IND,
+            BPF_LDX | BPF_MSH | BPF_B, BPF_LD | BPF_IMM, BPF_LDX | BPF_IMM, BPF_LD | BPF_MEM, BPF_LDX | BPF_MEM,
+            BPF_ST, BPF_STX, BPF_JMP | BPF_JA, BPF_JMP | BPF_JGT | BPF_K, BPF_JMP | BPF_JGE | BPF_K,
+            BPF_JMP | BPF_JEQ | BPF_K, BPF_JMP | BPF_JEQ | BPF_K, BPF_JMP | BPF_JEQ | BPF_K,
+            BPF_JMP | BPF_JSET | BPF_K, BPF_JMP | BPF_JGT | BPF_X, BPF_JMP | BPF_JGE | BPF_X,
+            BPF_JMP | BPF_JEQ | BPF_X, BPF_JMP | BPF_JSET | BPF_X,
+            BPF_ALU | BPF_ADD | BPF_X, BPF_ALU | BPF_SUB | BPF_X, BPF_ALU | BPF_MUL | BPF_X, BPF_ALU | BPF_DIV | BPF_X,
+            BPF_ALU | BPF_MOD | BPF_X, BPF_ALU | BPF_AND | BPF_X, BPF_ALU | BPF_OR | BPF_X, BPF_ALU | BPF_XOR | BPF_X,
+            BPF_ALU | BPF_LSH | BPF_X, BPF_ALU | BPF_RSH | BPF_X, BPF_ALU | BPF_ADD | BPF_K, BPF_ALU | BPF_SUB | BPF_K,
+            BPF_ALU | BPF_MUL | BPF_K, BPF_ALU | BPF_DIV | BPF_K, BPF_ALU | BPF_MOD | BPF_K, BPF_ALU | BPF_AND | BPF_K,
+            BPF_ALU | BPF_OR | BPF_K, BPF_ALU | BPF_XOR | BPF_K, BPF_ALU | BPF_LSH | BPF_K, BPF_ALU | BPF_RSH | BPF_K,
+            BPF_ALU | BPF_NEG, BPF_MISC | BPF_TAX, BPF_MISC | BPF_TXA, BPF_RET | BPF_K, BPF_RET | BPF_A
+    };
+
+    private static final String[] FILTERS = {
+            "icmp", "tcp port 80", "udp and portrange 1000-2000", "vlan and ip", "ip6", "net 10.0.0.0/8",
+            "len > 100", "ip[6:2] & 0x1fff != 0", "ip[2:2] / 4 > 20", "arp"
+    };
+
+    /**
+     * Like tcpdump -dd "ip and tcp port N" (or udp).
+     */
+    private static BpfInstruction[] portProgram(boolean tcp, int port) {
+        return new BpfInstruction[] {
+                BpfInstruction.of(BPF_LD | BPF_H | BPF_ABS, 0, 0, 12),
+                BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 0, 10, 0x800),
+                BpfInstruction.of(BPF_LD | BPF_B | BPF_ABS, 0, 0, 23),
+                BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 0, 8, tcp ? 6 : 17),
+                BpfInstruction.of(BPF_LD | BPF_H | BPF_ABS, 0, 0, 20),
+                BpfInstruction.of(BPF_JMP | BPF_JSET | BPF_K, 6, 0, 0x1fff),
+                BpfInstruction.of(BPF_LDX | BPF_MSH | BPF_B, 0, 0, 14),
+                BpfInstruction.of(BPF_LD | BPF_H | BPF_IND, 0, 0, 14),
+                BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 2, 0, port),
+                BpfInstruction.of(BPF_LD | BPF_H | BPF_IND, 0, 0, 16),
+                BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 0, 1, port),
+                BpfInstruction.of(BPF_RET | BPF_K, 0, 0, SNAPLEN),
+                BpfInstruction.of(BPF_RET | BPF_K, 0, 0, 0) };
+    }
+
+    /**
+     * Ethernet + IPv4 + TCP or UDP, sometimes fragmented or truncated.
+     */
+    private static ByteBuffer packet(Random random, ByteBuffer buffer, boolean tcp, int sourcePort, int port) {
+        buffer.clear();
+        buffer.put(new byte[12]);
+        buffer.putShort((short) 0x0800);
+        buffer.put((byte) 0x45).put((byte) 0).putShort((short) 40);
+        buffer.putShort((short) random.nextInt()).putShort((short) (random.nextInt(8) == 0 ? 0x2001 : 0x4000));
+        buffer.put((byte) 64).put((byte) (tcp ? 6 : 17)).putShort((short) 0);
+        buffer.putInt(0x0a000001).putInt(0xc0a80001);
+        buffer.putShort((short) sourcePort).putShort((short) port);
+        buffer.put(new byte[random.nextInt(20)]);
+        buffer.flip();
+        if (random.nextInt(8) == 0) {
+            buffer.limit(14 + 20 + 2 + random.nextInt(2));
+        }
+        return buffer;
+    }
+
+    private static int constant(Random random) {
+        switch (random.nextInt(4)) {
+            case 0:
+                return random.nextInt(4);
+            case 1:
+                return random.nextInt();
+            case 2:
+                return random.nextInt(80);
+            default:
+                return 1 << random.nextInt(32);
+        }
+    }
+
+    /**
+     * Random program with forward jumps only, bytes of the fuzzed packets are often small
+     * so comparisons with small constants are taken.
+     */
+    private static BpfInstruction[] program(Random random) {
+        BpfInstruction[] instructions = new BpfInstruction[2 + random.nextInt(30)];
+        for (int pc = 0; pc < instructions.length - 1; pc++) {
+            int opcode = OPCODES[random.nextInt(OPCODES.length)];
+            int remaining = instructions.length - pc - 1;
+            int k = constant(random);
+            int jt = 0;
+            int jf = 0;
+            if (opcode == (BPF_JMP | BPF_JA)) {
+                k = random.nextInt(remaining);
+            } else if ((opcode & 0x07) == BPF_JMP) {
+                jt = random.nextInt(Math.min(remaining, 256));
+                jf = random.nextInt(Math.min(remaining, 256));
+            } else if (opcode == (BPF_LD | BPF_MEM) || opcode == (BPF_LDX | BPF_MEM) || opcode == BPF_ST
+                    || opcode == BPF_STX) {
+                k = random.nextInt(BpfInstruction.BPF_MEMWORDS);
+            } else if ((opcode == (BPF_ALU | BPF_DIV | BPF_K) || opcode == (BPF_ALU | BPF_MOD | BPF_K)) && k == 0) {
+                k = 3;
+            }
+            instructions[pc] = BpfInstruction.of(opcode, jt, jf, k);
+        }
+        instructions[instructions.length - 1] = BpfInstruction.of(random.nextBoolean() ? BPF_RET | BPF_A
+                : BPF_RET | BPF_K, constant(random));
+        return instructions;
+    }
+
+    /**
+     * Same program with some constants changed, so the programs share a prefix and differ on some comparisons.
+     */
+    private static BpfInstruction[] variant(Random random, BpfInstruction[] program) {
+        BpfInstruction[] instructions = program.clone();
+        for (int pc = 0; pc < instructions.length; pc++) {
+            int code = instructions[pc].getCode();
+            if ((code == (BPF_JMP | BPF_JEQ | BPF_K) || (code & 0x07) == BPF_RET) && random.nextInt(3) == 0) {
+                instructions[pc] = BpfInstruction.of(code, instructions[pc].getJt(), instructions[pc].getJf(),
+                        constant(random));
+            }
+        }
+        return instructions;
+    }
+
+    private static void assertClassify(PacketClassifier classifier, BpfFilter[] filters, ByteBuffer packet,
+                                       int caplen, int len, BitSet matches) {
+        classifier.classify(packet, 0, caplen, len, matches);
+        for (int i = 0; i < filters.length; i++) {
+            assert matches.get(i) == (filters[i].filter(packet, 0, caplen, len) != 0) : i;
+        }
+    }
+
+    @Test
+    public void portTest() {
+        Random random = new Random(1);
+        BpfFilter[] filters = new BpfFilter[200];
+        for (int i = 0; i < filters.length; i++) {
+            filters[i] = BpfInterpreter.of(portProgram(i % 2 == 0, 1000 + i / 2));
+        }
+        PacketClassifier classifier = PacketClassifier.of(filters);
+        assert classifier.size() == filters.length;
+        // Shared protocol checks and one dispatch per port comparison, not one chain per program.
+        assert classifier.getNodeCount() < 2 * filters.length : classifier;
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        BitSet matches = new BitSet();
+        for (int i = 0; i < 2000; i++) {
+            boolean tcp = random.nextBoolean();
+            ByteBuffer packet = packet(random, buffer, tcp, 990 + random.nextInt(120), 990 + random.nextInt(120));
+            assertClassify(classifier, filters, packet, packet.limit(), packet.limit(), matches);
+        }
+        ByteBuffer packet = packet(new Random(2), buffer, true, 2000, 1010);
+        packet.limit(packet.capacity());
+        packet.put(20, (byte) 0x40).put(21, (byte) 0); // Not fragmented.
+        PcapPktHdr header = new PcapPktHdr(60, 60, 0, 0);
+        BitSet expected = new BitSet();
+        expected.set(20);
+        assert classifier.classify(header, packet).equals(expected);
+    }
+
+    @Test
+    public void fuzzTest() {
+        Random random = new Random(3);
+        byte[] bytes = new byte[64];
+        ByteBuffer heap = ByteBuffer.wrap(bytes);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        BitSet matches = new BitSet();
+        for (int i = 0; i < 300; i++) {
+            BpfFilter[] filters = new BpfFilter[1 + random.nextInt(40)];
+            BpfInstruction[] base = program(random);
+            for (int j = 0; j < filters.length; j++) {
+                filters[j] = BpfInterpreter.of(random.nextInt(4) == 0 ? program(random) : variant(random, base));
+            }
+            PacketClassifier classifier = PacketClassifier.of(filters);
+            for (int j = 0; j < 16; j++) {
+                random.nextBytes(bytes);
+                for (int b = 0; b < bytes.length; b++) {
+                    if (random.nextInt(3) != 0) {
+                        bytes[b] = (byte) random.nextInt(4);
+                    }
+                }
+                direct.clear();
+                direct.put(bytes).clear();
+                int caplen = random.nextInt(bytes.length);
+                int len = random.nextBoolean() ? caplen : random.nextInt();
+                assertClassify(classifier, filters, heap, caplen, len, matches);
+                assertClassify(classifier, filters, direct, caplen, len, matches);
+            }
+        }
+    }
+
+    @Test
+    public void invalidProgramTest() {
+        BpfFilter loop = BpfInterpreter.of(
+                BpfInstruction.of(BPF_LD | BPF_IMM, 0),
+                BpfInstruction.of(BPF_JMP | BPF_JA, -2),
+                BpfInstruction.of(BPF_RET | BPF_A, 0));
+        try {
+            PacketClassifier.of(loop);
+            assert false;
+        } catch (IllegalArgumentException e) {
+            assert e.getMessage() != null;
+        }
+        try {
+            PacketClassifier.of(new BpfFilter[0]);
+            assert false;
+        } catch (IllegalArgumentException e) {
+            assert e.getMessage() != null;
+        }
+    }
+
+    @Test
+    public void z_nativeTest() throws IOException {
+        BpfProgram[] programs = new BpfProgram[FILTERS.length + 100];
+        try {
+            for (int i = 0; i < programs.length; i++) {
+                String filter = i < FILTERS.length ? FILTERS[i] : (i % 2 == 0 ? "tcp" : "udp") + " port " + (1000 + i);
+                programs[i] = new BpfProgram();
+                assert Jxnet.PcapCompileNoPcap(65535, DataLinkType.EN10MB.getValue(), programs[i], filter, 1,
+                        0xffffff00) == 0;
+            }
+            PacketClassifier classifier = PacketClassifier.of(programs);
+            Random random = new Random(4);
+            ByteBuffer buffer = ByteBuffer.allocateDirect(128);
+            BitSet matches = new BitSet();
+            for (int i = 0; i < 2000; i++) {
+                ByteBuffer packet = packet(random, buffer, random.nextBoolean(), random.nextInt(2200),
+                        900 + random.nextInt(250));
+                PcapPktHdr header = new PcapPktHdr(packet.limit(), packet.limit() + random.nextInt(100), 0, 0);
+                classifier.classify(header, packet, matches);
+                for (int j = 0; j < programs.length; j++) {
+                    assert matches.get(j) == (Jxnet.PcapOfflineFilter(programs[j], header, packet) != 0) : j;
+                }
+            }
+        } finally {
+            for (BpfProgram program : programs) {
+                if (program != null) {
+                    program.close();
+                }
+            }
+        }
+    }
+
+}
@@ -0,0 +1,194 @@
+package com.ardikars.jxnet.context;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PacketGeneratorTest {
+
+    private static final int SOURCE = 0x0a000001; // 10.0.0.1
+
+    private static final class RecordingTarget implements PcapReplay.Target {
+
+        private final List<byte[]> packets = new ArrayList<byte[]>();
+
+        @Override
+        public boolean send(ByteBuffer buf, int size) {
+            assert buf.isDirect();
+            byte[] bytes = new byte[size];
+            buf.duplicate().get(bytes);
+            packets.add(bytes);
+            return true;
+        }
+
+    }
+
+    private static int sum(ByteBuffer buffer, int offset, int length, int initial) {
+        int sum = initial;
+        for (int i = 0; i < length; i++) {
+            sum += (buffer.get(offset + i) & 0xff) << ((i & 1) == 0 ? 8 : 0);
+        }
+        while ((sum >>> 16) != 0) {
+            sum = (sum & 0xffff) + (sum >>> 16);
+        }
+        return sum;
+    }
+
+    /**
+     * Ethernet (optionally VLAN tagged) + IPv4 + TCP or UDP frame with valid checksums.
+     */
+    private static ByteBuffer frame(int protocol, boolean vlan, int payload) {
+        int ip = vlan ? 18 : 14;
+        int l4Size = protocol == PacketTemplate.PROTOCOL_TCP ? 20 : 8;
+        int ipLength = 20 + l4Size + payload;
+        ByteBuffer frame = ByteBuffer.allocate(Math.max(60, ip + ipLength));
+        frame.put(new byte[] { 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11 });
+        if (vlan) {
+            frame.putShort((short) 0x8100).putShort((short) 10);
+        }
+        frame.putShort((short) 0x0800);
+        frame.put((byte) 0x45).put((byte) 0).putShort((short) ipLength).putShort((short) 1).putShort((short) 0x4000)
+                .put((byte) 64).put((byte) protocol).putShort((short) 0).putInt(SOURCE).putInt(0xc0a80001);
+        if (protocol == PacketTemplate.PROTOCOL_TCP) {
+            frame.putShort((short) 1024).putShort((short) 80).putInt(1).putInt(0)
+                    .put((byte) 0x50).put((byte) 0x18).putShort((short) 8192).putShort((short) 0).putShort((short) 0);
+        } else {
+            frame.putShort((short) 1024).putShort((short) 53).putShort((short) (8 + payload)).putShort((short) 0);
+        }
+        for (int i = 0; i < payload; i++) {
+            frame.put((byte) i);
+        }
+        frame.clear();
+        frame.putShort(ip + 10, (short) ~sum(frame, ip, 20, 0));
+        int checksumOffset = ip + 20 + (protocol == PacketTemplate.PROTOCOL_TCP ? 16 : 6);
+        frame.putShort(checksumOffset, (short) ~l4Sum(frame, ip));
+        return frame;
+    }
+
+    private static int l4Sum(ByteBuffer frame, int ip) {
+        int ipLength = frame.getShort(ip + 2) & 0xffff;
+        int pseudo = sum(frame, ip + 12, 8, (frame.get(ip + 9) & 0xff) + ipLength - 20);
+        return sum(frame, ip + 20, ipLength - 20, pseudo);
+    }
+
+    private static void assertChecksums(byte[] packet, int ip) {
+        ByteBuffer frame = ByteBuffer.wrap(packet);
+        assert sum(frame, ip, 20, 0) == 0xffff;
+        assert l4Sum(frame, ip) == 0xffff;
+    }
+
+    @Test
+    public void templateTest() {
+        PacketTemplate tcp = PacketTemplate.ethernet(frame(PacketTemplate.PROTOCOL_TCP, false, 10));
+        assert tcp.getIpOffset() == 14;
+        assert tcp.getProtocol() == PacketTemplate.PROTOCOL_TCP;
+        assert tcp.getL4Offset() == 34;
+        assert tcp.getPayloadOffset() == 54;
+        assert tcp.getPayloadEnd() == 64;
+        assert tcp.buffer().isDirect();
+        PacketTemplate udp = PacketTemplate.ethernet(frame(PacketTemplate.PROTOCOL_UDP, true, 4));
+        assert udp.getIpOffset() == 18;
+        assert udp.getL4Offset() == 38;
+        assert udp.getPayloadOffset() == 46;
+        // Ethernet padding is not part of the IPv4 packet.
+        assert udp.length() == 60;
+        assert udp.getPayloadEnd() == 50;
+        ByteBuffer arp = ByteBuffer.allocate(60);
+        arp.putShort(12, (short) 0x0806);
+        PacketTemplate other = PacketTemplate.ethernet(arp);
+        assert other.getIpOffset() == -1;
+        assert other.getL4Offset() == -1;
+    }
+
+    @Test
+    public void flowTest() {
+        RecordingTarget target = new RecordingTarget();
+        PacketGenerator generator = PacketGenerator.builder()
+                .template(PacketTemplate.ethernet(frame(PacketTemplate.PROTOCOL_TCP, false, 33)))
+                .template(PacketTemplate.ethernet(frame(PacketTemplate.PROTOCOL_UDP, true, 33)))
+                .mutator(PacketMutators.sourcePort(1024, 50, 1))
+                .mutator(PacketMutators.ipv4Source(SOURCE, 40, 50))
+                .mutator(PacketMutators.ipv4Destination(0xfffffff0, 32, 2000))
+                .mutator(PacketMutators.ipv4Identification())
+                .mutator(PacketMutators.tcpSequence(0xfffffff0L, 1460))
+                .mutator(PacketMutators.randomPayload(42))
+                .target(target)
+                .count(4000)
+                .build();
+        PcapReplayStat stat = generator.generate();
+        assert stat.getPackets() == 4000;
+        assert stat.getFailures() == 0;
+        assert generator.getSequence() == 4000;
+        Set<String> flows = new HashSet<String>();
+        for (int i = 0; i < target.packets.size(); i++) {
+            byte[] packet = target.packets.get(i);
+            int ip = i % 2 == 0 ? 14 : 18;
+            assertChecksums(packet, ip);
+            ByteBuffer frame = ByteBuffer.wrap(packet);
+            assert frame.getInt(ip + 12) == SOURCE + (i / 50) % 40;
+            assert frame.getInt(ip + 16) == 0xfffffff0 + (i / 2000) % 32;
+            assert (frame.getShort(ip + 20) & 0xffff) == 1024 + i % 50;
+            assert (frame.getShort(ip + 4) & 0xffff) == (i & 0xffff);
+            if (i % 2 == 0) {
+                assert frame.getInt(ip + 24) == (int) (0xfffffff0L + i * 1460L);
+            }
+            flows.add(frame.getInt(ip + 12) + ":" + frame.getInt(ip + 16) + ":" + frame.getShort(ip + 20));
+        }
+        assert flows.size() == 4000;
+        // Same seed and sequence give the same packet.
+        PacketTemplate template = PacketTemplate.ethernet(frame(PacketTemplate.PROTOCOL_UDP, false, 33));
+        PacketMutators.randomPayload(42).mutate(template, 7);
+        byte[] first = new byte[template.length()];
+        template.buffer().duplicate().get(first);
+        PacketMutators.randomPayload(42).mutate(template, 8);
+        PacketMutators.randomPayload(42).mutate(template, 7);
+        byte[] second = new byte[template.length()];
+        template.buffer().duplicate().get(second);
+        assert java.util.Arrays.equals(first, second);
+        assertChecksums(second, 14);
+    }
+
+    @Test
+    public void udpZeroChecksumTest() {
+        ByteBuffer frame = frame(PacketTemplate.PROTOCOL_UDP, false, 20);
+        frame.putShort(40, (short) 0);
+        PacketTemplate template = PacketTemplate.ethernet(frame);
+        for (int i = 0; i < 100; i++) {
+            PacketMutators.destinationPort(1, 65535, 1).mutate(template, i * 997);
+            assert template.buffer().getShort(40) == 0;
+        }
+    }
+
+    @Test
+    public void stopTest() {
+        final PacketGenerator[] generator = new PacketGenerator[1];
+        generator[0] = PacketGenerator.builder()
+                .template(PacketTemplate.of(ByteBuffer.allocate(64), -1))
+                .mutator(PacketMutators.counter(0, 8, 0, 1))
+                .target(new PcapReplay.Target() {
+                    @Override
+                    public boolean send(ByteBuffer buf, int size) {
+                        if (buf.getLong(0) == 99) {
+                            generator[0].stop();
+                        }
+                        return buf.getLong(0) % 2 == 0;
+                    }
+                })
+                .build();
+        PcapReplayStat stat = generator[0].generate();
+        assert stat.getPackets() == 100;
+        assert stat.getFailures() == 50;
+        assert stat.getBytes() == 50 * 64;
+    }
+
+}
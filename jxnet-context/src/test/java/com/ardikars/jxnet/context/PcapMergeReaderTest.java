@@ -0,0 +1,191 @@
+package com.ardikars.jxnet.context;
+
+import com.ardikars.jxnet.PcapFileReader;
+import com.ardikars.jxnet.PcapHandler;
+import com.ardikars.jxnet.PcapPktHdr;
+import com.ardikars.jxnet.PcapTimestampPrecision;
+import com.ardikars.jxnet.RawPcapHandler;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PcapMergeReaderTest {
+
+    /**
+     * Write savefile with packets at given timestamps (in microseconds), payload is the source index.
+     */
+    private static String savefile(int source, boolean gzip, int truncate, long... timestamps) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(24 + timestamps.length * (16 + 64)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(1);
+        for (long timestamp : timestamps) {
+            buffer.putInt((int) (timestamp / 1000000)).putInt((int) (timestamp % 1000000)).putInt(64).putInt(64);
+            for (int i = 0; i < 64; i++) {
+                buffer.put((byte) source);
+            }
+        }
+        File file = File.createTempFile("jxnet", gzip ? ".pcap.gz" : ".pcap");
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        if (gzip) {
+            out = new GZIPOutputStream(out);
+        }
+        try {
+            out.write(buffer.array(), 0, buffer.position() - truncate);
+        } finally {
+            out.close();
+        }
+        return file.getPath();
+    }
+
+    @Test
+    public void mergeTest() throws IOException {
+        PcapMergeReader reader = PcapMergeReader.open(
+                savefile(0, false, 0, 1000000L, 3000000L, 5000000L, 5000000L),
+                savefile(1, true, 0, 2000000L, 3000000L, 4000001L),
+                savefile(2, false, 0),
+                savefile(3, false, 0, 500L, 4000000L, 9000000L));
+        try {
+            assert reader.getSourceCount() == 4;
+            assert reader.getSnaplen() == 65535;
+            final List<Long> timestamps = new ArrayList<Long>();
+            final List<Integer> sources = new ArrayList<Integer>();
+            int result = reader.loop(-1, new PcapMergeHandler<String>() {
+                @Override
+                public void nextPacket(String user, int source, PcapPktHdr h, ByteBuffer bytes) {
+                    timestamps.add(h.getTvSec() * 1000000L + h.getTvUsec());
+                    sources.add(source);
+                    assert bytes.remaining() == 64;
+                    assert bytes.get(0) == (byte) source;
+                }
+            }, null);
+            assert result == 0;
+            assert timestamps.equals(Arrays.asList(500L, 1000000L, 2000000L, 3000000L, 3000000L,
+                    4000000L, 4000001L, 5000000L, 5000000L, 9000000L));
+            assert sources.equals(Arrays.asList(3, 0, 1, 0, 1, 3, 1, 0, 0, 3));
+            assert reader.next(new PcapPktHdr()) == null;
+        } finally {
+            reader.close();
+        }
+        assert reader.isClosed();
+    }
+
+    @Test
+    public void nextTest() throws IOException {
+        PcapMergeReader reader = PcapMergeReader.open(Arrays.asList(
+                savefile(0, false, 0, 2000L, 4000L),
+                savefile(1, false, 0, 1000L, 3000L)), 64, PcapTimestampPrecision.NANO);
+        try {
+            PcapPktHdr h = new PcapPktHdr();
+            ByteBuffer first = reader.next(h);
+            assert h.getTvUsec() == 1000000L;
+            assert reader.getSource() == 1;
+            assert first.get(0) == 1;
+            ByteBuffer data = ByteBuffer.allocate(128);
+            assert reader.nextEx(h, data) == 1;
+            assert h.getTvUsec() == 2000000L;
+            assert data.position() == 64 && data.get(0) == 0;
+            final int[] count = new int[1];
+            assert reader.dispatch(-1, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                    count[0]++;
+                }
+            }, null) == 2;
+            assert reader.nextEx(h, data) == -2;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void errorTest() throws IOException {
+        PcapMergeReader reader = PcapMergeReader.open(
+                savefile(0, false, 0, 1000L, 2000L, 3000L),
+                savefile(1, false, 10, 1500L, 2500L));
+        try {
+            final int[] count = new int[1];
+            PcapHandler<String> handler = new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                    count[0]++;
+                }
+            };
+            assert reader.loop(-1, handler, null) == -1;
+            assert count[0] == 2;
+            assert reader.getErr().contains("truncated dump file");
+            assert reader.loop(-1, handler, null) == 0;
+            assert count[0] == 4;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void linkTypeTest() throws IOException {
+        String other = savefile(1, false, 0, 1500L);
+        RandomAccessFile file = new RandomAccessFile(other, "rw");
+        try {
+            file.seek(20);
+            file.write(new byte[] {105, 0, 0, 0}); // IEEE 802.11, little endian.
+        } finally {
+            file.close();
+        }
+        try {
+            PcapMergeReader.open(savefile(0, false, 0, 1000L), other).close();
+            assert false;
+        } catch (IOException e) {
+            assert e.getMessage().contains("data link type");
+        }
+    }
+
+    @Test
+    public void rawHandlerTest() throws IOException {
+        if (!PcapFileReader.isMemoryAddressSupported()) {
+            return;
+        }
+        PcapMergeReader reader = PcapMergeReader.open(
+                savefile(0, false, 0, 1000L, 3000L),
+                savefile(1, true, 0, 2000L, 4000L, 5000L));
+        try {
+            final List<Long> timestamps = new ArrayList<Long>();
+            assert reader.loop(4, new RawPcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, int capLen, int len, int tvSec, long tvUsec, long memoryAddress) {
+                    assert capLen == 64;
+                    assert len == 64;
+                    assert memoryAddress != 0;
+                    timestamps.add(tvSec * 1000000L + tvUsec);
+                }
+            }, null) == 0;
+            assert timestamps.equals(Arrays.asList(1000L, 2000L, 3000L, 4000L));
+            PcapPktHdr header = new PcapPktHdr();
+            long[] data = new long[2];
+            assert reader.nextEx0(header, data) == 1;
+            assert header.getTvUsec() == 5000L;
+            assert data[0] != 0;
+            assert data[1] == 64;
+            assert reader.getSource() == 1;
+            assert reader.nextEx0(header, data) == -2;
+        } finally {
+            reader.close();
+        }
+    }
+
+}
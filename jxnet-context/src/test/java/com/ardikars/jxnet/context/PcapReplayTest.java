@@ -0,0 +1,148 @@
+package com.ardikars.jxnet.context;
+
+import com.ardikars.jxnet.PcapStreamReader;
+import com.ardikars.jxnet.PcapTimestampPrecision;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PcapReplayTest {
+
+    private static final int PACKETS = 20;
+
+    /**
+     * Savefile with 100 bytes packets, 10 milliseconds apart.
+     */
+    private static PcapStreamReader reader() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(24 + PACKETS * (16 + 100)).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(0xa1b2c3d4).putShort((short) 2).putShort((short) 4).putInt(0).putInt(0).putInt(65535).putInt(1);
+        for (int i = 0; i < PACKETS; i++) {
+            buffer.putInt(1000 + i / 100).putInt((i % 100) * 10000).putInt(100).putInt(100);
+            for (int j = 0; j < 100; j++) {
+                buffer.put((byte) i);
+            }
+        }
+        return PcapStreamReader.open(new ByteArrayInputStream(buffer.array()), PcapTimestampPrecision.MICRO);
+    }
+
+    private static final class RecordingTarget implements PcapReplay.Target {
+
+        private final List<Long> times = new ArrayList<Long>();
+
+        @Override
+        public boolean send(ByteBuffer buf, int size) {
+            assert buf.isDirect();
+            assert size == 100;
+            assert buf.get(0) == (byte) times.size();
+            times.add(System.nanoTime());
+            return times.size() % 10 != 0;
+        }
+
+    }
+
+    private static PcapReplayStat replay(RecordingTarget target, PcapReplay.Pacing pacing, double rate) throws IOException {
+        PcapStreamReader reader = reader();
+        try {
+            PcapReplay replay = PcapReplay.builder()
+                    .reader(reader)
+                    .target(target)
+                    .pacing(pacing, rate)
+                    .build();
+            PcapReplayStat stat = replay.replay();
+            assert stat.getPackets() == PACKETS;
+            assert stat.getFailures() == 2;
+            assert stat.getBytes() == (PACKETS - 2) * 100;
+            assert target.times.size() == PACKETS;
+            return stat;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void timestampTest() throws IOException {
+        RecordingTarget target = new RecordingTarget();
+        long begin = System.nanoTime();
+        PcapReplayStat stat = replay(target, PcapReplay.Pacing.TIMESTAMP, 2.0);
+        // 19 gaps of 5 milliseconds
+        assert stat.getElapsed() >= 95000000L;
+        assert stat.getMeanLateness() >= 0;
+        assert stat.getMaxLateness() >= stat.getMeanLateness();
+        // Deadlines are relative to the replay start, the first packet may be sent late.
+        for (int i = 0; i < PACKETS; i++) {
+            assert target.times.get(i) - begin >= i * 5000000L;
+        }
+    }
+
+    @Test
+    public void packetsPerSecondTest() throws IOException {
+        PcapReplayStat stat = replay(new RecordingTarget(), PcapReplay.Pacing.PACKETS_PER_SECOND, 1000);
+        assert stat.getElapsed() >= 19000000L;
+        assert stat.getPacketsPerSecond() <= 1000;
+    }
+
+    @Test
+    public void bitsPerSecondTest() throws IOException {
+        // 800 bits per packet at 400 kbit/s is 2 milliseconds per packet
+        PcapReplayStat stat = replay(new RecordingTarget(), PcapReplay.Pacing.BITS_PER_SECOND, 400000);
+        assert stat.getElapsed() >= 38000000L;
+    }
+
+    @Test
+    public void topSpeedTest() throws IOException {
+        PcapReplayStat stat = replay(new RecordingTarget(), PcapReplay.Pacing.TOP_SPEED, 0);
+        assert stat.getElapsed() < 95000000L;
+        assert stat.getJitter() == 0;
+    }
+
+    @Test
+    public void countAndStopTest() throws IOException {
+        PcapStreamReader reader = reader();
+        try {
+            PcapReplay replay = PcapReplay.builder()
+                    .reader(reader)
+                    .target(new RecordingTarget())
+                    .pacing(PcapReplay.Pacing.TOP_SPEED, 0)
+                    .count(5)
+                    .build();
+            assert replay.replay().getPackets() == 5;
+            final PcapReplay[] stopping = new PcapReplay[1];
+            stopping[0] = PcapReplay.builder()
+                    .reader(reader)
+                    .target(new PcapReplay.Target() {
+                        @Override
+                        public boolean send(ByteBuffer buf, int size) {
+                            stopping[0].stop();
+                            return true;
+                        }
+                    })
+                    .pacing(PcapReplay.Pacing.TOP_SPEED, 0)
+                    .build();
+            assert stopping[0].replay().getPackets() == 1;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidRateTest() throws IOException {
+        PcapReplay.builder()
+                .reader(reader())
+                .target(new RecordingTarget())
+                .pacing(PcapReplay.Pacing.PACKETS_PER_SECOND, 0)
+                .build();
+    }
+
+}
@@ -0,0 +1,128 @@
+package com.ardikars.jxnet.context;
+
+import com.ardikars.jxnet.BpfProgram;
+import com.ardikars.jxnet.BpfProgramCache;
+import com.ardikars.jxnet.Pcap;
+import com.ardikars.jxnet.PcapCode;
+import com.ardikars.jxnet.PcapHandler;
+import com.ardikars.jxnet.PcapPktHdr;
+
+import java.nio.ByteBuffer;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PcapSwapFilterTest {
+
+    private static final String PCAP_PATH = "../gradle/resources/pcap/icmp.pcap";
+
+    private static final int PACKETS = 8;
+
+    /**
+     * Every packet of the file (icmp over ipv4) is accepted by these filters.
+     */
+    private static final String[] FILTERS = { "icmp", "ip", "icmp or udp", "ip and not tcp" };
+
+    private static ApplicationContext open() {
+        return new ApplicationContext("swap", "Swap", "1.0.0", new Pcap.Builder()
+                .fileName(PCAP_PATH)
+                .pcapType(Pcap.PcapType.OFFLINE)
+                .errbuf(new StringBuilder()));
+    }
+
+    /**
+     * Hold the callback until the swapper waits for its program to be installed by the loop.
+     */
+    private static void awaitSwap(Thread swapper) {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (swapper.isAlive() && swapper.getState() != Thread.State.WAITING
+                && System.currentTimeMillis() < deadline) {
+            Thread.yield();
+        }
+    }
+
+    private static void swapWhileLooping(int cnt, int expected) throws InterruptedException {
+        final ApplicationContext context = open();
+        final BpfProgramCache cache = BpfProgramCache.getDefault();
+        final int acquired = cache.getAcquiredCount();
+        final PcapSwapFilterStat[] stats = new PcapSwapFilterStat[FILTERS.length];
+        final int[] programs = new int[FILTERS.length];
+        final Thread swapper = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < FILTERS.length; i++) {
+                        stats[i] = context.pcapSwapFilter(FILTERS[i], BpfProgram.BpfCompileMode.OPTIMIZE, 0);
+                        programs[i] = cache.getAcquiredCount();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        final int[] count = new int[1];
+        try {
+            swapper.start();
+            PcapCode code = context.pcapLoop(cnt, new PcapHandler<Thread>() {
+                @Override
+                public void nextPacket(Thread user, PcapPktHdr h, ByteBuffer bytes) {
+                    if (count[0]++ < FILTERS.length) {
+                        awaitSwap(user);
+                    }
+                }
+            }, swapper);
+            swapper.join();
+            assert code == PcapCode.PCAP_OK;
+            assert count[0] == expected;
+            // The first swap is requested while the loop is running, the loop is broken and resumed.
+            assert stats[0].isInstalledByCaptureThread();
+            for (int i = 0; i < FILTERS.length; i++) {
+                assert stats[i].getCode() == PcapCode.PCAP_OK;
+                // The previous program is released once the new one is installed.
+                assert programs[i] == acquired + 1;
+            }
+        } finally {
+            context.pcapFreeCode();
+            context.pcapClose();
+        }
+        assert cache.getAcquiredCount() == acquired;
+    }
+
+    @Test
+    public void swapFilterTest() throws InterruptedException {
+        swapWhileLooping(-1, PACKETS);
+    }
+
+    @Test
+    public void swapFilterCountTest() throws InterruptedException {
+        swapWhileLooping(PACKETS - 3, PACKETS - 3);
+    }
+
+    @Test
+    public void swapFilterCallbackTest() {
+        final ApplicationContext context = open();
+        final Exception[] exception = new Exception[1];
+        try {
+            PcapCode code = context.pcapLoop(1, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                    try {
+                        context.pcapSwapFilter(FILTERS[0], BpfProgram.BpfCompileMode.OPTIMIZE, 0);
+                    } catch (Exception e) {
+                        exception[0] = e;
+                    }
+                }
+            }, null);
+            assert code == PcapCode.PCAP_OK;
+            assert exception[0] instanceof IllegalStateException;
+        } finally {
+            context.pcapClose();
+        }
+    }
+
+}
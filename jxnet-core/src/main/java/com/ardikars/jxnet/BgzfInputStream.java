@@ -0,0 +1,337 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.util.Validate;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Input stream of block compressed gzip (BGZF) archive, see {@link BgzfOutputStream}.
+ * BGZF is a series of independent gzip members, each member store its compressed size in the "BC" extra subfield,
+ * so members can be split without inflating them. Compressed members are read sequentially and inflated
+ * on a thread pool, up to given number of members ahead of the consumer, the output is in file order.
+ * Stream is not thread safe.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public final class BgzfInputStream extends InputStream {
+
+	/**
+	 * Maximum size of a compressed member, and of its uncompressed content.
+	 */
+	public static final int MAX_BLOCK_SIZE = 65536;
+
+	static final int HEADER_SIZE = 12;
+
+	static final int TRAILER_SIZE = 8;
+
+	private static final byte[] EMPTY = new byte[0];
+
+	private final InputStream in;
+	private final ExecutorService executorService;
+	private final boolean shutdown;
+	private final int readAhead;
+	private final LinkedList<Future<byte[]>> pending = new LinkedList<Future<byte[]>>();
+
+	private final byte[] header = new byte[HEADER_SIZE];
+	private byte[] current = EMPTY;
+	private int currentOffset;
+	private boolean eof;
+	private boolean closed;
+
+	/**
+	 * Create BGZF input stream which inflate members on its own thread pool.
+	 * @param in compressed stream.
+	 * @param parallelism number of inflater threads.
+	 */
+	public BgzfInputStream(final InputStream in, final int parallelism) {
+		this(in, parallelism, Executors.newFixedThreadPool(parallelism, new InflaterThreadFactory()), true);
+	}
+
+	/**
+	 * Create BGZF input stream which inflate members on given executor.
+	 * @param in compressed stream.
+	 * @param readAhead maximum number of members being inflated ahead of the consumer.
+	 * @param executorService executor service, not shut down by {@link BgzfInputStream#close()}.
+	 */
+	public BgzfInputStream(final InputStream in, final int readAhead, final ExecutorService executorService) {
+		this(in, readAhead, executorService, false);
+	}
+
+	private BgzfInputStream(final InputStream in, final int parallelism,
+							final ExecutorService executorService, final boolean shutdown) {
+		Validate.notIllegalArgument(in != null, new IllegalArgumentException("Input stream should be not null."));
+		Validate.notIllegalArgument(parallelism > 0,
+				new IllegalArgumentException("Parallelism should be greater than 0."));
+		Validate.notIllegalArgument(executorService != null,
+				new IllegalArgumentException("Executor service should be not null."));
+		this.in = in;
+		this.readAhead = shutdown ? parallelism * 2 : parallelism;
+		this.executorService = executorService;
+		this.shutdown = shutdown;
+	}
+
+	/**
+	 * Create thread pool of daemon inflater threads, which can be shared by many streams,
+	 * see {@link BgzfInputStream#BgzfInputStream(InputStream, int, ExecutorService)}.
+	 * @param parallelism number of inflater threads.
+	 * @return returns executor service, should be shut down by the caller.
+	 */
+	public static ExecutorService newInflaterPool(final int parallelism) {
+		Validate.notIllegalArgument(parallelism > 0,
+				new IllegalArgumentException("Parallelism should be greater than 0."));
+		return Executors.newFixedThreadPool(parallelism, new InflaterThreadFactory());
+	}
+
+	/**
+	 * Check whether given bytes start with a BGZF member header.
+	 * @param bytes first bytes of the file.
+	 * @param length number of valid bytes.
+	 * @return returns true if BGZF, false otherwise.
+	 */
+	public static boolean isBgzf(final byte[] bytes, final int length) {
+		if (length < HEADER_SIZE || (bytes[0] & 0xff) != 31 || (bytes[1] & 0xff) != 139
+				|| bytes[2] != 8 || (bytes[3] & 4) == 0) {
+			return false;
+		}
+		int xlen = (bytes[10] & 0xff) | (bytes[11] & 0xff) << 8;
+		return length >= HEADER_SIZE + xlen && blockSize(bytes, HEADER_SIZE, xlen) > 0;
+	}
+
+	@Override
+	public int read() throws IOException {
+		byte[] b = new byte[1];
+		return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+	}
+
+	@Override
+	public int read(final byte[] b, final int off, final int len) throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream already closed.");
+		}
+		if (len == 0) {
+			return 0;
+		}
+		while (this.currentOffset == this.current.length) {
+			if (!fill()) {
+				return -1;
+			}
+		}
+		int n = Math.min(len, this.current.length - this.currentOffset);
+		System.arraycopy(this.current, this.currentOffset, b, off, n);
+		this.currentOffset += n;
+		return n;
+	}
+
+	@Override
+	public int available() {
+		return this.current.length - this.currentOffset;
+	}
+
+	/**
+	 * Submit compressed members up to read ahead limit, then take the next inflated member.
+	 * @return returns false if there is no more members.
+	 * @throws IOException io exception.
+	 */
+	private boolean fill() throws IOException {
+		while (!this.eof && this.pending.size() < this.readAhead) {
+			Block block = readBlock();
+			if (block == null) {
+				this.eof = true;
+			} else {
+				this.pending.add(this.executorService.submit(block));
+			}
+		}
+		if (this.pending.isEmpty()) {
+			return false;
+		}
+		try {
+			this.current = this.pending.removeFirst().get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while inflating BGZF member.");
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof IOException) {
+				throw (IOException) e.getCause();
+			}
+			throw new IOException("Failed to inflate BGZF member: " + e.getCause().getMessage(), e.getCause());
+		}
+		this.currentOffset = 0;
+		return true;
+	}
+
+	private Block readBlock() throws IOException {
+		int n = readFully(this.header, 0, HEADER_SIZE);
+		if (n == 0) {
+			return null;
+		}
+		if (n < HEADER_SIZE) {
+			throw new EOFException("Truncated BGZF member header.");
+		}
+		if ((this.header[0] & 0xff) != 31 || (this.header[1] & 0xff) != 139
+				|| this.header[2] != 8 || (this.header[3] & 4) == 0) {
+			throw new IOException("Not a BGZF member.");
+		}
+		int xlen = (this.header[10] & 0xff) | (this.header[11] & 0xff) << 8;
+		byte[] extra = new byte[xlen];
+		if (readFully(extra, 0, xlen) < xlen) {
+			throw new EOFException("Truncated BGZF member header.");
+		}
+		int size = blockSize(extra, 0, xlen);
+		if (size < HEADER_SIZE + xlen + TRAILER_SIZE) {
+			throw new IOException("Not a BGZF member, missing or invalid BC subfield.");
+		}
+		byte[] data = new byte[size - HEADER_SIZE - xlen];
+		if (readFully(data, 0, data.length) < data.length) {
+			throw new EOFException("Truncated BGZF member.");
+		}
+		return new Block(data);
+	}
+
+	private int readFully(final byte[] b, final int off, final int len) throws IOException {
+		int n = 0;
+		while (n < len) {
+			int r = this.in.read(b, off + n, len - n);
+			if (r < 0) {
+				break;
+			}
+			n += r;
+		}
+		return n;
+	}
+
+	/**
+	 * Find total member size in the "BC" subfield.
+	 * @return returns member size, or -1 if not found.
+	 */
+	private static int blockSize(final byte[] extra, final int offset, final int xlen) {
+		int i = offset;
+		int end = offset + xlen;
+		while (i + 4 <= end) {
+			int slen = (extra[i + 2] & 0xff) | (extra[i + 3] & 0xff) << 8;
+			if (extra[i] == 'B' && extra[i + 1] == 'C' && slen == 2 && i + 6 <= end) {
+				return ((extra[i + 4] & 0xff) | (extra[i + 5] & 0xff) << 8) + 1;
+			}
+			i += 4 + slen;
+		}
+		return -1;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		for (Future<byte[]> future : this.pending) {
+			future.cancel(true);
+		}
+		this.pending.clear();
+		if (this.shutdown) {
+			this.executorService.shutdownNow();
+		}
+		this.in.close();
+	}
+
+	/**
+	 * Compressed data followed by CRC32 and uncompressed size.
+	 */
+	private static final class Block implements Callable<byte[]> {
+
+		private final byte[] data;
+
+		Block(final byte[] data) {
+			this.data = data;
+		}
+
+		@Override
+		public byte[] call() throws IOException {
+			int length = this.data.length - TRAILER_SIZE;
+			int crc = readInt(this.data, length);
+			int isize = readInt(this.data, length + 4);
+			if (isize < 0 || isize > MAX_BLOCK_SIZE) {
+				throw new IOException("Invalid BGZF member size: " + (isize & 0xffffffffL));
+			}
+			if (isize == 0) {
+				return EMPTY;
+			}
+			byte[] out = new byte[isize];
+			Inflater inflater = new Inflater(true);
+			try {
+				inflater.setInput(this.data, 0, length);
+				int n = 0;
+				while (n < isize && !inflater.finished()) {
+					int r = inflater.inflate(out, n, isize - n);
+					if (r == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+						break;
+					}
+					n += r;
+				}
+				if (n != isize) {
+					throw new IOException("Corrupted BGZF member, expected " + isize + " bytes, got " + n);
+				}
+			} catch (DataFormatException e) {
+				throw new IOException("Corrupted BGZF member: " + e.getMessage());
+			} finally {
+				inflater.end();
+			}
+			CRC32 crc32 = new CRC32();
+			crc32.update(out, 0, isize);
+			if ((int) crc32.getValue() != crc) {
+				throw new IOException("Corrupted BGZF member, CRC32 mismatch.");
+			}
+			return out;
+		}
+
+		private static int readInt(final byte[] b, final int off) {
+			return (b[off] & 0xff) | (b[off + 1] & 0xff) << 8 | (b[off + 2] & 0xff) << 16 | (b[off + 3] & 0xff) << 24;
+		}
+
+	}
+
+	private static final class InflaterThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "jxnet-inflater-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.util.Validate;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Output stream of block compressed gzip (BGZF) archive.
+ * Data is split into independent gzip members of at most {@link BgzfOutputStream#BLOCK_DATA_SIZE} bytes,
+ * the member size is stored in the "BC" extra subfield, and the archive ends with an empty member.
+ * The output is a valid (multi member) gzip file, and can be inflated in parallel by {@link BgzfInputStream}.
+ * Stream is not thread safe.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public final class BgzfOutputStream extends OutputStream {
+
+	/**
+	 * Maximum uncompressed size of a member, leave room for incompressible data.
+	 */
+	public static final int BLOCK_DATA_SIZE = 65280;
+
+	private static final int EXTRA_SIZE = 6;
+
+	private final OutputStream out;
+	private final Deflater deflater;
+	private final CRC32 crc32 = new CRC32();
+	private final byte[] buffer = new byte[BLOCK_DATA_SIZE];
+	private final byte[] compressed = new byte[BgzfInputStream.MAX_BLOCK_SIZE];
+	private int count;
+	private boolean closed;
+
+	/**
+	 * Create BGZF output stream with default compression level.
+	 * @param out compressed stream.
+	 */
+	public BgzfOutputStream(final OutputStream out) {
+		this(out, Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Create BGZF output stream.
+	 * @param out compressed stream.
+	 * @param level compression level, see {@link Deflater}.
+	 */
+	public BgzfOutputStream(final OutputStream out, final int level) {
+		Validate.notIllegalArgument(out != null, new IllegalArgumentException("Output stream should be not null."));
+		this.out = out;
+		this.deflater = new Deflater(level, true);
+	}
+
+	@Override
+	public void write(final int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(final byte[] b, final int off, final int len) throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream already closed.");
+		}
+		int written = 0;
+		while (written < len) {
+			int n = Math.min(len - written, BLOCK_DATA_SIZE - this.count);
+			System.arraycopy(b, off + written, this.buffer, this.count, n);
+			this.count += n;
+			written += n;
+			if (this.count == BLOCK_DATA_SIZE) {
+				writeBlock();
+			}
+		}
+	}
+
+	/**
+	 * Write buffered data as a member (members are never split by flush), and flush underlying stream.
+	 * @throws IOException io exception.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (this.count > 0) {
+			writeBlock();
+		}
+		this.out.flush();
+	}
+
+	private void writeBlock() throws IOException {
+		this.deflater.reset();
+		this.deflater.setInput(this.buffer, 0, this.count);
+		this.deflater.finish();
+		int headerSize = BgzfInputStream.HEADER_SIZE + EXTRA_SIZE;
+		int length = 0;
+		int capacity = this.compressed.length - headerSize - BgzfInputStream.TRAILER_SIZE;
+		while (!this.deflater.finished() && length < capacity) {
+			length += this.deflater.deflate(this.compressed, headerSize + length, capacity - length);
+		}
+		if (!this.deflater.finished()) {
+			throw new IOException("BGZF member overflow.");
+		}
+		int size = headerSize + length + BgzfInputStream.TRAILER_SIZE;
+		byte[] b = this.compressed;
+		b[0] = 31;
+		b[1] = (byte) 139;
+		b[2] = 8; // CM deflate
+		b[3] = 4; // FLG.FEXTRA
+		writeInt(b, 4, 0); // MTIME
+		b[8] = 0; // XFL
+		b[9] = (byte) 255; // OS unknown
+		writeShort(b, 10, EXTRA_SIZE);
+		b[12] = 'B';
+		b[13] = 'C';
+		writeShort(b, 14, 2);
+		writeShort(b, 16, size - 1);
+		this.crc32.reset();
+		this.crc32.update(this.buffer, 0, this.count);
+		writeInt(b, headerSize + length, (int) this.crc32.getValue());
+		writeInt(b, headerSize + length + 4, this.count);
+		this.out.write(b, 0, size);
+		this.count = 0;
+	}
+
+	private static void writeShort(final byte[] b, final int off, final int value) {
+		b[off] = (byte) value;
+		b[off + 1] = (byte) (value >>> 8);
+	}
+
+	private static void writeInt(final byte[] b, final int off, final int value) {
+		writeShort(b, off, value);
+		writeShort(b, off + 2, value >>> 16);
+	}
+
+	/**
+	 * Write buffered data and the end of file marker (empty member), then close underlying stream.
+	 * @throws IOException io exception.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		try {
+			if (this.count > 0) {
+				writeBlock();
+			}
+			writeBlock();
+			this.out.flush();
+		} finally {
+			this.closed = true;
+			this.deflater.end();
+			this.out.close();
+		}
+	}
+
+}
@@ -0,0 +1,897 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import static com.ardikars.jxnet.BpfInstruction.BPF_A;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ABS;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ADD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ALU;
+import static com.ardikars.jxnet.BpfInstruction.BPF_AND;
+import static com.ardikars.jxnet.BpfInstruction.BPF_B;
+import static com.ardikars.jxnet.BpfInstruction.BPF_DIV;
+import static com.ardikars.jxnet.BpfInstruction.BPF_H;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IMM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IND;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JEQ;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGE;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGT;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JMP;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JSET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_K;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LDX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LEN;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MEM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MEMWORDS;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MISC;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MOD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MUL;
+import static com.ardikars.jxnet.BpfInstruction.BPF_NEG;
+import static com.ardikars.jxnet.BpfInstruction.BPF_OR;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ST;
+import static com.ardikars.jxnet.BpfInstruction.BPF_STX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_SUB;
+import static com.ardikars.jxnet.BpfInstruction.BPF_TAX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_TXA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_W;
+import static com.ardikars.jxnet.BpfInstruction.BPF_X;
+import static com.ardikars.jxnet.BpfInstruction.BPF_XOR;
+
+import com.ardikars.common.annotation.Incubating;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compile classic BPF programs to JVM bytecode. Every program becomes a class of its own extending {@link BpfFilter}:
+ * jumps are branches to the target instruction (no dispatch loop), packet offsets and bounds are constants,
+ * the scratch memory words are local variables and dead instructions are dropped.
+ * The verdicts are the same as {@link BpfInterpreter} and libpcap's bpf_filter().
+ * Every compiled program has its own class loader, so the class is unloaded with the filter.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public final class BpfCompiler {
+
+	private static final String CLASS_NAME_PREFIX = "com.ardikars.jxnet.GeneratedBpfFilter";
+	private static final String SUPER_CLASS = "com/ardikars/jxnet/BpfFilter";
+	private static final String BYTE_BUFFER_CLASS = "java/nio/ByteBuffer";
+	private static final String CONSTRUCTOR_DESCRIPTOR = "([Lcom/ardikars/jxnet/BpfInstruction;)V";
+	private static final String RUN_DESCRIPTOR = "(Ljava/nio/ByteBuffer;IIIZ)I";
+	private static final String GET_DESCRIPTOR = "(Ljava/nio/ByteBuffer;IZ)I";
+
+	/**
+	 * Class file version 49 (Java 5), the verifier doesn't need stack map frames.
+	 */
+	private static final int CLASS_VERSION = 49;
+
+	/**
+	 * Branch offsets are 16 bit, bigger programs are interpreted.
+	 */
+	private static final int MAX_CODE_SIZE = Short.MAX_VALUE;
+
+	/* Local variables of the generated run method, after this and the arguments. */
+	private static final int LOCAL_PACKET = 1;
+	private static final int LOCAL_OFFSET = 2;
+	private static final int LOCAL_BUFLEN = 3;
+	private static final int LOCAL_WIRELEN = 4;
+	private static final int LOCAL_SWAP = 5;
+	private static final int LOCAL_A = 6;
+	private static final int LOCAL_X = 7;
+	private static final int LOCAL_MEM = 8;
+	private static final int MAX_LOCALS = LOCAL_MEM + BPF_MEMWORDS;
+	private static final int MAX_STACK = 6;
+
+	private static final int ACC_PUBLIC = 0x0001;
+	private static final int ACC_PROTECTED = 0x0004;
+	private static final int ACC_FINAL = 0x0010;
+	private static final int ACC_SUPER = 0x0020;
+
+	private static final int ICONST_0 = 0x03;
+	private static final int LCONST_0 = 0x09;
+	private static final int BIPUSH = 0x10;
+	private static final int SIPUSH = 0x11;
+	private static final int LDC = 0x12;
+	private static final int LDC_W = 0x13;
+	private static final int LDC2_W = 0x14;
+	private static final int ILOAD = 0x15;
+	private static final int ALOAD = 0x19;
+	private static final int ALOAD_0 = 0x2a;
+	private static final int ALOAD_1 = 0x2b;
+	private static final int ISTORE = 0x36;
+	private static final int IADD = 0x60;
+	private static final int LADD = 0x61;
+	private static final int ISUB = 0x64;
+	private static final int IMUL = 0x68;
+	private static final int LDIV = 0x6d;
+	private static final int LREM = 0x71;
+	private static final int INEG = 0x74;
+	private static final int ISHL = 0x78;
+	private static final int IUSHR = 0x7c;
+	private static final int IAND = 0x7e;
+	private static final int LAND = 0x7f;
+	private static final int IOR = 0x80;
+	private static final int IXOR = 0x82;
+	private static final int I2L = 0x85;
+	private static final int L2I = 0x88;
+	private static final int LCMP = 0x94;
+	private static final int IFEQ = 0x99;
+	private static final int IFNE = 0x9a;
+	private static final int IFGT = 0x9d;
+	private static final int IF_ICMPEQ = 0x9f;
+	private static final int IF_ICMPNE = 0xa0;
+	private static final int IF_ICMPLT = 0xa1;
+	private static final int IF_ICMPGE = 0xa2;
+	private static final int IF_ICMPGT = 0xa3;
+	private static final int IF_ICMPLE = 0xa4;
+	private static final int GOTO = 0xa7;
+	private static final int IRETURN = 0xac;
+	private static final int RETURN = 0xb1;
+	private static final int INVOKEVIRTUAL = 0xb6;
+	private static final int INVOKESPECIAL = 0xb7;
+	private static final int INVOKESTATIC = 0xb8;
+
+	private static final AtomicLong IDS = new AtomicLong();
+
+	private BpfCompiler() {
+	}
+
+	/**
+	 * Compile a program. A program without instructions rejects every packet,
+	 * like {@link Jxnet#PcapOfflineFilter(BpfProgram, PcapPktHdr, java.nio.ByteBuffer)}.
+	 * @param program compiled program.
+	 * @return returns compiled filter, or {@link BpfInterpreter} if the program is too large to compile.
+	 */
+	public static BpfFilter compile(final BpfProgram program) {
+		return compile0(BpfFilter.instructions(program));
+	}
+
+	/**
+	 * Compile a program, the program is checked like libpcap's bpf_validate().
+	 * @param instructions instructions, the last one should be a return.
+	 * @return returns compiled filter, or {@link BpfInterpreter} if the program is too large to compile.
+	 * @throws IllegalArgumentException invalid program.
+	 */
+	public static BpfFilter compile(final BpfInstruction... instructions) {
+		return compile0(instructions == null ? null : instructions.clone());
+	}
+
+	private static BpfFilter compile0(final BpfInstruction[] instructions) {
+		// Validates the program, and is used if the program can't be compiled.
+		final BpfInterpreter interpreter = BpfInterpreter.of(instructions);
+		final String className = CLASS_NAME_PREFIX + IDS.incrementAndGet();
+		final byte[] classFile = generate(className.replace('.', '/'), instructions);
+		if (classFile == null) {
+			return interpreter;
+		}
+		try {
+			final Class<?> type = new Loader(BpfFilter.class.getClassLoader()).define(className, classFile);
+			return (BpfFilter) type.getConstructor(BpfInstruction[].class).newInstance((Object) instructions);
+		} catch (SecurityException e) {
+			return interpreter; // Class loaders are not allowed.
+		} catch (Exception e) {
+			throw new IllegalStateException("Unable to load compiled BPF program.", e);
+		}
+	}
+
+	/**
+	 * Generate the class file.
+	 * @return returns class file, or null if the code is too large.
+	 */
+	static byte[] generate(final String className, final BpfInstruction[] instructions) {
+		final ConstantPool pool = new ConstantPool();
+		final int thisClass = pool.classInfo(className);
+		final int superClass = pool.classInfo(SUPER_CLASS);
+		final int superConstructor = pool.methodRef(SUPER_CLASS, "<init>", CONSTRUCTOR_DESCRIPTOR);
+		final int constructorName = pool.utf8("<init>");
+		final int constructorDescriptor = pool.utf8(CONSTRUCTOR_DESCRIPTOR);
+		final int runName = pool.utf8("run");
+		final int runDescriptor = pool.utf8(RUN_DESCRIPTOR);
+		final int codeName = pool.utf8("Code");
+
+		final Code constructor = new Code(pool, 0);
+		constructor.op(ALOAD_0);
+		constructor.op(ALOAD_1);
+		constructor.op(INVOKESPECIAL);
+		constructor.u2(superConstructor);
+		constructor.op(RETURN);
+
+		final Code run = new Code(pool, instructions.length + 1);
+		if (!emit(run, instructions) || run.size > MAX_CODE_SIZE || !run.resolve()) {
+			return null;
+		}
+
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + run.size * 2);
+		final DataOutputStream out = new DataOutputStream(bytes);
+		try {
+			out.writeInt(0xcafebabe);
+			out.writeShort(0);
+			out.writeShort(CLASS_VERSION);
+			pool.write(out);
+			out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+			out.writeShort(thisClass);
+			out.writeShort(superClass);
+			out.writeShort(0); // interfaces
+			out.writeShort(0); // fields
+			out.writeShort(2); // methods
+			writeMethod(out, ACC_PUBLIC, constructorName, constructorDescriptor, codeName, constructor, 2, 2);
+			writeMethod(out, ACC_PROTECTED | ACC_FINAL, runName, runDescriptor, codeName, run, MAX_STACK, MAX_LOCALS);
+			out.writeShort(0); // attributes
+			out.flush();
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // Never thrown by ByteArrayOutputStream.
+		}
+		return bytes.toByteArray();
+	}
+
+	private static void writeMethod(final DataOutputStream out, final int access, final int name, final int descriptor,
+									final int codeName, final Code code, final int maxStack, final int maxLocals)
+			throws IOException {
+		out.writeShort(access);
+		out.writeShort(name);
+		out.writeShort(descriptor);
+		out.writeShort(1); // attributes
+		out.writeShort(codeName);
+		out.writeInt(12 + code.size);
+		out.writeShort(maxStack);
+		out.writeShort(maxLocals);
+		out.writeInt(code.size);
+		out.write(code.bytes, 0, code.size);
+		out.writeShort(0); // exception table
+		out.writeShort(0); // attributes
+	}
+
+	/**
+	 * Instructions reachable from the first one, the others are not generated.
+	 */
+	private static boolean[] reachable(final BpfInstruction[] instructions) {
+		final boolean[] reachable = new boolean[instructions.length];
+		final int[] stack = new int[instructions.length * 2 + 1];
+		int top = 0;
+		stack[top++] = 0;
+		while (top > 0) {
+			final int pc = stack[--top];
+			if (reachable[pc]) {
+				continue;
+			}
+			reachable[pc] = true;
+			final BpfInstruction instruction = instructions[pc];
+			final int code = instruction.getCode();
+			if (instruction.getInstructionClass() == BPF_RET) {
+				continue;
+			}
+			if (code == (BPF_JMP | BPF_JA)) {
+				stack[top++] = pc + 1 + instruction.getK();
+			} else if (instruction.getInstructionClass() == BPF_JMP) {
+				stack[top++] = pc + 1 + instruction.getJt();
+				stack[top++] = pc + 1 + instruction.getJf();
+			} else {
+				stack[top++] = pc + 1;
+			}
+		}
+		return reachable;
+	}
+
+	private static boolean emit(final Code code, final BpfInstruction[] instructions) {
+		final boolean[] reachable = reachable(instructions);
+		final int reject = instructions.length;
+		code.iconst(0);
+		code.store(LOCAL_A);
+		code.iconst(0);
+		code.store(LOCAL_X);
+		final boolean[] memory = new boolean[BPF_MEMWORDS];
+		for (int pc = 0; pc < instructions.length; pc++) {
+			final int c = instructions[pc].getCode();
+			if (reachable[pc] && (c == (BPF_LD | BPF_MEM) || c == (BPF_LDX | BPF_MEM) || c == BPF_ST || c == BPF_STX)
+					&& !memory[instructions[pc].getK()]) {
+				memory[instructions[pc].getK()] = true;
+				code.iconst(0);
+				code.store(LOCAL_MEM + instructions[pc].getK());
+			}
+		}
+		for (int pc = 0; pc < instructions.length; pc++) {
+			if (!reachable[pc]) {
+				continue;
+			}
+			code.bind(pc);
+			emit(code, instructions[pc], pc, reject);
+			if (code.size > MAX_CODE_SIZE) {
+				return false;
+			}
+		}
+		code.bind(reject);
+		code.iconst(0);
+		code.op(IRETURN);
+		return true;
+	}
+
+	private static void emit(final Code code, final BpfInstruction instruction, final int pc, final int reject) {
+		final int k = instruction.getK();
+		final long uk = k & BpfFilter.UNSIGNED_MASK;
+		final int next = pc + 1;
+		switch (instruction.getCode()) {
+			case BPF_RET | BPF_K:
+				code.iconst(k);
+				code.op(IRETURN);
+				break;
+			case BPF_RET | BPF_A:
+				code.load(LOCAL_A);
+				code.op(IRETURN);
+				break;
+			case BPF_LD | BPF_W | BPF_ABS:
+				absolute(code, uk, 4, reject);
+				code.op(INVOKESTATIC);
+				code.u2(code.pool.methodRef(SUPER_CLASS, "getInt", GET_DESCRIPTOR));
+				code.store(LOCAL_A);
+				break;
+			case BPF_LD | BPF_H | BPF_ABS:
+				absolute(code, uk, 2, reject);
+				code.op(INVOKESTATIC);
+				code.u2(code.pool.methodRef(SUPER_CLASS, "getShort", GET_DESCRIPTOR));
+				code.store(LOCAL_A);
+				break;
+			case BPF_LD | BPF_B | BPF_ABS:
+				absolute(code, uk, 1, reject);
+				getByte(code);
+				code.store(LOCAL_A);
+				break;
+			case BPF_LD | BPF_W | BPF_IND:
+				indirect(code, uk, 4, reject);
+				code.op(INVOKESTATIC);
+				code.u2(code.pool.methodRef(SUPER_CLASS, "getInt", GET_DESCRIPTOR));
+				code.store(LOCAL_A);
+				break;
+			case BPF_LD | BPF_H | BPF_IND:
+				indirect(code, uk, 2, reject);
+				code.op(INVOKESTATIC);
+				code.u2(code.pool.methodRef(SUPER_CLASS, "getShort", GET_DESCRIPTOR));
+				code.store(LOCAL_A);
+				break;
+			case BPF_LD | BPF_B | BPF_IND:
+				indirect(code, uk, 1, reject);
+				getByte(code);
+				code.store(LOCAL_A);
+				break;
+			case BPF_LDX | BPF_MSH | BPF_B:
+				absolute(code, uk, 1, reject);
+				getByte(code);
+				code.iconst(0xf);
+				code.op(IAND);
+				code.iconst(2);
+				code.op(ISHL);
+				code.store(LOCAL_X);
+				break;
+			case BPF_LD | BPF_W | BPF_LEN:
+				code.load(LOCAL_WIRELEN);
+				code.store(LOCAL_A);
+				break;
+			case BPF_LDX | BPF_W | BPF_LEN:
+				code.load(LOCAL_WIRELEN);
+				code.store(LOCAL_X);
+				break;
+			case BPF_LD | BPF_IMM:
+				code.iconst(k);
+				code.store(LOCAL_A);
+				break;
+			case BPF_LDX | BPF_IMM:
+				code.iconst(k);
+				code.store(LOCAL_X);
+				break;
+			case BPF_LD | BPF_MEM:
+				code.load(LOCAL_MEM + k);
+				code.store(LOCAL_A);
+				break;
+			case BPF_LDX | BPF_MEM:
+				code.load(LOCAL_MEM + k);
+				code.store(LOCAL_X);
+				break;
+			case BPF_ST:
+				code.load(LOCAL_A);
+				code.store(LOCAL_MEM + k);
+				break;
+			case BPF_STX:
+				code.load(LOCAL_X);
+				code.store(LOCAL_MEM + k);
+				break;
+			case BPF_JMP | BPF_JA:
+				if (k != 0) {
+					code.branch(GOTO, next + k);
+				}
+				break;
+			case BPF_JMP | BPF_JEQ | BPF_K:
+			case BPF_JMP | BPF_JGT | BPF_K:
+			case BPF_JMP | BPF_JGE | BPF_K:
+			case BPF_JMP | BPF_JSET | BPF_K:
+			case BPF_JMP | BPF_JEQ | BPF_X:
+			case BPF_JMP | BPF_JGT | BPF_X:
+			case BPF_JMP | BPF_JGE | BPF_X:
+			case BPF_JMP | BPF_JSET | BPF_X:
+				jump(code, instruction, next + instruction.getJt(), next + instruction.getJf(), next);
+				break;
+			case BPF_ALU | BPF_DIV | BPF_K:
+			case BPF_ALU | BPF_MOD | BPF_K:
+				divide(code, instruction.getCode() == (BPF_ALU | BPF_DIV | BPF_K), uk);
+				break;
+			case BPF_ALU | BPF_DIV | BPF_X:
+			case BPF_ALU | BPF_MOD | BPF_X:
+				code.load(LOCAL_X);
+				code.branch(IFEQ, reject);
+				code.load(LOCAL_A);
+				unsigned(code);
+				code.load(LOCAL_X);
+				unsigned(code);
+				code.op(instruction.getCode() == (BPF_ALU | BPF_DIV | BPF_X) ? LDIV : LREM);
+				code.op(L2I);
+				code.store(LOCAL_A);
+				break;
+			case BPF_ALU | BPF_NEG:
+				code.load(LOCAL_A);
+				code.op(INEG);
+				code.store(LOCAL_A);
+				break;
+			case BPF_MISC | BPF_TAX:
+				code.load(LOCAL_A);
+				code.store(LOCAL_X);
+				break;
+			case BPF_MISC | BPF_TXA:
+				code.load(LOCAL_X);
+				code.store(LOCAL_A);
+				break;
+			default:
+				// Remaining alu operations, validated by BpfFilter.
+				arithmetic(code, instruction);
+				break;
+		}
+	}
+
+	/**
+	 * Push packet, index and swap (for word and half word loads) of a load at constant offset,
+	 * branch to reject if the packet is shorter than offset + size.
+	 */
+	private static void absolute(final Code code, final long offset, final int size, final int reject) {
+		final long end = offset + size;
+		if (end > Integer.MAX_VALUE) {
+			code.branch(GOTO, reject); // Never inside a buffer.
+			return;
+		}
+		code.load(LOCAL_BUFLEN);
+		code.iconst((int) end);
+		code.branch(IF_ICMPLT, reject);
+		code.op(ALOAD);
+		code.u1(LOCAL_PACKET);
+		code.load(LOCAL_OFFSET);
+		if (offset != 0) {
+			code.iconst((int) offset);
+			code.op(IADD);
+		}
+		if (size > 1) {
+			code.load(LOCAL_SWAP);
+		}
+	}
+
+	/**
+	 * Same as absolute, the offset is x + k, checked as unsigned 64 bit sum.
+	 */
+	private static void indirect(final Code code, final long offset, final int size, final int reject) {
+		code.load(LOCAL_X);
+		unsigned(code);
+		code.lconst(offset + size);
+		code.op(LADD);
+		code.load(LOCAL_BUFLEN);
+		code.op(I2L);
+		code.op(LCMP);
+		code.branch(IFGT, reject);
+		code.op(ALOAD);
+		code.u1(LOCAL_PACKET);
+		code.load(LOCAL_OFFSET);
+		code.load(LOCAL_X);
+		code.op(IADD);
+		if (offset != 0) {
+			code.iconst((int) offset);
+			code.op(IADD);
+		}
+		if (size > 1) {
+			code.load(LOCAL_SWAP);
+		}
+	}
+
+	private static void getByte(final Code code) {
+		code.op(INVOKEVIRTUAL);
+		code.u2(code.pool.methodRef(BYTE_BUFFER_CLASS, "get", "(I)B"));
+		code.iconst(0xff);
+		code.op(IAND);
+	}
+
+	private static void unsigned(final Code code) {
+		code.op(I2L);
+		code.lconst(BpfFilter.UNSIGNED_MASK);
+		code.op(LAND);
+	}
+
+	private static void jump(final Code code, final BpfInstruction instruction, final int jt, final int jf,
+							 final int next) {
+		if (jt == jf) {
+			if (jt != next) {
+				code.branch(GOTO, jt);
+			}
+			return;
+		}
+		final int k = instruction.getK();
+		final boolean x = (instruction.getCode() & BPF_X) == BPF_X;
+		final int condition;
+		final int inverse;
+		switch (instruction.getCode() & 0xf0) {
+			case BPF_JEQ:
+				code.load(LOCAL_A);
+				if (!x && k == 0) {
+					condition = IFEQ;
+					inverse = IFNE;
+				} else {
+					operand(code, x, k);
+					condition = IF_ICMPEQ;
+					inverse = IF_ICMPNE;
+				}
+				break;
+			case BPF_JSET:
+				code.load(LOCAL_A);
+				operand(code, x, k);
+				code.op(IAND);
+				condition = IFNE;
+				inverse = IFEQ;
+				break;
+			default:
+				// Unsigned compare, both operands are shifted to the signed range.
+				if (!x && k == 0) {
+					if ((instruction.getCode() & 0xf0) == BPF_JGE) {
+						code.branch(GOTO, jt); // a >= 0 is always true.
+						return;
+					}
+					code.load(LOCAL_A);
+					condition = IFNE; // a > 0
+					inverse = IFEQ;
+					break;
+				}
+				code.load(LOCAL_A);
+				code.iconst(Integer.MIN_VALUE);
+				code.op(IXOR);
+				if (x) {
+					code.load(LOCAL_X);
+					code.iconst(Integer.MIN_VALUE);
+					code.op(IXOR);
+				} else {
+					code.iconst(k ^ Integer.MIN_VALUE);
+				}
+				if ((instruction.getCode() & 0xf0) == BPF_JGT) {
+					condition = IF_ICMPGT;
+					inverse = IF_ICMPLE;
+				} else {
+					condition = IF_ICMPGE;
+					inverse = IF_ICMPLT;
+				}
+				break;
+		}
+		if (jt == next) {
+			code.branch(inverse, jf);
+		} else {
+			code.branch(condition, jt);
+			if (jf != next) {
+				code.branch(GOTO, jf);
+			}
+		}
+	}
+
+	private static void operand(final Code code, final boolean x, final int k) {
+		if (x) {
+			code.load(LOCAL_X);
+		} else {
+			code.iconst(k);
+		}
+	}
+
+	private static void divide(final Code code, final boolean divide, final long k) {
+		if ((k & (k - 1)) == 0) {
+			// Power of two: shift or mask.
+			if (divide && k == 1) {
+				return;
+			}
+			code.load(LOCAL_A);
+			if (divide) {
+				code.iconst(Long.numberOfTrailingZeros(k));
+				code.op(IUSHR);
+			} else {
+				code.iconst((int) (k - 1));
+				code.op(IAND);
+			}
+		} else {
+			code.load(LOCAL_A);
+			unsigned(code);
+			code.lconst(k);
+			code.op(divide ? LDIV : LREM);
+			code.op(L2I);
+		}
+		code.store(LOCAL_A);
+	}
+
+	private static void arithmetic(final Code code, final BpfInstruction instruction) {
+		final boolean x = (instruction.getCode() & BPF_X) == BPF_X;
+		final int k = instruction.getK();
+		final int op;
+		switch (instruction.getCode() & 0xf0) {
+			case BPF_ADD:
+				op = IADD;
+				break;
+			case BPF_SUB:
+				op = ISUB;
+				break;
+			case BPF_MUL:
+				op = IMUL;
+				break;
+			case BPF_AND:
+				op = IAND;
+				break;
+			case BPF_OR:
+				op = IOR;
+				break;
+			case BPF_XOR:
+				op = IXOR;
+				break;
+			case BPF_LSH:
+				op = ISHL;
+				break;
+			case BPF_RSH:
+				op = IUSHR;
+				break;
+			default:
+				throw new IllegalStateException("Invalid BPF opcode: " + instruction.getCode());
+		}
+		code.load(LOCAL_A);
+		operand(code, x, k);
+		code.op(op);
+		code.store(LOCAL_A);
+	}
+
+	/**
+	 * Class file constant pool.
+	 */
+	private static final class ConstantPool {
+
+		private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		private final DataOutputStream out = new DataOutputStream(this.bytes);
+		private final Map<String, Integer> entries = new HashMap<String, Integer>();
+		private int count = 1;
+
+		private int utf8(final String value) {
+			final String key = "U" + value;
+			Integer index = this.entries.get(key);
+			if (index == null) {
+				index = add(1, 1);
+				try {
+					this.out.writeUTF(value);
+				} catch (IOException e) {
+					throw new IllegalStateException(e);
+				}
+				this.entries.put(key, index);
+			}
+			return index;
+		}
+
+		private int classInfo(final String name) {
+			final String key = "C" + name;
+			Integer index = this.entries.get(key);
+			if (index == null) {
+				final int nameIndex = utf8(name);
+				index = add(7, 1);
+				u2(nameIndex);
+				this.entries.put(key, index);
+			}
+			return index;
+		}
+
+		private int methodRef(final String owner, final String name, final String descriptor) {
+			final String key = "M" + owner + '.' + name + descriptor;
+			Integer index = this.entries.get(key);
+			if (index == null) {
+				final int ownerIndex = classInfo(owner);
+				final int nameIndex = utf8(name);
+				final int descriptorIndex = utf8(descriptor);
+				final int nameAndType = add(12, 1);
+				u2(nameIndex);
+				u2(descriptorIndex);
+				index = add(10, 1);
+				u2(ownerIndex);
+				u2(nameAndType);
+				this.entries.put(key, index);
+			}
+			return index;
+		}
+
+		private int integer(final int value) {
+			final String key = "I" + value;
+			Integer index = this.entries.get(key);
+			if (index == null) {
+				index = add(3, 1);
+				u4(value);
+				this.entries.put(key, index);
+			}
+			return index;
+		}
+
+		private int longValue(final long value) {
+			final String key = "J" + value;
+			Integer index = this.entries.get(key);
+			if (index == null) {
+				index = add(5, 2);
+				u4((int) (value >>> 32));
+				u4((int) value);
+				this.entries.put(key, index);
+			}
+			return index;
+		}
+
+		private int add(final int tag, final int slots) {
+			final int index = this.count;
+			this.count += slots;
+			this.bytes.write(tag);
+			return index;
+		}
+
+		private void u2(final int value) {
+			this.bytes.write(value >>> 8);
+			this.bytes.write(value);
+		}
+
+		private void u4(final int value) {
+			u2(value >>> 16);
+			u2(value & 0xffff);
+		}
+
+		private void write(final DataOutputStream target) throws IOException {
+			target.writeShort(this.count);
+			this.bytes.writeTo(target);
+		}
+
+	}
+
+	/**
+	 * Method body with labels, one per BPF instruction plus the reject label.
+	 */
+	private static final class Code {
+
+		private final ConstantPool pool;
+		private final int[] labels;
+		private final List<int[]> branches = new ArrayList<int[]>();
+		private byte[] bytes = new byte[256];
+		private int size;
+
+		private Code(final ConstantPool pool, final int labels) {
+			this.pool = pool;
+			this.labels = new int[labels];
+		}
+
+		private void bind(final int label) {
+			this.labels[label] = this.size;
+		}
+
+		private void branch(final int opcode, final int label) {
+			this.branches.add(new int[] { this.size, label });
+			op(opcode);
+			u2(0);
+		}
+
+		/**
+		 * Patch branch offsets once every label is bound.
+		 * @return returns false if an offset doesn't fit 16 bit.
+		 */
+		private boolean resolve() {
+			for (int[] branch : this.branches) {
+				final int offset = this.labels[branch[1]] - branch[0];
+				if (offset < Short.MIN_VALUE || offset > Short.MAX_VALUE) {
+					return false;
+				}
+				this.bytes[branch[0] + 1] = (byte) (offset >>> 8);
+				this.bytes[branch[0] + 2] = (byte) offset;
+			}
+			return true;
+		}
+
+		private void load(final int local) {
+			op(ILOAD);
+			u1(local);
+		}
+
+		private void store(final int local) {
+			op(ISTORE);
+			u1(local);
+		}
+
+		private void iconst(final int value) {
+			if (value >= -1 && value <= 5) {
+				op(ICONST_0 + value);
+			} else if (value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE) {
+				op(BIPUSH);
+				u1(value);
+			} else if (value >= Short.MIN_VALUE && value <= Short.MAX_VALUE) {
+				op(SIPUSH);
+				u2(value);
+			} else {
+				final int index = this.pool.integer(value);
+				if (index < 256) {
+					op(LDC);
+					u1(index);
+				} else {
+					op(LDC_W);
+					u2(index);
+				}
+			}
+		}
+
+		private void lconst(final long value) {
+			if (value == 0 || value == 1) {
+				op(LCONST_0 + (int) value);
+			} else {
+				op(LDC2_W);
+				u2(this.pool.longValue(value));
+			}
+		}
+
+		private void op(final int opcode) {
+			u1(opcode);
+		}
+
+		private void u1(final int value) {
+			if (this.size == this.bytes.length) {
+				final byte[] bytes = new byte[this.bytes.length * 2];
+				System.arraycopy(this.bytes, 0, bytes, 0, this.size);
+				this.bytes = bytes;
+			}
+			this.bytes[this.size++] = (byte) value;
+		}
+
+		private void u2(final int value) {
+			u1(value >>> 8);
+			u1(value);
+		}
+
+	}
+
+	private static final class Loader extends ClassLoader {
+
+		private Loader(final ClassLoader parent) {
+			super(parent);
+		}
+
+		private Class<?> define(final String name, final byte[] classFile) {
+			return defineClass(name, classFile, 0, classFile.length);
+		}
+
+	}
+
+}
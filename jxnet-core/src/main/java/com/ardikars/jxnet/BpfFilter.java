@@ -0,0 +1,263 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import static com.ardikars.jxnet.BpfInstruction.BPF_A;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ABS;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ALU;
+import static com.ardikars.jxnet.BpfInstruction.BPF_B;
+import static com.ardikars.jxnet.BpfInstruction.BPF_DIV;
+import static com.ardikars.jxnet.BpfInstruction.BPF_H;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IMM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IND;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JEQ;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGE;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGT;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JMP;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JSET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_K;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LDX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LEN;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MEM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MEMWORDS;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MISC;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MOD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_NEG;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ST;
+import static com.ardikars.jxnet.BpfInstruction.BPF_STX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_TAX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_TXA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_W;
+import static com.ardikars.jxnet.BpfInstruction.BPF_X;
+import static com.ardikars.jxnet.BpfInstruction.BPF_XOR;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.util.DirectMemory;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Base class of classic BPF program evaluators ({@link BpfInterpreter} and classes generated by {@link BpfCompiler}).
+ * The program is validated once, argument checks, byte order and raw memory are handled here,
+ * subclasses only run the program against a packet.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public abstract class BpfFilter implements PacketFilter {
+
+	protected static final long UNSIGNED_MASK = 0xffffffffL;
+
+	private static final ThreadLocal<ByteBuffer> VIEW = new ThreadLocal<ByteBuffer>();
+
+	private final BpfInstruction[] instructions;
+
+	/**
+	 * Validate the program, the program is checked like libpcap's bpf_validate().
+	 * @param instructions instructions, owned by this filter.
+	 * @throws IllegalArgumentException invalid program.
+	 */
+	protected BpfFilter(final BpfInstruction[] instructions) {
+		Validate.notIllegalArgument(instructions != null && instructions.length > 0,
+				new IllegalArgumentException("Instructions should be not empty."));
+		for (int pc = 0; pc < instructions.length; pc++) {
+			Validate.notIllegalArgument(instructions[pc] != null,
+					new IllegalArgumentException("Instruction " + pc + " should be not null."));
+			validate(instructions, pc);
+		}
+		this.instructions = instructions;
+	}
+
+	/**
+	 * Instructions of a compiled program, a program without instructions rejects every packet
+	 * like {@link Jxnet#PcapOfflineFilter(BpfProgram, PcapPktHdr, ByteBuffer)}.
+	 */
+	static BpfInstruction[] instructions(final BpfProgram program) {
+		Validate.notIllegalArgument(program != null,
+				new IllegalArgumentException("BPF program should be not null."));
+		final BpfInstruction[] instructions = program.getInstructions();
+		if (instructions.length == 0) {
+			return new BpfInstruction[] { BpfInstruction.of(BPF_RET | BPF_K, 0) };
+		}
+		return instructions;
+	}
+
+	@Override
+	public final int filter(final PcapPktHdr header, final ByteBuffer packet) {
+		if (header == null || packet == null) {
+			throw new IllegalArgumentException("Header and packet should be not null.");
+		}
+		return run(packet, 0, Math.max(0, Math.min(header.getCapLen(), packet.limit())), header.getLen(),
+				packet.order() != ByteOrder.BIG_ENDIAN);
+	}
+
+	@Override
+	public final int filter(final ByteBuffer packet, final int offset, final int caplen, final int len) {
+		if (packet == null) {
+			throw new IllegalArgumentException("Packet should be not null.");
+		}
+		if (offset < 0 || caplen < 0 || offset > packet.limit() - caplen) {
+			throw new IllegalArgumentException("Offset and caplen should be inside the buffer limit.");
+		}
+		return run(packet, offset, caplen, len, packet.order() != ByteOrder.BIG_ENDIAN);
+	}
+
+	/**
+	 * The program runs against a per thread view of the memory, no byte is copied.
+	 */
+	@Override
+	public final int filter(final long address, final int caplen, final int len) {
+		if (address == 0) {
+			throw new IllegalArgumentException("Memory address should be not null.");
+		}
+		if (caplen < 0) {
+			throw new IllegalArgumentException("Capture length should be greater than or equal to zero.");
+		}
+		if (!DirectMemory.isAccessSupported()) {
+			throw new UnsupportedOperationException("Memory address is not supported.");
+		}
+		ByteBuffer view = VIEW.get();
+		if (view == null) {
+			view = DirectMemory.newView();
+			VIEW.set(view);
+		}
+		return run(DirectMemory.view(view, address, caplen), 0, caplen, len, false);
+	}
+
+	/**
+	 * Run the program, the arguments are already checked.
+	 * @param packet packet buffer.
+	 * @param offset index of the first byte of the packet.
+	 * @param buflen number of bytes available (caplen).
+	 * @param wirelen length of the packet on the wire.
+	 * @param swap true if the buffer is not big endian.
+	 * @return returns the value of the return instruction, 0 if the packet is rejected.
+	 */
+	protected abstract int run(ByteBuffer packet, int offset, int buflen, int wirelen, boolean swap);
+
+	/**
+	 * Get a copy of the program.
+	 * @return returns instructions.
+	 */
+	public BpfInstruction[] getInstructions() {
+		return this.instructions.clone();
+	}
+
+	/**
+	 * Number of instructions.
+	 * @return returns number of instructions.
+	 */
+	public int length() {
+		return this.instructions.length;
+	}
+
+	BpfInstruction[] instructions() {
+		return this.instructions;
+	}
+
+	/**
+	 * Same constraints as bpf_validate() in userland, plus opcodes unknown to bpf_filter() are rejected
+	 * (bpf_filter() aborts on them).
+	 */
+	private static void validate(final BpfInstruction[] instructions, final int pc) {
+		final BpfInstruction instruction = instructions[pc];
+		final int code = instruction.getCode();
+		final long k = instruction.getK() & UNSIGNED_MASK;
+		final boolean valid;
+		switch (code) {
+			case BPF_LD | BPF_W | BPF_ABS:
+			case BPF_LD | BPF_H | BPF_ABS:
+			case BPF_LD | BPF_B | BPF_ABS:
+			case BPF_LD | BPF_W | BPF_LEN:
+			case BPF_LDX | BPF_W | BPF_LEN:
+			case BPF_LD | BPF_W | BPF_IND:
+			case BPF_LD | BPF_H | BPF_IND:
+			case BPF_LD | BPF_B | BPF_IND:
+			case BPF_LDX | BPF_MSH | BPF_B:
+			case BPF_LD | BPF_IMM:
+			case BPF_LDX | BPF_IMM:
+			case BPF_RET | BPF_K:
+			case BPF_RET | BPF_A:
+			case BPF_MISC | BPF_TAX:
+			case BPF_MISC | BPF_TXA:
+			case BPF_ALU | BPF_NEG:
+				valid = true;
+				break;
+			case BPF_LD | BPF_MEM:
+			case BPF_LDX | BPF_MEM:
+			case BPF_ST:
+			case BPF_STX:
+				valid = k < BPF_MEMWORDS;
+				break;
+			case BPF_JMP | BPF_JA: {
+				final long target = pc + 1L + instruction.getK();
+				valid = target >= 0 && target < instructions.length;
+				break;
+			}
+			case BPF_JMP | BPF_JGT | BPF_K:
+			case BPF_JMP | BPF_JGE | BPF_K:
+			case BPF_JMP | BPF_JEQ | BPF_K:
+			case BPF_JMP | BPF_JSET | BPF_K:
+			case BPF_JMP | BPF_JGT | BPF_X:
+			case BPF_JMP | BPF_JGE | BPF_X:
+			case BPF_JMP | BPF_JEQ | BPF_X:
+			case BPF_JMP | BPF_JSET | BPF_X:
+				valid = pc + 1 + instruction.getJt() < instructions.length
+						&& pc + 1 + instruction.getJf() < instructions.length;
+				break;
+			case BPF_ALU | BPF_DIV | BPF_K:
+			case BPF_ALU | BPF_MOD | BPF_K:
+				valid = k != 0;
+				break;
+			default:
+				// Remaining alu operations with k or x operand.
+				valid = (code & ~0xf8) == BPF_ALU && (code & 0xf0) <= BPF_XOR && (code & 0xf0) != BPF_NEG;
+				break;
+		}
+		Validate.notIllegalArgument(valid,
+				new IllegalArgumentException("Invalid BPF instruction " + pc + ": " + instruction + "."));
+		Validate.notIllegalArgument(pc != instructions.length - 1 || (code & 0x07) == BPF_RET,
+				new IllegalArgumentException("The last BPF instruction should be a return."));
+	}
+
+	protected static int getInt(final ByteBuffer p, final int index, final boolean swap) {
+		final int value = p.getInt(index);
+		return swap ? Integer.reverseBytes(value) : value;
+	}
+
+	protected static int getShort(final ByteBuffer p, final int index, final boolean swap) {
+		final short value = p.getShort(index);
+		return (swap ? Short.reverseBytes(value) : value) & 0xffff;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder(getClass().getSimpleName()).append('{')
+				.append("length=").append(this.instructions.length)
+				.append('}')
+				.toString();
+	}
+
+}
@@ -0,0 +1,190 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Immutable;
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.util.Validate;
+
+/**
+ * Classic BPF instruction (struct bpf_insn), as compiled by {@link Jxnet#PcapCompile(Pcap, BpfProgram, String, int, int)}.
+ * Opcode constants follow the names used in net/bpf.h.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Immutable
+public final class BpfInstruction {
+
+	/* Instruction classes. */
+	public static final int BPF_LD = 0x00;
+	public static final int BPF_LDX = 0x01;
+	public static final int BPF_ST = 0x02;
+	public static final int BPF_STX = 0x03;
+	public static final int BPF_ALU = 0x04;
+	public static final int BPF_JMP = 0x05;
+	public static final int BPF_RET = 0x06;
+	public static final int BPF_MISC = 0x07;
+
+	/* Load sizes. */
+	public static final int BPF_W = 0x00;
+	public static final int BPF_H = 0x08;
+	public static final int BPF_B = 0x10;
+
+	/* Load modes. */
+	public static final int BPF_IMM = 0x00;
+	public static final int BPF_ABS = 0x20;
+	public static final int BPF_IND = 0x40;
+	public static final int BPF_MEM = 0x60;
+	public static final int BPF_LEN = 0x80;
+	public static final int BPF_MSH = 0xa0;
+
+	/* Alu and jump operations. */
+	public static final int BPF_ADD = 0x00;
+	public static final int BPF_SUB = 0x10;
+	public static final int BPF_MUL = 0x20;
+	public static final int BPF_DIV = 0x30;
+	public static final int BPF_OR = 0x40;
+	public static final int BPF_AND = 0x50;
+	public static final int BPF_LSH = 0x60;
+	public static final int BPF_RSH = 0x70;
+	public static final int BPF_NEG = 0x80;
+	public static final int BPF_MOD = 0x90;
+	public static final int BPF_XOR = 0xa0;
+	public static final int BPF_JA = 0x00;
+	public static final int BPF_JEQ = 0x10;
+	public static final int BPF_JGT = 0x20;
+	public static final int BPF_JGE = 0x30;
+	public static final int BPF_JSET = 0x40;
+
+	/* Operand sources. */
+	public static final int BPF_K = 0x00;
+	public static final int BPF_X = 0x08;
+	public static final int BPF_A = 0x10;
+
+	/* Misc operations. */
+	public static final int BPF_TAX = 0x00;
+	public static final int BPF_TXA = 0x80;
+
+	/**
+	 * Number of scratch memory words.
+	 */
+	public static final int BPF_MEMWORDS = 16;
+
+	private final int code;
+	private final int jt;
+	private final int jf;
+	private final int k;
+
+	private BpfInstruction(final int code, final int jt, final int jf, final int k) {
+		this.code = code;
+		this.jt = jt;
+		this.jf = jf;
+		this.k = k;
+	}
+
+	/**
+	 * Create instruction.
+	 * @param code opcode (unsigned 16 bit).
+	 * @param jt jump offset if true (unsigned 8 bit).
+	 * @param jf jump offset if false (unsigned 8 bit).
+	 * @param k generic field.
+	 * @return returns BpfInstruction.
+	 */
+	public static BpfInstruction of(final int code, final int jt, final int jf, final int k) {
+		Validate.notIllegalArgument((code & ~0xffff) == 0 && (jt & ~0xff) == 0 && (jf & ~0xff) == 0,
+				new IllegalArgumentException("Code should be 16 bit, jt and jf should be 8 bit unsigned."));
+		return new BpfInstruction(code, jt, jf, k);
+	}
+
+	/**
+	 * Create instruction with no jump offsets.
+	 * @param code opcode.
+	 * @param k generic field.
+	 * @return returns BpfInstruction.
+	 */
+	public static BpfInstruction of(final int code, final int k) {
+		return of(code, 0, 0, k);
+	}
+
+	/**
+	 * Unpack instruction, code in the upper 16 bits followed by jt, jf and k.
+	 * @param packed packed instruction.
+	 * @return returns BpfInstruction.
+	 */
+	static BpfInstruction valueOf(final long packed) {
+		return new BpfInstruction((int) (packed >>> 48) & 0xffff, (int) (packed >>> 40) & 0xff,
+				(int) (packed >>> 32) & 0xff, (int) packed);
+	}
+
+	public int getCode() {
+		return this.code;
+	}
+
+	public int getJt() {
+		return this.jt;
+	}
+
+	public int getJf() {
+		return this.jf;
+	}
+
+	public int getK() {
+		return this.k;
+	}
+
+	/**
+	 * Instruction class, one of BPF_LD, BPF_LDX, BPF_ST, BPF_STX, BPF_ALU, BPF_JMP, BPF_RET or BPF_MISC.
+	 * @return returns instruction class.
+	 */
+	public int getInstructionClass() {
+		return this.code & 0x07;
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+		final BpfInstruction that = (BpfInstruction) o;
+		return this.code == that.code && this.jt == that.jt && this.jf == that.jf && this.k == that.k;
+	}
+
+	@Override
+	public int hashCode() {
+		int result = this.code;
+		result = 31 * result + this.jt;
+		result = 31 * result + this.jf;
+		result = 31 * result + this.k;
+		return result;
+	}
+
+	/**
+	 * Same format as tcpdump -dd.
+	 * @return returns instruction as a C initializer.
+	 */
+	@Override
+	public String toString() {
+		return String.format("{ 0x%x, %d, %d, 0x%08x }", this.code, this.jt, this.jf, this.k);
+	}
+
+}
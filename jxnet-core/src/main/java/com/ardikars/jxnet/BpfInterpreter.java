@@ -0,0 +1,323 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import static com.ardikars.jxnet.BpfInstruction.BPF_A;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ABS;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ADD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ALU;
+import static com.ardikars.jxnet.BpfInstruction.BPF_AND;
+import static com.ardikars.jxnet.BpfInstruction.BPF_B;
+import static com.ardikars.jxnet.BpfInstruction.BPF_DIV;
+import static com.ardikars.jxnet.BpfInstruction.BPF_H;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IMM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IND;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JEQ;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGE;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGT;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JMP;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JSET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_K;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LDX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LEN;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MEM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MEMWORDS;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MISC;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MOD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MUL;
+import static com.ardikars.jxnet.BpfInstruction.BPF_NEG;
+import static com.ardikars.jxnet.BpfInstruction.BPF_OR;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ST;
+import static com.ardikars.jxnet.BpfInstruction.BPF_STX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_SUB;
+import static com.ardikars.jxnet.BpfInstruction.BPF_TAX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_TXA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_W;
+import static com.ardikars.jxnet.BpfInstruction.BPF_X;
+import static com.ardikars.jxnet.BpfInstruction.BPF_XOR;
+
+import com.ardikars.common.annotation.Immutable;
+import com.ardikars.common.annotation.Incubating;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pure Java evaluation of classic BPF programs, the verdicts are the same as libpcap's bpf_filter()
+ * ({@link Jxnet#PcapOfflineFilter(BpfProgram, PcapPktHdr, ByteBuffer)}) without a native call per packet.
+ * Thread safe, the program is validated once when the interpreter is created.
+ * See {@link BpfCompiler} for programs evaluated very often.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Immutable
+public final class BpfInterpreter extends BpfFilter {
+
+	private final int[] codes;
+	private final int[] jts;
+	private final int[] jfs;
+	private final int[] ks;
+	private final boolean scratchMemory;
+
+	private BpfInterpreter(final BpfInstruction[] instructions) {
+		super(instructions);
+		this.codes = new int[instructions.length];
+		this.jts = new int[instructions.length];
+		this.jfs = new int[instructions.length];
+		this.ks = new int[instructions.length];
+		boolean scratchMemory = false;
+		for (int pc = 0; pc < instructions.length; pc++) {
+			final int code = instructions[pc].getCode();
+			this.codes[pc] = code;
+			this.jts[pc] = instructions[pc].getJt();
+			this.jfs[pc] = instructions[pc].getJf();
+			this.ks[pc] = instructions[pc].getK();
+			if (code == (BPF_LD | BPF_MEM) || code == (BPF_LDX | BPF_MEM) || code == BPF_ST || code == BPF_STX) {
+				scratchMemory = true;
+			}
+		}
+		this.scratchMemory = scratchMemory;
+	}
+
+	/**
+	 * Create interpreter for a compiled program. A program without instructions rejects every packet,
+	 * like {@link Jxnet#PcapOfflineFilter(BpfProgram, PcapPktHdr, ByteBuffer)}.
+	 * @param program compiled program.
+	 * @return returns BpfInterpreter.
+	 */
+	public static BpfInterpreter of(final BpfProgram program) {
+		return new BpfInterpreter(instructions(program));
+	}
+
+	/**
+	 * Create interpreter for a program, the program is checked like libpcap's bpf_validate().
+	 * @param instructions instructions, the last one should be a return.
+	 * @return returns BpfInterpreter.
+	 * @throws IllegalArgumentException invalid program.
+	 */
+	public static BpfInterpreter of(final BpfInstruction... instructions) {
+		return new BpfInterpreter(instructions == null ? null : instructions.clone());
+	}
+
+	@Override
+	protected int run(final ByteBuffer p, final int base, final int buflen, final int wirelen, final boolean swap) {
+		final int[] codes = this.codes;
+		final int[] ks = this.ks;
+		final int[] mem = this.scratchMemory ? new int[BPF_MEMWORDS] : null;
+		int a = 0;
+		int x = 0;
+		int pc = 0;
+		long i;
+		while (true) {
+			final int k = ks[pc];
+			switch (codes[pc]) {
+				case BPF_RET | BPF_K:
+					return k;
+				case BPF_RET | BPF_A:
+					return a;
+				case BPF_LD | BPF_W | BPF_ABS:
+					i = k & UNSIGNED_MASK;
+					if (i + 4 > buflen) {
+						return 0;
+					}
+					a = getInt(p, base + (int) i, swap);
+					break;
+				case BPF_LD | BPF_H | BPF_ABS:
+					i = k & UNSIGNED_MASK;
+					if (i + 2 > buflen) {
+						return 0;
+					}
+					a = getShort(p, base + (int) i, swap);
+					break;
+				case BPF_LD | BPF_B | BPF_ABS:
+					i = k & UNSIGNED_MASK;
+					if (i >= buflen) {
+						return 0;
+					}
+					a = p.get(base + (int) i) & 0xff;
+					break;
+				case BPF_LD | BPF_W | BPF_LEN:
+					a = wirelen;
+					break;
+				case BPF_LDX | BPF_W | BPF_LEN:
+					x = wirelen;
+					break;
+				case BPF_LD | BPF_W | BPF_IND:
+					i = (x & UNSIGNED_MASK) + (k & UNSIGNED_MASK);
+					if (i + 4 > buflen) {
+						return 0;
+					}
+					a = getInt(p, base + (int) i, swap);
+					break;
+				case BPF_LD | BPF_H | BPF_IND:
+					i = (x & UNSIGNED_MASK) + (k & UNSIGNED_MASK);
+					if (i + 2 > buflen) {
+						return 0;
+					}
+					a = getShort(p, base + (int) i, swap);
+					break;
+				case BPF_LD | BPF_B | BPF_IND:
+					i = (x & UNSIGNED_MASK) + (k & UNSIGNED_MASK);
+					if (i >= buflen) {
+						return 0;
+					}
+					a = p.get(base + (int) i) & 0xff;
+					break;
+				case BPF_LDX | BPF_MSH | BPF_B:
+					i = k & UNSIGNED_MASK;
+					if (i >= buflen) {
+						return 0;
+					}
+					x = (p.get(base + (int) i) & 0xf) << 2;
+					break;
+				case BPF_LD | BPF_IMM:
+					a = k;
+					break;
+				case BPF_LDX | BPF_IMM:
+					x = k;
+					break;
+				case BPF_LD | BPF_MEM:
+					a = mem[k];
+					break;
+				case BPF_LDX | BPF_MEM:
+					x = mem[k];
+					break;
+				case BPF_ST:
+					mem[k] = a;
+					break;
+				case BPF_STX:
+					mem[k] = x;
+					break;
+				case BPF_JMP | BPF_JA:
+					pc += k;
+					break;
+				case BPF_JMP | BPF_JGT | BPF_K:
+					pc += (a ^ Integer.MIN_VALUE) > (k ^ Integer.MIN_VALUE) ? this.jts[pc] : this.jfs[pc];
+					break;
+				case BPF_JMP | BPF_JGE | BPF_K:
+					pc += (a ^ Integer.MIN_VALUE) >= (k ^ Integer.MIN_VALUE) ? this.jts[pc] : this.jfs[pc];
+					break;
+				case BPF_JMP | BPF_JEQ | BPF_K:
+					pc += a == k ? this.jts[pc] : this.jfs[pc];
+					break;
+				case BPF_JMP | BPF_JSET | BPF_K:
+					pc += (a & k) != 0 ? this.jts[pc] : this.jfs[pc];
+					break;
+				case BPF_JMP | BPF_JGT | BPF_X:
+					pc += (a ^ Integer.MIN_VALUE) > (x ^ Integer.MIN_VALUE) ? this.jts[pc] : this.jfs[pc];
+					break;
+				case BPF_JMP | BPF_JGE | BPF_X:
+					pc += (a ^ Integer.MIN_VALUE) >= (x ^ Integer.MIN_VALUE) ? this.jts[pc] : this.jfs[pc];
+					break;
+				case BPF_JMP | BPF_JEQ | BPF_X:
+					pc += a == x ? this.jts[pc] : this.jfs[pc];
+					break;
+				case BPF_JMP | BPF_JSET | BPF_X:
+					pc += (a & x) != 0 ? this.jts[pc] : this.jfs[pc];
+					break;
+				case BPF_ALU | BPF_ADD | BPF_X:
+					a += x;
+					break;
+				case BPF_ALU | BPF_SUB | BPF_X:
+					a -= x;
+					break;
+				case BPF_ALU | BPF_MUL | BPF_X:
+					a *= x;
+					break;
+				case BPF_ALU | BPF_DIV | BPF_X:
+					if (x == 0) {
+						return 0;
+					}
+					a = (int) ((a & UNSIGNED_MASK) / (x & UNSIGNED_MASK));
+					break;
+				case BPF_ALU | BPF_MOD | BPF_X:
+					if (x == 0) {
+						return 0;
+					}
+					a = (int) ((a & UNSIGNED_MASK) % (x & UNSIGNED_MASK));
+					break;
+				case BPF_ALU | BPF_AND | BPF_X:
+					a &= x;
+					break;
+				case BPF_ALU | BPF_OR | BPF_X:
+					a |= x;
+					break;
+				case BPF_ALU | BPF_XOR | BPF_X:
+					a ^= x;
+					break;
+				case BPF_ALU | BPF_LSH | BPF_X:
+					a <<= x;
+					break;
+				case BPF_ALU | BPF_RSH | BPF_X:
+					a >>>= x;
+					break;
+				case BPF_ALU | BPF_ADD | BPF_K:
+					a += k;
+					break;
+				case BPF_ALU | BPF_SUB | BPF_K:
+					a -= k;
+					break;
+				case BPF_ALU | BPF_MUL | BPF_K:
+					a *= k;
+					break;
+				case BPF_ALU | BPF_DIV | BPF_K:
+					a = (int) ((a & UNSIGNED_MASK) / (k & UNSIGNED_MASK));
+					break;
+				case BPF_ALU | BPF_MOD | BPF_K:
+					a = (int) ((a & UNSIGNED_MASK) % (k & UNSIGNED_MASK));
+					break;
+				case BPF_ALU | BPF_AND | BPF_K:
+					a &= k;
+					break;
+				case BPF_ALU | BPF_OR | BPF_K:
+					a |= k;
+					break;
+				case BPF_ALU | BPF_XOR | BPF_K:
+					a ^= k;
+					break;
+				case BPF_ALU | BPF_LSH | BPF_K:
+					a <<= k;
+					break;
+				case BPF_ALU | BPF_RSH | BPF_K:
+					a >>>= k;
+					break;
+				case BPF_ALU | BPF_NEG:
+					a = -a;
+					break;
+				case BPF_MISC | BPF_TAX:
+					x = a;
+					break;
+				case BPF_MISC | BPF_TXA:
+					a = x;
+					break;
+				default:
+					// Unreachable, every opcode is checked by validate().
+					throw new IllegalStateException("Invalid BPF opcode: " + codes[pc]);
+			}
+			pc++;
+		}
+	}
+
+}
@@ -17,12 +17,13 @@
 
 package com.ardikars.jxnet;
 
+import com.ardikars.common.annotation.Incubating;
 import com.ardikars.common.annotation.Mutable;
 import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.exception.BpfProgramCloseException;
 import com.ardikars.jxnet.exception.NativeException;
 
 import java.io.IOException;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * The Berkeley Packet Filter (BPF) allows a user-space program to attach a filter onto any socket and
@@ -32,12 +33,12 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
  * @since 1.0.0
  */
-@Mutable(blocking = true)
+@Mutable(volatiles = { "address" })
 public final class BpfProgram implements PointerHandler {
 
-	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+	private final HandleState state = new HandleState();
 
-	private long address;
+	private volatile long address;
 
 	/**
 	 * Bpf compile mode.
@@ -60,6 +61,10 @@ public final class BpfProgram implements PointerHandler {
 	
 	private native void initBpfProgram();
 
+	private native void closeBpfProgram();
+
+	private native long[] getInstructions0();
+
 	/**
 	 * Create instance of BpfProgram and initialize it.
 	 */
@@ -101,14 +106,24 @@ public final class BpfProgram implements PointerHandler {
 	 */
 	@Override
 	public long address() {
-		if (this.lock.readLock().tryLock()) {
-			try {
-				return this.address;
-			} finally {
-				this.lock.readLock().unlock();
-			}
+		return this.address;
+	}
+
+	/**
+	 * Get a copy of the compiled instructions (bf_insns), for example to evaluate the filter
+	 * with {@link BpfInterpreter} without a native call per packet.
+	 * @return returns compiled instructions, or empty array if nothing has been compiled.
+	 * @throws BpfProgramCloseException bpf program close exception.
+	 * @since 1.5.4
+	 */
+	@Incubating
+	public BpfInstruction[] getInstructions() throws BpfProgramCloseException {
+		final long[] packed = this.getInstructions0();
+		final BpfInstruction[] instructions = new BpfInstruction[packed.length];
+		for (int i = 0; i < packed.length; i++) {
+			instructions[i] = BpfInstruction.valueOf(packed[i]);
 		}
-		return 0;
+		return instructions;
 	}
 
 	@Override
@@ -125,13 +140,13 @@ public final class BpfProgram implements PointerHandler {
 	}
 
 	/**
-	 * Close bpf handle.
+	 * Close bpf handle, compiled code and the handle itself are freed
+	 * once no other thread is using it.
 	 * @throws IOException io exception.
 	 */
 	public void close() throws IOException {
 		if (!isClosed()) {
-			Jxnet.PcapFreeCode(this);
-			address = 0;
+			this.closeBpfProgram();
 		}
 	}
 
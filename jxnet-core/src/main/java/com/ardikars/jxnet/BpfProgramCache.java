@@ -0,0 +1,363 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.exception.NativeException;
+import com.ardikars.jxnet.exception.PcapCloseException;
+
+import java.io.IOException;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of compiled filters, keyed by expression, link type, snaplen, optimize flag and netmask,
+ * so reconfiguring a capture with an expression compiled before doesn't go through the filter compiler again.
+ * Cached programs are shared and reference counted: every {@link BpfProgramCache#acquire} should be paired
+ * with a {@link BpfProgramCache#release}, a program is freed once it is evicted (or cleared) and the last user
+ * has released it. Programs handed out by the cache must not be closed or freed by the caller.
+ * All operations are serialized, misses compile while holding the lock (the filter compiler of libpcap
+ * is not thread safe anyway).
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable
+public final class BpfProgramCache {
+
+	/**
+	 * Maximum number of cached programs of {@link BpfProgramCache#getDefault()},
+	 * can be changed by "jxnet.bpf.cache.size" system property.
+	 */
+	public static final int DEFAULT_MAXIMUM_SIZE = 64;
+
+	private static final BpfProgramCache DEFAULT = new BpfProgramCache(
+			Integer.getInteger("jxnet.bpf.cache.size", DEFAULT_MAXIMUM_SIZE));
+
+	private final int maximumSize;
+
+	/**
+	 * Cached entries in access order, eldest first.
+	 */
+	private final LinkedHashMap<Key, Entry> entries;
+
+	/**
+	 * Entries with at least one user, cached or evicted.
+	 */
+	private final Map<BpfProgram, Entry> acquired = new IdentityHashMap<BpfProgram, Entry>();
+
+	private long hitCount;
+
+	private long missCount;
+
+	private long evictionCount;
+
+	private BpfProgramCache(final int maximumSize) {
+		Validate.notIllegalArgument(maximumSize >= 0,
+				new IllegalArgumentException("Maximum size should be greater than or equal to zero."));
+		this.maximumSize = maximumSize;
+		this.entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+	}
+
+	/**
+	 * Create new cache.
+	 * @param maximumSize maximum number of cached programs, 0 to only share programs while they are in use.
+	 * @return returns {@link BpfProgramCache}.
+	 */
+	public static BpfProgramCache newInstance(final int maximumSize) {
+		return new BpfProgramCache(maximumSize);
+	}
+
+	/**
+	 * Get process wide cache, used by application context to compile filters.
+	 * @return returns default {@link BpfProgramCache}.
+	 */
+	public static BpfProgramCache getDefault() {
+		return DEFAULT;
+	}
+
+	/**
+	 * Get a program compiled against pcap handle (see {@link Jxnet#PcapCompile(Pcap, BpfProgram, String, int, int)}),
+	 * link type and snaplen of the handle are part of the cache key.
+	 * @param pcap pcap handle.
+	 * @param expression filter expression.
+	 * @param optimize bpf compile mode.
+	 * @param netmask netmask.
+	 * @return returns compiled program, should be released by {@link BpfProgramCache#release(BpfProgram)}.
+	 * @throws PcapCloseException pcap close exception.
+	 * @throws NativeException failed to compile expression, the reason is available from {@link Jxnet#PcapGetErr(Pcap)}.
+	 */
+	public synchronized BpfProgram acquire(final Pcap pcap, final String expression,
+										   final BpfProgram.BpfCompileMode optimize, final int netmask)
+			throws PcapCloseException {
+		Validate.notIllegalArgument(pcap != null,
+				new IllegalArgumentException("Pcap handle should be not null."));
+		validate(expression, optimize);
+		final Key key = new Key(expression, Jxnet.PcapDataLink(pcap), Jxnet.PcapSnapshot(pcap),
+				optimize.getValue(), netmask);
+		Entry entry = hit(key);
+		if (entry == null) {
+			final BpfProgram program = new BpfProgram();
+			if (Jxnet.PcapCompile(pcap, program, expression, optimize.getValue(), netmask) < Jxnet.OK) {
+				close(program);
+				throw new NativeException(Jxnet.PcapGetErr(pcap));
+			}
+			entry = miss(key, program);
+		}
+		return entry.program;
+	}
+
+	/**
+	 * Get a program compiled without pcap handle (see {@link Jxnet#PcapCompileNoPcap(int, int, BpfProgram, String, int, int)}).
+	 * @param snaplen snapshot length.
+	 * @param dataLinkType datalink type.
+	 * @param expression filter expression.
+	 * @param optimize bpf compile mode.
+	 * @param netmask netmask.
+	 * @return returns compiled program, should be released by {@link BpfProgramCache#release(BpfProgram)}.
+	 * @throws NativeException failed to compile expression.
+	 */
+	public synchronized BpfProgram acquire(final int snaplen, final DataLinkType dataLinkType, final String expression,
+										   final BpfProgram.BpfCompileMode optimize, final int netmask) {
+		Validate.notIllegalArgument(dataLinkType != null,
+				new IllegalArgumentException("Datalink type should be not null."));
+		validate(expression, optimize);
+		final Key key = new Key(expression, dataLinkType.getValue(), snaplen, optimize.getValue(), netmask);
+		Entry entry = hit(key);
+		if (entry == null) {
+			final BpfProgram program = new BpfProgram();
+			if (Jxnet.PcapCompileNoPcap(snaplen, dataLinkType.getValue(), program, expression,
+					optimize.getValue(), netmask) < Jxnet.OK) {
+				close(program);
+				throw new NativeException("Failed to compile filter expression: " + expression + ".");
+			}
+			entry = miss(key, program);
+		}
+		return entry.program;
+	}
+
+	/**
+	 * Release a program acquired from this cache, the program is freed if it was evicted and this was the last user.
+	 * @param program compiled program.
+	 * @return returns true if the program was acquired from this cache, false otherwise (the program is left untouched).
+	 */
+	public synchronized boolean release(final BpfProgram program) {
+		final Entry entry = acquired.get(program);
+		if (entry == null) {
+			return false;
+		}
+		if (--entry.references == 0) {
+			acquired.remove(program);
+			if (!entry.cached) {
+				close(entry.program);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Remove all cached programs, programs which are still in use are freed when their last user releases them.
+	 */
+	public synchronized void clear() {
+		evict(0);
+	}
+
+	/**
+	 * Get maximum number of cached programs.
+	 * @return returns maximum number of cached programs.
+	 */
+	public int getMaximumSize() {
+		return maximumSize;
+	}
+
+	/**
+	 * Get number of cached programs.
+	 * @return returns number of cached programs.
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Get number of programs which are still in use.
+	 * @return returns number of acquired programs.
+	 */
+	public synchronized int getAcquiredCount() {
+		return acquired.size();
+	}
+
+	/**
+	 * Get number of lookups served without compiling, including programs shared while they are in use.
+	 * @return returns number of cache hits.
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * Get number of successfully compiled programs.
+	 * @return returns number of cache misses.
+	 */
+	public synchronized long getMissCount() {
+		return missCount;
+	}
+
+	/**
+	 * Get number of programs removed from the cache because it was full.
+	 * @return returns number of evictions.
+	 */
+	public synchronized long getEvictionCount() {
+		return evictionCount;
+	}
+
+	private Entry hit(final Key key) {
+		final Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		if (entry.references++ == 0) {
+			acquired.put(entry.program, entry);
+		}
+		hitCount++;
+		return entry;
+	}
+
+	private Entry miss(final Key key, final BpfProgram program) {
+		final Entry entry = new Entry(program);
+		entry.references = 1;
+		acquired.put(program, entry);
+		missCount++;
+		if (maximumSize > 0) {
+			entry.cached = true;
+			entries.put(key, entry);
+			evictionCount += evict(maximumSize);
+		}
+		return entry;
+	}
+
+	private int evict(final int size) {
+		int evicted = 0;
+		final Iterator<Entry> iterator = entries.values().iterator();
+		while (entries.size() > size) {
+			final Entry eldest = iterator.next();
+			iterator.remove();
+			eldest.cached = false;
+			if (eldest.references == 0) {
+				close(eldest.program);
+			}
+			evicted++;
+		}
+		return evicted;
+	}
+
+	private static void validate(final String expression, final BpfProgram.BpfCompileMode optimize) {
+		Validate.notIllegalArgument(expression != null,
+				new IllegalArgumentException("Filter expression should be not null."));
+		Validate.notIllegalArgument(optimize != null,
+				new IllegalArgumentException("Bpf compile mode should be not null."));
+	}
+
+	private static void close(final BpfProgram program) {
+		try {
+			program.close(); // pcap_freecode() and free the handle.
+		} catch (IOException e) {
+			throw new NativeException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public synchronized String toString() {
+		return new StringBuilder("BpfProgramCache{")
+				.append("maximumSize=").append(maximumSize)
+				.append(", size=").append(entries.size())
+				.append(", acquired=").append(acquired.size())
+				.append(", hitCount=").append(hitCount)
+				.append(", missCount=").append(missCount)
+				.append(", evictionCount=").append(evictionCount)
+				.append('}')
+				.toString();
+	}
+
+	private static final class Entry {
+
+		private final BpfProgram program;
+
+		private int references;
+
+		private boolean cached;
+
+		private Entry(final BpfProgram program) {
+			this.program = program;
+		}
+
+	}
+
+	private static final class Key {
+
+		private final String expression;
+
+		private final int linkType;
+
+		private final int snaplen;
+
+		private final int optimize;
+
+		private final int netmask;
+
+		private Key(final String expression, final int linkType, final int snaplen, final int optimize, final int netmask) {
+			this.expression = expression;
+			this.linkType = linkType;
+			this.snaplen = snaplen;
+			this.optimize = optimize;
+			this.netmask = netmask;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			if (this == o) {
+				return true;
+			}
+			if (o == null || getClass() != o.getClass()) {
+				return false;
+			}
+			final Key key = (Key) o;
+			return linkType == key.linkType
+					&& snaplen == key.snaplen
+					&& optimize == key.optimize
+					&& netmask == key.netmask
+					&& expression.equals(key.expression);
+		}
+
+		@Override
+		public int hashCode() {
+			int result = expression.hashCode();
+			result = 31 * result + linkType;
+			result = 31 * result + snaplen;
+			result = 31 * result + optimize;
+			result = 31 * result + netmask;
+			return result;
+		}
+
+	}
+
+}
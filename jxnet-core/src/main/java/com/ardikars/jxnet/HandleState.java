@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Lock-free state of a native handle, shared by {@link Pcap}, {@link PcapDumper} and {@link BpfProgram}.
+ * The control word is only updated atomically by native code:
+ * <pre>
+ * 0: int  bit 31 is closed flag, bit 0-30 is reference count
+ *         (one reference owned by the handle itself plus one for each native call in progress).
+ * 8: long native pointer waiting to be freed after the handle is closed.
+ * </pre>
+ * Closing a handle sets the closed flag and drops the owner reference, the native pointer
+ * is freed by whoever drops the last reference, so a handle never freed while other thread still using it.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+final class HandleState {
+
+	static final int CLOSED = 0x80000000;
+
+	static final int CONTROL_SIZE = 16;
+
+	private final ByteBuffer control = ByteBuffer.allocateDirect(CONTROL_SIZE).order(ByteOrder.nativeOrder());
+
+	HandleState() {
+		this.control.putInt(0, 1);
+	}
+
+	/**
+	 * Check closed flag.
+	 * @return returns true if closed, false otherwise.
+	 */
+	boolean isClosed() {
+		return (this.control.getInt(0) & CLOSED) != 0;
+	}
+
+	/**
+	 * Number of active references, including owner reference.
+	 * @return returns number of active references.
+	 */
+	int references() {
+		return this.control.getInt(0) & ~CLOSED;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("HandleState{")
+				.append("closed=").append(isClosed())
+				.append(", references=").append(references())
+				.append('}')
+				.toString();
+	}
+
+}
@@ -169,6 +169,72 @@ public final class Jxnet {
 	@Incubating
 	public static native <T> int PcapDispatch0(Pcap pcap, int cnt, RawPcapHandler<T> callback, T user) throws PcapCloseException;
 
+	/**
+	 * Collect a group of packets, packets are copied into caller supplied packet slab
+	 * and delivered to the callback in batches (one callback invocation per batch) instead of one by one.
+	 * The batch size is bounded by headers capacity divided by {@link PcapBatchHandler#HEADER_SIZE}
+	 * and by the packets slab capacity.
+	 * @param pcap pcap instance.
+	 * @param cnt maximum iteration, -1 to infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param headers direct buffer for packet headers.
+	 * @param packets direct buffer for packet data.
+	 * @param <T> args type.
+	 * @return PcapDispatchBatch() returns the number of packets processed on success;
+	 * this can be 0 if no packets were read from a live capture or if no more
+	 * packets are available in a savefile. It returns -1 if an error
+	 * occurs or -2 if the loop terminated due to a call to PcapBreakLoop()
+	 * before any packets were processed.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	@Incubating
+	public static native <T> int PcapDispatchBatch(Pcap pcap, int cnt, PcapBatchHandler<T> callback, T user,
+												   ByteBuffer headers, ByteBuffer packets) throws PcapCloseException;
+
+	/**
+	 * Collect a group of packets without allocating new header and buffer for each packet.
+	 * One {@link PcapPktHdr} and one direct {@link ByteBuffer} are created per loop and re-pointed
+	 * by native code to every captured packet before invoking the callback.
+	 * The header and buffer passed to the callback are owned by the loop: they are only valid
+	 * until the callback returns, and they must not be retained or handed off to other thread
+	 * (use {@link PcapPktHdr#copy()} and copy the buffer content instead).
+	 * After the loop returns, the buffer is detached and has zero capacity.
+	 * @param pcap pcap instance.
+	 * @param cnt maximum iteration, -1 is infinite iteration.
+	 * @param callback callback function.
+	 * @param user args
+	 * @param <T> args type.
+	 * @return PcapLoopReusable() returns 0 if cnt is exhausted or if, when reading from a
+	 * savefile, no more packets are available. It returns -1 if an error
+	 * occurs or -2 if the loop terminated due to a call to PcapBreakLoop()
+	 * before any packets were processed.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	@Incubating
+	public static native <T> int PcapLoopReusable(Pcap pcap, int cnt, PcapHandler<T> callback, T user) throws PcapCloseException;
+
+	/**
+	 * Collect a group of packets without allocating new header and buffer for each packet.
+	 * Header and buffer ownership is the same as {@link Jxnet#PcapLoopReusable(Pcap, int, PcapHandler, Object)}.
+	 * @param pcap pcap instance.
+	 * @param cnt maximum iteration, -1 to infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> args type.
+	 * @return PcapDispatchReusable() returns the number of packets processed on success;
+	 * this can be 0 if no packets were read from a live capture or if no more
+	 * packets are available in a savefile. It returns -1 if an error
+	 * occurs or -2 if the loop terminated due to a call to PcapBreakLoop()
+	 * before any packets were processed.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	@Incubating
+	public static native <T> int PcapDispatchReusable(Pcap pcap, int cnt, PcapHandler<T> callback, T user) throws PcapCloseException;
+
 	/**
 	 * Open a file to write packets.
 	 * @param pcap pcap instance.
@@ -248,6 +314,8 @@ public final class Jxnet {
 
 	/**
 	 * Read a packet from an interface or from an offline capture.
+	 * If pktData is a direct buffer with enough capacity, packet is copied directly into it
+	 * (position is set to packet length and limit to capacity, like clear() followed by put()).
 	 * @param pcap pcap instance.
 	 * @param pktHeader packet header.
 	 * @param pktData packet buffer.
@@ -261,6 +329,24 @@ public final class Jxnet {
 	 */
 	public static native int PcapNextEx(Pcap pcap, PcapPktHdr pktHeader, ByteBuffer pktData) throws PcapCloseException;
 
+	/**
+	 * Read a packet from an interface or from an offline capture without copying it.
+	 * On success, pktData[0] is the packet memory address and pktData[1] is the captured length.
+	 * The address is owned by libpcap and only valid until the next read on this handle.
+	 * @param pcap pcap instance.
+	 * @param pktHeader packet header.
+	 * @param pktData reusable array with length at least 2.
+	 * @return PcapNextEx0() returns 1 if the packet was read without problems, 0 if
+	 * packets are being read from a live capture and the packet buffer time-
+	 * out expired, -1 if an error occurred while reading the packet, and -2
+	 * if packets are being read from a savefile and there are no more
+	 * packets to read from the savefile.
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	@Incubating
+	public static native int PcapNextEx0(Pcap pcap, PcapPktHdr pktHeader, long[] pktData) throws PcapCloseException;
+
 	/**
 	 * Close the files associated with pcap and deallocates resources.
 	 * @param pcap pcap instance.
@@ -794,6 +880,64 @@ public final class Jxnet {
 	 */
 	public static native int PcapCheckActivated(Pcap pcap);
 
+	/**
+	 * Get the file descriptor (socket on Linux) of a live capture handle.
+	 * @param pcap pcap instance.
+	 * @return returns file descriptor, or -1 if the handle has no file descriptor (savefile).
+	 * @throws PcapCloseException pcap close exception.
+	 * @since 1.5.4
+	 */
+	@Incubating
+	public static native int PcapFileno(Pcap pcap) throws PcapCloseException;
+
+	/**
+	 * Join an activated live handle to a Linux PACKET_FANOUT group, so packets of the interface
+	 * are spread across all handles in the same group. Only supported on Linux.
+	 * @param pcap pcap instance.
+	 * @param groupId fanout group id (0 - 65535), shared by all handles in the group.
+	 * @param mode fanout mode value and flags, see {@link PcapFanoutMode}.
+	 * @return returns 0 on success.
+	 * @throws PcapCloseException pcap close exception.
+	 * @throws PlatformNotSupportedException platform not supported exception.
+	 * @throws NativeException unable to join the group (setsockopt() failed).
+	 * @since 1.5.4
+	 */
+	@Incubating
+	public static native int PcapSetFanout(Pcap pcap, int groupId, int mode)
+			throws PcapCloseException, PlatformNotSupportedException, NativeException;
+
+	/**
+	 * Reserve disk blocks for the next length bytes of a savefile (fallocate() with FALLOC_FL_KEEP_SIZE),
+	 * so later PcapDump() calls do not have to allocate blocks. The file size is not changed. Only supported on Linux.
+	 * Reserved blocks beyond the last packet are kept after close, truncate the file to its size to release them.
+	 * @param pcapDumper pcap dumper object.
+	 * @param length number of bytes to reserve after the current position (must be greater than 0).
+	 * @return returns 0 on success.
+	 * @throws PcapDumperCloseException pcap dumper close exception.
+	 * @throws PlatformNotSupportedException platform not supported exception.
+	 * @throws NativeException unable to reserve disk space (fallocate() failed).
+	 * @since 1.5.4
+	 */
+	@Incubating
+	public static native int PcapDumpPreallocate(PcapDumper pcapDumper, long length)
+			throws PcapDumperCloseException, PlatformNotSupportedException, NativeException;
+
+	/**
+	 * Transmit many packets with a single native call. The buffer holds frames each preceded by its length
+	 * (4 byte int in native byte order) without padding, see {@link PcapSendBuffer}.
+	 * On Linux the frames are written to the capture socket with sendmmsg(), elsewhere with PcapSendPacket().
+	 * Sending stops at the first frame that can't be sent, the error is available from {@link Jxnet#PcapGetErr(Pcap)}.
+	 * @param pcap pcap instance.
+	 * @param buf direct buffer of length prefixed frames.
+	 * @param size number of bytes used in the buffer, starting from index 0.
+	 * @return returns number of frames sent, or -1 if no frame was sent.
+	 * @throws PcapCloseException pcap close exception.
+	 * @throws IllegalArgumentException a frame length is not positive or exceeds size (nothing is sent).
+	 * @since 1.5.4
+	 */
+	@Incubating
+	public static native int PcapSendBatch(Pcap pcap, ByteBuffer buf, int size) throws PcapCloseException;
+
 
 	/**
 	 * Non pcap functions
@@ -0,0 +1,137 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.jxnet.util.DirectMemory;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Read only mapping window that slides over a file, used by the pure Java savefile readers.
+ * Old windows are never unmapped explicitly, so slices handed out stay valid until garbage collected.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+final class MappedFileWindow {
+
+	private final FileChannel channel;
+	private final long size;
+	private final int windowSize;
+
+	private ByteOrder byteOrder;
+	private MappedByteBuffer buffer;
+	private long start;
+	private long address;
+
+	MappedFileWindow(final FileChannel channel, final long size, final int windowSize, final ByteOrder byteOrder) {
+		this.channel = channel;
+		this.size = size;
+		this.windowSize = windowSize;
+		this.byteOrder = byteOrder;
+	}
+
+	/**
+	 * Make sure the given region is inside current window, map a new window starting at the region otherwise.
+	 * @param start file offset.
+	 * @param length region length, must not be greater than window size.
+	 * @return returns region offset inside the window.
+	 * @throws IOException io exception.
+	 */
+	int map(final long start, final int length) throws IOException {
+		if (this.buffer == null || start < this.start || start + length > this.start + this.buffer.capacity()) {
+			long mappingSize = Math.min((long) this.windowSize, this.size - start);
+			this.buffer = this.channel.map(FileChannel.MapMode.READ_ONLY, start, mappingSize);
+			this.buffer.order(this.byteOrder);
+			this.start = start;
+			this.address = address(this.buffer);
+		}
+		return (int) (start - this.start);
+	}
+
+	/**
+	 * Current window, use offset returned by {@link MappedFileWindow#map(long, int)}.
+	 * @return returns mapped buffer.
+	 */
+	MappedByteBuffer buffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * Memory address of current window.
+	 * @return returns memory address, or 0 if not supported.
+	 */
+	long address() {
+		return this.address;
+	}
+
+	/**
+	 * Read only slice of current window.
+	 * @param offset offset inside the window.
+	 * @param length length.
+	 * @return returns slice.
+	 */
+	ByteBuffer slice(final int offset, final int length) {
+		ByteBuffer duplicate = this.buffer.duplicate();
+		duplicate.limit(offset + length).position(offset);
+		return duplicate.slice();
+	}
+
+	/**
+	 * Set byte order of current and next windows.
+	 * @param byteOrder byte order.
+	 */
+	void order(final ByteOrder byteOrder) {
+		this.byteOrder = byteOrder;
+		if (this.buffer != null) {
+			this.buffer.order(byteOrder);
+		}
+	}
+
+	void release() {
+		this.buffer = null;
+	}
+
+	static boolean isMemoryAddressSupported() {
+		return DirectMemory.isAddressSupported();
+	}
+
+	static boolean isCopyMemorySupported() {
+		return DirectMemory.isAccessSupported();
+	}
+
+	/**
+	 * Copy native memory, for example a packet given to {@link RawPcapHandler} into a direct buffer.
+	 * @param srcAddress source address.
+	 * @param dstAddress destination address.
+	 * @param length number of bytes.
+	 */
+	static void copyMemory(final long srcAddress, final long dstAddress, final long length) {
+		DirectMemory.copyMemory(srcAddress, dstAddress, length);
+	}
+
+	static long address(final Buffer buffer) {
+		return DirectMemory.isAddressSupported() ? DirectMemory.address(buffer) : 0;
+	}
+
+}
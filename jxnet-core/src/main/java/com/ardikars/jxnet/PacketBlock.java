@@ -0,0 +1,249 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Retired TPACKET_V3 block of a {@link PacketRing}, and a cursor over the packets inside it.
+ * Instance is reused by the ring for every block, call {@link PacketBlock#next()} to move to the next packet.
+ * <pre>
+ * block descriptor (native order):
+ *  8: u32 block status
+ * 12: u32 number of packets
+ * 16: u32 offset to the first packet
+ * 20: u32 block length
+ * 24: u64 sequence number
+ * packet header (native order):
+ *  0: u32 offset to the next packet
+ *  4: u32 timestamp seconds
+ *  8: u32 timestamp nanoseconds
+ * 12: u32 captured length
+ * 16: u32 original length
+ * 24: u16 offset to the link layer header
+ * </pre>
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable
+public final class PacketBlock {
+
+	private static final int NUM_PKTS_OFFSET = 12;
+	private static final int OFFSET_TO_FIRST_PKT_OFFSET = 16;
+	private static final int BLK_LEN_OFFSET = 20;
+	private static final int SEQ_NUM_OFFSET = 24;
+
+	private static final int TP_NEXT_OFFSET = 0;
+	private static final int TP_SEC_OFFSET = 4;
+	private static final int TP_NSEC_OFFSET = 8;
+	private static final int TP_SNAPLEN_OFFSET = 12;
+	private static final int TP_LEN_OFFSET = 16;
+	private static final int TP_MAC_OFFSET = 24;
+
+	private int index = -1;
+	private ByteBuffer buffer;
+	private long address;
+
+	private int packetCount;
+	private int remaining;
+	private int headerOffset;
+	private int nextOffset;
+
+	PacketBlock() {
+	}
+
+	/**
+	 * Point this cursor to the given block, before the first packet.
+	 * @param index block index.
+	 * @param buffer block buffer.
+	 * @param address block address.
+	 */
+	void set(final int index, final ByteBuffer buffer, final long address) {
+		this.index = index;
+		this.buffer = buffer;
+		this.address = address;
+		this.packetCount = buffer.getInt(NUM_PKTS_OFFSET);
+		reset();
+	}
+
+	/**
+	 * Detach this cursor from the ring once it is unmapped, reading the block throws instead of touching unmapped memory.
+	 */
+	void clear() {
+		this.index = -1;
+		this.buffer = ByteBuffer.allocate(0);
+		this.address = 0;
+		this.packetCount = 0;
+		this.remaining = 0;
+		this.headerOffset = -1;
+		this.nextOffset = 0;
+	}
+
+	/**
+	 * Move the cursor before the first packet of this block.
+	 */
+	public void reset() {
+		this.remaining = this.packetCount;
+		this.headerOffset = -1;
+		this.nextOffset = this.buffer.getInt(OFFSET_TO_FIRST_PKT_OFFSET);
+	}
+
+	/**
+	 * Move the cursor to the next packet.
+	 * @return returns true if the cursor is on a packet, false if there is no more packet in this block.
+	 */
+	public boolean next() {
+		if (this.remaining <= 0) {
+			return false;
+		}
+		this.remaining--;
+		this.headerOffset = this.nextOffset;
+		this.nextOffset = this.headerOffset + this.buffer.getInt(this.headerOffset + TP_NEXT_OFFSET);
+		return true;
+	}
+
+	/**
+	 * Number of packets left after the current packet.
+	 * @return returns remaining packets.
+	 */
+	public int getRemaining() {
+		return this.remaining;
+	}
+
+	/**
+	 * Block index in the ring.
+	 * @return returns block index.
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Whole block, in native byte order. Only valid until the block handler returns.
+	 * @return returns block buffer.
+	 */
+	public ByteBuffer getBuffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * Memory address of the first byte of the block.
+	 * @return returns block address.
+	 */
+	public long getAddress() {
+		return this.address;
+	}
+
+	/**
+	 * Number of packets in this block.
+	 * @return returns number of packets.
+	 */
+	public int getPacketCount() {
+		return this.packetCount;
+	}
+
+	/**
+	 * Number of used bytes in this block.
+	 * @return returns block length.
+	 */
+	public int getBlockLength() {
+		return this.buffer.getInt(BLK_LEN_OFFSET);
+	}
+
+	/**
+	 * Block sequence number, a gap between two blocks means the ring was full.
+	 * @return returns sequence number.
+	 */
+	public long getSequenceNumber() {
+		return this.buffer.getLong(SEQ_NUM_OFFSET);
+	}
+
+	/**
+	 * Captured length of the current packet.
+	 * @return returns captured length.
+	 */
+	public int getCapLen() {
+		return this.buffer.getInt(this.headerOffset + TP_SNAPLEN_OFFSET);
+	}
+
+	/**
+	 * Original length of the current packet.
+	 * @return returns original length.
+	 */
+	public int getLen() {
+		return this.buffer.getInt(this.headerOffset + TP_LEN_OFFSET);
+	}
+
+	/**
+	 * Timestamp (seconds) of the current packet.
+	 * @return returns seconds.
+	 */
+	public int getTvSec() {
+		return this.buffer.getInt(this.headerOffset + TP_SEC_OFFSET);
+	}
+
+	/**
+	 * Timestamp (microseconds) of the current packet.
+	 * @return returns microseconds.
+	 */
+	public long getTvUsec() {
+		return (this.buffer.getInt(this.headerOffset + TP_NSEC_OFFSET) & 0xffffffffL) / 1000;
+	}
+
+	/**
+	 * Offset of the current packet data from the start of the block.
+	 * @return returns packet offset.
+	 */
+	public int getPacketOffset() {
+		return this.headerOffset + (this.buffer.getShort(this.headerOffset + TP_MAC_OFFSET) & 0xffff);
+	}
+
+	/**
+	 * Memory address of the current packet data.
+	 * @return returns packet address.
+	 */
+	public long getPacketAddress() {
+		return this.address + getPacketOffset();
+	}
+
+	/**
+	 * Fill packet header with the current packet.
+	 * @param pktHdr packet header.
+	 * @return returns given packet header.
+	 */
+	public PcapPktHdr header(final PcapPktHdr pktHdr) {
+		pktHdr.set(getCapLen(), getLen(), getTvSec(), getTvUsec());
+		return pktHdr;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PacketBlock{")
+				.append("index=").append(this.index)
+				.append(", packetCount=").append(this.packetCount)
+				.append(", remaining=").append(this.remaining)
+				.append('}')
+				.toString();
+	}
+
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reference counted copy of a packet, backed by an off-heap slab of {@link PacketBufferPool}.
+ * A packet buffer is returned to its pool when the last reference is released,
+ * after that the header and the buffer will be overwritten by another packet.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable
+public final class PacketBuffer {
+
+	private final PacketBufferPool pool;
+
+	private final int index;
+
+	private final ByteBuffer buffer;
+
+	private long address;
+
+	private final PcapPktHdr header = new PcapPktHdr();
+
+	private final AtomicInteger references = new AtomicInteger();
+
+	PacketBuffer(final PacketBufferPool pool, final int index, final ByteBuffer buffer) {
+		this.pool = pool;
+		this.index = index;
+		this.buffer = buffer;
+	}
+
+	/**
+	 * Copy packet header and content into this slab, content larger than the slab is truncated.
+	 * Position of the source buffer is not changed.
+	 * @param h packet header.
+	 * @param bytes packet content.
+	 * @return returns this {@link PacketBuffer}.
+	 */
+	PacketBuffer copy(final PcapPktHdr h, final ByteBuffer bytes) {
+		final int position = bytes.position();
+		final int limit = bytes.limit();
+		final int length = Math.min(limit - position, this.buffer.capacity());
+		bytes.limit(position + length);
+		this.buffer.clear();
+		this.buffer.put(bytes);
+		this.buffer.flip();
+		bytes.limit(limit);
+		bytes.position(position);
+		this.header.set(h.getCapLen(), h.getLen(), h.getTvSec(), h.getTvUsec());
+		return this;
+	}
+
+	/**
+	 * Copy a packet given to a {@link RawPcapHandler} into this slab, content larger than the slab is truncated.
+	 * @param capLen captured length.
+	 * @param len original length.
+	 * @param tvSec timestamp (second).
+	 * @param tvUsec timestamp (micro or nano second).
+	 * @param memoryAddress packet memory address.
+	 * @return returns this {@link PacketBuffer}.
+	 */
+	PacketBuffer copy(final int capLen, final int len, final int tvSec, final long tvUsec, final long memoryAddress) {
+		if (this.address == 0) {
+			this.address = MappedFileWindow.address(this.buffer);
+		}
+		final int length = Math.min(capLen, this.buffer.capacity());
+		MappedFileWindow.copyMemory(memoryAddress, this.address, length);
+		this.buffer.clear();
+		this.buffer.limit(length);
+		this.header.set(capLen, len, tvSec, tvUsec);
+		return this;
+	}
+
+	PacketBuffer acquire() {
+		this.references.set(1);
+		return this;
+	}
+
+	/**
+	 * Get index of the slab in its pool.
+	 * @return returns slab index, or -1 if this buffer is not pooled.
+	 */
+	public int getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * Get packet header.
+	 * @return returns packet header.
+	 */
+	public PcapPktHdr getHeader() {
+		return this.header;
+	}
+
+	/**
+	 * Get packet content, position is zero and limit is the number of copied bytes.
+	 * @return returns packet content.
+	 */
+	public ByteBuffer getBuffer() {
+		return this.buffer;
+	}
+
+	/**
+	 * Get number of active references.
+	 * @return returns number of active references.
+	 */
+	public int references() {
+		return this.references.get();
+	}
+
+	/**
+	 * Increase reference count, for example before handing this packet to other thread.
+	 * @return returns this {@link PacketBuffer}.
+	 * @throws IllegalStateException this packet buffer already released.
+	 */
+	public PacketBuffer retain() throws IllegalStateException {
+		while (true) {
+			final int count = this.references.get();
+			if (count <= 0) {
+				throw new IllegalStateException("Packet buffer already released.");
+			}
+			if (this.references.compareAndSet(count, count + 1)) {
+				return this;
+			}
+		}
+	}
+
+	/**
+	 * Decrease reference count, the slab is returned to the pool when it reaches zero.
+	 * @return returns true if this packet buffer has been returned to the pool, false otherwise.
+	 * @throws IllegalStateException this packet buffer already released.
+	 */
+	public boolean release() throws IllegalStateException {
+		while (true) {
+			final int count = this.references.get();
+			if (count <= 0) {
+				throw new IllegalStateException("Packet buffer already released.");
+			}
+			if (this.references.compareAndSet(count, count - 1)) {
+				if (count == 1) {
+					if (this.pool != null) {
+						this.pool.recycle(this);
+					}
+					return true;
+				}
+				return false;
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder()
+				.append("PacketBuffer{index=").append(this.index)
+				.append(", references=").append(this.references.get())
+				.append(", header=").append(this.header)
+				.append(", buffer=").append(this.buffer)
+				.append('}')
+				.toString();
+	}
+
+}
@@ -0,0 +1,39 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+
+/**
+ * Callback function used for processing pooled packet copies, usually on other thread than the capture thread.
+ * The handler owns one reference of the packet and must call {@link PacketBuffer#release()} when done.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public interface PacketBufferHandler<T> {
+
+	/**
+	 * Next available packet.
+	 * @param user arg.
+	 * @param packet pooled packet copy.
+	 */
+	void nextPacket(T user, PacketBuffer packet);
+
+}
@@ -0,0 +1,307 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+import com.ardikars.common.util.Validate;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free pool of fixed size off-heap slabs, used to hand packets over from the capture thread to other threads.
+ * All slabs are carved out of a single direct buffer when the pool is created, free slabs are kept
+ * in a tagged Treiber stack, so taking and recycling a slab never allocate nor lock.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable
+public final class PacketBufferPool {
+
+	private static final long PARK_NANOS = 1000L;
+
+	private static final int EMPTY = -1;
+
+	private final int poolSize;
+
+	private final int slabSize;
+
+	private final ExhaustionPolicy exhaustionPolicy;
+
+	private final PacketBuffer[] slabs;
+
+	private final AtomicIntegerArray next;
+
+	/**
+	 * High 32 bit is a tag incremented on every update (against ABA), low 32 bit is index of the top slab.
+	 */
+	private final AtomicLong head = new AtomicLong();
+
+	private final AtomicInteger available = new AtomicInteger();
+
+	private final AtomicLong dropped = new AtomicLong();
+
+	private final AtomicLong allocated = new AtomicLong();
+
+	private PacketBufferPool(final Builder builder) {
+		this.poolSize = builder.poolSize;
+		this.slabSize = builder.slabSize;
+		this.exhaustionPolicy = builder.exhaustionPolicy;
+		this.slabs = new PacketBuffer[poolSize];
+		this.next = new AtomicIntegerArray(poolSize);
+		final ByteBuffer memory = ByteBuffer.allocateDirect(poolSize * slabSize);
+		for (int i = 0; i < poolSize; i++) {
+			memory.limit((i + 1) * slabSize);
+			memory.position(i * slabSize);
+			this.slabs[i] = new PacketBuffer(this, i, memory.slice());
+			this.next.set(i, i + 1 < poolSize ? i + 1 : EMPTY);
+		}
+		this.head.set(0L);
+		this.available.set(poolSize);
+	}
+
+	/**
+	 * Take a free slab and copy the packet into it, the caller owns the single reference of returned packet buffer.
+	 * Packet content larger than the slab size is truncated.
+	 * When the pool is exhausted, behavior depends on {@link ExhaustionPolicy}.
+	 * @param h packet header.
+	 * @param bytes packet content, position is not changed.
+	 * @return returns packet buffer, or null if the pool is exhausted and {@link ExhaustionPolicy#DROP} is used.
+	 */
+	public PacketBuffer copyOf(final PcapPktHdr h, final ByteBuffer bytes) {
+		final PacketBuffer packetBuffer = allocate();
+		if (packetBuffer == null) {
+			return null;
+		}
+		return packetBuffer.copy(h, bytes);
+	}
+
+	/**
+	 * Take a free slab and copy the packet given to a {@link RawPcapHandler} into it,
+	 * the caller owns the single reference of returned packet buffer.
+	 * Packet content larger than the slab size is truncated.
+	 * When the pool is exhausted, behavior depends on {@link ExhaustionPolicy}.
+	 * @param capLen captured length.
+	 * @param len original length.
+	 * @param tvSec timestamp (second).
+	 * @param tvUsec timestamp (micro or nano second).
+	 * @param memoryAddress packet memory address, only read during this call.
+	 * @return returns packet buffer, or null if the pool is exhausted and {@link ExhaustionPolicy#DROP} is used.
+	 * @throws UnsupportedOperationException raw memory copy is not supported on this platform.
+	 */
+	public PacketBuffer copyOf(final int capLen, final int len, final int tvSec, final long tvUsec,
+							   final long memoryAddress) throws UnsupportedOperationException {
+		if (!MappedFileWindow.isCopyMemorySupported()) {
+			throw new UnsupportedOperationException("Raw memory copy is not supported.");
+		}
+		final PacketBuffer packetBuffer = allocate();
+		if (packetBuffer == null) {
+			return null;
+		}
+		return packetBuffer.copy(capLen, len, tvSec, tvUsec, memoryAddress);
+	}
+
+	/**
+	 * Take a free slab, the caller owns the single reference of returned packet buffer.
+	 * When the pool is exhausted, behavior depends on {@link ExhaustionPolicy}.
+	 * @return returns packet buffer, or null if the pool is exhausted and {@link ExhaustionPolicy#DROP} is used.
+	 */
+	public PacketBuffer allocate() {
+		PacketBuffer packetBuffer = poll();
+		while (packetBuffer == null) {
+			switch (exhaustionPolicy) {
+				case DROP:
+					dropped.incrementAndGet();
+					return null;
+				case ALLOCATE:
+					allocated.incrementAndGet();
+					return new PacketBuffer(null, EMPTY, ByteBuffer.allocateDirect(slabSize)).acquire();
+				default:
+					LockSupport.parkNanos(PARK_NANOS);
+					packetBuffer = poll();
+					break;
+			}
+		}
+		return packetBuffer.acquire();
+	}
+
+	private PacketBuffer poll() {
+		while (true) {
+			final long current = head.get();
+			final int index = (int) current;
+			if (index == EMPTY) {
+				return null;
+			}
+			final long update = nextTag(current) | (next.get(index) & 0xFFFFFFFFL);
+			if (head.compareAndSet(current, update)) {
+				available.decrementAndGet();
+				return slabs[index];
+			}
+		}
+	}
+
+	void recycle(final PacketBuffer packetBuffer) {
+		final int index = packetBuffer.getIndex();
+		while (true) {
+			final long current = head.get();
+			next.set(index, (int) current);
+			if (head.compareAndSet(current, nextTag(current) | (index & 0xFFFFFFFFL))) {
+				available.incrementAndGet();
+				return;
+			}
+		}
+	}
+
+	private static long nextTag(final long current) {
+		return ((current >>> 32) + 1) << 32;
+	}
+
+	/**
+	 * Get number of slabs.
+	 * @return returns number of slabs.
+	 */
+	public int getPoolSize() {
+		return poolSize;
+	}
+
+	/**
+	 * Get size of each slab in bytes.
+	 * @return returns slab size.
+	 */
+	public int getSlabSize() {
+		return slabSize;
+	}
+
+	/**
+	 * Get exhaustion policy.
+	 * @return returns exhaustion policy.
+	 */
+	public ExhaustionPolicy getExhaustionPolicy() {
+		return exhaustionPolicy;
+	}
+
+	/**
+	 * Get number of free slabs.
+	 * @return returns number of free slabs.
+	 */
+	public int getAvailable() {
+		return available.get();
+	}
+
+	/**
+	 * Get number of packets dropped because the pool was exhausted ({@link ExhaustionPolicy#DROP}).
+	 * @return returns number of dropped packets.
+	 */
+	public long getDropped() {
+		return dropped.get();
+	}
+
+	/**
+	 * Get number of unpooled buffers allocated because the pool was exhausted ({@link ExhaustionPolicy#ALLOCATE}).
+	 * @return returns number of unpooled buffers.
+	 */
+	public long getAllocated() {
+		return allocated.get();
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder()
+				.append("PacketBufferPool{poolSize=").append(poolSize)
+				.append(", slabSize=").append(slabSize)
+				.append(", exhaustionPolicy=").append(exhaustionPolicy)
+				.append(", available=").append(available.get())
+				.append(", dropped=").append(dropped.get())
+				.append(", allocated=").append(allocated.get())
+				.append('}')
+				.toString();
+	}
+
+	/**
+	 * What to do when no free slab is available.
+	 */
+	public enum ExhaustionPolicy {
+
+		/**
+		 * Wait until a slab is released (back pressure on the capture thread).
+		 */
+		BLOCK,
+
+		/**
+		 * Drop the packet and count it.
+		 */
+		DROP,
+
+		/**
+		 * Allocate a new unpooled direct buffer.
+		 */
+		ALLOCATE
+
+	}
+
+	/**
+	 * Packet buffer pool builder.
+	 */
+	public static final class Builder implements com.ardikars.common.util.Builder<PacketBufferPool, Void> {
+
+		private int poolSize = 1024;
+		private int slabSize = 65535;
+		private ExhaustionPolicy exhaustionPolicy = ExhaustionPolicy.BLOCK;
+
+		public Builder poolSize(final int poolSize) {
+			this.poolSize = poolSize;
+			return this;
+		}
+
+		public Builder slabSize(final int slabSize) {
+			this.slabSize = slabSize;
+			return this;
+		}
+
+		public Builder exhaustionPolicy(final ExhaustionPolicy exhaustionPolicy) {
+			this.exhaustionPolicy = exhaustionPolicy;
+			return this;
+		}
+
+		@Override
+		public PacketBufferPool build() {
+			Validate.notIllegalArgument(poolSize > 0,
+					new IllegalArgumentException("Pool size should be greater than zero."));
+			Validate.notIllegalArgument(slabSize > 0,
+					new IllegalArgumentException("Slab size should be greater than zero."));
+			Validate.notIllegalArgument((long) poolSize * slabSize <= Integer.MAX_VALUE,
+					new IllegalArgumentException("Pool size multiplied by slab size should be less than 2GB."));
+			Validate.notIllegalArgument(exhaustionPolicy != null,
+					new IllegalArgumentException("Exhaustion policy should be not null."));
+			return new PacketBufferPool(this);
+		}
+
+		@Override
+		public PacketBufferPool build(final Void value) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
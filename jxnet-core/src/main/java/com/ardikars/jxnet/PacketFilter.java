@@ -0,0 +1,62 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Packet filter, the result has the meaning of a BPF program return value:
+ * number of bytes of the packet to keep, 0 if the packet is rejected.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public interface PacketFilter {
+
+	/**
+	 * Filter a packet, the packet starts at index 0 of the buffer.
+	 * @param header packet header, caplen is bounded by the buffer limit.
+	 * @param packet packet buffer (heap or direct).
+	 * @return returns number of bytes to keep, 0 if the packet is rejected.
+	 */
+	int filter(PcapPktHdr header, ByteBuffer packet);
+
+	/**
+	 * Filter a packet.
+	 * @param packet packet buffer (heap or direct).
+	 * @param offset index of the first byte of the packet.
+	 * @param caplen number of bytes available in the buffer.
+	 * @param len length of the packet on the wire.
+	 * @return returns number of bytes to keep, 0 if the packet is rejected.
+	 */
+	int filter(ByteBuffer packet, int offset, int caplen, int len);
+
+	/**
+	 * Filter a packet in native memory, for example a packet given to {@link RawPcapHandler}.
+	 * @param address memory address of packet data.
+	 * @param caplen number of bytes available at the address.
+	 * @param len length of the packet on the wire.
+	 * @return returns number of bytes to keep, 0 if the packet is rejected.
+	 * @throws UnsupportedOperationException memory address is not supported by this JVM.
+	 */
+	int filter(long address, int caplen, int len);
+
+}
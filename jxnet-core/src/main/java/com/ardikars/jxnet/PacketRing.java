@@ -0,0 +1,487 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.exception.NativeException;
+import com.ardikars.jxnet.exception.PacketRingCloseException;
+import com.ardikars.jxnet.exception.PlatformNotSupportedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Linux only capture handle that maps a TPACKET_V3 receive ring directly,
+ * bypassing libpcap per packet callback. The kernel fills whole blocks of packets,
+ * retired blocks are handed to Java as direct buffer without copy and given back to the kernel
+ * after being processed. Packets are filtered by the kernel with the program given to {@link PacketRing#setFilter(BpfProgram)}.
+ * Loop methods should be called by one thread at a time, a block in use by the loop keeps the ring mapped
+ * after {@link PacketRing#close()}, until the block is given back.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable(volatiles = { "address", "breakLoop", "looping" })
+public final class PacketRing implements PointerHandler {
+
+	/**
+	 * Wait for a retired block at most this long (millisecond) before checking break loop flag.
+	 */
+	private static final int POLL_TIMEOUT = 100;
+
+	private final HandleState state = new HandleState();
+
+	private volatile long address;
+
+	private volatile boolean breakLoop;
+
+	private volatile boolean looping;
+
+	private final String source;
+	private final int blockSize;
+	private final int blockCount;
+	private final int frameSize;
+	private final int blockTimeout;
+
+	private ByteBuffer[] blocks;
+	private final long mappingAddress;
+	private final PacketBlock block = new PacketBlock();
+
+	private int current;
+	private boolean pending;
+
+	static {
+		try {
+			Class.forName(Jxnet.class.getName()); // Load native library
+		} catch (ClassNotFoundException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	private PacketRing(final Builder builder) {
+		this.source = builder.source;
+		this.blockSize = builder.blockSize;
+		this.blockCount = builder.blockCount;
+		this.frameSize = builder.frameSize;
+		this.blockTimeout = builder.blockTimeout;
+		int fanout = -1;
+		if (builder.fanoutMode != null) {
+			fanout = (builder.fanoutGroupId & 0xffff) | ((builder.fanoutMode.getValue() | builder.fanoutFlags) << 16);
+		}
+		openPacketRing(this.source, this.blockSize, this.blockCount, this.frameSize, this.blockTimeout,
+				builder.promiscuous, fanout);
+		ByteBuffer mapping = mapping0();
+		this.mappingAddress = mappingAddress0();
+		this.blocks = new ByteBuffer[this.blockCount];
+		for (int i = 0; i < this.blockCount; i++) {
+			mapping.limit(i * this.blockSize + this.blockSize).position(i * this.blockSize);
+			this.blocks[i] = mapping.slice().order(ByteOrder.nativeOrder());
+		}
+	}
+
+	private native void openPacketRing(String source, int blockSize, int blockCount, int frameSize, int blockTimeout,
+									   boolean promiscuous, int fanout);
+
+	private native ByteBuffer mapping0();
+
+	private native long mappingAddress0();
+
+	private native int nextBlock0(int index, int timeout);
+
+	private native void releaseBlock0(int index);
+
+	private native void setFilter0(BpfProgram program);
+
+	private native void closePacketRing();
+
+	/**
+	 * Process retired blocks.
+	 * @param cnt maximum number of blocks to process, 0 or -1 is infinite.
+	 * @param callback block handler.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted, -2 if the loop terminated by {@link PacketRing#breakLoop()}.
+	 * @throws PacketRingCloseException packet ring close exception.
+	 * @throws NativeException native exception.
+	 */
+	public <T> int loop(final int cnt, final PacketBlockHandler<T> callback, final T user)
+			throws PacketRingCloseException, NativeException {
+		Validate.notIllegalArgument(callback != null, new IllegalArgumentException("Callback should be not null."));
+		this.looping = true;
+		try {
+			int processed = 0;
+			while (cnt <= 0 || processed < cnt) {
+				if (!nextBlock()) {
+					return -2;
+				}
+				try {
+					callback.nextBlock(user, this.block);
+				} finally {
+					releaseBlock();
+				}
+				processed++;
+			}
+			return 0;
+		} finally {
+			this.looping = false;
+		}
+	}
+
+	/**
+	 * Process packets of retired blocks, one callback per packet.
+	 * Memory address given to the callback is only valid until the callback returns.
+	 * @param cnt maximum number of packets to process, 0 or -1 is infinite.
+	 * @param callback packet handler.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted, -2 if the loop terminated by {@link PacketRing#breakLoop()}.
+	 * @throws PacketRingCloseException packet ring close exception.
+	 * @throws NativeException native exception.
+	 */
+	public <T> int loop(final int cnt, final RawPcapHandler<T> callback, final T user)
+			throws PacketRingCloseException, NativeException {
+		Validate.notIllegalArgument(callback != null, new IllegalArgumentException("Callback should be not null."));
+		this.looping = true;
+		try {
+			int processed = 0;
+			while (cnt <= 0 || processed < cnt) {
+				if (!this.pending && !nextBlock()) {
+					return -2;
+				}
+				if (this.block.next()) {
+					callback.nextPacket(user, this.block.getCapLen(), this.block.getLen(), this.block.getTvSec(),
+							this.block.getTvUsec(), this.block.getPacketAddress());
+					processed++;
+				}
+				if (this.block.getRemaining() == 0) {
+					releaseBlock();
+				}
+			}
+			return 0;
+		} finally {
+			this.looping = false;
+		}
+	}
+
+	/**
+	 * Attach a compiled program to the ring socket (SO_ATTACH_FILTER), replacing the previous one.
+	 * The kernel swaps programs atomically, so it may be called while a loop is running.
+	 * The program is copied by the kernel and may be freed afterwards.
+	 * @param program compiled program, for the link type of the interface.
+	 * @throws PacketRingCloseException packet ring close exception.
+	 * @throws NativeException native exception.
+	 */
+	public void setFilter(final BpfProgram program) throws PacketRingCloseException, NativeException {
+		Validate.notIllegalArgument(program != null, new IllegalArgumentException("Bpf program should be not null."));
+		setFilter0(program);
+	}
+
+	/**
+	 * Terminate running loop, the loop returns -2 within 100 milliseconds.
+	 */
+	public void breakLoop() {
+		this.breakLoop = true;
+	}
+
+	/**
+	 * Wait for the next retired block and point the block cursor to it.
+	 * @return returns false if the loop should be terminated.
+	 */
+	private boolean nextBlock() {
+		if (isClosed()) {
+			detach();
+			throw new PacketRingCloseException();
+		}
+		int index;
+		do {
+			if (this.breakLoop) {
+				this.breakLoop = false;
+				return false;
+			}
+			index = nextBlock0(this.current, POLL_TIMEOUT);
+		} while (index < 0);
+		this.block.set(index, this.blocks[index], this.mappingAddress + (long) index * this.blockSize);
+		this.pending = true;
+		return true;
+	}
+
+	/**
+	 * Give current block back to the kernel and move to the next block.
+	 */
+	private void releaseBlock() {
+		if (this.blocks == null) {
+			throw new PacketRingCloseException();
+		}
+		this.pending = false;
+		releaseBlock0(this.current);
+		this.current = (this.current + 1) % this.blockCount;
+		if (isClosed()) {
+			detach(); // Closed by another thread while the block was in use, the ring is unmapped now
+		}
+	}
+
+	/**
+	 * Drop the buffers of the unmapped ring, so they can't be read after close.
+	 */
+	private void detach() {
+		this.blocks = null;
+		this.block.clear();
+	}
+
+	/**
+	 * Get packet ring pointer address.
+	 * @return returns pointer address.
+	 */
+	@Deprecated
+	@Override
+	public long getAddress() {
+		return address();
+	}
+
+	/**
+	 * Get packet ring pointer address.
+	 * @return returns pointer address.
+	 */
+	@Override
+	public long address() {
+		return this.address;
+	}
+
+	public String getSource() {
+		return this.source;
+	}
+
+	public int getBlockSize() {
+		return this.blockSize;
+	}
+
+	public int getBlockCount() {
+		return this.blockCount;
+	}
+
+	public int getFrameSize() {
+		return this.frameSize;
+	}
+
+	public int getBlockTimeout() {
+		return this.blockTimeout;
+	}
+
+	/**
+	 * Check packet ring handle.
+	 * @return returns true if closed, false otherwise.
+	 */
+	public boolean isClosed() {
+		return this.address() == 0;
+	}
+
+	/**
+	 * Close packet ring handle, the ring is unmapped once no other thread is using it
+	 * and the block in use by a running loop is given back.
+	 * Blocks given to the handlers are detached from the ring, reading them afterwards throws.
+	 * @throws IOException io exception.
+	 */
+	public void close() throws IOException {
+		if (!isClosed()) {
+			if (this.looping) {
+				this.closePacketRing(); // Buffers are dropped by the loop once its block is given back
+			} else {
+				if (this.pending) {
+					releaseBlock(); // Left by a loop which exhausted its count
+				}
+				this.closePacketRing();
+				detach();
+			}
+		}
+	}
+
+	@Override
+	public boolean equals(final Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (o == null || getClass() != o.getClass()) {
+			return false;
+		}
+
+		final PacketRing that = (PacketRing) o;
+
+		return this.address() == that.address();
+	}
+
+	@Override
+	public int hashCode() {
+		return (int) (this.address() ^ (this.address() >>> 32));
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PacketRing{")
+				.append("address=").append(this.address())
+				.append(", source='").append(this.source).append('\'')
+				.append(", blockSize=").append(this.blockSize)
+				.append(", blockCount=").append(this.blockCount)
+				.append(", frameSize=").append(this.frameSize)
+				.append(", blockTimeout=").append(this.blockTimeout)
+				.append('}')
+				.toString();
+	}
+
+	/**
+	 * Packet ring builder.
+	 * @return returns Builder instance.
+	 */
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Builder class for PacketRing.
+	 */
+	public static final class Builder implements com.ardikars.common.util.Builder<PacketRing, Void> {
+
+		private String source;
+		private int blockSize = 1 << 20;
+		private int blockCount = 32;
+		private int frameSize = 1 << 11;
+		private int blockTimeout = 64;
+		private boolean promiscuous = true;
+		private PcapFanoutMode fanoutMode;
+		private int fanoutGroupId;
+		private int fanoutFlags;
+
+		/**
+		 * Interface name.
+		 * @param source interface name.
+		 * @return returns PacketRing Builder.
+		 */
+		public Builder source(final String source) {
+			this.source = source;
+			return this;
+		}
+
+		/**
+		 * Block size, multiple of page size and frame size.
+		 * @param blockSize block size.
+		 * @return returns PacketRing Builder.
+		 */
+		public Builder blockSize(final int blockSize) {
+			this.blockSize = blockSize;
+			return this;
+		}
+
+		/**
+		 * Number of blocks.
+		 * @param blockCount number of blocks.
+		 * @return returns PacketRing Builder.
+		 */
+		public Builder blockCount(final int blockCount) {
+			this.blockCount = blockCount;
+			return this;
+		}
+
+		/**
+		 * Frame size, multiple of 16 (TPACKET_ALIGNMENT).
+		 * @param frameSize frame size.
+		 * @return returns PacketRing Builder.
+		 */
+		public Builder frameSize(final int frameSize) {
+			this.frameSize = frameSize;
+			return this;
+		}
+
+		/**
+		 * Block retire timeout, the kernel retires a partially filled block after this timeout (millisecond).
+		 * @param blockTimeout block retire timeout.
+		 * @return returns PacketRing Builder.
+		 */
+		public Builder blockTimeout(final int blockTimeout) {
+			this.blockTimeout = blockTimeout;
+			return this;
+		}
+
+		/**
+		 * Promiscuous mode.
+		 * @param promiscuous true to enable promiscuous mode.
+		 * @return returns PacketRing Builder.
+		 */
+		public Builder promiscuous(final boolean promiscuous) {
+			this.promiscuous = promiscuous;
+			return this;
+		}
+
+		/**
+		 * Join a PACKET_FANOUT group.
+		 * @param fanoutMode fanout mode.
+		 * @param fanoutGroupId fanout group id (0-65535).
+		 * @param fanoutFlags fanout flags ({@link PcapFanoutMode#FLAG_ROLLOVER}, {@link PcapFanoutMode#FLAG_DEFRAG}).
+		 * @return returns PacketRing Builder.
+		 */
+		public Builder fanout(final PcapFanoutMode fanoutMode, final int fanoutGroupId, final int fanoutFlags) {
+			this.fanoutMode = fanoutMode;
+			this.fanoutGroupId = fanoutGroupId;
+			this.fanoutFlags = fanoutFlags;
+			return this;
+		}
+
+		/**
+		 * Open and map packet ring.
+		 * @return returns PacketRing.
+		 * @throws PlatformNotSupportedException platform not supported exception.
+		 * @throws NativeException native exception.
+		 */
+		@Override
+		public PacketRing build() throws PlatformNotSupportedException, NativeException {
+			Validate.notIllegalArgument(this.source != null && !this.source.isEmpty(),
+					new IllegalArgumentException("Source should be not null or empty."));
+			Validate.notIllegalArgument(this.blockSize > 0 && this.blockCount > 0 && this.frameSize > 0,
+					new IllegalArgumentException("Block size, block count and frame size should be greater than zero."));
+			Validate.notIllegalArgument(this.blockSize % this.frameSize == 0,
+					new IllegalArgumentException("Block size should be multiple of frame size."));
+			Validate.notIllegalArgument(this.fanoutGroupId >= 0 && this.fanoutGroupId <= 0xffff,
+					new IllegalArgumentException("Fanout group id should be between 0 and 65535."));
+			return new PacketRing(this);
+		}
+
+		@Override
+		public PacketRing build(final Void value) {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public String toString() {
+			return new StringBuilder("Builder{")
+					.append("source='").append(this.source).append('\'')
+					.append(", blockSize=").append(this.blockSize)
+					.append(", blockCount=").append(this.blockCount)
+					.append(", frameSize=").append(this.frameSize)
+					.append(", blockTimeout=").append(this.blockTimeout)
+					.append(", promiscuous=").append(this.promiscuous)
+					.append(", fanoutMode=").append(this.fanoutMode)
+					.append(", fanoutGroupId=").append(this.fanoutGroupId)
+					.append('}')
+					.toString();
+		}
+
+	}
+
+}
@@ -17,6 +17,7 @@
 
 package com.ardikars.jxnet;
 
+import com.ardikars.common.annotation.Incubating;
 import com.ardikars.common.annotation.Mutable;
 import com.ardikars.common.net.Inet4Address;
 import com.ardikars.common.util.Platforms;
@@ -25,7 +26,6 @@ import com.ardikars.jxnet.exception.NativeException;
 import com.ardikars.jxnet.exception.PlatformNotSupportedException;
 
 import java.io.IOException;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * This class storing pointer address of pcap handle and used for dereferencing the pointer.
@@ -33,7 +33,7 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
  * @since 1.0.0
  */
-@Mutable(blocking = true)
+@Mutable(volatiles = { "address" })
 public final class Pcap implements PointerHandler {
 
 	/**
@@ -46,14 +46,14 @@ public final class Pcap implements PointerHandler {
 	 */
 	public static final int MAXIMUM_SNAPLEN = 262144;
 
-	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+	private final HandleState state = new HandleState();
 
 	/**
 	 * Indentify if pcap handle is dead and used for prevent user to make a SIGSEGV.
 	 */
 	private boolean isDead;
 
-	private long address;
+	private volatile long address;
 
 	private Pcap() {
 
@@ -97,14 +97,7 @@ public final class Pcap implements PointerHandler {
 	 */
 	@Override
 	public long address() {
-		if (this.lock.readLock().tryLock()) {
-			try {
-				return this.address;
-			} finally {
-				this.lock.readLock().unlock();
-			}
-		}
-		return 0;
+		return this.address;
 	}
 
 	@Override
@@ -191,6 +184,12 @@ public final class Pcap implements PointerHandler {
 
 		private String fileName;
 
+		private PcapFanoutMode fanoutMode;
+
+		private int fanoutGroupId;
+
+		private int fanoutFlags;
+
 		public Builder source(final String source) {
 			this.source = source;
 			return this;
@@ -261,6 +260,33 @@ public final class Pcap implements PointerHandler {
 			return this;
 		}
 
+		/**
+		 * Join every live handle built by this builder to the same Linux PACKET_FANOUT group,
+		 * so several handles on one interface share the packets (one loop thread per handle).
+		 * @param fanoutMode fanout mode, null to disable.
+		 * @param fanoutGroupId fanout group id (0 - 65535).
+		 * @param fanoutFlags {@link PcapFanoutMode#FLAG_ROLLOVER} and/or {@link PcapFanoutMode#FLAG_DEFRAG}, or 0.
+		 * @return returns this {@link Builder}.
+		 * @since 1.5.4
+		 */
+		@Incubating
+		public Builder fanout(PcapFanoutMode fanoutMode, int fanoutGroupId, int fanoutFlags) {
+			this.fanoutMode = fanoutMode;
+			this.fanoutGroupId = fanoutGroupId;
+			this.fanoutFlags = fanoutFlags;
+			return this;
+		}
+
+		/**
+		 * Fanout mode given to {@link Builder#fanout(PcapFanoutMode, int, int)}.
+		 * @return returns fanout mode, or null if disabled.
+		 * @since 1.5.4
+		 */
+		@Incubating
+		public PcapFanoutMode getFanoutMode() {
+			return fanoutMode;
+		}
+
 		/**
 		 * Build a live pcap handle.
 		 * @return pcap handle.
@@ -294,6 +320,7 @@ public final class Pcap implements PointerHandler {
 				throw new PlatformNotSupportedException();
 			}
 			setEnableNonBlock(pcap);
+			setFanout(pcap);
 			return pcap;
 		}
 
@@ -403,6 +430,12 @@ public final class Pcap implements PointerHandler {
 			}
 		}
 
+		private void setFanout(Pcap pcap) throws NativeException {
+			if (fanoutMode != null) {
+				Jxnet.PcapSetFanout(pcap, fanoutGroupId, fanoutMode.getValue() | fanoutFlags);
+			}
+		}
+
 		@Override
 		public String toString() {
 			return new StringBuilder("Builder{")
@@ -420,6 +453,9 @@ public final class Pcap implements PointerHandler {
 					.append(", errbuf=").append(errbuf)
 					.append(", dataLinkType=").append(dataLinkType)
 					.append(", fileName='").append(fileName).append('\'')
+					.append(", fanoutMode=").append(fanoutMode)
+					.append(", fanoutGroupId=").append(fanoutGroupId)
+					.append(", fanoutFlags=").append(fanoutFlags)
 					.append('}').toString();
 		}
 
@@ -0,0 +1,457 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.exception.PcapDumperCloseException;
+import com.ardikars.jxnet.util.DirectMemory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous dumper, the capture thread copies packets into a bounded off heap ring
+ * and a dedicated writer thread writes them to a {@link PcapAsyncDumper.Sink} (usually a {@link PcapDumper}).
+ * The writer drains all queued packets before flushing the sink once (group commit),
+ * or flushes after {@link PcapAsyncDumper.Builder#flushSize(int)} bytes if the queue never drains.
+ * {@link PcapAsyncDumper#dump(PcapPktHdr, ByteBuffer)} never blocks, packets are dropped if the ring is full.
+ * Only one thread may call {@link PcapAsyncDumper#dump(PcapPktHdr, ByteBuffer)}.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable(volatiles = { "enqueued", "dropped", "written", "writtenBytes", "flushes",
+		"waiting", "flushRequested", "closing", "stopping", "error" })
+public final class PcapAsyncDumper {
+
+	public static final int DEFAULT_CAPACITY = 16 << 20;
+
+	public static final int DEFAULT_FLUSH_SIZE = 1 << 20;
+
+	private static final int RECORD_HEADER_SIZE = 24;
+
+	private static final int WRAP = -1;
+
+	private static final long PARK_NANOS = 10000000L;
+
+	private final Sink sink;
+	private final int capacity;
+	private final int flushSize;
+	private final ByteBuffer producerView;
+	private final ByteBuffer consumerView;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final long ringAddress;
+	private final Thread writer;
+
+	private volatile long enqueued;
+	private volatile long dropped;
+	private volatile long written;
+	private volatile long writtenBytes;
+	private volatile long flushes;
+	private volatile boolean waiting;
+	private volatile boolean flushRequested;
+	private volatile boolean closing;
+	private volatile boolean stopping;
+	private volatile IOException error;
+
+	private PcapAsyncDumper(final Builder builder) {
+		this.sink = builder.sink;
+		this.capacity = (builder.capacity + 7) & ~7;
+		this.flushSize = builder.flushSize;
+		ByteBuffer ring = ByteBuffer.allocateDirect(this.capacity).order(ByteOrder.nativeOrder());
+		this.producerView = ring.duplicate().order(ByteOrder.nativeOrder());
+		this.consumerView = ring.duplicate().order(ByteOrder.nativeOrder());
+		this.ringAddress = MappedFileWindow.address(ring);
+		this.writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					write();
+				} catch (RuntimeException e) {
+					error = new IOException(e.toString());
+				}
+			}
+		}, "jxnet-dumper");
+		this.writer.setDaemon(true);
+		this.writer.start();
+	}
+
+	/**
+	 * Copy a packet into the ring, never blocks.
+	 * @param h packet header.
+	 * @param sp packet buffer, captured length bytes are copied from index 0.
+	 * @return returns true if queued, false if dropped (ring is full, dumper is closed or writer failed).
+	 */
+	public boolean dump(final PcapPktHdr h, final ByteBuffer sp) {
+		// Announce the producer before checking closing, close() waits for it to publish the packet.
+		this.inFlight.incrementAndGet();
+		try {
+			int caplen = Math.min(h.getCapLen(), sp.capacity());
+			int size = (RECORD_HEADER_SIZE + caplen + 7) & ~7;
+			long t = this.tail.get();
+			int offset = (int) (t % this.capacity);
+			int contiguous = this.capacity - offset;
+			int needed = contiguous < size ? contiguous + size : size;
+			if (this.closing || this.error != null || size > this.capacity
+					|| this.capacity - (t - this.head.get()) < needed) {
+				this.dropped++;
+				return false;
+			}
+			if (contiguous < size) {
+				this.producerView.putInt(offset, WRAP);
+				offset = 0;
+			}
+			this.producerView.putInt(offset, caplen);
+			this.producerView.putInt(offset + 4, h.getLen());
+			this.producerView.putInt(offset + 8, h.getTvSec());
+			this.producerView.putLong(offset + 16, h.getTvUsec());
+			copy(sp, offset + RECORD_HEADER_SIZE, caplen);
+			this.tail.set(t + needed);
+			this.enqueued++;
+			if (this.waiting) {
+				LockSupport.unpark(this.writer);
+			}
+			return true;
+		} finally {
+			this.inFlight.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Copy the first length bytes of a packet into the ring without allocating a duplicate of the packet buffer.
+	 */
+	private void copy(final ByteBuffer sp, final int offset, final int length) {
+		if (sp.hasArray()) {
+			this.producerView.clear();
+			this.producerView.position(offset);
+			this.producerView.put(sp.array(), sp.arrayOffset(), length);
+		} else if (sp.isDirect() && DirectMemory.isAccessSupported()) {
+			DirectMemory.copyMemory(DirectMemory.address(sp), this.ringAddress + offset, length);
+		} else {
+			final int position = sp.position();
+			final int limit = sp.limit();
+			sp.limit(length);
+			sp.position(0);
+			this.producerView.clear();
+			this.producerView.position(offset);
+			this.producerView.put(sp);
+			sp.limit(limit);
+			sp.position(position);
+		}
+	}
+
+	/**
+	 * Request a flush of the sink after queued packets are written, doesn't wait.
+	 */
+	public void flush() {
+		this.flushRequested = true;
+		LockSupport.unpark(this.writer);
+	}
+
+	private void write() {
+		PcapPktHdr h = new PcapPktHdr();
+		long dirty = 0;
+		while (true) {
+			long position = this.head.get();
+			long limit = this.tail.get();
+			if (position == limit) {
+				if (dirty > 0 || this.flushRequested) {
+					this.flushRequested = false;
+					dirty = 0;
+					flushSink();
+					continue;
+				}
+				if (this.stopping || this.error != null) {
+					return;
+				}
+				this.waiting = true;
+				if (this.tail.get() == position && !this.stopping && !this.flushRequested) {
+					LockSupport.parkNanos(this, PARK_NANOS);
+				}
+				this.waiting = false;
+				continue;
+			}
+			while (position < limit && this.error == null) {
+				int offset = (int) (position % this.capacity);
+				this.consumerView.clear();
+				int caplen = this.consumerView.getInt(offset);
+				if (caplen == WRAP) {
+					position += this.capacity - offset;
+					continue;
+				}
+				h.set(caplen, this.consumerView.getInt(offset + 4), this.consumerView.getInt(offset + 8),
+						this.consumerView.getLong(offset + 16));
+				this.consumerView.position(offset + RECORD_HEADER_SIZE);
+				this.consumerView.limit(offset + RECORD_HEADER_SIZE + caplen);
+				try {
+					this.sink.dump(h, this.consumerView.slice());
+				} catch (IOException e) {
+					this.error = e;
+					break;
+				}
+				position += (RECORD_HEADER_SIZE + caplen + 7) & ~7;
+				this.head.lazySet(position);
+				this.written++;
+				this.writtenBytes += caplen;
+				dirty += caplen;
+				if (dirty >= this.flushSize) {
+					dirty = 0;
+					flushSink();
+				}
+			}
+			if (this.error != null) {
+				this.head.lazySet(limit);
+			}
+		}
+	}
+
+	private void flushSink() {
+		if (this.error != null) {
+			return;
+		}
+		try {
+			this.sink.flush();
+			this.flushes++;
+		} catch (IOException e) {
+			this.error = e;
+		}
+	}
+
+	/**
+	 * Wait for a concurrent {@link PcapAsyncDumper#dump(PcapPktHdr, ByteBuffer)}, write all queued packets,
+	 * flush the sink and stop the writer thread. The sink is not closed.
+	 * @throws IOException sink failed.
+	 */
+	public void close() throws IOException {
+		this.closing = true;
+		// The writer stops once the ring is drained, so wait for a dump() which didn't see closing.
+		while (this.inFlight.get() != 0) {
+			Thread.yield();
+		}
+		this.stopping = true;
+		LockSupport.unpark(this.writer);
+		boolean interrupted = false;
+		while (this.writer.isAlive()) {
+			try {
+				this.writer.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.error != null) {
+			throw this.error;
+		}
+	}
+
+	public boolean isClosed() {
+		return this.closing && !this.writer.isAlive();
+	}
+
+	/**
+	 * Number of packets in the ring.
+	 * @return returns queue depth.
+	 */
+	public long getQueuedPackets() {
+		return this.enqueued - this.written;
+	}
+
+	/**
+	 * Number of bytes used in the ring, including record headers.
+	 * @return returns queued bytes.
+	 */
+	public long getQueuedBytes() {
+		return this.tail.get() - this.head.get();
+	}
+
+	public int getCapacity() {
+		return this.capacity;
+	}
+
+	public long getEnqueued() {
+		return this.enqueued;
+	}
+
+	/**
+	 * Number of packets dropped because the ring was full, the dumper was closed or the writer failed.
+	 * @return returns dropped packets.
+	 */
+	public long getDropped() {
+		return this.dropped;
+	}
+
+	public long getWritten() {
+		return this.written;
+	}
+
+	/**
+	 * Number of captured bytes given to the sink.
+	 * @return returns written bytes.
+	 */
+	public long getWrittenBytes() {
+		return this.writtenBytes;
+	}
+
+	public long getFlushes() {
+		return this.flushes;
+	}
+
+	/**
+	 * Error thrown by the sink, the writer stops writing after the first error.
+	 * @return returns error, or null.
+	 */
+	public IOException getError() {
+		return this.error;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PcapAsyncDumper{")
+				.append("capacity=").append(this.capacity)
+				.append(", queuedPackets=").append(getQueuedPackets())
+				.append(", queuedBytes=").append(getQueuedBytes())
+				.append(", enqueued=").append(this.enqueued)
+				.append(", dropped=").append(this.dropped)
+				.append(", written=").append(this.written)
+				.append(", writtenBytes=").append(this.writtenBytes)
+				.append(", flushes=").append(this.flushes)
+				.append('}')
+				.toString();
+	}
+
+	/**
+	 * Destination of queued packets, called from the writer thread only.
+	 */
+	public interface Sink {
+
+		/**
+		 * Write a packet.
+		 * @param h packet header.
+		 * @param sp direct packet buffer, valid during the call only.
+		 * @throws IOException io exception.
+		 */
+		void dump(PcapPktHdr h, ByteBuffer sp) throws IOException;
+
+		/**
+		 * Flush written packets.
+		 * @throws IOException io exception.
+		 */
+		void flush() throws IOException;
+
+	}
+
+	public static final class Builder implements com.ardikars.common.util.Builder<PcapAsyncDumper, Void> {
+
+		private Sink sink;
+		private int capacity = DEFAULT_CAPACITY;
+		private int flushSize = DEFAULT_FLUSH_SIZE;
+
+		/**
+		 * Write packets to a dumper with {@link Jxnet#PcapDump(PcapDumper, PcapPktHdr, ByteBuffer)}.
+		 * @param pcapDumper pcap dumper.
+		 * @return returns Builder.
+		 */
+		public Builder pcapDumper(final PcapDumper pcapDumper) {
+			Validate.notIllegalArgument(pcapDumper != null,
+					new IllegalArgumentException("Pcap dumper should be not null."));
+			this.sink = new Sink() {
+				@Override
+				public void dump(PcapPktHdr h, ByteBuffer sp) throws IOException {
+					try {
+						Jxnet.PcapDump(pcapDumper, h, sp);
+					} catch (PcapDumperCloseException e) {
+						throw new IOException("Pcap dumper already closed.");
+					}
+				}
+
+				@Override
+				public void flush() throws IOException {
+					try {
+						if (Jxnet.PcapDumpFlush(pcapDumper) != 0) {
+							throw new IOException("Failed to flush pcap dumper.");
+						}
+					} catch (PcapDumperCloseException e) {
+						throw new IOException("Pcap dumper already closed.");
+					}
+				}
+			};
+			return this;
+		}
+
+		public Builder sink(final Sink sink) {
+			this.sink = sink;
+			return this;
+		}
+
+		/**
+		 * Size of the off heap ring.
+		 * @param capacity capacity in bytes.
+		 * @return returns Builder.
+		 */
+		public Builder capacity(final int capacity) {
+			this.capacity = capacity;
+			return this;
+		}
+
+		/**
+		 * Number of written bytes after which the sink is flushed even if the ring is not drained.
+		 * @param flushSize flush size in bytes.
+		 * @return returns Builder.
+		 */
+		public Builder flushSize(final int flushSize) {
+			this.flushSize = flushSize;
+			return this;
+		}
+
+		/**
+		 * Create dumper and start the writer thread.
+		 * @return returns PcapAsyncDumper.
+		 */
+		@Override
+		public PcapAsyncDumper build() {
+			Validate.notIllegalArgument(this.sink != null, new IllegalArgumentException("Sink should be not null."));
+			Validate.notIllegalArgument(this.capacity > RECORD_HEADER_SIZE,
+					new IllegalArgumentException("Capacity should be greater than " + RECORD_HEADER_SIZE + "."));
+			Validate.notIllegalArgument(this.flushSize > 0,
+					new IllegalArgumentException("Flush size should be greater than 0."));
+			return new PcapAsyncDumper(this);
+		}
+
+		@Override
+		public PcapAsyncDumper build(Void value) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
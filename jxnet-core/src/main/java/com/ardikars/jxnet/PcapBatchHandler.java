@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Callback function used for capturing a batch of packets.
+ * Packets are copied by native code into the caller supplied packet slab,
+ * and for each packet a fixed size record is written into the header region
+ * (in native byte order) with the following layout:
+ * <pre>
+ *  0: int  caplen
+ *  4: int  len
+ *  8: int  tv_sec
+ * 12: int  offset of the packet data in the packet slab
+ * 16: long tv_usec
+ * </pre>
+ * Both buffers are reused for the next batch, so their content is only valid
+ * until {@link PcapBatchHandler#nextBatch(Object, int, ByteBuffer, ByteBuffer)} returns.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public interface PcapBatchHandler<T> {
+
+    /**
+     * Size of a single header record.
+     */
+    int HEADER_SIZE = 24;
+
+    int CAPLEN_OFFSET = 0;
+
+    int LEN_OFFSET = 4;
+
+    int TV_SEC_OFFSET = 8;
+
+    int DATA_OFFSET = 12;
+
+    int TV_USEC_OFFSET = 16;
+
+    /**
+     * Next available batch of packets.
+     * @param user user arg.
+     * @param count number of packets in this batch.
+     * @param headers header region, {@code count} records of {@link PcapBatchHandler#HEADER_SIZE} bytes.
+     * @param packets packet slab.
+     */
+    void nextBatch(T user, int count, ByteBuffer headers, ByteBuffer packets);
+
+}
@@ -0,0 +1,48 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+
+/**
+ * Callback function used by {@link PcapFileProcessor}.
+ * Each chunk of the savefile gets its own user arg, {@link RawPcapHandler#nextPacket(Object, int, int, int, long, long)}
+ * is called concurrently from different workers with different user args.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public interface PcapChunkHandler<T> extends RawPcapHandler<T> {
+
+	/**
+	 * Create user arg for a chunk, called on the worker thread before the first packet of the chunk.
+	 * @param chunk chunk index, chunks are numbered in file order.
+	 * @return returns user arg.
+	 */
+	T initialValue(int chunk);
+
+	/**
+	 * Merge results of two adjacent chunks, called on the caller thread in file order.
+	 * @param left merged result of previous chunks.
+	 * @param right result of next chunk.
+	 * @return returns merged result.
+	 */
+	T merge(T left, T right);
+
+}
@@ -20,7 +20,6 @@ package com.ardikars.jxnet;
 import com.ardikars.common.annotation.Mutable;
 import com.ardikars.common.util.Validate;
 
-import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 /**
  * Savefile descriptor.
@@ -28,12 +27,12 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
  * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
  * @since 1.0.0
  */
-@Mutable(blocking = true)
+@Mutable(volatiles = { "address" })
 public final class PcapDumper implements Cloneable {
 
-	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(true);
+	private final HandleState state = new HandleState();
 
-	private long address;
+	private volatile long address;
 
 	private PcapDumper() {
 		//
@@ -44,14 +43,7 @@ public final class PcapDumper implements Cloneable {
 	 * @return returns pointer address.
 	 */
 	public long getAddress() {
-		if (this.lock.readLock().tryLock()) {
-			try {
-				return this.address;
-			} finally {
-				this.lock.readLock().unlock();
-			}
-		}
-		return 0;
+		return this.address;
 	}
 
 	/**
@@ -0,0 +1,77 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Immutable;
+import com.ardikars.common.annotation.Incubating;
+
+/**
+ * Linux PACKET_FANOUT mode, decide which handle in a fanout group receives a packet.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Immutable
+@Incubating
+public enum PcapFanoutMode {
+
+	/**
+	 * PACKET_FANOUT_HASH, by flow hash, packets of a flow always go to the same handle.
+	 */
+	HASH(0),
+
+	/**
+	 * PACKET_FANOUT_LB, round-robin.
+	 */
+	ROUND_ROBIN(1),
+
+	/**
+	 * PACKET_FANOUT_CPU, by the CPU which received the packet.
+	 */
+	CPU(2),
+
+	/**
+	 * PACKET_FANOUT_ROLLOVER, fill one handle before moving to the next one.
+	 */
+	ROLLOVER(3);
+
+	/**
+	 * PACKET_FANOUT_FLAG_ROLLOVER, fall back to the next handle when the selected handle is full.
+	 */
+	public static final int FLAG_ROLLOVER = 0x1000;
+
+	/**
+	 * PACKET_FANOUT_FLAG_DEFRAG, defragment IP packets before hashing.
+	 */
+	public static final int FLAG_DEFRAG = 0x8000;
+
+	private final int value;
+
+	PcapFanoutMode(final int value) {
+		this.value = value;
+	}
+
+	/**
+	 * Get fanout mode value.
+	 * @return returns integer value.
+	 */
+	public int getValue() {
+		return this.value;
+	}
+
+}
@@ -0,0 +1,332 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.util.Validate;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Sidecar index of a savefile, maps time buckets to file offsets and packet ordinals.
+ * An entry is recorded for the first packet whose bucket is later than all buckets seen before,
+ * so every packet before an entry is older than the entry bucket.
+ * Timestamps are microseconds since epoch.
+ *
+ * <p>
+ * Index file format (big endian): magic number, version (int), bucket interval (long),
+ * followed by entries of bucket time, record offset and packet ordinal (long each).
+ * </p>
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public final class PcapFileIndex {
+
+	public static final String FILE_EXTENSION = ".idx";
+
+	public static final int MAGIC = 0x4a584958;
+
+	public static final int VERSION = 1;
+
+	/**
+	 * Default bucket interval (one second).
+	 */
+	public static final long DEFAULT_INTERVAL = 1000000L;
+
+	private static final int HEADER_SIZE = 16;
+	private static final int ENTRY_SIZE = 24;
+
+	private final long interval;
+	private final long[] timestamps;
+	private final long[] offsets;
+	private final long[] ordinals;
+
+	private PcapFileIndex(final long interval, final long[] timestamps, final long[] offsets, final long[] ordinals) {
+		this.interval = interval;
+		this.timestamps = timestamps;
+		this.offsets = offsets;
+		this.ordinals = ordinals;
+	}
+
+	/**
+	 * Build index of a savefile in one pass and write it to the sidecar file (file name + {@link PcapFileIndex#FILE_EXTENSION}).
+	 * @param fileName savefile name.
+	 * @param interval bucket interval in microseconds.
+	 * @return returns index.
+	 * @throws IOException io exception.
+	 */
+	public static PcapFileIndex build(final String fileName, final long interval) throws IOException {
+		PcapFileReader reader = PcapFileReader.open(fileName);
+		try {
+			Writer writer = new Writer(fileName + FILE_EXTENSION, interval,
+					PcapFileReader.GLOBAL_HEADER_SIZE, PcapTimestampPrecision.MICRO);
+			try {
+				PcapPktHdr h = new PcapPktHdr();
+				while (reader.next(h) != null) {
+					writer.add(h);
+				}
+			} finally {
+				writer.close();
+			}
+			if (!reader.getErr().isEmpty()) {
+				throw new IOException(reader.getErr());
+			}
+		} finally {
+			reader.close();
+		}
+		return read(fileName + FILE_EXTENSION);
+	}
+
+	/**
+	 * Read sidecar index of a savefile, build it when it doesn't exist or older than the savefile.
+	 * @param fileName savefile name.
+	 * @return returns index.
+	 * @throws IOException io exception.
+	 */
+	public static PcapFileIndex load(final String fileName) throws IOException {
+		File index = new File(fileName + FILE_EXTENSION);
+		if (index.isFile() && index.lastModified() >= new File(fileName).lastModified()) {
+			return read(index.getPath());
+		}
+		return build(fileName, DEFAULT_INTERVAL);
+	}
+
+	/**
+	 * Read index file.
+	 * @param indexFileName index file name.
+	 * @return returns index.
+	 * @throws IOException io exception.
+	 */
+	public static PcapFileIndex read(final String indexFileName) throws IOException {
+		File file = new File(indexFileName);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+		try {
+			if (in.readInt() != MAGIC) {
+				throw new IOException("Unknown index file format: " + indexFileName);
+			}
+			int version = in.readInt();
+			if (version != VERSION) {
+				throw new IOException("Unsupported index file version: " + version);
+			}
+			long interval = in.readLong();
+			// Trailing partial entry is ignored (index is not closed properly).
+			int size = (int) ((file.length() - HEADER_SIZE) / ENTRY_SIZE);
+			long[] timestamps = new long[size];
+			long[] offsets = new long[size];
+			long[] ordinals = new long[size];
+			for (int i = 0; i < size; i++) {
+				timestamps[i] = in.readLong();
+				offsets[i] = in.readLong();
+				ordinals[i] = in.readLong();
+			}
+			return new PcapFileIndex(interval, timestamps, offsets, ordinals);
+		} catch (EOFException e) {
+			throw new IOException("Truncated index file: " + indexFileName);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Find entry of the latest bucket which is not later than the bucket of given timestamp.
+	 * @param timestamp timestamp in microseconds.
+	 * @return returns entry index, or -1 if the timestamp is before the first entry.
+	 */
+	public int search(final long timestamp) {
+		long bucket = bucket(timestamp, this.interval);
+		int low = 0;
+		int high = this.timestamps.length - 1;
+		while (low <= high) {
+			int mid = (low + high) >>> 1;
+			if (this.timestamps[mid] <= bucket) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * Offset of the first record which may be at or after given timestamp.
+	 * @param timestamp timestamp in microseconds.
+	 * @return returns file offset.
+	 */
+	public long getOffset(final long timestamp) {
+		int index = search(timestamp);
+		return index < 0 ? PcapFileReader.GLOBAL_HEADER_SIZE : this.offsets[index];
+	}
+
+	/**
+	 * Ordinal (zero based) of the record at {@link PcapFileIndex#getOffset(long)}.
+	 * @param timestamp timestamp in microseconds.
+	 * @return returns packet ordinal.
+	 */
+	public long getOrdinal(final long timestamp) {
+		int index = search(timestamp);
+		return index < 0 ? 0 : this.ordinals[index];
+	}
+
+	/**
+	 * Offset of the first entry whose bucket is later than the bucket of given timestamp.
+	 * Packets written out of order after a later bucket has started are not covered by the limit.
+	 * @param timestamp timestamp in microseconds.
+	 * @return returns file offset, or -1 if there is no later entry (end of file).
+	 */
+	public long getLimit(final long timestamp) {
+		int index = search(timestamp) + 1;
+		return index < this.offsets.length ? this.offsets[index] : -1;
+	}
+
+	/**
+	 * Bucket interval in microseconds.
+	 * @return returns bucket interval.
+	 */
+	public long getInterval() {
+		return this.interval;
+	}
+
+	/**
+	 * Number of entries.
+	 * @return returns number of entries.
+	 */
+	public int size() {
+		return this.timestamps.length;
+	}
+
+	static long bucket(final long timestamp, final long interval) {
+		long bucket = timestamp / interval;
+		if (timestamp < 0 && bucket * interval != timestamp) {
+			bucket--;
+		}
+		return bucket * interval;
+	}
+
+	static long timestamp(final int tvSec, final long tvUsec, final PcapTimestampPrecision precision) {
+		long seconds = tvSec & 0xffffffffL;
+		return seconds * 1000000L + (precision == PcapTimestampPrecision.NANO ? tvUsec / 1000 : tvUsec);
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PcapFileIndex{")
+				.append("interval=").append(this.interval)
+				.append(", size=").append(this.timestamps.length)
+				.append('}')
+				.toString();
+	}
+
+	/**
+	 * Write index while packets are appended to a savefile (for example by {@link Jxnet#PcapDump(PcapDumper, PcapPktHdr, java.nio.ByteBuffer)}).
+	 * Record offsets are computed from captured lengths, starting at the offset of the first record.
+	 */
+	public static final class Writer implements Closeable {
+
+		private final DataOutputStream out;
+		private final long interval;
+		private final PcapTimestampPrecision precision;
+
+		private long offset;
+		private long ordinal;
+		private long lastBucket = Long.MIN_VALUE;
+
+		/**
+		 * Create index writer.
+		 * @param indexFileName index file name.
+		 * @param interval bucket interval in microseconds.
+		 * @param offset offset of the next record in the savefile
+		 *               (see {@link Jxnet#PcapDumpFTell(PcapDumper)}).
+		 * @param precision timestamp precision of the packet headers.
+		 * @throws IOException io exception.
+		 */
+		public Writer(final String indexFileName, final long interval, final long offset,
+					  final PcapTimestampPrecision precision) throws IOException {
+			Validate.notIllegalArgument(interval > 0, new IllegalArgumentException("Interval should be greater than 0."));
+			Validate.notIllegalArgument(offset >= PcapFileReader.GLOBAL_HEADER_SIZE,
+					new IllegalArgumentException("Offset should be greater than or equal to "
+							+ PcapFileReader.GLOBAL_HEADER_SIZE));
+			Validate.notIllegalArgument(precision != null,
+					new IllegalArgumentException("Timestamp precision should be not null."));
+			this.interval = interval;
+			this.offset = offset;
+			this.precision = precision;
+			this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFileName), 1 << 16));
+			this.out.writeInt(MAGIC);
+			this.out.writeInt(VERSION);
+			this.out.writeLong(interval);
+		}
+
+		/**
+		 * Account a packet appended to the savefile.
+		 * @param h packet header.
+		 * @throws IOException io exception.
+		 */
+		public void add(final PcapPktHdr h) throws IOException {
+			add(h.getTvSec(), h.getTvUsec(), h.getCapLen());
+		}
+
+		/**
+		 * Account a packet appended to the savefile.
+		 * @param tvSec timestamp seconds.
+		 * @param tvUsec timestamp fraction.
+		 * @param capLen captured length.
+		 * @throws IOException io exception.
+		 */
+		public void add(final int tvSec, final long tvUsec, final int capLen) throws IOException {
+			long bucket = bucket(timestamp(tvSec, tvUsec, this.precision), this.interval);
+			if (bucket > this.lastBucket) {
+				this.lastBucket = bucket;
+				this.out.writeLong(bucket);
+				this.out.writeLong(this.offset);
+				this.out.writeLong(this.ordinal);
+			}
+			this.offset += PcapFileReader.RECORD_HEADER_SIZE + capLen;
+			this.ordinal++;
+		}
+
+		/**
+		 * Number of packets accounted.
+		 * @return returns number of packets.
+		 */
+		public long getPackets() {
+			return this.ordinal;
+		}
+
+		public void flush() throws IOException {
+			this.out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.out.close();
+		}
+
+	}
+
+}
@@ -0,0 +1,297 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.util.Validate;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process a savefile in parallel.
+ * The file is split into byte ranges, each range is resynchronized to a record boundary
+ * (see {@link PcapFileReader#resync(long)}) and read by its own {@link PcapFileReader} on a worker thread.
+ * Results of the chunks are merged in file order.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public final class PcapFileProcessor {
+
+	public static final long DEFAULT_CHUNK_SIZE = 64L << 20;
+
+	private final String fileName;
+	private final int parallelism;
+	private final long chunkSize;
+	private final int windowSize;
+	private final PcapTimestampPrecision timestampPrecision;
+	private final ExecutorService executorService;
+
+	private PcapFileProcessor(final Builder builder) {
+		this.fileName = builder.fileName;
+		this.parallelism = builder.parallelism;
+		this.chunkSize = builder.chunkSize;
+		this.windowSize = builder.windowSize;
+		this.timestampPrecision = builder.timestampPrecision;
+		this.executorService = builder.executorService;
+	}
+
+	/**
+	 * Process all packets of the savefile.
+	 * @param handler chunk handler.
+	 * @param <T> result type.
+	 * @return returns merged result of all chunks.
+	 * @throws IOException file can't be read, or a chunk doesn't end at the record boundary found by the next chunk.
+	 * @throws InterruptedException interrupted while waiting for the workers.
+	 * @throws UnsupportedOperationException memory address of mapped buffer is not accessible on this platform.
+	 */
+	public <T> T process(final PcapChunkHandler<T> handler)
+			throws IOException, InterruptedException, UnsupportedOperationException {
+		Validate.notIllegalArgument(handler != null, new IllegalArgumentException("Handler should be not null."));
+		if (!PcapFileReader.isMemoryAddressSupported()) {
+			throw new UnsupportedOperationException("Address of mapped buffer is not accessible.");
+		}
+		PcapFileReader reader = PcapFileReader.open(this.fileName, this.windowSize, this.timestampPrecision);
+		long size = reader.getSize();
+		reader.close();
+		long records = size - PcapFileReader.GLOBAL_HEADER_SIZE;
+		int count = (int) Math.max(1L, Math.min(Integer.MAX_VALUE, (records + this.chunkSize - 1) / this.chunkSize));
+		List<Chunk<T>> chunks = new ArrayList<Chunk<T>>(count);
+		for (int i = 0; i < count; i++) {
+			long start = PcapFileReader.GLOBAL_HEADER_SIZE + records * i / count;
+			long end = PcapFileReader.GLOBAL_HEADER_SIZE + records * (i + 1) / count;
+			chunks.add(new Chunk<T>(i, start, i == count - 1 ? -1 : end, handler));
+		}
+		ExecutorService executor = this.executorService;
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(Math.min(this.parallelism, count), new WorkerThreadFactory());
+		}
+		List<Future<T>> futures = new ArrayList<Future<T>>(count);
+		boolean done = false;
+		try {
+			for (Chunk<T> chunk : chunks) {
+				futures.add(executor.submit(chunk));
+			}
+			T result = null;
+			for (int i = 0; i < count; i++) {
+				T value = get(futures.get(i));
+				result = i == 0 ? value : handler.merge(result, value);
+			}
+			done = true;
+			return result;
+		} finally {
+			if (!done) {
+				for (int i = 0; i < futures.size(); i++) {
+					futures.get(i).cancel(false);
+					chunks.get(i).cancel();
+				}
+			}
+			if (this.executorService == null) {
+				executor.shutdown();
+			}
+		}
+	}
+
+	private static <T> T get(final Future<T> future) throws IOException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			} else if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	public int getParallelism() {
+		return this.parallelism;
+	}
+
+	public long getChunkSize() {
+		return this.chunkSize;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Read one chunk, start and end are approximate offsets which are resynchronized to record boundaries.
+	 */
+	private final class Chunk<T> implements Callable<T> {
+
+		private final int index;
+		private final long start;
+		private final long end;
+		private final PcapChunkHandler<T> handler;
+
+		private volatile PcapFileReader reader;
+		private volatile boolean cancelled;
+
+		Chunk(int index, long start, long end, PcapChunkHandler<T> handler) {
+			this.index = index;
+			this.start = start;
+			this.end = end;
+			this.handler = handler;
+		}
+
+		@Override
+		public T call() throws IOException {
+			PcapFileReader reader = PcapFileReader.open(fileName, windowSize, timestampPrecision);
+			this.reader = reader;
+			try {
+				long from = reader.resync(start);
+				long to = end < 0 ? reader.getSize() : reader.resync(end);
+				T user = handler.initialValue(index);
+				if (from >= to || cancelled) {
+					return user;
+				}
+				reader.setPosition(from);
+				reader.setLimit(to);
+				int result = reader.loop(-1, handler, user);
+				if (result == -1) {
+					throw new IOException("Chunk " + index + ": " + reader.getErr());
+				} else if (result == -2) {
+					return user; // cancelled
+				}
+				if (reader.getPosition() != to) {
+					throw new IOException("Chunk " + index + " ended at " + reader.getPosition()
+							+ ", next record boundary is at " + to + ".");
+				}
+				return user;
+			} finally {
+				this.reader = null;
+				reader.close();
+			}
+		}
+
+		void cancel() {
+			this.cancelled = true;
+			PcapFileReader reader = this.reader;
+			if (reader != null) {
+				reader.breakLoop();
+			}
+		}
+
+	}
+
+	private static final class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "jxnet-chunk-" + count.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+	public static final class Builder implements com.ardikars.common.util.Builder<PcapFileProcessor, Void> {
+
+		private String fileName;
+		private int parallelism = Runtime.getRuntime().availableProcessors();
+		private long chunkSize = DEFAULT_CHUNK_SIZE;
+		private int windowSize = PcapFileReader.DEFAULT_WINDOW_SIZE;
+		private PcapTimestampPrecision timestampPrecision = PcapTimestampPrecision.MICRO;
+		private ExecutorService executorService;
+
+		public Builder fileName(final String fileName) {
+			this.fileName = fileName;
+			return this;
+		}
+
+		/**
+		 * Number of worker threads, ignored if executor service is given.
+		 * @param parallelism number of worker threads.
+		 * @return returns builder.
+		 */
+		public Builder parallelism(final int parallelism) {
+			this.parallelism = parallelism;
+			return this;
+		}
+
+		/**
+		 * Approximate chunk size in bytes.
+		 * @param chunkSize chunk size.
+		 * @return returns builder.
+		 */
+		public Builder chunkSize(final long chunkSize) {
+			this.chunkSize = chunkSize;
+			return this;
+		}
+
+		public Builder windowSize(final int windowSize) {
+			this.windowSize = windowSize;
+			return this;
+		}
+
+		public Builder timestampPrecision(final PcapTimestampPrecision timestampPrecision) {
+			this.timestampPrecision = timestampPrecision;
+			return this;
+		}
+
+		/**
+		 * Run chunks on given executor service, it's not shut down by the processor.
+		 * @param executorService executor service.
+		 * @return returns builder.
+		 */
+		public Builder executorService(final ExecutorService executorService) {
+			this.executorService = executorService;
+			return this;
+		}
+
+		@Override
+		public PcapFileProcessor build() {
+			Validate.notIllegalArgument(fileName != null, new IllegalArgumentException("File name should be not null."));
+			Validate.notIllegalArgument(parallelism > 0,
+					new IllegalArgumentException("Parallelism should be greater than 0."));
+			Validate.notIllegalArgument(chunkSize > 0, new IllegalArgumentException("Chunk size should be greater than 0."));
+			Validate.notIllegalArgument(timestampPrecision != null,
+					new IllegalArgumentException("Timestamp precision should be not null."));
+			return new PcapFileProcessor(this);
+		}
+
+		@Override
+		public PcapFileProcessor build(Void value) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
@@ -0,0 +1,644 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+import com.ardikars.common.util.Validate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Pure Java savefile (pcap) reader, doesn't need native library.
+ * The file is memory mapped through a window that slides over the file, so files larger than 2 GB are supported.
+ * Packets are handed to the callbacks as read only slices of the mapping (no copy),
+ * a slice keeps its mapping alive, so it stays valid while referenced.
+ * Memory addresses given to raw callbacks are only valid until the next packet is read.
+ * Both byte orders, microsecond and nanosecond magic number are supported.
+ * Reader is not thread safe, except {@link PcapFileReader#breakLoop()}.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable(volatiles = { "breakLoop" })
+public final class PcapFileReader implements PcapOfflineReader {
+
+	/**
+	 * Magic number of microsecond resolution savefile.
+	 */
+	public static final int MAGIC_MICRO = 0xa1b2c3d4;
+
+	/**
+	 * Magic number of nanosecond resolution savefile.
+	 */
+	public static final int MAGIC_NANO = 0xa1b23c4d;
+
+	public static final int GLOBAL_HEADER_SIZE = 24;
+
+	public static final int RECORD_HEADER_SIZE = 16;
+
+	public static final int DEFAULT_WINDOW_SIZE = 1 << 28;
+
+	/**
+	 * Number of consecutive valid record headers required by {@link PcapFileReader#resync(long)}.
+	 */
+	public static final int RESYNC_RECORDS = 8;
+
+	private static final int MAX_SNAPLEN = 262144;
+
+	private static final long MAX_TIMESTAMP_SKEW = 366L * 24 * 60 * 60;
+
+	private final String fileName;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private final int windowSize;
+
+	private final ByteOrder byteOrder;
+	private final boolean nano;
+	private final PcapTimestampPrecision timestampPrecision;
+	private final int majorVersion;
+	private final int minorVersion;
+	private final int snaplen;
+	private final DataLinkType dataLinkType;
+
+	private final MappedFileWindow window;
+
+	private long position = GLOBAL_HEADER_SIZE;
+	private long limit;
+	private long firstTvSec = -1;
+	private boolean timeFilter;
+	private long fromTimestamp;
+	private long toTimestamp;
+	private volatile boolean breakLoop;
+	private String err = "";
+
+	// Current record
+	private int capLen;
+	private int len;
+	private int tvSec;
+	private long tvUsec;
+	private int offset;
+
+	private PcapFileReader(final String fileName, final int windowSize, final PcapTimestampPrecision timestampPrecision)
+			throws IOException {
+		this.fileName = fileName;
+		this.windowSize = windowSize;
+		this.timestampPrecision = timestampPrecision;
+		this.file = new RandomAccessFile(fileName, "r");
+		try {
+			this.channel = this.file.getChannel();
+			this.size = this.channel.size();
+			this.limit = this.size;
+			ByteBuffer header = ByteBuffer.allocate(GLOBAL_HEADER_SIZE);
+			do {
+				if (this.channel.read(header, header.position()) < 0) {
+					throw new IOException("Truncated global header: " + fileName);
+				}
+			} while (header.hasRemaining());
+			int magic = header.getInt(0);
+			if (magic == MAGIC_MICRO || magic == MAGIC_NANO) {
+				this.byteOrder = ByteOrder.BIG_ENDIAN;
+			} else if (Integer.reverseBytes(magic) == MAGIC_MICRO || Integer.reverseBytes(magic) == MAGIC_NANO) {
+				this.byteOrder = ByteOrder.LITTLE_ENDIAN;
+				magic = Integer.reverseBytes(magic);
+			} else {
+				throw new IOException("Unknown file format: " + fileName);
+			}
+			header.order(this.byteOrder);
+			this.window = new MappedFileWindow(this.channel, this.size, windowSize, this.byteOrder);
+			this.nano = magic == MAGIC_NANO;
+			this.majorVersion = header.getShort(4) & 0xffff;
+			this.minorVersion = header.getShort(6) & 0xffff;
+			this.snaplen = header.getInt(16);
+			this.dataLinkType = DataLinkType.valueOf((short) (header.getInt(20) & 0xffff));
+		} catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open savefile with default window size and microsecond timestamp.
+	 * @param fileName file name.
+	 * @return returns PcapFileReader.
+	 * @throws IOException file can't be read or is not a savefile.
+	 */
+	public static PcapFileReader open(final String fileName) throws IOException {
+		return open(fileName, DEFAULT_WINDOW_SIZE, PcapTimestampPrecision.MICRO);
+	}
+
+	/**
+	 * Open savefile.
+	 * @param fileName file name.
+	 * @param windowSize size of mapped window, must be larger than the biggest record.
+	 * @param timestampPrecision precision of timestamp given to the callbacks, converted from the file precision.
+	 * @return returns PcapFileReader.
+	 * @throws IOException file can't be read or is not a savefile.
+	 */
+	public static PcapFileReader open(final String fileName, final int windowSize,
+									  final PcapTimestampPrecision timestampPrecision) throws IOException {
+		Validate.notIllegalArgument(fileName != null && new File(fileName).isFile(),
+				new IllegalArgumentException("File not found: " + fileName));
+		Validate.notIllegalArgument(windowSize >= GLOBAL_HEADER_SIZE,
+				new IllegalArgumentException("Window size should be greater than or equal to " + GLOBAL_HEADER_SIZE));
+		Validate.notIllegalArgument(timestampPrecision != null,
+				new IllegalArgumentException("Timestamp precision should be not null."));
+		return new PcapFileReader(fileName, windowSize, timestampPrecision);
+	}
+
+	/**
+	 * Open savefile and seek to the given time range using its sidecar index,
+	 * the index is built when it doesn't exist (see {@link PcapFileIndex#load(String)}).
+	 * @param fileName file name.
+	 * @param from start of time range in microseconds since epoch (inclusive).
+	 * @param to end of time range in microseconds since epoch (inclusive).
+	 * @return returns PcapFileReader.
+	 * @throws IOException file can't be read or is not a savefile.
+	 * @since 1.5.4
+	 */
+	public static PcapFileReader open(final String fileName, final long from, final long to) throws IOException {
+		PcapFileIndex index = PcapFileIndex.load(fileName);
+		PcapFileReader reader = open(fileName);
+		try {
+			reader.seek(index, from, to);
+		} catch (RuntimeException e) {
+			reader.close();
+			throw e;
+		}
+		return reader;
+	}
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, see {@link Jxnet#PcapLoop(Pcap, int, PcapHandler, Object)}.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted or there is no more packets, -1 on error,
+	 * -2 if the loop terminated by {@link PcapFileReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 */
+	public <T> int loop(final int cnt, final PcapHandler<T> callback, final T user) throws IOException {
+		int result = dispatch(cnt, callback, user);
+		return result < 0 ? result : 0;
+	}
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, see {@link Jxnet#PcapDispatch(Pcap, int, PcapHandler, Object)}.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns number of packets read, -1 on error, -2 if the loop terminated by {@link PcapFileReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 */
+	public <T> int dispatch(final int cnt, final PcapHandler<T> callback, final T user) throws IOException {
+		Validate.notIllegalArgument(callback != null, new IllegalArgumentException("Callback should be not null."));
+		int processed = 0;
+		while (cnt <= 0 || processed < cnt) {
+			if (this.breakLoop) {
+				this.breakLoop = false;
+				return -2;
+			}
+			int result = advance();
+			if (result <= 0) {
+				return result < 0 ? result : processed;
+			}
+			callback.nextPacket(user, new PcapPktHdr(this.capLen, this.len, this.tvSec, this.tvUsec), slice());
+			processed++;
+		}
+		return processed;
+	}
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, memory address given to the callback
+	 * point to the mapped window and valid until the next packet is read,
+	 * the window may slide and be unmapped afterwards.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted or there is no more packets, -1 on error,
+	 * -2 if the loop terminated by {@link PcapFileReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException address of mapped buffer is not accessible on this platform.
+	 */
+	public <T> int loop(final int cnt, final RawPcapHandler<T> callback, final T user)
+			throws IOException, UnsupportedOperationException {
+		int result = dispatch(cnt, callback, user);
+		return result < 0 ? result : 0;
+	}
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, memory address given to the callback
+	 * point to the mapped window and valid until the next packet is read,
+	 * the window may slide and be unmapped afterwards.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns number of packets read, -1 on error, -2 if the loop terminated by {@link PcapFileReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException address of mapped buffer is not accessible on this platform.
+	 */
+	public <T> int dispatch(final int cnt, final RawPcapHandler<T> callback, final T user)
+			throws IOException, UnsupportedOperationException {
+		Validate.notIllegalArgument(callback != null, new IllegalArgumentException("Callback should be not null."));
+		if (!isMemoryAddressSupported()) {
+			throw new UnsupportedOperationException("Address of mapped buffer is not accessible.");
+		}
+		int processed = 0;
+		while (cnt <= 0 || processed < cnt) {
+			if (this.breakLoop) {
+				this.breakLoop = false;
+				return -2;
+			}
+			int result = advance();
+			if (result <= 0) {
+				return result < 0 ? result : processed;
+			}
+			callback.nextPacket(user, this.capLen, this.len, this.tvSec, this.tvUsec, this.window.address() + this.offset);
+			processed++;
+		}
+		return processed;
+	}
+
+	/**
+	 * Read next packet, see {@link Jxnet#PcapNext(Pcap, PcapPktHdr)}.
+	 * @param pktHdr packet header.
+	 * @return returns read only slice of the packet, or null if there is no more packets or on error.
+	 * @throws IOException io exception.
+	 */
+	public ByteBuffer next(final PcapPktHdr pktHdr) throws IOException {
+		if (advance() <= 0) {
+			return null;
+		}
+		pktHdr.set(this.capLen, this.len, this.tvSec, this.tvUsec);
+		return slice();
+	}
+
+	/**
+	 * Read next packet and copy it into given buffer, see {@link Jxnet#PcapNextEx(Pcap, PcapPktHdr, ByteBuffer)}.
+	 * On success the buffer position is the captured length and the limit is the capacity.
+	 * @param pktHdr packet header.
+	 * @param pktData packet buffer.
+	 * @return returns 1 on success, -1 on error, -2 if there is no more packets.
+	 * @throws IOException io exception.
+	 */
+	public int nextEx(final PcapPktHdr pktHdr, final ByteBuffer pktData) throws IOException {
+		int result = advance();
+		if (result <= 0) {
+			return result < 0 ? result : -2;
+		}
+		pktHdr.set(this.capLen, this.len, this.tvSec, this.tvUsec);
+		pktData.clear();
+		pktData.put(slice());
+		return 1;
+	}
+
+	/**
+	 * Read next packet without copying it, see {@link Jxnet#PcapNextEx0(Pcap, PcapPktHdr, long[])}.
+	 * @param pktHdr packet header.
+	 * @param pktData pktData[0] is packet memory address (valid until the next packet is read), pktData[1] is captured length.
+	 * @return returns 1 on success, -1 on error, -2 if there is no more packets.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException address of mapped buffer is not accessible on this platform.
+	 */
+	public int nextEx0(final PcapPktHdr pktHdr, final long[] pktData) throws IOException, UnsupportedOperationException {
+		if (pktData == null || pktData.length < 2) {
+			throw new IllegalArgumentException("Packet data length should be greater than or equal to 2.");
+		}
+		if (!isMemoryAddressSupported()) {
+			throw new UnsupportedOperationException("Address of mapped buffer is not accessible.");
+		}
+		int result = advance();
+		if (result <= 0) {
+			return result < 0 ? result : -2;
+		}
+		pktHdr.set(this.capLen, this.len, this.tvSec, this.tvUsec);
+		pktData[0] = this.window.address() + this.offset;
+		pktData[1] = this.capLen;
+		return 1;
+	}
+
+	/**
+	 * Find the first record boundary at or after given file offset.
+	 * A boundary is accepted when {@link PcapFileReader#RESYNC_RECORDS} consecutive record headers
+	 * (or all records up to the end of file) pass sanity checks on captured length, original length,
+	 * timestamp fraction and timestamp distance from the first record.
+	 * This method doesn't change current position.
+	 * @param offset file offset.
+	 * @return returns offset of the record boundary, or file size if there is no more records.
+	 * @throws IOException io exception.
+	 * @since 1.5.4
+	 */
+	public long resync(final long offset) throws IOException {
+		if (!this.channel.isOpen()) {
+			throw new IOException("File already closed: " + this.fileName);
+		}
+		if (offset <= GLOBAL_HEADER_SIZE) {
+			return GLOBAL_HEADER_SIZE;
+		}
+		if (this.firstTvSec < 0 && GLOBAL_HEADER_SIZE + RECORD_HEADER_SIZE <= this.size) {
+			int headerOffset = map(GLOBAL_HEADER_SIZE, RECORD_HEADER_SIZE);
+			this.firstTvSec = this.window.buffer().getInt(headerOffset) & 0xffffffffL;
+		}
+		for (long candidate = offset; candidate < this.size; candidate++) {
+			long next = candidate;
+			int records = 0;
+			while (records < RESYNC_RECORDS && next < this.size) {
+				int recordLength = recordLength(next);
+				if (recordLength < 0) {
+					break;
+				}
+				next += recordLength;
+				records++;
+			}
+			if (records == RESYNC_RECORDS || next == this.size) {
+				return candidate;
+			}
+		}
+		return this.size;
+	}
+
+	/**
+	 * Validate record header at given offset.
+	 * @return returns record length (header and captured bytes), or -1 if it doesn't look like a record header.
+	 */
+	private int recordLength(final long offset) throws IOException {
+		if (offset + RECORD_HEADER_SIZE > this.size) {
+			return -1;
+		}
+		int headerOffset = map(offset, RECORD_HEADER_SIZE);
+		long tvSec = this.window.buffer().getInt(headerOffset) & 0xffffffffL;
+		long fraction = this.window.buffer().getInt(headerOffset + 4) & 0xffffffffL;
+		int caplen = this.window.buffer().getInt(headerOffset + 8);
+		int len = this.window.buffer().getInt(headerOffset + 12);
+		if (caplen < 0 || caplen > len || caplen > Math.max(this.snaplen, MAX_SNAPLEN)
+				|| caplen > this.windowSize - RECORD_HEADER_SIZE
+				|| fraction >= (this.nano ? 1000000000L : 1000000L)
+				|| Math.abs(tvSec - this.firstTvSec) > MAX_TIMESTAMP_SKEW
+				|| offset + RECORD_HEADER_SIZE + caplen > this.size) {
+			return -1;
+		}
+		return RECORD_HEADER_SIZE + caplen;
+	}
+
+	/**
+	 * Terminate running loop.
+	 */
+	public void breakLoop() {
+		this.breakLoop = true;
+	}
+
+	/**
+	 * Read next record header, and map the window over it.
+	 * @return returns 1 on success, 0 on end of file, -1 on error.
+	 * @throws IOException io exception.
+	 */
+	private int advance() throws IOException {
+		int result = readRecord();
+		while (result > 0 && this.timeFilter) {
+			long timestamp = PcapFileIndex.timestamp(this.tvSec, this.tvUsec, this.timestampPrecision);
+			if (timestamp >= this.fromTimestamp && timestamp <= this.toTimestamp) {
+				break;
+			}
+			result = readRecord();
+		}
+		return result;
+	}
+
+	private int readRecord() throws IOException {
+		if (!this.channel.isOpen()) {
+			throw new IOException("File already closed: " + this.fileName);
+		}
+		if (this.position >= this.limit) {
+			return 0;
+		}
+		if (this.position + RECORD_HEADER_SIZE > this.size) {
+			if (this.position == this.size) {
+				return 0;
+			}
+			this.err = "truncated dump file; tried to read " + RECORD_HEADER_SIZE + " header bytes, only got "
+					+ (this.size - this.position);
+			return -1;
+		}
+		int headerOffset = map(this.position, RECORD_HEADER_SIZE);
+		int caplen = this.window.buffer().getInt(headerOffset + 8);
+		if (caplen < 0 || caplen > this.windowSize - RECORD_HEADER_SIZE) {
+			this.err = "invalid packet capture length " + (caplen & 0xffffffffL);
+			return -1;
+		}
+		if (this.position + RECORD_HEADER_SIZE + caplen > this.size) {
+			this.err = "truncated dump file; tried to read " + caplen + " captured bytes, only got "
+					+ (this.size - this.position - RECORD_HEADER_SIZE);
+			return -1;
+		}
+		this.tvSec = this.window.buffer().getInt(headerOffset);
+		long fraction = this.window.buffer().getInt(headerOffset + 4) & 0xffffffffL;
+		this.len = this.window.buffer().getInt(headerOffset + 12);
+		this.capLen = caplen;
+		if (this.nano && this.timestampPrecision == PcapTimestampPrecision.MICRO) {
+			this.tvUsec = fraction / 1000;
+		} else if (!this.nano && this.timestampPrecision == PcapTimestampPrecision.NANO) {
+			this.tvUsec = fraction * 1000;
+		} else {
+			this.tvUsec = fraction;
+		}
+		this.offset = map(this.position, RECORD_HEADER_SIZE + caplen) + RECORD_HEADER_SIZE;
+		this.position += RECORD_HEADER_SIZE + caplen;
+		return 1;
+	}
+
+	private int map(final long start, final int length) throws IOException {
+		return this.window.map(start, length);
+	}
+
+	private ByteBuffer slice() {
+		return this.window.slice(this.offset, this.capLen);
+	}
+
+	/**
+	 * Check whether memory address of the mapping can be given to {@link RawPcapHandler}.
+	 * @return returns true if supported, false otherwise.
+	 * @since 1.5.4
+	 */
+	public static boolean isMemoryAddressSupported() {
+		return MappedFileWindow.isMemoryAddressSupported();
+	}
+
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	public long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Offset of the next record in the file.
+	 * @return returns file offset.
+	 */
+	public long getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * Read only packets in the given time range, position and limit are set from the index
+	 * so only the indexed buckets covering the range are read.
+	 * @param index index of this file.
+	 * @param from start of time range in microseconds since epoch (inclusive).
+	 * @param to end of time range in microseconds since epoch (inclusive).
+	 * @since 1.5.4
+	 */
+	public void seek(final PcapFileIndex index, final long from, final long to) {
+		Validate.notIllegalArgument(index != null, new IllegalArgumentException("Index should be not null."));
+		Validate.notIllegalArgument(from <= to, new IllegalArgumentException("Invalid time range."));
+		long limit = index.getLimit(to);
+		setLimit(limit < 0 ? this.size : limit);
+		setPosition(Math.min(index.getOffset(from), this.limit));
+		this.fromTimestamp = from;
+		this.toTimestamp = to;
+		this.timeFilter = true;
+	}
+
+	/**
+	 * Set offset of the next record, the offset must be a record boundary (see {@link PcapFileReader#resync(long)}).
+	 * @param position file offset.
+	 * @since 1.5.4
+	 */
+	public void setPosition(final long position) {
+		Validate.notIllegalArgument(position >= GLOBAL_HEADER_SIZE && position <= this.size,
+				new IllegalArgumentException("Position should be between " + GLOBAL_HEADER_SIZE + " and file size."));
+		this.position = position;
+	}
+
+	/**
+	 * Records starting at or after the limit are not read.
+	 * @return returns file offset.
+	 */
+	public long getLimit() {
+		return this.limit;
+	}
+
+	/**
+	 * Records starting at or after the limit are not read, a record starting before the limit is read completely.
+	 * @param limit file offset.
+	 * @since 1.5.4
+	 */
+	public void setLimit(final long limit) {
+		Validate.notIllegalArgument(limit >= GLOBAL_HEADER_SIZE && limit <= this.size,
+				new IllegalArgumentException("Limit should be between " + GLOBAL_HEADER_SIZE + " and file size."));
+		this.limit = limit;
+	}
+
+	public int getWindowSize() {
+		return this.windowSize;
+	}
+
+	/**
+	 * Byte order of the file.
+	 * @return returns byte order.
+	 */
+	public ByteOrder getByteOrder() {
+		return this.byteOrder;
+	}
+
+	/**
+	 * Check whether the file byte order is different from the host byte order, see {@link Jxnet#PcapIsSwapped(Pcap)}.
+	 * @return returns true if swapped, false otherwise.
+	 */
+	public boolean isSwapped() {
+		return this.byteOrder != ByteOrder.nativeOrder();
+	}
+
+	/**
+	 * Timestamp precision of the file.
+	 * @return returns NANO if the file has nanosecond magic number, MICRO otherwise.
+	 */
+	public PcapTimestampPrecision getFileTimestampPrecision() {
+		return this.nano ? PcapTimestampPrecision.NANO : PcapTimestampPrecision.MICRO;
+	}
+
+	/**
+	 * Timestamp precision given to the callbacks.
+	 * @return returns timestamp precision.
+	 */
+	public PcapTimestampPrecision getTimestampPrecision() {
+		return this.timestampPrecision;
+	}
+
+	public int getMajorVersion() {
+		return this.majorVersion;
+	}
+
+	public int getMinorVersion() {
+		return this.minorVersion;
+	}
+
+	public int getSnaplen() {
+		return this.snaplen;
+	}
+
+	public DataLinkType getDataLinkType() {
+		return this.dataLinkType;
+	}
+
+	/**
+	 * Last error message.
+	 * @return returns error message.
+	 */
+	public String getErr() {
+		return this.err;
+	}
+
+	/**
+	 * Check reader.
+	 * @return returns true if closed, false otherwise.
+	 */
+	public boolean isClosed() {
+		return !this.channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.window.release();
+		this.file.close();
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PcapFileReader{")
+				.append("fileName='").append(this.fileName).append('\'')
+				.append(", size=").append(this.size)
+				.append(", byteOrder=").append(this.byteOrder)
+				.append(", timestampPrecision=").append(getFileTimestampPrecision())
+				.append(", snaplen=").append(this.snaplen)
+				.append(", dataLinkType=").append(this.dataLinkType)
+				.append('}')
+				.toString();
+	}
+
+}
@@ -0,0 +1,446 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.util.DirectMemory;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Pure Java pcap writer, records are written in host byte order without a JNI call per packet.
+ * In channel mode record headers and small packets are staged in a direct buffer, batches
+ * ({@link PcapFileWriter#write(int, ByteBuffer, ByteBuffer)} and {@link PcapFileWriter#write(PcapPktHdr[], ByteBuffer[], int, int)})
+ * encode their record headers into a reusable direct buffer and are written with a single gather write,
+ * so packet data is not copied. In mapped mode records are copied into a read write mapping of the file.
+ * Writer is not thread safe.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public final class PcapFileWriter implements Closeable, Flushable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	public static final int DEFAULT_REGION_SIZE = 1 << 26;
+
+	/**
+	 * Maximum number of records per gather write, two buffers per record stay below IOV_MAX (1024).
+	 */
+	public static final int MAX_GATHER_RECORDS = 511;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final boolean mapped;
+	private final int regionSize;
+
+	private final ByteBuffer buffer;
+	private final long bufferAddress;
+	private final ByteBuffer[] recordHeaders;
+	private final ByteBuffer[] gather;
+
+	private ByteBuffer region;
+	private long regionOffset;
+	private long regionAddress;
+	private long position;
+	private long packets;
+
+	private PcapFileWriter(final String fileName, final DataLinkType dataLinkType, final int snaplen,
+						   final PcapTimestampPrecision timestampPrecision, final int bufferSize,
+						   final int regionSize) throws IOException {
+		this.file = new RandomAccessFile(fileName, "rw");
+		this.channel = this.file.getChannel();
+		this.mapped = regionSize > 0;
+		this.regionSize = regionSize;
+		try {
+			this.file.setLength(0);
+			if (this.mapped) {
+				this.buffer = null;
+				this.bufferAddress = 0;
+				this.recordHeaders = null;
+				this.gather = null;
+			} else {
+				this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+				this.bufferAddress = MappedFileWindow.address(this.buffer);
+				ByteBuffer headers = ByteBuffer.allocateDirect(MAX_GATHER_RECORDS * PcapFileReader.RECORD_HEADER_SIZE);
+				this.recordHeaders = new ByteBuffer[MAX_GATHER_RECORDS];
+				for (int i = 0; i < MAX_GATHER_RECORDS; i++) {
+					headers.limit((i + 1) * PcapFileReader.RECORD_HEADER_SIZE).position(i * PcapFileReader.RECORD_HEADER_SIZE);
+					this.recordHeaders[i] = headers.slice().order(ByteOrder.nativeOrder());
+				}
+				this.gather = new ByteBuffer[1 + 2 * MAX_GATHER_RECORDS];
+			}
+			ByteBuffer header = reserve(PcapFileReader.GLOBAL_HEADER_SIZE);
+			header.putInt(timestampPrecision == PcapTimestampPrecision.NANO
+					? PcapFileReader.MAGIC_NANO : PcapFileReader.MAGIC_MICRO);
+			header.putShort((short) 2);
+			header.putShort((short) 4);
+			header.putInt(0); // thiszone
+			header.putInt(0); // sigfigs
+			header.putInt(snaplen);
+			header.putInt(dataLinkType.getValue() & 0xffff);
+			this.position = PcapFileReader.GLOBAL_HEADER_SIZE;
+		} catch (IOException e) {
+			this.file.close();
+			throw e;
+		} catch (RuntimeException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Create pcap file with default buffer size.
+	 * @param fileName file name.
+	 * @param dataLinkType data link type.
+	 * @param snaplen snapshot length.
+	 * @param timestampPrecision precision of packet header timestamps.
+	 * @return returns PcapFileWriter.
+	 * @throws IOException io exception.
+	 */
+	public static PcapFileWriter open(final String fileName, final DataLinkType dataLinkType, final int snaplen,
+									  final PcapTimestampPrecision timestampPrecision) throws IOException {
+		return open(fileName, dataLinkType, snaplen, timestampPrecision, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create pcap file, records are written through a direct buffer and gather writes.
+	 * @param fileName file name.
+	 * @param dataLinkType data link type.
+	 * @param snaplen snapshot length.
+	 * @param timestampPrecision precision of packet header timestamps.
+	 * @param bufferSize size of write buffer.
+	 * @return returns PcapFileWriter.
+	 * @throws IOException io exception.
+	 */
+	public static PcapFileWriter open(final String fileName, final DataLinkType dataLinkType, final int snaplen,
+									  final PcapTimestampPrecision timestampPrecision, final int bufferSize) throws IOException {
+		validate(fileName, dataLinkType, timestampPrecision);
+		Validate.notIllegalArgument(bufferSize >= 256,
+				new IllegalArgumentException("Buffer size should be greater than or equal to 256."));
+		return new PcapFileWriter(fileName, dataLinkType, snaplen, timestampPrecision, bufferSize, 0);
+	}
+
+	/**
+	 * Create pcap file, records are copied into a read write mapping of the file which grows by regionSize bytes.
+	 * The file is truncated to the written size on close.
+	 * @param fileName file name.
+	 * @param dataLinkType data link type.
+	 * @param snaplen snapshot length.
+	 * @param timestampPrecision precision of packet header timestamps.
+	 * @param regionSize size of each mapping.
+	 * @return returns PcapFileWriter.
+	 * @throws IOException io exception.
+	 */
+	public static PcapFileWriter openMapped(final String fileName, final DataLinkType dataLinkType, final int snaplen,
+											final PcapTimestampPrecision timestampPrecision, final int regionSize) throws IOException {
+		validate(fileName, dataLinkType, timestampPrecision);
+		Validate.notIllegalArgument(regionSize >= 1 << 16,
+				new IllegalArgumentException("Region size should be greater than or equal to 65536."));
+		return new PcapFileWriter(fileName, dataLinkType, snaplen, timestampPrecision, 0, regionSize);
+	}
+
+	/**
+	 * Write a packet, packet data is not consumed.
+	 * @param h packet header.
+	 * @param data packet data, captured length bytes are written starting from its position.
+	 * @throws IOException io exception.
+	 */
+	public void write(final PcapPktHdr h, final ByteBuffer data) throws IOException {
+		if (h == null || data == null || data.remaining() < h.getCapLen()) {
+			throw new IllegalArgumentException("Packet data is shorter than captured length.");
+		}
+		int capLen = h.getCapLen();
+		int length = PcapFileReader.RECORD_HEADER_SIZE + capLen;
+		ByteBuffer packet = data.duplicate();
+		packet.limit(packet.position() + capLen);
+		ByteBuffer target = reserve(reservation(length));
+		putRecordHeader(target, h.getTvSec(), h.getTvUsec(), capLen, h.getLen());
+		if (packet.remaining() <= target.remaining()) {
+			target.put(packet);
+		} else {
+			flush();
+			while (packet.hasRemaining()) {
+				this.channel.write(packet);
+			}
+		}
+		this.position += length;
+		this.packets++;
+	}
+
+	/**
+	 * Write a packet given to a {@link RawPcapHandler}.
+	 * @param capLen captured length.
+	 * @param len length.
+	 * @param tvSec tvSec.
+	 * @param tvUsec tvUsec.
+	 * @param memoryAddress memory address of packet data.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException memory address is not supported by this JVM.
+	 */
+	public void write(final int capLen, final int len, final int tvSec, final long tvUsec,
+					  final long memoryAddress) throws IOException {
+		if (memoryAddress == 0) {
+			throw new IllegalArgumentException("Memory address should be not null.");
+		}
+		if (capLen < 0) {
+			throw new IllegalArgumentException("Capture length should be greater than or equal to zero.");
+		}
+		if (!DirectMemory.isAccessSupported()) {
+			throw new UnsupportedOperationException("Memory address is not supported.");
+		}
+		int length = PcapFileReader.RECORD_HEADER_SIZE + capLen;
+		ByteBuffer target = reserve(reservation(length));
+		putRecordHeader(target, tvSec, tvUsec, capLen, len);
+		long address = memoryAddress;
+		int remaining = capLen;
+		while (remaining > 0) {
+			if (!target.hasRemaining()) {
+				target = reserve(this.buffer.capacity()); // Channel mode only, flushes the buffer.
+			}
+			int n = Math.min(remaining, target.remaining());
+			DirectMemory.copyMemory(address, (this.mapped ? this.regionAddress : this.bufferAddress)
+					+ target.position(), n);
+			target.position(target.position() + n);
+			address += n;
+			remaining -= n;
+		}
+		this.position += length;
+		this.packets++;
+	}
+
+	/**
+	 * Write a batch captured with {@link Jxnet#PcapDispatchBatch(Pcap, int, PcapBatchHandler, Object, ByteBuffer, ByteBuffer)}.
+	 * Must be called before {@link PcapBatchHandler#nextBatch(Object, int, ByteBuffer, ByteBuffer)} returns.
+	 * @param count number of packets.
+	 * @param headers header region, see {@link PcapBatchHandler}.
+	 * @param packets packet slab.
+	 * @throws IOException io exception.
+	 */
+	public void write(final int count, final ByteBuffer headers, final ByteBuffer packets) throws IOException {
+		Validate.notIllegalArgument(headers != null && packets != null
+						&& count >= 0 && headers.capacity() >= count * PcapBatchHandler.HEADER_SIZE,
+				new IllegalArgumentException("Header region is shorter than count."));
+		ByteBuffer records = headers.duplicate().order(ByteOrder.nativeOrder());
+		for (int i = 0; i < count; ) {
+			int n = Math.min(count - i, MAX_GATHER_RECORDS);
+			int buffers = 0;
+			long bytes = 0;
+			for (int j = 0; j < n; j++) {
+				int index = (i + j) * PcapBatchHandler.HEADER_SIZE;
+				int capLen = records.getInt(index + PcapBatchHandler.CAPLEN_OFFSET);
+				int offset = records.getInt(index + PcapBatchHandler.DATA_OFFSET);
+				ByteBuffer packet = packets.duplicate();
+				packet.clear();
+				packet.position(offset).limit(offset + capLen);
+				int tvSec = records.getInt(index + PcapBatchHandler.TV_SEC_OFFSET);
+				long tvUsec = records.getLong(index + PcapBatchHandler.TV_USEC_OFFSET);
+				int len = records.getInt(index + PcapBatchHandler.LEN_OFFSET);
+				if (this.mapped) {
+					ByteBuffer target = reserve(PcapFileReader.RECORD_HEADER_SIZE + capLen);
+					putRecordHeader(target, tvSec, tvUsec, capLen, len);
+					target.put(packet);
+				} else {
+					ByteBuffer recordHeader = this.recordHeaders[j];
+					recordHeader.clear();
+					putRecordHeader(recordHeader, tvSec, tvUsec, capLen, len);
+					recordHeader.flip();
+					this.gather[++buffers] = recordHeader;
+					this.gather[++buffers] = packet;
+				}
+				bytes += PcapFileReader.RECORD_HEADER_SIZE + capLen;
+			}
+			if (!this.mapped) {
+				gather(buffers, bytes);
+			}
+			this.position += bytes;
+			this.packets += n;
+			i += n;
+		}
+	}
+
+	/**
+	 * Write packets, packet data is not consumed.
+	 * @param h packet headers.
+	 * @param data packet data, captured length bytes are written starting from their position.
+	 * @param offset index of the first packet.
+	 * @param length number of packets.
+	 * @throws IOException io exception.
+	 */
+	public void write(final PcapPktHdr[] h, final ByteBuffer[] data, final int offset, final int length) throws IOException {
+		Validate.notIllegalArgument(h != null && data != null && offset >= 0 && length >= 0
+						&& offset + length <= h.length && offset + length <= data.length,
+				new IllegalArgumentException("Offset and length should be inside the arrays."));
+		if (this.mapped) {
+			for (int i = offset; i < offset + length; i++) {
+				write(h[i], data[i]);
+			}
+			return;
+		}
+		for (int i = offset; i < offset + length; ) {
+			int n = Math.min(offset + length - i, MAX_GATHER_RECORDS);
+			int buffers = 0;
+			long bytes = 0;
+			for (int j = 0; j < n; j++) {
+				PcapPktHdr header = h[i + j];
+				int capLen = header.getCapLen();
+				if (data[i + j].remaining() < capLen) {
+					throw new IllegalArgumentException("Packet data is shorter than captured length.");
+				}
+				ByteBuffer packet = data[i + j].duplicate();
+				packet.limit(packet.position() + capLen);
+				ByteBuffer recordHeader = this.recordHeaders[j];
+				recordHeader.clear();
+				putRecordHeader(recordHeader, header.getTvSec(), header.getTvUsec(), capLen, header.getLen());
+				recordHeader.flip();
+				this.gather[++buffers] = recordHeader;
+				this.gather[++buffers] = packet;
+				bytes += PcapFileReader.RECORD_HEADER_SIZE + capLen;
+			}
+			gather(buffers, bytes);
+			this.position += bytes;
+			this.packets += n;
+			i += n;
+		}
+	}
+
+	/**
+	 * Number of bytes written, including the file header.
+	 * @return returns file size after flush or close.
+	 */
+	public long getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * Number of written packets.
+	 * @return returns number of packets.
+	 */
+	public long getPackets() {
+		return this.packets;
+	}
+
+	public boolean isMapped() {
+		return this.mapped;
+	}
+
+	/**
+	 * Write buffered records to the file, mapped mode doesn't buffer.
+	 * @throws IOException io exception.
+	 */
+	@Override
+	public void flush() throws IOException {
+		if (this.mapped) {
+			return;
+		}
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	/**
+	 * Check writer.
+	 * @return returns true if closed, false otherwise.
+	 */
+	public boolean isClosed() {
+		return !this.channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+			if (this.mapped) {
+				this.region = null;
+				this.channel.truncate(this.position);
+			}
+		} finally {
+			this.file.close();
+		}
+	}
+
+	/**
+	 * Staged data followed by the record headers and packets in {@link PcapFileWriter#gather}.
+	 */
+	private void gather(final int buffers, final long bytes) throws IOException {
+		this.buffer.flip();
+		this.gather[0] = this.buffer;
+		long remaining = bytes + this.buffer.remaining();
+		while (remaining > 0) {
+			remaining -= this.channel.write(this.gather, 0, buffers + 1);
+		}
+		this.buffer.clear();
+		Arrays.fill(this.gather, 0, buffers + 1, null);
+	}
+
+	/**
+	 * Number of bytes to reserve for a record, records larger than the write buffer are written in parts.
+	 */
+	private int reservation(final int length) {
+		return this.mapped ? length : Math.min(length, this.buffer.capacity());
+	}
+
+	/**
+	 * Make room for length bytes, the write buffer is flushed or the next region is mapped if necessary.
+	 * @return returns buffer to put the bytes into.
+	 */
+	private ByteBuffer reserve(final int length) throws IOException {
+		if (!this.mapped) {
+			if (this.buffer.remaining() < length) {
+				flush();
+			}
+			return this.buffer;
+		}
+		if (this.region == null || this.region.remaining() < length) {
+			long start = this.region == null ? this.position : this.regionOffset + this.region.position();
+			this.region = this.channel.map(FileChannel.MapMode.READ_WRITE, start, Math.max(this.regionSize, length))
+					.order(ByteOrder.nativeOrder());
+			this.regionAddress = MappedFileWindow.address(this.region);
+			this.regionOffset = start;
+		}
+		return this.region;
+	}
+
+	private static void putRecordHeader(final ByteBuffer target, final int tvSec, final long tvUsec,
+										final int capLen, final int len) {
+		target.putInt(tvSec);
+		target.putInt((int) tvUsec);
+		target.putInt(capLen);
+		target.putInt(len);
+	}
+
+	private static void validate(final String fileName, final DataLinkType dataLinkType,
+								 final PcapTimestampPrecision timestampPrecision) {
+		Validate.notIllegalArgument(fileName != null, new IllegalArgumentException("File name should be not null."));
+		Validate.notIllegalArgument(dataLinkType != null, new IllegalArgumentException("Data link type should be not null."));
+		Validate.notIllegalArgument(timestampPrecision != null,
+				new IllegalArgumentException("Timestamp precision should be not null."));
+	}
+
+}
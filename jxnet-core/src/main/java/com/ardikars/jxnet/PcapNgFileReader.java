@@ -0,0 +1,648 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+import com.ardikars.common.util.Validate;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Pure Java pcapng reader, doesn't need native library.
+ * Blocks are read from a memory mapped window that slides over the file (see {@link PcapFileReader}),
+ * packets of enhanced, simple and obsolete packet blocks are handed to the callbacks as read only slices.
+ * Every section may use its own byte order and interfaces, timestamps are converted from the interface
+ * resolution (if_tsresol, if_tsoffset) to the requested precision.
+ * Reader is not thread safe, except {@link PcapNgFileReader#breakLoop()}.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable(volatiles = { "breakLoop" })
+public final class PcapNgFileReader implements PcapOfflineReader {
+
+	public static final int SECTION_HEADER_BLOCK = 0x0a0d0d0a;
+	public static final int INTERFACE_DESCRIPTION_BLOCK = 1;
+	public static final int PACKET_BLOCK = 2;
+	public static final int SIMPLE_PACKET_BLOCK = 3;
+	public static final int ENHANCED_PACKET_BLOCK = 6;
+
+	public static final int BYTE_ORDER_MAGIC = 0x1a2b3c4d;
+
+	static final int OPTION_END = 0;
+	static final int OPTION_IF_NAME = 2;
+	static final int OPTION_IF_TSRESOL = 9;
+	static final int OPTION_IF_TSOFFSET = 14;
+
+	private static final int MIN_BLOCK_SIZE = 12;
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final long[] POWERS_OF_TEN = new long[19];
+
+	private final String fileName;
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final long size;
+	private final int windowSize;
+	private final PcapTimestampPrecision timestampPrecision;
+	private final MappedFileWindow window;
+
+	private final List<PcapNgInterface> interfaces = new ArrayList<PcapNgInterface>();
+	private ByteOrder byteOrder;
+	private int majorVersion;
+	private int minorVersion;
+
+	private long position;
+	private volatile boolean breakLoop;
+	private String err = "";
+
+	// Current packet
+	private int interfaceId;
+	private int capLen;
+	private int len;
+	private int tvSec;
+	private long tvUsec;
+	private int offset;
+
+	static {
+		POWERS_OF_TEN[0] = 1;
+		for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+			POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+		}
+	}
+
+	private PcapNgFileReader(final String fileName, final int windowSize, final PcapTimestampPrecision timestampPrecision)
+			throws IOException {
+		this.fileName = fileName;
+		this.windowSize = windowSize;
+		this.timestampPrecision = timestampPrecision;
+		this.file = new RandomAccessFile(fileName, "r");
+		try {
+			this.channel = this.file.getChannel();
+			this.size = this.channel.size();
+			this.window = new MappedFileWindow(this.channel, this.size, windowSize, ByteOrder.BIG_ENDIAN);
+			if (this.size < MIN_BLOCK_SIZE) {
+				throw new IOException("Unknown file format: " + fileName);
+			}
+			// Block type of section header block is a palindrome, it doesn't depend on byte order.
+			int blockOffset = this.window.map(0, MIN_BLOCK_SIZE);
+			if (this.window.buffer().getInt(blockOffset) != SECTION_HEADER_BLOCK) {
+				throw new IOException("Unknown file format: " + fileName);
+			}
+			if (readBlocks(false) < 0) {
+				throw new IOException(this.err);
+			}
+		} catch (IOException e) {
+			this.file.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Open pcapng file with default window size and microsecond timestamp.
+	 * @param fileName file name.
+	 * @return returns PcapNgFileReader.
+	 * @throws IOException file can't be read or is not a pcapng file.
+	 */
+	public static PcapNgFileReader open(final String fileName) throws IOException {
+		return open(fileName, PcapFileReader.DEFAULT_WINDOW_SIZE, PcapTimestampPrecision.MICRO);
+	}
+
+	/**
+	 * Open pcapng file.
+	 * @param fileName file name.
+	 * @param windowSize size of mapped window, must be larger than the biggest block.
+	 * @param timestampPrecision precision of timestamp given to the callbacks.
+	 * @return returns PcapNgFileReader.
+	 * @throws IOException file can't be read or is not a pcapng file.
+	 */
+	public static PcapNgFileReader open(final String fileName, final int windowSize,
+										final PcapTimestampPrecision timestampPrecision) throws IOException {
+		Validate.notIllegalArgument(fileName != null && new File(fileName).isFile(),
+				new IllegalArgumentException("File not found: " + fileName));
+		Validate.notIllegalArgument(windowSize >= MIN_BLOCK_SIZE,
+				new IllegalArgumentException("Window size should be greater than or equal to " + MIN_BLOCK_SIZE));
+		Validate.notIllegalArgument(timestampPrecision != null,
+				new IllegalArgumentException("Timestamp precision should be not null."));
+		return new PcapNgFileReader(fileName, windowSize, timestampPrecision);
+	}
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, see {@link Jxnet#PcapLoop(Pcap, int, PcapHandler, Object)}.
+	 * {@link PcapNgFileReader#getInterfaceId()} returns interface of the packet given to the callback.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted or there is no more packets, -1 on error,
+	 * -2 if the loop terminated by {@link PcapNgFileReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 */
+	public <T> int loop(final int cnt, final PcapHandler<T> callback, final T user) throws IOException {
+		int result = dispatch(cnt, callback, user);
+		return result < 0 ? result : 0;
+	}
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, see {@link Jxnet#PcapDispatch(Pcap, int, PcapHandler, Object)}.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns number of packets read, -1 on error, -2 if the loop terminated by {@link PcapNgFileReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 */
+	public <T> int dispatch(final int cnt, final PcapHandler<T> callback, final T user) throws IOException {
+		Validate.notIllegalArgument(callback != null, new IllegalArgumentException("Callback should be not null."));
+		int processed = 0;
+		while (cnt <= 0 || processed < cnt) {
+			if (this.breakLoop) {
+				this.breakLoop = false;
+				return -2;
+			}
+			int result = advance();
+			if (result <= 0) {
+				return result < 0 ? result : processed;
+			}
+			callback.nextPacket(user, new PcapPktHdr(this.capLen, this.len, this.tvSec, this.tvUsec), slice());
+			processed++;
+		}
+		return processed;
+	}
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, memory address given to the callback
+	 * point to the mapped window and valid until the next packet is read,
+	 * the window may slide and be unmapped afterwards.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted or there is no more packets, -1 on error,
+	 * -2 if the loop terminated by {@link PcapNgFileReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException address of mapped buffer is not accessible on this platform.
+	 */
+	public <T> int loop(final int cnt, final RawPcapHandler<T> callback, final T user)
+			throws IOException, UnsupportedOperationException {
+		int result = dispatch(cnt, callback, user);
+		return result < 0 ? result : 0;
+	}
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, memory address given to the callback
+	 * point to the mapped window and valid until the next packet is read,
+	 * the window may slide and be unmapped afterwards.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns number of packets read, -1 on error, -2 if the loop terminated by {@link PcapNgFileReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException address of mapped buffer is not accessible on this platform.
+	 */
+	public <T> int dispatch(final int cnt, final RawPcapHandler<T> callback, final T user)
+			throws IOException, UnsupportedOperationException {
+		Validate.notIllegalArgument(callback != null, new IllegalArgumentException("Callback should be not null."));
+		if (!MappedFileWindow.isMemoryAddressSupported()) {
+			throw new UnsupportedOperationException("Address of mapped buffer is not accessible.");
+		}
+		int processed = 0;
+		while (cnt <= 0 || processed < cnt) {
+			if (this.breakLoop) {
+				this.breakLoop = false;
+				return -2;
+			}
+			int result = advance();
+			if (result <= 0) {
+				return result < 0 ? result : processed;
+			}
+			callback.nextPacket(user, this.capLen, this.len, this.tvSec, this.tvUsec, this.window.address() + this.offset);
+			processed++;
+		}
+		return processed;
+	}
+
+	/**
+	 * Read next packet, see {@link Jxnet#PcapNext(Pcap, PcapPktHdr)}.
+	 * @param pktHdr packet header.
+	 * @return returns read only slice of the packet, or null if there is no more packets or on error.
+	 * @throws IOException io exception.
+	 */
+	public ByteBuffer next(final PcapPktHdr pktHdr) throws IOException {
+		if (advance() <= 0) {
+			return null;
+		}
+		pktHdr.set(this.capLen, this.len, this.tvSec, this.tvUsec);
+		return slice();
+	}
+
+	/**
+	 * Read next packet and copy it into given buffer, see {@link Jxnet#PcapNextEx(Pcap, PcapPktHdr, ByteBuffer)}.
+	 * @param pktHdr packet header.
+	 * @param pktData packet buffer.
+	 * @return returns 1 on success, -1 on error, -2 if there is no more packets.
+	 * @throws IOException io exception.
+	 */
+	public int nextEx(final PcapPktHdr pktHdr, final ByteBuffer pktData) throws IOException {
+		int result = advance();
+		if (result <= 0) {
+			return result < 0 ? result : -2;
+		}
+		pktHdr.set(this.capLen, this.len, this.tvSec, this.tvUsec);
+		pktData.clear();
+		pktData.put(slice());
+		return 1;
+	}
+
+	/**
+	 * Read next packet without copying it, see {@link Jxnet#PcapNextEx0(Pcap, PcapPktHdr, long[])}.
+	 * @param pktHdr packet header.
+	 * @param pktData pktData[0] is packet memory address (valid until the next packet is read), pktData[1] is captured length.
+	 * @return returns 1 on success, -1 on error, -2 if there is no more packets.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException address of mapped buffer is not accessible on this platform.
+	 */
+	public int nextEx0(final PcapPktHdr pktHdr, final long[] pktData) throws IOException, UnsupportedOperationException {
+		if (pktData == null || pktData.length < 2) {
+			throw new IllegalArgumentException("Packet data length should be greater than or equal to 2.");
+		}
+		if (!MappedFileWindow.isMemoryAddressSupported()) {
+			throw new UnsupportedOperationException("Address of mapped buffer is not accessible.");
+		}
+		int result = advance();
+		if (result <= 0) {
+			return result < 0 ? result : -2;
+		}
+		pktHdr.set(this.capLen, this.len, this.tvSec, this.tvUsec);
+		pktData[0] = this.window.address() + this.offset;
+		pktData[1] = this.capLen;
+		return 1;
+	}
+
+	/**
+	 * Terminate running loop.
+	 */
+	public void breakLoop() {
+		this.breakLoop = true;
+	}
+
+	private int advance() throws IOException {
+		if (!this.channel.isOpen()) {
+			throw new IOException("File already closed: " + this.fileName);
+		}
+		return readBlocks(true);
+	}
+
+	/**
+	 * Read blocks until a packet block.
+	 * @param consume true to read the packet block, false to stop before it.
+	 * @return returns 1 if a packet is read, 0 on end of file (or before packet block if not consume), -1 on error.
+	 */
+	private int readBlocks(final boolean consume) throws IOException {
+		while (this.position < this.size) {
+			if (this.position + MIN_BLOCK_SIZE > this.size) {
+				this.err = "truncated pcapng file; tried to read block header at " + this.position;
+				return -1;
+			}
+			int blockOffset = this.window.map(this.position, MIN_BLOCK_SIZE);
+			ByteBuffer buffer = this.window.buffer();
+			int type = buffer.getInt(blockOffset);
+			if (type == SECTION_HEADER_BLOCK) {
+				int magic = buffer.getInt(blockOffset + 8);
+				if (magic == Integer.reverseBytes(BYTE_ORDER_MAGIC)) {
+					this.byteOrder = buffer.order() == ByteOrder.BIG_ENDIAN ? ByteOrder.LITTLE_ENDIAN : ByteOrder.BIG_ENDIAN;
+					this.window.order(this.byteOrder);
+				} else if (magic == BYTE_ORDER_MAGIC) {
+					this.byteOrder = buffer.order();
+				} else {
+					this.err = "invalid byte order magic at " + this.position;
+					return -1;
+				}
+			} else if (this.byteOrder == null) {
+				this.err = "missing section header block";
+				return -1;
+			}
+			int length = buffer.getInt(blockOffset + 4);
+			if (length < MIN_BLOCK_SIZE || (length & 3) != 0 || length > this.windowSize) {
+				this.err = "invalid block length " + (length & 0xffffffffL) + " at " + this.position;
+				return -1;
+			}
+			if (this.position + length > this.size) {
+				this.err = "truncated pcapng file; tried to read " + length + " bytes block, only got "
+						+ (this.size - this.position);
+				return -1;
+			}
+			boolean packet = type == ENHANCED_PACKET_BLOCK || type == SIMPLE_PACKET_BLOCK || type == PACKET_BLOCK;
+			if (packet && !consume) {
+				return 0;
+			}
+			blockOffset = this.window.map(this.position, length);
+			buffer = this.window.buffer();
+			if (buffer.getInt(blockOffset + length - 4) != length) {
+				this.err = "block length mismatch at " + this.position;
+				return -1;
+			}
+			int result;
+			switch (type) {
+				case SECTION_HEADER_BLOCK:
+					result = readSectionHeader(buffer, blockOffset, length);
+					break;
+				case INTERFACE_DESCRIPTION_BLOCK:
+					result = readInterfaceDescription(buffer, blockOffset, length);
+					break;
+				case ENHANCED_PACKET_BLOCK:
+					result = readPacket(buffer, blockOffset, length, buffer.getInt(blockOffset + 8));
+					break;
+				case PACKET_BLOCK:
+					result = readPacket(buffer, blockOffset, length, buffer.getShort(blockOffset + 8) & 0xffff);
+					break;
+				case SIMPLE_PACKET_BLOCK:
+					result = readSimplePacket(buffer, blockOffset, length);
+					break;
+				default:
+					result = 0; // Skip unsupported block.
+			}
+			if (result < 0) {
+				return result;
+			}
+			this.position += length;
+			if (result > 0) {
+				return result;
+			}
+		}
+		return 0;
+	}
+
+	private int readSectionHeader(final ByteBuffer buffer, final int blockOffset, final int length) {
+		if (length < 28) {
+			this.err = "invalid section header block length " + length;
+			return -1;
+		}
+		this.majorVersion = buffer.getShort(blockOffset + 12) & 0xffff;
+		this.minorVersion = buffer.getShort(blockOffset + 14) & 0xffff;
+		this.interfaces.clear();
+		return 0;
+	}
+
+	private int readInterfaceDescription(final ByteBuffer buffer, final int blockOffset, final int length) {
+		if (length < 20) {
+			this.err = "invalid interface description block length " + length;
+			return -1;
+		}
+		DataLinkType dataLinkType = DataLinkType.valueOf(buffer.getShort(blockOffset + 8));
+		int snaplen = buffer.getInt(blockOffset + 12);
+		String name = null;
+		byte resolution = PcapNgInterface.DEFAULT_TIMESTAMP_RESOLUTION;
+		long timestampOffset = 0;
+		int option = blockOffset + 16;
+		int end = blockOffset + length - 4;
+		while (option + 4 <= end) {
+			int code = buffer.getShort(option) & 0xffff;
+			int optionLength = buffer.getShort(option + 2) & 0xffff;
+			if (code == OPTION_END || option + 4 + optionLength > end) {
+				break;
+			}
+			if (code == OPTION_IF_NAME) {
+				byte[] bytes = new byte[optionLength];
+				for (int i = 0; i < optionLength; i++) {
+					bytes[i] = buffer.get(option + 4 + i);
+				}
+				name = new String(bytes, UTF_8);
+			} else if (code == OPTION_IF_TSRESOL && optionLength >= 1) {
+				resolution = buffer.get(option + 4);
+			} else if (code == OPTION_IF_TSOFFSET && optionLength >= 8) {
+				timestampOffset = buffer.getLong(option + 4);
+			}
+			option += 4 + ((optionLength + 3) & ~3);
+		}
+		int exponent = resolution & 0x7f;
+		if ((resolution & 0x80) == 0 ? exponent >= POWERS_OF_TEN.length : exponent > 62) {
+			this.err = "unsupported timestamp resolution " + (resolution & 0xff);
+			return -1;
+		}
+		this.interfaces.add(new PcapNgInterface(this.interfaces.size(), dataLinkType, snaplen, name,
+				resolution, timestampOffset));
+		return 0;
+	}
+
+	private int readPacket(final ByteBuffer buffer, final int blockOffset, final int length, final int id) {
+		if (length < 32) {
+			this.err = "invalid packet block length " + length;
+			return -1;
+		}
+		if (id < 0 || id >= this.interfaces.size()) {
+			this.err = "unknown interface id " + (id & 0xffffffffL);
+			return -1;
+		}
+		int caplen = buffer.getInt(blockOffset + 20);
+		if (caplen < 0 || caplen > length - 32) {
+			this.err = "invalid packet capture length " + (caplen & 0xffffffffL);
+			return -1;
+		}
+		long units = ((buffer.getInt(blockOffset + 12) & 0xffffffffL) << 32) | (buffer.getInt(blockOffset + 16) & 0xffffffffL);
+		timestamp(this.interfaces.get(id), units);
+		this.interfaceId = id;
+		this.capLen = caplen;
+		this.len = buffer.getInt(blockOffset + 24);
+		this.offset = blockOffset + 28;
+		return 1;
+	}
+
+	private int readSimplePacket(final ByteBuffer buffer, final int blockOffset, final int length) {
+		if (length < 16 || this.interfaces.isEmpty()) {
+			this.err = "invalid simple packet block at " + this.position;
+			return -1;
+		}
+		PcapNgInterface pcapNgInterface = this.interfaces.get(0);
+		int len = buffer.getInt(blockOffset + 8);
+		int caplen = Math.min(len, length - 16);
+		if (pcapNgInterface.getSnaplen() > 0) {
+			caplen = Math.min(caplen, pcapNgInterface.getSnaplen());
+		}
+		this.interfaceId = 0;
+		this.capLen = caplen;
+		this.len = len;
+		this.tvSec = 0;
+		this.tvUsec = 0;
+		this.offset = blockOffset + 12;
+		return 1;
+	}
+
+	/**
+	 * Convert timestamp units of the interface to seconds and fraction of the requested precision.
+	 */
+	private void timestamp(final PcapNgInterface pcapNgInterface, final long units) {
+		int exponent = pcapNgInterface.getTimestampExponent();
+		int digits = this.timestampPrecision == PcapTimestampPrecision.NANO ? 9 : 6;
+		long seconds;
+		long fraction;
+		if (pcapNgInterface.isBinaryTimestampResolution()) {
+			seconds = units >>> exponent;
+			long remainder = units & ((1L << exponent) - 1);
+			fraction = (long) (remainder * (double) POWERS_OF_TEN[digits] / (1L << exponent));
+		} else {
+			seconds = units / POWERS_OF_TEN[exponent];
+			fraction = units % POWERS_OF_TEN[exponent];
+			if (exponent > digits) {
+				fraction /= POWERS_OF_TEN[exponent - digits];
+			} else {
+				fraction *= POWERS_OF_TEN[digits - exponent];
+			}
+		}
+		this.tvSec = (int) (seconds + pcapNgInterface.getTimestampOffset());
+		this.tvUsec = fraction;
+	}
+
+	private ByteBuffer slice() {
+		return this.window.slice(this.offset, this.capLen);
+	}
+
+	public String getFileName() {
+		return this.fileName;
+	}
+
+	public long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * Offset of the next block in the file.
+	 * @return returns file offset.
+	 */
+	public long getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * Byte order of current section.
+	 * @return returns byte order.
+	 */
+	public ByteOrder getByteOrder() {
+		return this.byteOrder;
+	}
+
+	/**
+	 * Check whether byte order of current section is different from the host byte order.
+	 * @return returns true if swapped, false otherwise.
+	 */
+	public boolean isSwapped() {
+		return this.byteOrder != ByteOrder.nativeOrder();
+	}
+
+	/**
+	 * Timestamp precision given to the callbacks.
+	 * @return returns timestamp precision.
+	 */
+	public PcapTimestampPrecision getTimestampPrecision() {
+		return this.timestampPrecision;
+	}
+
+	public int getMajorVersion() {
+		return this.majorVersion;
+	}
+
+	public int getMinorVersion() {
+		return this.minorVersion;
+	}
+
+	/**
+	 * Interfaces of current section, interfaces described after the last packet read are not included yet.
+	 * @return returns interfaces.
+	 */
+	public List<PcapNgInterface> getInterfaces() {
+		return Collections.unmodifiableList(this.interfaces);
+	}
+
+	/**
+	 * Interface of current section.
+	 * @param id interface id.
+	 * @return returns interface.
+	 */
+	public PcapNgInterface getInterface(final int id) {
+		return this.interfaces.get(id);
+	}
+
+	/**
+	 * Interface id of the last packet read.
+	 * @return returns interface id.
+	 */
+	public int getInterfaceId() {
+		return this.interfaceId;
+	}
+
+	/**
+	 * Data link type of the first interface of current section.
+	 * @return returns data link type, or null if there is no interface.
+	 */
+	public DataLinkType getDataLinkType() {
+		return this.interfaces.isEmpty() ? null : this.interfaces.get(0).getDataLinkType();
+	}
+
+	/**
+	 * Snapshot length of the first interface of current section.
+	 * @return returns snapshot length, or 0 if there is no interface.
+	 */
+	public int getSnaplen() {
+		return this.interfaces.isEmpty() ? 0 : this.interfaces.get(0).getSnaplen();
+	}
+
+	/**
+	 * Last error message.
+	 * @return returns error message.
+	 */
+	public String getErr() {
+		return this.err;
+	}
+
+	/**
+	 * Check reader.
+	 * @return returns true if closed, false otherwise.
+	 */
+	public boolean isClosed() {
+		return !this.channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.window.release();
+		this.file.close();
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PcapNgFileReader{")
+				.append("fileName='").append(this.fileName).append('\'')
+				.append(", size=").append(this.size)
+				.append(", byteOrder=").append(this.byteOrder)
+				.append(", interfaces=").append(this.interfaces)
+				.append('}')
+				.toString();
+	}
+
+}
@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.util.Validate;
+
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Pure Java pcapng writer, blocks are written in host byte order through a direct buffer.
+ * The file has a single section, packets are written as enhanced packet blocks.
+ * Writer is not thread safe.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public final class PcapNgFileWriter implements Closeable, Flushable {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+	private static final int ENHANCED_PACKET_BLOCK_SIZE = 32;
+	private static final byte NANO_TIMESTAMP_RESOLUTION = 9;
+
+	private final FileOutputStream out;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final List<PcapTimestampPrecision> interfaces = new ArrayList<PcapTimestampPrecision>();
+
+	private PcapNgFileWriter(final String fileName, final int bufferSize) throws IOException {
+		this.out = new FileOutputStream(fileName);
+		this.channel = this.out.getChannel();
+		this.buffer = ByteBuffer.allocateDirect(bufferSize).order(ByteOrder.nativeOrder());
+		try {
+			this.buffer.putInt(PcapNgFileReader.SECTION_HEADER_BLOCK);
+			this.buffer.putInt(28);
+			this.buffer.putInt(PcapNgFileReader.BYTE_ORDER_MAGIC);
+			this.buffer.putShort((short) 1);
+			this.buffer.putShort((short) 0);
+			this.buffer.putLong(-1L); // Section length is not specified.
+			this.buffer.putInt(28);
+		} catch (RuntimeException e) {
+			this.out.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Create pcapng file with default buffer size.
+	 * @param fileName file name.
+	 * @return returns PcapNgFileWriter.
+	 * @throws IOException io exception.
+	 */
+	public static PcapNgFileWriter open(final String fileName) throws IOException {
+		return open(fileName, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Create pcapng file.
+	 * @param fileName file name.
+	 * @param bufferSize size of write buffer.
+	 * @return returns PcapNgFileWriter.
+	 * @throws IOException io exception.
+	 */
+	public static PcapNgFileWriter open(final String fileName, final int bufferSize) throws IOException {
+		Validate.notIllegalArgument(fileName != null, new IllegalArgumentException("File name should be not null."));
+		Validate.notIllegalArgument(bufferSize >= 256,
+				new IllegalArgumentException("Buffer size should be greater than or equal to 256."));
+		return new PcapNgFileWriter(fileName, bufferSize);
+	}
+
+	/**
+	 * Write interface description block.
+	 * @param dataLinkType data link type.
+	 * @param snaplen snapshot length.
+	 * @param timestampPrecision precision of packet header timestamps written to this interface.
+	 * @param name interface name, or null.
+	 * @return returns interface id.
+	 * @throws IOException io exception.
+	 */
+	public int addInterface(final DataLinkType dataLinkType, final int snaplen,
+							final PcapTimestampPrecision timestampPrecision, final String name) throws IOException {
+		Validate.notIllegalArgument(dataLinkType != null, new IllegalArgumentException("Data link type should be not null."));
+		Validate.notIllegalArgument(timestampPrecision != null,
+				new IllegalArgumentException("Timestamp precision should be not null."));
+		byte[] nameBytes = name == null ? null : name.getBytes(UTF_8);
+		Validate.notIllegalArgument(nameBytes == null || nameBytes.length <= 0xffff,
+				new IllegalArgumentException("Interface name is too long."));
+		boolean nano = timestampPrecision == PcapTimestampPrecision.NANO;
+		int options = 0;
+		if (nameBytes != null) {
+			options += 4 + pad(nameBytes.length);
+		}
+		if (nano) {
+			options += 8;
+		}
+		if (options > 0) {
+			options += 4; // End of options.
+		}
+		int length = 20 + options;
+		Validate.notIllegalArgument(length <= this.buffer.capacity(),
+				new IllegalArgumentException("Interface name is too long."));
+		reserve(length);
+		this.buffer.putInt(PcapNgFileReader.INTERFACE_DESCRIPTION_BLOCK);
+		this.buffer.putInt(length);
+		this.buffer.putShort(dataLinkType.getValue());
+		this.buffer.putShort((short) 0);
+		this.buffer.putInt(snaplen);
+		if (nameBytes != null) {
+			this.buffer.putShort((short) PcapNgFileReader.OPTION_IF_NAME);
+			this.buffer.putShort((short) nameBytes.length);
+			this.buffer.put(nameBytes);
+			padding(nameBytes.length);
+		}
+		if (nano) {
+			this.buffer.putShort((short) PcapNgFileReader.OPTION_IF_TSRESOL);
+			this.buffer.putShort((short) 1);
+			this.buffer.put(NANO_TIMESTAMP_RESOLUTION);
+			padding(1);
+		}
+		if (options > 0) {
+			this.buffer.putInt(PcapNgFileReader.OPTION_END);
+		}
+		this.buffer.putInt(length);
+		this.interfaces.add(timestampPrecision);
+		return this.interfaces.size() - 1;
+	}
+
+	/**
+	 * Write enhanced packet block, packet data is not consumed.
+	 * @param interfaceId interface id returned by
+	 * {@link PcapNgFileWriter#addInterface(DataLinkType, int, PcapTimestampPrecision, String)}.
+	 * @param h packet header, timestamp fraction is in the precision of the interface.
+	 * @param data packet data, captured length bytes are written starting from its position.
+	 * @throws IOException io exception.
+	 */
+	public void write(final int interfaceId, final PcapPktHdr h, final ByteBuffer data) throws IOException {
+		if (interfaceId < 0 || interfaceId >= this.interfaces.size()) {
+			throw new IllegalArgumentException("Unknown interface id: " + interfaceId);
+		}
+		if (h == null || data == null || data.remaining() < h.getCapLen()) {
+			throw new IllegalArgumentException("Packet data is shorter than captured length.");
+		}
+		int capLen = h.getCapLen();
+		int length = ENHANCED_PACKET_BLOCK_SIZE + pad(capLen);
+		long seconds = h.getTvSec() & 0xffffffffL;
+		long units = this.interfaces.get(interfaceId) == PcapTimestampPrecision.NANO
+				? seconds * 1000000000L + h.getTvUsec() : seconds * 1000000L + h.getTvUsec();
+		ByteBuffer packet = data.duplicate();
+		packet.limit(packet.position() + capLen);
+		reserve(Math.min(length, this.buffer.capacity()));
+		this.buffer.putInt(PcapNgFileReader.ENHANCED_PACKET_BLOCK);
+		this.buffer.putInt(length);
+		this.buffer.putInt(interfaceId);
+		this.buffer.putInt((int) (units >>> 32));
+		this.buffer.putInt((int) units);
+		this.buffer.putInt(capLen);
+		this.buffer.putInt(h.getLen());
+		if (packet.remaining() <= this.buffer.remaining()) {
+			this.buffer.put(packet);
+		} else {
+			flush();
+			while (packet.hasRemaining()) {
+				this.channel.write(packet);
+			}
+		}
+		reserve(8);
+		padding(capLen);
+		this.buffer.putInt(length);
+	}
+
+	/**
+	 * Number of interfaces.
+	 * @return returns number of interfaces.
+	 */
+	public int getInterfaceCount() {
+		return this.interfaces.size();
+	}
+
+	/**
+	 * Write buffered blocks to the file.
+	 * @throws IOException io exception.
+	 */
+	@Override
+	public void flush() throws IOException {
+		this.buffer.flip();
+		while (this.buffer.hasRemaining()) {
+			this.channel.write(this.buffer);
+		}
+		this.buffer.clear();
+	}
+
+	/**
+	 * Check writer.
+	 * @return returns true if closed, false otherwise.
+	 */
+	public boolean isClosed() {
+		return !this.channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			this.out.close();
+		}
+	}
+
+	private void reserve(final int length) throws IOException {
+		if (this.buffer.remaining() < length) {
+			flush();
+		}
+	}
+
+	private void padding(final int length) {
+		for (int i = length; i < pad(length); i++) {
+			this.buffer.put((byte) 0);
+		}
+	}
+
+	private static int pad(final int length) {
+		return (length + 3) & ~3;
+	}
+
+}
@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Immutable;
+import com.ardikars.common.annotation.Incubating;
+
+/**
+ * Interface description block of a pcapng section.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Immutable
+public final class PcapNgInterface {
+
+	/**
+	 * Default timestamp resolution (10^-6 second).
+	 */
+	public static final byte DEFAULT_TIMESTAMP_RESOLUTION = 6;
+
+	private final int id;
+	private final DataLinkType dataLinkType;
+	private final int snaplen;
+	private final String name;
+	private final byte timestampResolution;
+	private final long timestampOffset;
+
+	PcapNgInterface(int id, DataLinkType dataLinkType, int snaplen, String name,
+					byte timestampResolution, long timestampOffset) {
+		this.id = id;
+		this.dataLinkType = dataLinkType;
+		this.snaplen = snaplen;
+		this.name = name;
+		this.timestampResolution = timestampResolution;
+		this.timestampOffset = timestampOffset;
+	}
+
+	/**
+	 * Interface id, index of the interface inside its section.
+	 * @return returns interface id.
+	 */
+	public int getId() {
+		return this.id;
+	}
+
+	public DataLinkType getDataLinkType() {
+		return this.dataLinkType;
+	}
+
+	public int getSnaplen() {
+		return this.snaplen;
+	}
+
+	/**
+	 * Interface name (if_name option).
+	 * @return returns interface name, or null.
+	 */
+	public String getName() {
+		return this.name;
+	}
+
+	/**
+	 * Raw if_tsresol option, the most significant bit selects base 2 instead of base 10,
+	 * the remaining bits are the negative exponent.
+	 * @return returns timestamp resolution.
+	 */
+	public byte getTimestampResolution() {
+		return this.timestampResolution;
+	}
+
+	/**
+	 * Check whether timestamp resolution is a negative power of 2.
+	 * @return returns true if base 2, false if base 10.
+	 */
+	public boolean isBinaryTimestampResolution() {
+		return (this.timestampResolution & 0x80) != 0;
+	}
+
+	/**
+	 * Negative exponent of timestamp resolution.
+	 * @return returns exponent.
+	 */
+	public int getTimestampExponent() {
+		return this.timestampResolution & 0x7f;
+	}
+
+	/**
+	 * Offset in seconds added to every timestamp (if_tsoffset option).
+	 * @return returns timestamp offset.
+	 */
+	public long getTimestampOffset() {
+		return this.timestampOffset;
+	}
+
+	/**
+	 * Closest precision supported by {@link PcapPktHdr}.
+	 * @return returns NANO if resolution is finer than microsecond, MICRO otherwise.
+	 */
+	public PcapTimestampPrecision getTimestampPrecision() {
+		if (isBinaryTimestampResolution()) {
+			return getTimestampExponent() > 19 ? PcapTimestampPrecision.NANO : PcapTimestampPrecision.MICRO;
+		}
+		return getTimestampExponent() > 6 ? PcapTimestampPrecision.NANO : PcapTimestampPrecision.MICRO;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PcapNgInterface{")
+				.append("id=").append(this.id)
+				.append(", dataLinkType=").append(this.dataLinkType)
+				.append(", snaplen=").append(this.snaplen)
+				.append(", name='").append(this.name).append('\'')
+				.append(", timestampResolution=").append(this.timestampResolution)
+				.append(", timestampOffset=").append(this.timestampOffset)
+				.append('}')
+				.toString();
+	}
+
+}
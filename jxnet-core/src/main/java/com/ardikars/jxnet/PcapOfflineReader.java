@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Pure Java offline reader, doesn't need native library.
+ * Methods mirror their {@link Jxnet} counterparts on an offline {@link Pcap} handle.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public interface PcapOfflineReader extends Closeable {
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, see {@link Jxnet#PcapLoop(Pcap, int, PcapHandler, Object)}.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted or there is no more packets, -1 on error,
+	 * -2 if the loop terminated by {@link PcapOfflineReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 */
+	<T> int loop(int cnt, PcapHandler<T> callback, T user) throws IOException;
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, see {@link Jxnet#PcapDispatch(Pcap, int, PcapHandler, Object)}.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns number of packets read, -1 on error, -2 if the loop terminated by {@link PcapOfflineReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 */
+	<T> int dispatch(int cnt, PcapHandler<T> callback, T user) throws IOException;
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, see {@link Jxnet#PcapLoop0(Pcap, int, RawPcapHandler, Object)}.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted or there is no more packets, -1 on error,
+	 * -2 if the loop terminated by {@link PcapOfflineReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException memory address is not accessible on this platform.
+	 */
+	<T> int loop(int cnt, RawPcapHandler<T> callback, T user) throws IOException, UnsupportedOperationException;
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, see {@link Jxnet#PcapDispatch0(Pcap, int, RawPcapHandler, Object)}.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns number of packets read, -1 on error, -2 if the loop terminated by {@link PcapOfflineReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException memory address is not accessible on this platform.
+	 */
+	<T> int dispatch(int cnt, RawPcapHandler<T> callback, T user) throws IOException, UnsupportedOperationException;
+
+	/**
+	 * Read next packet, see {@link Jxnet#PcapNext(Pcap, PcapPktHdr)}.
+	 * @param pktHdr packet header.
+	 * @return returns packet buffer, or null if there is no more packets or on error.
+	 * @throws IOException io exception.
+	 */
+	ByteBuffer next(PcapPktHdr pktHdr) throws IOException;
+
+	/**
+	 * Read next packet and copy it into given buffer, see {@link Jxnet#PcapNextEx(Pcap, PcapPktHdr, ByteBuffer)}.
+	 * @param pktHdr packet header.
+	 * @param pktData packet buffer.
+	 * @return returns 1 on success, -1 on error, -2 if there is no more packets.
+	 * @throws IOException io exception.
+	 */
+	int nextEx(PcapPktHdr pktHdr, ByteBuffer pktData) throws IOException;
+
+	/**
+	 * Read next packet without copying it, see {@link Jxnet#PcapNextEx0(Pcap, PcapPktHdr, long[])}.
+	 * @param pktHdr packet header.
+	 * @param pktData pktData[0] is packet memory address, pktData[1] is captured length.
+	 * @return returns 1 on success, -1 on error, -2 if there is no more packets.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException memory address is not accessible on this platform.
+	 */
+	int nextEx0(PcapPktHdr pktHdr, long[] pktData) throws IOException, UnsupportedOperationException;
+
+	/**
+	 * Terminate running loop, can be called from another thread.
+	 */
+	void breakLoop();
+
+	DataLinkType getDataLinkType();
+
+	int getSnaplen();
+
+	int getMajorVersion();
+
+	int getMinorVersion();
+
+	/**
+	 * Check whether the file byte order is different from the host byte order.
+	 * @return returns true if swapped, false otherwise.
+	 */
+	boolean isSwapped();
+
+	/**
+	 * Timestamp precision given to the callbacks.
+	 * @return returns timestamp precision.
+	 */
+	PcapTimestampPrecision getTimestampPrecision();
+
+	/**
+	 * Last error message.
+	 * @return returns error message.
+	 */
+	String getErr();
+
+	/**
+	 * Check reader.
+	 * @return returns true if closed, false otherwise.
+	 */
+	boolean isClosed();
+
+}
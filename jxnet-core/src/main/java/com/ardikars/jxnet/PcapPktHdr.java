@@ -68,6 +68,21 @@ public final class PcapPktHdr implements Cloneable {
 		return new PcapPktHdr(caplen, len, tvSec, tvUsec);
 	}
 
+	/**
+	 * Replace all header values, used for recycling pooled header and by offline readers.
+	 * @param caplen capture length.
+	 * @param len length.
+	 * @param tvSec tv_sec.
+	 * @param tvUsec tv_usec.
+	 * @since 1.5.4
+	 */
+	public void set(final int caplen, final int len, final int tvSec, final long tvUsec) {
+		this.caplen = caplen;
+		this.len = len;
+		this.tv_sec = tvSec;
+		this.tv_usec = tvUsec;
+	}
+
 	/**
 	 * Getting capture length.
 	 * @return returns capture length.
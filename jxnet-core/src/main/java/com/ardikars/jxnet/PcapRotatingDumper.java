@@ -0,0 +1,651 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.exception.NativeException;
+import com.ardikars.jxnet.exception.PcapCloseException;
+import com.ardikars.jxnet.exception.PcapDumperCloseException;
+import com.ardikars.jxnet.exception.PlatformNotSupportedException;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rotating savefile writer, rolls to a new file by size and/or by packet timestamp and keeps
+ * at most {@link Builder#maxFiles(int)} files or {@link Builder#maxTotalSize(long)} bytes (oldest files are deleted).
+ * A background thread opens (and optionally preallocates) the next file ahead of time and closes retired files,
+ * so a rotation only swaps two references between packets. If the next file is not ready yet the packet
+ * is written to the current file and the rotation is retried on the next packet, no packet is lost.
+ * Files are named by inserting a sequence number before the extension, capture.pcap becomes capture-000001.pcap.
+ * Only one thread may call {@link PcapRotatingDumper#dump(PcapPktHdr, ByteBuffer)},
+ * wrap it in a {@link PcapAsyncDumper} to keep disk writes out of the capture callback.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable(volatiles = { "rotations", "lateRotations", "deletedFiles", "currentFileName", "error" })
+public final class PcapRotatingDumper implements PcapAsyncDumper.Sink {
+
+	/**
+	 * Size of a pcap savefile header.
+	 */
+	public static final int FILE_HEADER_SIZE = 24;
+
+	/**
+	 * Size of a pcap record header.
+	 */
+	public static final int RECORD_HEADER_SIZE = 16;
+
+	private final OutputFactory factory;
+	private final String prefix;
+	private final String suffix;
+	private final long maxFileSize;
+	private final long maxDuration;
+	private final int maxFiles;
+	private final long maxTotalSize;
+	private final long preallocate;
+	private final ExecutorService rotator;
+	private final LinkedList<RetainedFile> retained = new LinkedList<RetainedFile>();
+
+	private int sequence;
+	private Output current;
+	private String currentName;
+	private long currentSize;
+	private long currentStart;
+	private Future<Output> next;
+	private String nextName;
+	private boolean closed;
+
+	private long retainedSize;
+
+	private volatile long rotations;
+	private volatile long lateRotations;
+	private volatile long deletedFiles;
+	private volatile String currentFileName;
+	private volatile IOException error;
+
+	private PcapRotatingDumper(final Builder builder) {
+		this.factory = builder.factory;
+		int dot = builder.fileName.lastIndexOf('.');
+		if (dot > builder.fileName.lastIndexOf(File.separatorChar)) {
+			this.prefix = builder.fileName.substring(0, dot);
+			this.suffix = builder.fileName.substring(dot);
+		} else {
+			this.prefix = builder.fileName;
+			this.suffix = "";
+		}
+		this.maxFileSize = builder.maxFileSize;
+		this.maxDuration = builder.maxDuration;
+		this.maxFiles = builder.maxFiles;
+		this.maxTotalSize = builder.maxTotalSize;
+		this.preallocate = builder.preallocate;
+		this.rotator = Executors.newSingleThreadExecutor(new RotatorThreadFactory());
+		openNext();
+	}
+
+	/**
+	 * Write a packet to the current file, switching to the next file first if the current one is full.
+	 * @param h packet header.
+	 * @param sp packet buffer.
+	 * @throws IOException unable to open the first file, or the current file failed.
+	 */
+	@Override
+	public void dump(final PcapPktHdr h, final ByteBuffer sp) throws IOException {
+		if (this.closed) {
+			throw new IOException("Rotating dumper already closed.");
+		}
+		long recordSize = RECORD_HEADER_SIZE + h.getCapLen();
+		long timestamp = h.getTvSec() & 0xFFFFFFFFL;
+		if (this.current == null) {
+			// First packet, the only time the writer waits for an open.
+			this.current = await(this.next);
+			switchTo(timestamp);
+		} else if (this.currentSize > FILE_HEADER_SIZE && isFull(recordSize, timestamp)) {
+			rotate(timestamp);
+		}
+		this.current.dump(h, sp);
+		this.currentSize += recordSize;
+	}
+
+	@Override
+	public void flush() throws IOException {
+		if (this.current != null) {
+			this.current.flush();
+		}
+	}
+
+	private boolean isFull(final long recordSize, final long timestamp) {
+		return (this.maxFileSize > 0 && this.currentSize + recordSize > this.maxFileSize)
+				|| (this.maxDuration > 0 && timestamp - this.currentStart >= this.maxDuration);
+	}
+
+	private void rotate(final long timestamp) {
+		if (!this.next.isDone()) {
+			this.lateRotations++;
+			return;
+		}
+		Output output;
+		try {
+			output = this.next.get();
+		} catch (ExecutionException e) {
+			this.error = asIOException(e.getCause());
+			this.lateRotations++;
+			openNext();
+			return;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			this.lateRotations++;
+			return;
+		}
+		final Output retired = this.current;
+		final String retiredName = this.currentName;
+		final long retiredSize = this.currentSize;
+		this.current = output;
+		this.rotator.execute(new Runnable() {
+			@Override
+			public void run() {
+				retire(retired, retiredName, retiredSize);
+			}
+		});
+		switchTo(timestamp);
+		this.rotations++;
+	}
+
+	private void switchTo(final long timestamp) {
+		this.currentName = this.nextName;
+		this.currentFileName = this.nextName;
+		this.currentSize = FILE_HEADER_SIZE;
+		this.currentStart = timestamp;
+		openNext();
+	}
+
+	private void openNext() {
+		final String fileName = this.prefix + '-' + String.format("%06d", ++this.sequence) + this.suffix;
+		this.nextName = fileName;
+		this.next = this.rotator.submit(new Callable<Output>() {
+			@Override
+			public Output call() throws Exception {
+				return factory.open(fileName, preallocate);
+			}
+		});
+	}
+
+	/**
+	 * Close a file and delete the oldest files that exceed the retention limits, runs on the rotator thread
+	 * (or on the closing thread once the rotator is stopped).
+	 */
+	private void retire(final Output output, final String fileName, final long size) {
+		try {
+			output.close();
+		} catch (IOException e) {
+			this.error = e;
+		}
+		synchronized (this.retained) {
+			this.retained.addLast(new RetainedFile(fileName, size));
+			this.retainedSize += size;
+			while (this.retained.size() > 1
+					&& ((this.maxFiles > 0 && this.retained.size() > this.maxFiles)
+					|| (this.maxTotalSize > 0 && this.retainedSize > this.maxTotalSize))) {
+				RetainedFile oldest = this.retained.removeFirst();
+				this.retainedSize -= oldest.size;
+				if (new File(oldest.fileName).delete()) {
+					this.deletedFiles++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Close the current file, discard the preopened file and apply the retention limits.
+	 * @throws IOException unable to close a file.
+	 */
+	public void close() throws IOException {
+		if (this.closed) {
+			return;
+		}
+		this.closed = true;
+		this.rotator.shutdown();
+		boolean interrupted = false;
+		while (true) {
+			try {
+				if (this.rotator.awaitTermination(1, TimeUnit.SECONDS)) {
+					break;
+				}
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		try {
+			Output unused = this.next.get();
+			unused.close();
+			new File(this.nextName).delete();
+		} catch (ExecutionException e) {
+			// Nothing to discard.
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		if (this.current != null) {
+			retire(this.current, this.currentName, this.currentSize);
+			this.current = null;
+		}
+		this.factory.close();
+		if (this.error != null) {
+			throw this.error;
+		}
+	}
+
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	/**
+	 * Name of the file being written.
+	 * @return returns file name, or null if no packet has been written.
+	 */
+	public String getCurrentFileName() {
+		return this.currentFileName;
+	}
+
+	/**
+	 * Names of the closed files still on disk, oldest first.
+	 * @return returns file names.
+	 */
+	public List<String> getFileNames() {
+		synchronized (this.retained) {
+			List<String> fileNames = new ArrayList<String>(this.retained.size());
+			for (RetainedFile file : this.retained) {
+				fileNames.add(file.fileName);
+			}
+			return fileNames;
+		}
+	}
+
+	public long getRotations() {
+		return this.rotations;
+	}
+
+	/**
+	 * Number of times a rotation was postponed because the next file was not open yet.
+	 * @return returns late rotations.
+	 */
+	public long getLateRotations() {
+		return this.lateRotations;
+	}
+
+	/**
+	 * Number of files deleted by the retention limits.
+	 * @return returns deleted files.
+	 */
+	public long getDeletedFiles() {
+		return this.deletedFiles;
+	}
+
+	/**
+	 * Last error from opening or closing a file in the background, writing continues on the current file.
+	 * @return returns error, or null.
+	 */
+	public IOException getError() {
+		return this.error;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PcapRotatingDumper{")
+				.append("currentFileName='").append(this.currentFileName).append('\'')
+				.append(", rotations=").append(this.rotations)
+				.append(", lateRotations=").append(this.lateRotations)
+				.append(", deletedFiles=").append(this.deletedFiles)
+				.append('}')
+				.toString();
+	}
+
+	private static Output await(final Future<Output> future) throws IOException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			throw asIOException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while opening savefile.");
+		}
+	}
+
+	private static IOException asIOException(final Throwable cause) {
+		if (cause instanceof IOException) {
+			return (IOException) cause;
+		}
+		return new IOException(String.valueOf(cause));
+	}
+
+	/**
+	 * Savefile opened by an {@link OutputFactory}.
+	 */
+	public interface Output extends PcapAsyncDumper.Sink {
+
+		/**
+		 * Close the savefile.
+		 * @throws IOException io exception.
+		 */
+		void close() throws IOException;
+
+	}
+
+	/**
+	 * Opens savefiles, called from the rotator thread.
+	 */
+	public interface OutputFactory {
+
+		/**
+		 * Create a savefile and write its file header.
+		 * @param fileName file name.
+		 * @param preallocate number of bytes to reserve on disk, or 0.
+		 * @return returns opened savefile.
+		 * @throws IOException io exception.
+		 */
+		Output open(String fileName, long preallocate) throws IOException;
+
+		/**
+		 * Release resources after the last file is closed.
+		 */
+		void close();
+
+	}
+
+	private static final class RetainedFile {
+
+		private final String fileName;
+		private final long size;
+
+		private RetainedFile(final String fileName, final long size) {
+			this.fileName = fileName;
+			this.size = size;
+		}
+
+	}
+
+	/**
+	 * Write savefiles with libpcap on a dead handle, preallocated with {@link Jxnet#PcapDumpPreallocate(PcapDumper, long)}.
+	 */
+	private static final class PcapDumperFactory implements OutputFactory {
+
+		private final int linkType;
+		private final int snaplen;
+		private final PcapTimestampPrecision precision;
+
+		private Pcap pcap;
+
+		private PcapDumperFactory(final int linkType, final int snaplen, final PcapTimestampPrecision precision) {
+			this.linkType = linkType;
+			this.snaplen = snaplen;
+			this.precision = precision;
+		}
+
+		private Pcap openDead() {
+			if (this.precision == PcapTimestampPrecision.NANO) {
+				try {
+					return Jxnet.PcapOpenDeadWithTStampPrecision(this.linkType, this.snaplen, this.precision.getValue());
+				} catch (PlatformNotSupportedException e) {
+					// Fall back to microsecond savefiles.
+				}
+			}
+			return Jxnet.PcapOpenDead(this.linkType, this.snaplen);
+		}
+
+		@Override
+		public Output open(final String fileName, final long preallocate) throws IOException {
+			if (this.pcap == null) {
+				this.pcap = openDead();
+			}
+			final PcapDumper pcapDumper;
+			try {
+				pcapDumper = Jxnet.PcapDumpOpen(this.pcap, fileName);
+			} catch (PcapCloseException e) {
+				throw new IOException("Pcap handle already closed.");
+			} catch (PcapDumperCloseException e) {
+				throw new IOException(e.getMessage());
+			}
+			boolean preallocated = false;
+			if (preallocate > 0) {
+				try {
+					preallocated = Jxnet.PcapDumpPreallocate(pcapDumper, preallocate) == 0;
+				} catch (PlatformNotSupportedException e) {
+					// Preallocation is only a hint.
+				} catch (NativeException e) {
+					// File system doesn't support fallocate().
+				}
+			}
+			final boolean reserved = preallocated;
+			return new Output() {
+				@Override
+				public void dump(final PcapPktHdr h, final ByteBuffer sp) throws IOException {
+					try {
+						Jxnet.PcapDump(pcapDumper, h, sp);
+					} catch (PcapDumperCloseException e) {
+						throw new IOException("Pcap dumper already closed.");
+					}
+				}
+
+				@Override
+				public void flush() throws IOException {
+					try {
+						if (Jxnet.PcapDumpFlush(pcapDumper) != 0) {
+							throw new IOException("Failed to flush pcap dumper.");
+						}
+					} catch (PcapDumperCloseException e) {
+						throw new IOException("Pcap dumper already closed.");
+					}
+				}
+
+				@Override
+				public void close() throws IOException {
+					try {
+						Jxnet.PcapDumpClose(pcapDumper);
+					} catch (PcapDumperCloseException e) {
+						throw new IOException("Pcap dumper already closed.");
+					}
+					if (reserved) {
+						trim(fileName);
+					}
+				}
+			};
+		}
+
+		/**
+		 * Give back the blocks reserved beyond the end of a preallocated file, fallocate() keeps them after close.
+		 */
+		private static void trim(final String fileName) throws IOException {
+			final RandomAccessFile file = new RandomAccessFile(fileName, "rw");
+			try {
+				file.setLength(file.length());
+			} finally {
+				file.close();
+			}
+		}
+
+		@Override
+		public void close() {
+			if (this.pcap != null && !this.pcap.isClosed()) {
+				Jxnet.PcapClose(this.pcap);
+			}
+		}
+
+	}
+
+	private static final class RotatorThreadFactory implements ThreadFactory {
+
+		private static final AtomicInteger COUNT = new AtomicInteger();
+
+		@Override
+		public Thread newThread(final Runnable runnable) {
+			Thread thread = new Thread(runnable, "jxnet-rotator-" + COUNT.getAndIncrement());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+	public static final class Builder implements com.ardikars.common.util.Builder<PcapRotatingDumper, Void> {
+
+		private OutputFactory factory;
+		private String fileName;
+		private long maxFileSize;
+		private long maxDuration;
+		private int maxFiles;
+		private long maxTotalSize;
+		private long preallocate;
+
+		/**
+		 * Write savefiles with libpcap, using the link type, snapshot length and timestamp precision of a handle.
+		 * @param pcap pcap handle.
+		 * @return returns Builder.
+		 */
+		public Builder pcap(final Pcap pcap) {
+			Validate.notIllegalArgument(pcap != null && !pcap.isClosed(),
+					new IllegalArgumentException("Pcap should be not null."));
+			PcapTimestampPrecision precision = PcapTimestampPrecision.MICRO;
+			try {
+				if (Jxnet.PcapGetTStampPrecision(pcap) == PcapTimestampPrecision.NANO.getValue()) {
+					precision = PcapTimestampPrecision.NANO;
+				}
+			} catch (PlatformNotSupportedException e) {
+				precision = PcapTimestampPrecision.MICRO;
+			}
+			return pcap(Jxnet.PcapDataLink(pcap), Jxnet.PcapSnapshot(pcap), precision);
+		}
+
+		/**
+		 * Write savefiles with libpcap.
+		 * @param linkType datalink type.
+		 * @param snaplen snapshot length.
+		 * @param precision timestamp precision.
+		 * @return returns Builder.
+		 */
+		public Builder pcap(final int linkType, final int snaplen, final PcapTimestampPrecision precision) {
+			this.factory = new PcapDumperFactory(linkType, snaplen, precision);
+			return this;
+		}
+
+		public Builder outputFactory(final OutputFactory factory) {
+			this.factory = factory;
+			return this;
+		}
+
+		/**
+		 * Base file name, a sequence number is inserted before the extension.
+		 * @param fileName file name.
+		 * @return returns Builder.
+		 */
+		public Builder fileName(final String fileName) {
+			this.fileName = fileName;
+			return this;
+		}
+
+		/**
+		 * Roll to a new file before a packet would make the file larger than maxFileSize.
+		 * @param maxFileSize file size in bytes (0 for no limit).
+		 * @return returns Builder.
+		 */
+		public Builder maxFileSize(final long maxFileSize) {
+			this.maxFileSize = maxFileSize;
+			return this;
+		}
+
+		/**
+		 * Roll to a new file when a packet timestamp is maxDuration seconds after the first packet of the file.
+		 * @param maxDuration duration in seconds (0 for no limit).
+		 * @return returns Builder.
+		 */
+		public Builder maxDuration(final long maxDuration) {
+			this.maxDuration = maxDuration;
+			return this;
+		}
+
+		/**
+		 * Number of closed files to keep, older files are deleted (ring of files).
+		 * @param maxFiles number of files (0 for no limit).
+		 * @return returns Builder.
+		 */
+		public Builder maxFiles(final int maxFiles) {
+			this.maxFiles = maxFiles;
+			return this;
+		}
+
+		/**
+		 * Total size of closed files to keep, older files are deleted. The newest file is always kept.
+		 * @param maxTotalSize size in bytes (0 for no limit).
+		 * @return returns Builder.
+		 */
+		public Builder maxTotalSize(final long maxTotalSize) {
+			this.maxTotalSize = maxTotalSize;
+			return this;
+		}
+
+		/**
+		 * Reserve disk space for each new file when it is opened ahead (Linux only, ignored elsewhere).
+		 * @param preallocate size in bytes (0 to disable).
+		 * @return returns Builder.
+		 */
+		public Builder preallocate(final long preallocate) {
+			this.preallocate = preallocate;
+			return this;
+		}
+
+		@Override
+		public PcapRotatingDumper build() {
+			Validate.notIllegalArgument(this.factory != null,
+					new IllegalArgumentException("Output factory should be not null."));
+			Validate.notIllegalArgument(this.fileName != null && !this.fileName.isEmpty(),
+					new IllegalArgumentException("File name should be not null."));
+			Validate.notIllegalArgument(this.maxFileSize >= 0 && this.maxDuration >= 0 && this.maxFiles >= 0
+					&& this.maxTotalSize >= 0 && this.preallocate >= 0,
+					new IllegalArgumentException("Limits should be not negative."));
+			return new PcapRotatingDumper(this);
+		}
+
+		@Override
+		public PcapRotatingDumper build(Void value) {
+			throw new UnsupportedOperationException();
+		}
+
+	}
+
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.util.Validate;
+import com.ardikars.jxnet.exception.PcapCloseException;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Direct buffer of length prefixed frames for {@link Jxnet#PcapSendBatch(Pcap, ByteBuffer, int)}.
+ * Frames that were not sent stay in the buffer, so they can be sent again or discarded.
+ * Not thread safe.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public final class PcapSendBuffer {
+
+	public static final int DEFAULT_CAPACITY = 1 << 20;
+
+	/**
+	 * Size of the frame length prefix.
+	 */
+	public static final int LENGTH_SIZE = 4;
+
+	private final ByteBuffer buffer;
+
+	private int count;
+
+	private PcapSendBuffer(final int capacity) {
+		this.buffer = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+	}
+
+	/**
+	 * Create send buffer.
+	 * @param capacity capacity in bytes, including length prefixes.
+	 * @return returns PcapSendBuffer.
+	 */
+	public static PcapSendBuffer allocate(final int capacity) {
+		Validate.notIllegalArgument(capacity > LENGTH_SIZE,
+				new IllegalArgumentException("Capacity should be greater than " + LENGTH_SIZE + "."));
+		return new PcapSendBuffer(capacity);
+	}
+
+	/**
+	 * Append a frame, the frame buffer is not consumed.
+	 * @param frame frame, remaining bytes are copied.
+	 * @return returns true if appended, false if the buffer is full.
+	 */
+	public boolean add(final ByteBuffer frame) {
+		if (frame == null || !frame.hasRemaining()) {
+			throw new IllegalArgumentException("Frame should be not empty.");
+		}
+		int length = frame.remaining();
+		if (this.buffer.remaining() < LENGTH_SIZE + length) {
+			return false;
+		}
+		this.buffer.putInt(length);
+		this.buffer.put(frame.duplicate());
+		this.count++;
+		return true;
+	}
+
+	/**
+	 * Send all frames with a single native call, sent frames are removed from the buffer.
+	 * @param pcap pcap instance.
+	 * @return returns number of frames sent, or -1 if no frame was sent.
+	 * @throws PcapCloseException pcap close exception.
+	 */
+	public int send(final Pcap pcap) throws PcapCloseException {
+		if (this.count == 0) {
+			return 0;
+		}
+		int sent = Jxnet.PcapSendBatch(pcap, this.buffer, this.buffer.position());
+		if (sent > 0) {
+			discard(sent);
+		}
+		return sent;
+	}
+
+	/**
+	 * Remove the first frames, the remaining frames are moved to the front of the buffer.
+	 * @param frames number of frames to remove.
+	 */
+	public void discard(final int frames) {
+		Validate.notIllegalArgument(frames >= 0 && frames <= this.count,
+				new IllegalArgumentException("Frames should be between 0 and " + this.count + "."));
+		if (frames == this.count) {
+			clear();
+			return;
+		}
+		int offset = 0;
+		for (int i = 0; i < frames; i++) {
+			offset += LENGTH_SIZE + this.buffer.getInt(offset);
+		}
+		this.buffer.flip();
+		this.buffer.position(offset);
+		this.buffer.compact();
+		this.count -= frames;
+	}
+
+	public void clear() {
+		this.buffer.clear();
+		this.count = 0;
+	}
+
+	/**
+	 * Number of frames in the buffer.
+	 * @return returns number of frames.
+	 */
+	public int count() {
+		return this.count;
+	}
+
+	/**
+	 * Number of bytes used, including length prefixes.
+	 * @return returns used bytes.
+	 */
+	public int size() {
+		return this.buffer.position();
+	}
+
+	public int capacity() {
+		return this.buffer.capacity();
+	}
+
+	/**
+	 * Underlying direct buffer, frames are stored from index 0 to {@link PcapSendBuffer#size()}.
+	 * @return returns buffer.
+	 */
+	public ByteBuffer buffer() {
+		return this.buffer;
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PcapSendBuffer{")
+				.append("count=").append(this.count)
+				.append(", size=").append(size())
+				.append(", capacity=").append(capacity())
+				.append('}')
+				.toString();
+	}
+
+}
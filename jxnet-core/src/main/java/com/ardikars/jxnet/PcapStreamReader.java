@@ -0,0 +1,561 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet;
+
+import com.ardikars.common.annotation.Incubating;
+import com.ardikars.common.annotation.Mutable;
+import com.ardikars.common.util.Validate;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Pure Java savefile (pcap) reader over a stream, doesn't need native library and doesn't need a seekable file,
+ * so compressed savefile can be read without decompressing it to a temporary file.
+ * {@link PcapStreamReader#open(String)} detects plain, gzip and block compressed gzip ({@link BgzfInputStream}) files,
+ * block compressed file is inflated in parallel.
+ * Packets given to {@link PcapHandler} are read only slices of an internal buffer,
+ * packets given to {@link RawPcapHandler} are copied to a direct buffer,
+ * both are valid until the next packet is read.
+ * Reader is not thread safe, except {@link PcapStreamReader#breakLoop()}.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+@Mutable(volatiles = { "breakLoop" })
+public final class PcapStreamReader implements PcapOfflineReader {
+
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+	private static final int MAX_SNAPLEN = 262144;
+
+	private static final int GZIP_BUFFER_SIZE = 1 << 16;
+
+	private final InputStream in;
+	private final PcapTimestampPrecision timestampPrecision;
+	private final ByteOrder byteOrder;
+	private final boolean nano;
+	private final int majorVersion;
+	private final int minorVersion;
+	private final int snaplen;
+	private final DataLinkType dataLinkType;
+
+	private byte[] buffer;
+	private ByteBuffer view;
+	private int start;
+	private int end;
+	private long position;
+	private ByteBuffer direct;
+	private long directAddress;
+	private volatile boolean breakLoop;
+	private boolean closed;
+	private String err = "";
+
+	// Current record
+	private int capLen;
+	private int len;
+	private int tvSec;
+	private long tvUsec;
+	private int offset;
+
+	private PcapStreamReader(final InputStream in, final int bufferSize, final PcapTimestampPrecision timestampPrecision)
+			throws IOException {
+		this.in = in;
+		this.timestampPrecision = timestampPrecision;
+		this.buffer = new byte[Math.max(bufferSize, PcapFileReader.GLOBAL_HEADER_SIZE)];
+		this.view = ByteBuffer.wrap(this.buffer);
+		if (!ensure(PcapFileReader.GLOBAL_HEADER_SIZE)) {
+			throw new IOException("Truncated global header.");
+		}
+		int magic = this.view.getInt(0);
+		if (magic == PcapFileReader.MAGIC_MICRO || magic == PcapFileReader.MAGIC_NANO) {
+			this.byteOrder = ByteOrder.BIG_ENDIAN;
+		} else if (Integer.reverseBytes(magic) == PcapFileReader.MAGIC_MICRO
+				|| Integer.reverseBytes(magic) == PcapFileReader.MAGIC_NANO) {
+			this.byteOrder = ByteOrder.LITTLE_ENDIAN;
+			magic = Integer.reverseBytes(magic);
+		} else {
+			throw new IOException("Unknown file format.");
+		}
+		this.view.order(this.byteOrder);
+		this.nano = magic == PcapFileReader.MAGIC_NANO;
+		this.majorVersion = this.view.getShort(4) & 0xffff;
+		this.minorVersion = this.view.getShort(6) & 0xffff;
+		this.snaplen = this.view.getInt(16);
+		this.dataLinkType = DataLinkType.valueOf((short) (this.view.getInt(20) & 0xffff));
+		this.start = PcapFileReader.GLOBAL_HEADER_SIZE;
+		this.position = PcapFileReader.GLOBAL_HEADER_SIZE;
+	}
+
+	/**
+	 * Open plain, gzip or block compressed gzip savefile with microsecond timestamp,
+	 * block compressed file is inflated by one thread per available processor.
+	 * @param fileName file name.
+	 * @return returns PcapStreamReader.
+	 * @throws IOException file can't be read or is not a savefile.
+	 */
+	public static PcapStreamReader open(final String fileName) throws IOException {
+		return open(fileName, Runtime.getRuntime().availableProcessors(), PcapTimestampPrecision.MICRO);
+	}
+
+	/**
+	 * Open plain, gzip or block compressed gzip savefile.
+	 * @param fileName file name.
+	 * @param parallelism number of inflater threads for block compressed file.
+	 * @param timestampPrecision precision of timestamp given to the callbacks, converted from the file precision.
+	 * @return returns PcapStreamReader.
+	 * @throws IOException file can't be read or is not a savefile.
+	 */
+	public static PcapStreamReader open(final String fileName, final int parallelism,
+										final PcapTimestampPrecision timestampPrecision) throws IOException {
+		return open(fileName, parallelism, DEFAULT_BUFFER_SIZE, timestampPrecision);
+	}
+
+	/**
+	 * Open plain, gzip or block compressed gzip savefile.
+	 * @param fileName file name.
+	 * @param parallelism number of inflater threads for block compressed file.
+	 * @param bufferSize initial size of uncompressed read ahead buffer, grown to fit the biggest record.
+	 * @param timestampPrecision precision of timestamp given to the callbacks, converted from the file precision.
+	 * @return returns PcapStreamReader.
+	 * @throws IOException file can't be read or is not a savefile.
+	 */
+	public static PcapStreamReader open(final String fileName, final int parallelism, final int bufferSize,
+										final PcapTimestampPrecision timestampPrecision) throws IOException {
+		Validate.notIllegalArgument(parallelism > 0,
+				new IllegalArgumentException("Parallelism should be greater than 0."));
+		return open(fileName, parallelism, bufferSize, timestampPrecision, null);
+	}
+
+	/**
+	 * Open plain, gzip or block compressed gzip savefile, block compressed file is inflated on given executor,
+	 * so many readers can share the same inflater threads (see {@link BgzfInputStream#newInflaterPool(int)}).
+	 * @param fileName file name.
+	 * @param readAhead maximum number of block compressed members being inflated ahead of the reader.
+	 * @param bufferSize initial size of uncompressed read ahead buffer, grown to fit the biggest record.
+	 * @param timestampPrecision precision of timestamp given to the callbacks, converted from the file precision.
+	 * @param executorService inflater executor, not shut down by {@link PcapStreamReader#close()}.
+	 * @return returns PcapStreamReader.
+	 * @throws IOException file can't be read or is not a savefile.
+	 */
+	public static PcapStreamReader open(final String fileName, final int readAhead, final int bufferSize,
+										final PcapTimestampPrecision timestampPrecision,
+										final ExecutorService executorService) throws IOException {
+		Validate.notIllegalArgument(fileName != null, new IllegalArgumentException("File name should be not null."));
+		Validate.notIllegalArgument(readAhead > 0,
+				new IllegalArgumentException("Read ahead should be greater than 0."));
+		Validate.notIllegalArgument(bufferSize > 0,
+				new IllegalArgumentException("Buffer size should be greater than 0."));
+		InputStream file = new BufferedInputStream(new FileInputStream(fileName), GZIP_BUFFER_SIZE);
+		InputStream in = file;
+		try {
+			byte[] head = new byte[BgzfInputStream.HEADER_SIZE + 6];
+			file.mark(head.length);
+			int n = 0;
+			while (n < head.length) {
+				int r = file.read(head, n, head.length - n);
+				if (r < 0) {
+					break;
+				}
+				n += r;
+			}
+			file.reset();
+			if (BgzfInputStream.isBgzf(head, n)) {
+				in = executorService == null ? new BgzfInputStream(file, readAhead)
+						: new BgzfInputStream(file, readAhead, executorService);
+			} else if (n >= 2 && (head[0] & 0xff) == 31 && (head[1] & 0xff) == 139) {
+				in = new GZIPInputStream(file, GZIP_BUFFER_SIZE);
+			}
+			return new PcapStreamReader(in, bufferSize, timestampPrecision);
+		} catch (IOException e) {
+			in.close();
+			throw new IOException(e.getMessage() + ": " + fileName);
+		}
+	}
+
+	/**
+	 * Read savefile from given stream, the stream is closed by {@link PcapStreamReader#close()}.
+	 * @param in uncompressed savefile stream.
+	 * @param timestampPrecision precision of timestamp given to the callbacks, converted from the file precision.
+	 * @return returns PcapStreamReader.
+	 * @throws IOException stream can't be read or is not a savefile.
+	 */
+	public static PcapStreamReader open(final InputStream in, final PcapTimestampPrecision timestampPrecision)
+			throws IOException {
+		Validate.notIllegalArgument(in != null, new IllegalArgumentException("Input stream should be not null."));
+		return new PcapStreamReader(in, DEFAULT_BUFFER_SIZE, timestampPrecision);
+	}
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, see {@link Jxnet#PcapLoop(Pcap, int, PcapHandler, Object)}.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted or there is no more packets, -1 on error,
+	 * -2 if the loop terminated by {@link PcapStreamReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 */
+	public <T> int loop(final int cnt, final PcapHandler<T> callback, final T user) throws IOException {
+		int result = dispatch(cnt, callback, user);
+		return result < 0 ? result : 0;
+	}
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, see {@link Jxnet#PcapDispatch(Pcap, int, PcapHandler, Object)}.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns number of packets read, -1 on error, -2 if the loop terminated by {@link PcapStreamReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 */
+	public <T> int dispatch(final int cnt, final PcapHandler<T> callback, final T user) throws IOException {
+		Validate.notIllegalArgument(callback != null, new IllegalArgumentException("Callback should be not null."));
+		int processed = 0;
+		while (cnt <= 0 || processed < cnt) {
+			if (this.breakLoop) {
+				this.breakLoop = false;
+				return -2;
+			}
+			int result = advance();
+			if (result <= 0) {
+				return result < 0 ? result : processed;
+			}
+			callback.nextPacket(user, new PcapPktHdr(this.capLen, this.len, this.tvSec, this.tvUsec), slice());
+			processed++;
+		}
+		return processed;
+	}
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, memory address given to the callback
+	 * point to a direct buffer and valid until the next packet is read.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns 0 if cnt is exhausted or there is no more packets, -1 on error,
+	 * -2 if the loop terminated by {@link PcapStreamReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException address of direct buffer is not accessible on this platform.
+	 */
+	public <T> int loop(final int cnt, final RawPcapHandler<T> callback, final T user)
+			throws IOException, UnsupportedOperationException {
+		int result = dispatch(cnt, callback, user);
+		return result < 0 ? result : 0;
+	}
+
+	/**
+	 * Read packets until cnt is exhausted or end of file, memory address given to the callback
+	 * point to a direct buffer and valid until the next packet is read.
+	 * @param cnt maximum number of packets, 0 or -1 is infinite.
+	 * @param callback callback function.
+	 * @param user arg.
+	 * @param <T> arg type.
+	 * @return returns number of packets read, -1 on error, -2 if the loop terminated by {@link PcapStreamReader#breakLoop()}.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException address of direct buffer is not accessible on this platform.
+	 */
+	public <T> int dispatch(final int cnt, final RawPcapHandler<T> callback, final T user)
+			throws IOException, UnsupportedOperationException {
+		Validate.notIllegalArgument(callback != null, new IllegalArgumentException("Callback should be not null."));
+		if (!MappedFileWindow.isMemoryAddressSupported()) {
+			throw new UnsupportedOperationException("Address of direct buffer is not accessible.");
+		}
+		int processed = 0;
+		while (cnt <= 0 || processed < cnt) {
+			if (this.breakLoop) {
+				this.breakLoop = false;
+				return -2;
+			}
+			int result = advance();
+			if (result <= 0) {
+				return result < 0 ? result : processed;
+			}
+			callback.nextPacket(user, this.capLen, this.len, this.tvSec, this.tvUsec, copyToDirect());
+			processed++;
+		}
+		return processed;
+	}
+
+	/**
+	 * Read next packet, see {@link Jxnet#PcapNext(Pcap, PcapPktHdr)}.
+	 * @param pktHdr packet header.
+	 * @return returns read only slice of the packet (valid until the next packet is read),
+	 * or null if there is no more packets or on error.
+	 * @throws IOException io exception.
+	 */
+	public ByteBuffer next(final PcapPktHdr pktHdr) throws IOException {
+		if (advance() <= 0) {
+			return null;
+		}
+		pktHdr.set(this.capLen, this.len, this.tvSec, this.tvUsec);
+		return slice();
+	}
+
+	/**
+	 * Read next packet and copy it into given buffer, see {@link Jxnet#PcapNextEx(Pcap, PcapPktHdr, ByteBuffer)}.
+	 * On success the buffer position is the captured length and the limit is the capacity.
+	 * @param pktHdr packet header.
+	 * @param pktData packet buffer.
+	 * @return returns 1 on success, -1 on error, -2 if there is no more packets.
+	 * @throws IOException io exception.
+	 */
+	public int nextEx(final PcapPktHdr pktHdr, final ByteBuffer pktData) throws IOException {
+		int result = advance();
+		if (result <= 0) {
+			return result < 0 ? result : -2;
+		}
+		pktHdr.set(this.capLen, this.len, this.tvSec, this.tvUsec);
+		pktData.clear();
+		pktData.put(this.buffer, this.offset, this.capLen);
+		return 1;
+	}
+
+	/**
+	 * Read next packet into a direct buffer, see {@link Jxnet#PcapNextEx0(Pcap, PcapPktHdr, long[])}.
+	 * @param pktHdr packet header.
+	 * @param pktData pktData[0] is packet memory address (valid until the next packet is read),
+	 * pktData[1] is captured length.
+	 * @return returns 1 on success, -1 on error, -2 if there is no more packets.
+	 * @throws IOException io exception.
+	 * @throws UnsupportedOperationException address of direct buffer is not accessible on this platform.
+	 */
+	public int nextEx0(final PcapPktHdr pktHdr, final long[] pktData) throws IOException, UnsupportedOperationException {
+		if (pktData == null || pktData.length < 2) {
+			throw new IllegalArgumentException("Packet data length should be greater than or equal to 2.");
+		}
+		if (!MappedFileWindow.isMemoryAddressSupported()) {
+			throw new UnsupportedOperationException("Address of direct buffer is not accessible.");
+		}
+		int result = advance();
+		if (result <= 0) {
+			return result < 0 ? result : -2;
+		}
+		pktHdr.set(this.capLen, this.len, this.tvSec, this.tvUsec);
+		pktData[0] = copyToDirect();
+		pktData[1] = this.capLen;
+		return 1;
+	}
+
+	/**
+	 * Terminate running loop.
+	 */
+	public void breakLoop() {
+		this.breakLoop = true;
+	}
+
+	/**
+	 * Read next record into internal buffer.
+	 * @return returns 1 on success, 0 on end of file, -1 on error.
+	 * @throws IOException io exception.
+	 */
+	private int advance() throws IOException {
+		if (this.closed) {
+			throw new IOException("Stream already closed.");
+		}
+		if (!ensure(PcapFileReader.RECORD_HEADER_SIZE)) {
+			if (this.end == this.start) {
+				return 0;
+			}
+			this.err = "truncated dump file; tried to read " + PcapFileReader.RECORD_HEADER_SIZE
+					+ " header bytes, only got " + (this.end - this.start);
+			return -1;
+		}
+		int caplen = this.view.getInt(this.start + 8);
+		if (caplen < 0 || caplen > Math.max(this.snaplen, MAX_SNAPLEN)) {
+			this.err = "invalid packet capture length " + (caplen & 0xffffffffL);
+			return -1;
+		}
+		if (!ensure(PcapFileReader.RECORD_HEADER_SIZE + caplen)) {
+			this.err = "truncated dump file; tried to read " + caplen + " captured bytes, only got "
+					+ (this.end - this.start - PcapFileReader.RECORD_HEADER_SIZE);
+			return -1;
+		}
+		this.tvSec = this.view.getInt(this.start);
+		long fraction = this.view.getInt(this.start + 4) & 0xffffffffL;
+		this.len = this.view.getInt(this.start + 12);
+		this.capLen = caplen;
+		if (this.nano && this.timestampPrecision == PcapTimestampPrecision.MICRO) {
+			this.tvUsec = fraction / 1000;
+		} else if (!this.nano && this.timestampPrecision == PcapTimestampPrecision.NANO) {
+			this.tvUsec = fraction * 1000;
+		} else {
+			this.tvUsec = fraction;
+		}
+		this.offset = this.start + PcapFileReader.RECORD_HEADER_SIZE;
+		this.start = this.offset + caplen;
+		this.position += PcapFileReader.RECORD_HEADER_SIZE + caplen;
+		return 1;
+	}
+
+	/**
+	 * Make sure at least given number of bytes are buffered after start.
+	 * @param length number of bytes.
+	 * @return returns false if end of stream reached first.
+	 * @throws IOException io exception.
+	 */
+	private boolean ensure(final int length) throws IOException {
+		if (this.end - this.start >= length) {
+			return true;
+		}
+		if (length > this.buffer.length) {
+			byte[] grown = new byte[Math.max(length, this.buffer.length * 2)];
+			System.arraycopy(this.buffer, this.start, grown, 0, this.end - this.start);
+			this.buffer = grown;
+			this.view = ByteBuffer.wrap(grown);
+			if (this.byteOrder != null) {
+				this.view.order(this.byteOrder);
+			}
+		} else if (this.start + length > this.buffer.length) {
+			System.arraycopy(this.buffer, this.start, this.buffer, 0, this.end - this.start);
+		} else {
+			return fill(length);
+		}
+		this.end -= this.start;
+		this.start = 0;
+		return fill(length);
+	}
+
+	private boolean fill(final int length) throws IOException {
+		while (this.end - this.start < length) {
+			int n = this.in.read(this.buffer, this.end, this.buffer.length - this.end);
+			if (n < 0) {
+				return false;
+			}
+			this.end += n;
+		}
+		return true;
+	}
+
+	private ByteBuffer slice() {
+		ByteBuffer slice = ByteBuffer.wrap(this.buffer, this.offset, this.capLen).slice();
+		return slice.asReadOnlyBuffer();
+	}
+
+	private long copyToDirect() {
+		if (this.direct == null || this.direct.capacity() < this.capLen) {
+			this.direct = ByteBuffer.allocateDirect(Math.max(this.capLen, Math.max(this.snaplen, MAX_SNAPLEN)));
+			this.directAddress = MappedFileWindow.address(this.direct);
+		}
+		this.direct.clear();
+		this.direct.put(this.buffer, this.offset, this.capLen);
+		return this.directAddress;
+	}
+
+	/**
+	 * Number of uncompressed bytes consumed.
+	 * @return returns stream position.
+	 */
+	public long getPosition() {
+		return this.position;
+	}
+
+	/**
+	 * Byte order of the file.
+	 * @return returns byte order.
+	 */
+	public ByteOrder getByteOrder() {
+		return this.byteOrder;
+	}
+
+	/**
+	 * Check whether the file byte order is different from the host byte order, see {@link Jxnet#PcapIsSwapped(Pcap)}.
+	 * @return returns true if swapped, false otherwise.
+	 */
+	public boolean isSwapped() {
+		return this.byteOrder != ByteOrder.nativeOrder();
+	}
+
+	/**
+	 * Timestamp precision of the file.
+	 * @return returns NANO if the file has nanosecond magic number, MICRO otherwise.
+	 */
+	public PcapTimestampPrecision getFileTimestampPrecision() {
+		return this.nano ? PcapTimestampPrecision.NANO : PcapTimestampPrecision.MICRO;
+	}
+
+	/**
+	 * Timestamp precision given to the callbacks.
+	 * @return returns timestamp precision.
+	 */
+	public PcapTimestampPrecision getTimestampPrecision() {
+		return this.timestampPrecision;
+	}
+
+	public int getMajorVersion() {
+		return this.majorVersion;
+	}
+
+	public int getMinorVersion() {
+		return this.minorVersion;
+	}
+
+	public int getSnaplen() {
+		return this.snaplen;
+	}
+
+	public DataLinkType getDataLinkType() {
+		return this.dataLinkType;
+	}
+
+	/**
+	 * Last error message.
+	 * @return returns error message.
+	 */
+	public String getErr() {
+		return this.err;
+	}
+
+	/**
+	 * Check reader.
+	 * @return returns true if closed, false otherwise.
+	 */
+	public boolean isClosed() {
+		return this.closed;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!this.closed) {
+			this.closed = true;
+			this.in.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new StringBuilder("PcapStreamReader{")
+				.append("position=").append(this.position)
+				.append(", byteOrder=").append(this.byteOrder)
+				.append(", timestampPrecision=").append(getFileTimestampPrecision())
+				.append(", snaplen=").append(this.snaplen)
+				.append(", dataLinkType=").append(this.dataLinkType)
+				.append('}')
+				.toString();
+	}
+
+}
@@ -0,0 +1,158 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package com.ardikars.jxnet.util;
+
+import com.ardikars.common.annotation.Incubating;
+
+import java.lang.reflect.Field;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+
+import sun.misc.Unsafe;
+
+/**
+ * Native memory access for the pure Java readers, writers and filters, for example packets given to a
+ * {@link com.ardikars.jxnet.RawPcapHandler}. {@link sun.misc.Unsafe} is looked up once and called directly.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
+@Incubating
+public final class DirectMemory {
+
+    private static final Unsafe UNSAFE;
+    private static final Field ADDRESS_FIELD;
+    private static final long ADDRESS_OFFSET;
+    private static final long CAPACITY_OFFSET;
+
+    static {
+        Unsafe unsafe = null;
+        Field addressField = null;
+        long addressOffset = -1;
+        long capacityOffset = -1;
+        try {
+            Field theUnsafe = Unsafe.class.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            unsafe = (Unsafe) theUnsafe.get(null);
+            addressOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("address"));
+            capacityOffset = unsafe.objectFieldOffset(Buffer.class.getDeclaredField("capacity"));
+        } catch (Throwable e) {
+            // Fall back to the address field, raw memory access is not supported.
+            unsafe = null;
+            addressOffset = -1;
+            capacityOffset = -1;
+            try {
+                addressField = Buffer.class.getDeclaredField("address");
+                addressField.setAccessible(true);
+            } catch (Throwable ex) {
+                addressField = null; // Memory address is not supported.
+            }
+        }
+        UNSAFE = unsafe;
+        ADDRESS_FIELD = addressField;
+        ADDRESS_OFFSET = addressOffset;
+        CAPACITY_OFFSET = capacityOffset;
+    }
+
+    private DirectMemory() {
+    }
+
+    /**
+     * Check whether the address of a direct buffer is accessible.
+     * @return returns true if supported, false otherwise.
+     */
+    public static boolean isAddressSupported() {
+        return UNSAFE != null || ADDRESS_FIELD != null;
+    }
+
+    /**
+     * Check whether native memory can be copied and viewed, see {@link DirectMemory#copyMemory(long, long, long)}
+     * and {@link DirectMemory#view(ByteBuffer, long, int)}.
+     * @return returns true if supported, false otherwise.
+     */
+    public static boolean isAccessSupported() {
+        return UNSAFE != null;
+    }
+
+    /**
+     * Memory address of a direct buffer.
+     * @param buffer direct buffer.
+     * @return returns memory address.
+     * @throws UnsupportedOperationException address of direct buffer is not accessible on this platform.
+     */
+    public static long address(final Buffer buffer) throws UnsupportedOperationException {
+        if (buffer == null || !buffer.isDirect()) {
+            throw new IllegalArgumentException("Buffer should be not null and direct.");
+        }
+        if (UNSAFE != null) {
+            return UNSAFE.getLong(buffer, ADDRESS_OFFSET);
+        }
+        if (ADDRESS_FIELD != null) {
+            try {
+                return ADDRESS_FIELD.getLong(buffer);
+            } catch (IllegalAccessException e) {
+                // fall through
+            }
+        }
+        throw new UnsupportedOperationException("Address of direct buffer is not accessible.");
+    }
+
+    /**
+     * Copy native memory.
+     * @param srcAddress source address.
+     * @param dstAddress destination address.
+     * @param length number of bytes.
+     * @throws UnsupportedOperationException raw memory access is not supported on this platform.
+     */
+    public static void copyMemory(final long srcAddress, final long dstAddress, final long length)
+            throws UnsupportedOperationException {
+        if (UNSAFE == null) {
+            throw new UnsupportedOperationException("Raw memory copy is not supported.");
+        }
+        UNSAFE.copyMemory(srcAddress, dstAddress, length);
+    }
+
+    /**
+     * Create a buffer which can be pointed at native memory with {@link DirectMemory#view(ByteBuffer, long, int)}.
+     * @return returns empty direct buffer.
+     */
+    public static ByteBuffer newView() {
+        return ByteBuffer.allocateDirect(0);
+    }
+
+    /**
+     * Point a buffer created by {@link DirectMemory#newView()} at native memory, no byte is copied.
+     * The view is only valid as long as the memory is, and must not be shared between threads.
+     * @param view buffer created by {@link DirectMemory#newView()}.
+     * @param address memory address.
+     * @param length number of bytes.
+     * @return returns the view, position is 0 and limit is the length.
+     * @throws UnsupportedOperationException raw memory access is not supported on this platform.
+     */
+    public static ByteBuffer view(final ByteBuffer view, final long address, final int length)
+            throws UnsupportedOperationException {
+        if (UNSAFE == null) {
+            throw new UnsupportedOperationException("Raw memory access is not supported.");
+        }
+        UNSAFE.putLong(view, ADDRESS_OFFSET, address);
+        UNSAFE.putInt(view, CAPACITY_OFFSET, length);
+        view.clear();
+        return view;
+    }
+
+}
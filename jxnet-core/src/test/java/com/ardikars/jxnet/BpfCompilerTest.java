@@ -0,0 +1,260 @@
+package com.ardikars.jxnet;
+
+import static com.ardikars.jxnet.BpfInstruction.BPF_A;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ABS;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ADD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ALU;
+import static com.ardikars.jxnet.BpfInstruction.BPF_AND;
+import static com.ardikars.jxnet.BpfInstruction.BPF_B;
+import static com.ardikars.jxnet.BpfInstruction.BPF_DIV;
+import static com.ardikars.jxnet.BpfInstruction.BPF_H;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IMM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IND;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JEQ;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGE;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGT;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JMP;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JSET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_K;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LDX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LEN;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MEM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MISC;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MOD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MUL;
+import static com.ardikars.jxnet.BpfInstruction.BPF_NEG;
+import static com.ardikars.jxnet.BpfInstruction.BPF_OR;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ST;
+import static com.ardikars.jxnet.BpfInstruction.BPF_STX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_SUB;
+import static com.ardikars.jxnet.BpfInstruction.BPF_TAX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_TXA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_W;
+import static com.ardikars.jxnet.BpfInstruction.BPF_X;
+import static com.ardikars.jxnet.BpfInstruction.BPF_XOR;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BpfCompilerTest {
+
+    private static final int[] OPCODES = {
+            BPF_LD | BPF_W | BPF_ABS, BPF_LD | BPF_H | BPF_ABS, BPF_LD | BPF_B | BPF_ABS, BPF_LD | BPF_W | BPF_LEN,
+            BPF_LDX | BPF_W | BPF_LEN, BPF_LD | BPF_W | BPF_IND, BPF_LD | BPF_H | BPF_IND, BPF_LD | BPF_B | BPF_IND,
+            BPF_LDX | BPF_MSH | BPF_B, BPF_LD | BPF_IMM, BPF_LDX | BPF_IMM, BPF_LD | BPF_MEM, BPF_LDX | BPF_MEM,
+            BPF_ST, BPF_STX, BPF_JMP | BPF_JA, BPF_JMP | BPF_JGT | BPF_K, BPF_JMP | BPF_JGE | BPF_K,
+            BPF_JMP | BPF_JEQ | BPF_K, BPF_JMP | BPF_JSET | BPF_K, BPF_JMP | BPF_JGT | BPF_X,
+            BPF_JMP | BPF_JGE | BPF_X, BPF_JMP | BPF_JEQ | BPF_X, BPF_JMP | BPF_JSET | BPF_X,
+            BPF_ALU | BPF_ADD | BPF_X, BPF_ALU | BPF_SUB | BPF_X, BPF_ALU | BPF_MUL | BPF_X, BPF_ALU | BPF_DIV | BPF_X,
+            BPF_ALU | BPF_MOD | BPF_X, BPF_ALU | BPF_AND | BPF_X, BPF_ALU | BPF_OR | BPF_X, BPF_ALU | BPF_XOR | BPF_X,
+            BPF_ALU | BPF_LSH | BPF_X, BPF_ALU | BPF_RSH | BPF_X, BPF_ALU | BPF_ADD | BPF_K, BPF_ALU | BPF_SUB | BPF_K,
+            BPF_ALU | BPF_MUL | BPF_K, BPF_ALU | BPF_DIV | BPF_K, BPF_ALU | BPF_MOD | BPF_K, BPF_ALU | BPF_AND | BPF_K,
+            BPF_ALU | BPF_OR | BPF_K, BPF_ALU | BPF_XOR | BPF_K, BPF_ALU | BPF_LSH | BPF_K, BPF_ALU | BPF_RSH | BPF_K,
+            BPF_ALU | BPF_NEG, BPF_MISC | BPF_TAX, BPF_MISC | BPF_TXA, BPF_RET | BPF_K, BPF_RET | BPF_A
+    };
+
+    private static int constant(Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+                return random.nextInt(80);
+            case 1:
+                return random.nextInt();
+            case 2:
+                return random.nextInt(40) - 20;
+            case 3:
+                return 1 << random.nextInt(32);
+            default:
+                return random.nextInt(33);
+        }
+    }
+
+    /**
+     * Random valid program with forward jumps only, so it always terminates.
+     */
+    private static BpfInstruction[] program(Random random) {
+        BpfInstruction[] instructions = new BpfInstruction[2 + random.nextInt(40)];
+        for (int pc = 0; pc < instructions.length - 1; pc++) {
+            int opcode = OPCODES[random.nextInt(OPCODES.length)];
+            int remaining = instructions.length - pc - 1;
+            int k = constant(random);
+            int jt = 0;
+            int jf = 0;
+            if (opcode == (BPF_JMP | BPF_JA)) {
+                k = random.nextInt(remaining);
+            } else if ((opcode & 0x07) == BPF_JMP) {
+                jt = random.nextInt(Math.min(remaining, 256));
+                jf = random.nextInt(Math.min(remaining, 256));
+            } else if (opcode == (BPF_LD | BPF_MEM) || opcode == (BPF_LDX | BPF_MEM) || opcode == BPF_ST
+                    || opcode == BPF_STX) {
+                k = random.nextInt(BpfInstruction.BPF_MEMWORDS);
+            } else if ((opcode == (BPF_ALU | BPF_DIV | BPF_K) || opcode == (BPF_ALU | BPF_MOD | BPF_K)) && k == 0) {
+                k = 3;
+            }
+            instructions[pc] = BpfInstruction.of(opcode, jt, jf, k);
+        }
+        instructions[instructions.length - 1] = BpfInstruction.of(random.nextBoolean() ? BPF_RET | BPF_A
+                : BPF_RET | BPF_K, constant(random));
+        return instructions;
+    }
+
+    @Test
+    public void compileTest() throws IOException {
+        BpfFilter icmp = BpfCompiler.compile(BpfInterpreterTest.icmpProgram());
+        BpfFilter icmpEcho = BpfCompiler.compile(BpfInterpreterTest.icmpEchoProgram());
+        assert !(icmp instanceof BpfInterpreter);
+        assert !(icmpEcho instanceof BpfInterpreter);
+        assert icmp.length() == 6;
+        assert icmp.getInstructions()[1].equals(BpfInterpreterTest.icmpProgram()[1]);
+        PcapFileReader reader = PcapFileReader.open(BpfInterpreterTest.PCAP_PATH);
+        try {
+            PcapPktHdr header = new PcapPktHdr();
+            ByteBuffer packet;
+            int echo = 0;
+            while ((packet = reader.next(header)) != null) {
+                assert icmp.filter(header, packet) == BpfInterpreterTest.SNAPLEN;
+                if (icmpEcho.filter(header, packet) != 0) {
+                    echo++;
+                }
+                assert icmpEcho.filter(packet, 0, 34, header.getLen()) == 0;
+            }
+            assert echo == 4;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void fuzzTest() {
+        Random random = new Random(3);
+        byte[] bytes = new byte[96];
+        ByteBuffer heap = ByteBuffer.wrap(bytes);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).order(ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < 2000; i++) {
+            BpfInstruction[] instructions = program(random);
+            BpfInterpreter interpreter = BpfInterpreter.of(instructions);
+            BpfFilter compiled = BpfCompiler.compile(instructions);
+            assert !(compiled instanceof BpfInterpreter);
+            for (int j = 0; j < 8; j++) {
+                random.nextBytes(bytes);
+                for (int b = 0; b < bytes.length; b++) {
+                    if (random.nextInt(3) == 0) {
+                        bytes[b] = (byte) random.nextInt(4);
+                    }
+                }
+                direct.clear();
+                direct.put(bytes).clear();
+                int caplen = random.nextInt(bytes.length);
+                int len = random.nextBoolean() ? caplen : random.nextInt();
+                int expected = interpreter.filter(heap, 0, caplen, len);
+                assert compiled.filter(heap, 0, caplen, len) == expected : compiled;
+                assert compiled.filter(direct, 0, caplen, len) == expected : compiled;
+            }
+        }
+    }
+
+    @Test
+    public void loopTest() {
+        // Count to 10 in scratch memory with a backward jump, then add the ip header length.
+        BpfFilter loop = BpfCompiler.compile(
+                BpfInstruction.of(BPF_LD | BPF_IMM, 0),
+                BpfInstruction.of(BPF_ST, 3),
+                BpfInstruction.of(BPF_LD | BPF_MEM, 3),
+                BpfInstruction.of(BPF_ALU | BPF_ADD | BPF_K, 1),
+                BpfInstruction.of(BPF_ST, 3),
+                BpfInstruction.of(BPF_JMP | BPF_JGT | BPF_K, 1, 0, 9),
+                BpfInstruction.of(BPF_JMP | BPF_JA, -5),
+                BpfInstruction.of(BPF_LDX | BPF_MSH | BPF_B, 4),
+                BpfInstruction.of(BPF_ALU | BPF_ADD | BPF_X, 0),
+                BpfInstruction.of(BPF_RET | BPF_A, 0));
+        assert !(loop instanceof BpfInterpreter);
+        ByteBuffer packet = ByteBuffer.wrap(new byte[] { 0, 0, 0, 0, 0x45 });
+        assert loop.filter(packet, 0, 5, 5) == 30;
+        assert loop.filter(packet, 0, 4, 4) == 0;
+    }
+
+    @Test
+    public void largeProgramTest() {
+        // Too large for 16 bit branch offsets, evaluated by the interpreter.
+        BpfInstruction[] instructions = new BpfInstruction[20000];
+        instructions[0] = BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 0, 1, 0);
+        instructions[1] = BpfInstruction.of(BPF_JMP | BPF_JA, instructions.length - 3);
+        for (int pc = 2; pc < instructions.length - 1; pc++) {
+            instructions[pc] = BpfInstruction.of(BPF_LD | BPF_W | BPF_ABS, pc);
+        }
+        instructions[instructions.length - 1] = BpfInstruction.of(BPF_RET | BPF_K, 1);
+        BpfFilter filter = BpfCompiler.compile(instructions);
+        assert filter instanceof BpfInterpreter;
+        assert filter.filter(ByteBuffer.allocate(1), 0, 1, 1) == 1;
+    }
+
+    @Test
+    public void z_memoryAddressTest() {
+        if (!MappedFileWindow.isCopyMemorySupported()) {
+            return;
+        }
+        BpfFilter icmp = BpfCompiler.compile(BpfInterpreterTest.icmpProgram());
+        ByteBuffer packet = ByteBuffer.allocateDirect(64);
+        packet.putShort(12, (short) 0x0800);
+        packet.put(23, (byte) 1);
+        long address = MappedFileWindow.address(packet);
+        assert icmp.filter(address, 64, 64) == BpfInterpreterTest.SNAPLEN;
+        assert icmp.filter(address, 23, 64) == 0;
+    }
+
+    @Test
+    public void z_nativeTest() throws IOException {
+        Random random = new Random(13);
+        ByteBuffer generated = ByteBuffer.allocateDirect(128);
+        ByteBuffer packet = ByteBuffer.allocateDirect(BpfInterpreterTest.SNAPLEN);
+        PcapPktHdr header = new PcapPktHdr();
+        for (String filter : BpfInterpreterTest.FILTERS) {
+            BpfProgram program = new BpfProgram();
+            try {
+                assert Jxnet.PcapCompileNoPcap(65535, DataLinkType.EN10MB.getValue(), program, filter, 1,
+                        0xffffff00) == 0;
+                BpfFilter compiled = BpfCompiler.compile(program);
+                assert !(compiled instanceof BpfInterpreter);
+                PcapFileReader reader = PcapFileReader.open(BpfInterpreterTest.PCAP_PATH);
+                try {
+                    ByteBuffer bytes;
+                    while ((bytes = reader.next(header)) != null) {
+                        packet.clear();
+                        packet.put(bytes).flip();
+                        assert compiled.filter(header, packet) == Jxnet.PcapOfflineFilter(program, header, packet)
+                                : filter;
+                    }
+                } finally {
+                    reader.close();
+                }
+                for (int i = 0; i < 1000; i++) {
+                    ByteBuffer heap = BpfInterpreterTest.packet(random, ByteBuffer.allocate(128),
+                            random.nextBoolean(), random.nextBoolean() ? 80 : 1000 + random.nextInt(2000));
+                    generated.clear();
+                    generated.put(heap).flip();
+                    PcapPktHdr h = PcapPktHdr.newInstance(generated.limit(), generated.limit() + random.nextInt(100),
+                            0, 0);
+                    assert compiled.filter(h, generated) == Jxnet.PcapOfflineFilter(program, h, generated) : filter;
+                }
+            } finally {
+                program.close();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,327 @@
+package com.ardikars.jxnet;
+
+import static com.ardikars.jxnet.BpfInstruction.BPF_A;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ABS;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ADD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ALU;
+import static com.ardikars.jxnet.BpfInstruction.BPF_B;
+import static com.ardikars.jxnet.BpfInstruction.BPF_DIV;
+import static com.ardikars.jxnet.BpfInstruction.BPF_H;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IMM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_IND;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JA;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JEQ;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JGT;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JMP;
+import static com.ardikars.jxnet.BpfInstruction.BPF_JSET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_K;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LD;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LDX;
+import static com.ardikars.jxnet.BpfInstruction.BPF_LEN;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MEM;
+import static com.ardikars.jxnet.BpfInstruction.BPF_MSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RET;
+import static com.ardikars.jxnet.BpfInstruction.BPF_RSH;
+import static com.ardikars.jxnet.BpfInstruction.BPF_ST;
+import static com.ardikars.jxnet.BpfInstruction.BPF_W;
+import static com.ardikars.jxnet.BpfInstruction.BPF_X;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BpfInterpreterTest {
+
+    static final String PCAP_PATH = "../gradle/resources/pcap/icmp.pcap";
+
+    static final int SNAPLEN = 262144;
+
+    static final String[] FILTERS = {
+            "icmp", "icmp[icmptype] == icmp-echo", "tcp port 80", "udp and portrange 1000-2000",
+            "vlan and ip", "ip6", "net 10.0.0.0/8", "len > 100", "ip[6:2] & 0x1fff != 0",
+            "ether[0] & 1 = 0", "ip6 protochain 6", "ip[2:2] / 4 > 20", "arp"
+    };
+
+    /**
+     * tcpdump -dd "icmp".
+     */
+    static BpfInstruction[] icmpProgram() {
+        return new BpfInstruction[] {
+                BpfInstruction.of(BPF_LD | BPF_H | BPF_ABS, 0, 0, 12),
+                BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 0, 3, 0x800),
+                BpfInstruction.of(BPF_LD | BPF_B | BPF_ABS, 0, 0, 23),
+                BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 0, 1, 1),
+                BpfInstruction.of(BPF_RET | BPF_K, 0, 0, SNAPLEN),
+                BpfInstruction.of(BPF_RET | BPF_K, 0, 0, 0) };
+    }
+
+    /**
+     * tcpdump -dd "icmp[icmptype] == icmp-echo".
+     */
+    static BpfInstruction[] icmpEchoProgram() {
+        return new BpfInstruction[] {
+                BpfInstruction.of(BPF_LD | BPF_H | BPF_ABS, 0, 0, 12),
+                BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 0, 8, 0x800),
+                BpfInstruction.of(BPF_LD | BPF_B | BPF_ABS, 0, 0, 23),
+                BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 0, 6, 1),
+                BpfInstruction.of(BPF_LD | BPF_H | BPF_ABS, 0, 0, 20),
+                BpfInstruction.of(BPF_JMP | BPF_JSET | BPF_K, 4, 0, 0x1fff),
+                BpfInstruction.of(BPF_LDX | BPF_MSH | BPF_B, 0, 0, 14),
+                BpfInstruction.of(BPF_LD | BPF_B | BPF_IND, 0, 0, 14),
+                BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 0, 1, 8),
+                BpfInstruction.of(BPF_RET | BPF_K, 0, 0, SNAPLEN),
+                BpfInstruction.of(BPF_RET | BPF_K, 0, 0, 0) };
+    }
+
+    private static BpfInterpreter icmp() {
+        return BpfInterpreter.of(icmpProgram());
+    }
+
+    private static BpfInterpreter icmpEcho() {
+        return BpfInterpreter.of(icmpEchoProgram());
+    }
+
+    /**
+     * Ethernet + IPv4 + TCP or UDP with random ports, sometimes fragmented or truncated.
+     */
+    static ByteBuffer packet(Random random, ByteBuffer buffer, boolean tcp, int port) {
+        buffer.clear();
+        buffer.put(new byte[12]);
+        buffer.putShort((short) 0x0800);
+        buffer.put((byte) 0x45).put((byte) 0).putShort((short) 40);
+        buffer.putShort((short) random.nextInt()).putShort((short) (random.nextInt(4) == 0 ? 0x2001 : 0x4000));
+        buffer.put((byte) 64).put((byte) (tcp ? 6 : 17)).putShort((short) 0);
+        buffer.putInt(0x0a000001).putInt(0xc0a80001);
+        buffer.putShort((short) random.nextInt(1024)).putShort((short) port);
+        buffer.put(new byte[random.nextInt(20)]);
+        buffer.flip();
+        if (random.nextInt(8) == 0) {
+            buffer.limit(14 + 20 + 2 + random.nextInt(2));
+        }
+        return buffer;
+    }
+
+    @Test
+    public void fileTest() throws IOException {
+        BpfInterpreter icmp = icmp();
+        BpfInterpreter icmpEcho = icmpEcho();
+        PcapFileReader reader = PcapFileReader.open(PCAP_PATH);
+        try {
+            PcapPktHdr header = new PcapPktHdr();
+            ByteBuffer packet;
+            int packets = 0;
+            int echo = 0;
+            while ((packet = reader.next(header)) != null) {
+                assert icmp.filter(header, packet) == SNAPLEN;
+                if (icmpEcho.filter(header, packet) != 0) {
+                    echo++;
+                }
+                // Snapshot shorter than the icmp type offset (14 + 20).
+                assert icmpEcho.filter(packet, 0, 34, header.getLen()) == 0;
+                assert icmp.filter(packet, 0, 34, header.getLen()) == SNAPLEN;
+                packets++;
+            }
+            assert packets == 8;
+            assert echo == 4;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void generatedTest() {
+        // tcpdump -dd "ip and tcp dst port 80", IPv4 part only.
+        BpfInterpreter http = BpfInterpreter.of(
+                BpfInstruction.of(BPF_LD | BPF_H | BPF_ABS, 0, 0, 12),
+                BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 0, 8, 0x800),
+                BpfInstruction.of(BPF_LD | BPF_B | BPF_ABS, 0, 0, 23),
+                BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 0, 6, 6),
+                BpfInstruction.of(BPF_LD | BPF_H | BPF_ABS, 0, 0, 20),
+                BpfInstruction.of(BPF_JMP | BPF_JSET | BPF_K, 4, 0, 0x1fff),
+                BpfInstruction.of(BPF_LDX | BPF_MSH | BPF_B, 0, 0, 14),
+                BpfInstruction.of(BPF_LD | BPF_H | BPF_IND, 0, 0, 16),
+                BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 0, 1, 80),
+                BpfInstruction.of(BPF_RET | BPF_K, 0, 0, SNAPLEN),
+                BpfInstruction.of(BPF_RET | BPF_K, 0, 0, 0));
+        Random random = new Random(7);
+        ByteBuffer heap = ByteBuffer.allocate(128);
+        ByteBuffer direct = ByteBuffer.allocateDirect(128).order(ByteOrder.LITTLE_ENDIAN);
+        int accepted = 0;
+        for (int i = 0; i < 10000; i++) {
+            boolean tcp = random.nextBoolean();
+            int port = random.nextBoolean() ? 80 : random.nextInt(65536);
+            ByteBuffer packet = packet(random, heap, tcp, port);
+            boolean fragment = (packet.getShort(20) & 0x1fff) != 0;
+            boolean expected = tcp && port == 80 && !fragment && packet.limit() >= 38;
+            int verdict = http.filter(packet, 0, packet.limit(), packet.limit());
+            assert (verdict == SNAPLEN) == expected;
+            direct.clear();
+            direct.put(packet.duplicate()).flip();
+            assert http.filter(direct, 0, direct.limit(), direct.limit()) == verdict;
+            if (expected) {
+                accepted++;
+            }
+        }
+        assert accepted > 1000;
+    }
+
+    @Test
+    public void semanticsTest() {
+        ByteBuffer packet = ByteBuffer.wrap(new byte[] { (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xfe, 0x45 });
+        // Unsigned compare: 0xfffffffe > 1.
+        BpfInterpreter unsigned = BpfInterpreter.of(
+                BpfInstruction.of(BPF_LD | BPF_W | BPF_ABS, 0, 0, 1),
+                BpfInstruction.of(BPF_JMP | BPF_JGT | BPF_K, 0, 1, 1),
+                BpfInstruction.of(BPF_RET | BPF_A, 0),
+                BpfInstruction.of(BPF_RET | BPF_K, 0));
+        assert unsigned.filter(packet, 0, 5, 5) == 0xfffffe45;
+        // Out of bounds load rejects, even if the buffer is larger than caplen.
+        assert unsigned.filter(packet, 0, 4, 5) == 0;
+        // Unsigned shift and division, division by zero rejects.
+        BpfInterpreter divide = BpfInterpreter.of(
+                BpfInstruction.of(BPF_LD | BPF_W | BPF_ABS, 0),
+                BpfInstruction.of(BPF_ALU | BPF_RSH | BPF_K, 4),
+                BpfInstruction.of(BPF_LDX | BPF_W | BPF_LEN, 0),
+                BpfInstruction.of(BPF_ALU | BPF_DIV | BPF_X, 0),
+                BpfInstruction.of(BPF_RET | BPF_A, 0));
+        assert divide.filter(packet, 0, 5, 3) == 0x0fffffff / 3;
+        assert divide.filter(packet, 0, 5, 0) == 0;
+        // Scratch memory, ip header length and a backward jump (ip6 protochain).
+        BpfInterpreter loop = BpfInterpreter.of(
+                BpfInstruction.of(BPF_LD | BPF_IMM, 0),
+                BpfInstruction.of(BPF_ST, 3),
+                BpfInstruction.of(BPF_LD | BPF_MEM, 3),
+                BpfInstruction.of(BPF_ALU | BPF_ADD | BPF_K, 1),
+                BpfInstruction.of(BPF_ST, 3),
+                BpfInstruction.of(BPF_JMP | BPF_JGT | BPF_K, 1, 0, 9),
+                BpfInstruction.of(BPF_JMP | BPF_JA, -5),
+                BpfInstruction.of(BPF_LDX | BPF_MSH | BPF_B, 4),
+                BpfInstruction.of(BPF_ALU | BPF_ADD | BPF_X, 0),
+                BpfInstruction.of(BPF_RET | BPF_A, 0));
+        assert loop.filter(packet, 0, 5, 5) == 10 + 20;
+        assert loop.filter(packet, 0, 4, 4) == 0;
+        // Missing packet data at an indirect offset.
+        BpfInterpreter indirect = BpfInterpreter.of(
+                BpfInstruction.of(BPF_LDX | BPF_IMM, -1),
+                BpfInstruction.of(BPF_LD | BPF_B | BPF_IND, 2),
+                BpfInstruction.of(BPF_RET | BPF_K, 1));
+        assert indirect.filter(packet, 0, 5, 5) == 0;
+        // Offset into a larger buffer.
+        ByteBuffer shifted = ByteBuffer.allocate(9);
+        shifted.position(4);
+        shifted.put(packet.duplicate());
+        assert unsigned.filter(shifted, 4, 5, 5) == 0xfffffe45;
+    }
+
+    @Test
+    public void validateTest() {
+        BpfInstruction ret = BpfInstruction.of(BPF_RET | BPF_K, 0);
+        BpfInstruction[][] invalid = {
+                { BpfInstruction.of(BPF_LD | BPF_IMM, 0) },
+                { BpfInstruction.of(BPF_JMP | BPF_JEQ | BPF_K, 1, 0, 0), ret },
+                { BpfInstruction.of(BPF_JMP | BPF_JA, 1), ret },
+                { BpfInstruction.of(BPF_JMP | BPF_JA, -2), ret },
+                { BpfInstruction.of(BPF_ST, 16), ret },
+                { BpfInstruction.of(BPF_LD | BPF_MEM, -1), ret },
+                { BpfInstruction.of(BPF_ALU | BPF_DIV | BPF_K, 0), ret },
+                { BpfInstruction.of(BPF_LD | BPF_H | BPF_IMM, 0), ret },
+                { BpfInstruction.of(BPF_RET | BPF_X, 0) },
+                { BpfInstruction.of(0xff, 0), ret }
+        };
+        for (BpfInstruction[] instructions : invalid) {
+            try {
+                BpfInterpreter.of(instructions);
+                assert false : instructions[0].toString();
+            } catch (IllegalArgumentException e) {
+                //
+            }
+        }
+        BpfInstruction load = BpfInstruction.of(BPF_LD | BPF_H | BPF_ABS, 0, 0, 12);
+        assert load.toString().equals("{ 0x28, 0, 0, 0x0000000c }");
+        assert load.equals(BpfInstruction.valueOf(0x002800000000000cL));
+        BpfInterpreter interpreter = BpfInterpreter.of(load, ret);
+        assert interpreter.length() == 2;
+        assert interpreter.getInstructions()[0].equals(load);
+    }
+
+    @Test
+    public void z_memoryAddressTest() {
+        if (!MappedFileWindow.isCopyMemorySupported()) {
+            return;
+        }
+        BpfInterpreter icmp = icmp();
+        ByteBuffer packet = ByteBuffer.allocateDirect(64);
+        packet.putShort(12, (short) 0x0800);
+        packet.put(23, (byte) 1);
+        long address = MappedFileWindow.address(packet);
+        assert icmp.filter(address, 64, 64) == SNAPLEN;
+        assert icmp.filter(address, 23, 64) == 0;
+        packet.put(23, (byte) 6);
+        assert icmp.filter(address, 64, 64) == 0;
+        try {
+            icmp.filter(address, -1, 64);
+            assert false;
+        } catch (IllegalArgumentException e) {
+            assert e.getMessage().startsWith("Capture length");
+        }
+    }
+
+    @Test
+    public void z_nativeTest() throws IOException {
+        Random random = new Random(11);
+        ByteBuffer generated = ByteBuffer.allocateDirect(128);
+        ByteBuffer packet = ByteBuffer.allocateDirect(SNAPLEN);
+        PcapPktHdr header = new PcapPktHdr();
+        for (String filter : FILTERS) {
+            BpfProgram program = new BpfProgram();
+            try {
+                assert Jxnet.PcapCompileNoPcap(65535, DataLinkType.EN10MB.getValue(), program, filter, 1,
+                        0xffffff00) == 0;
+                BpfInterpreter interpreter = BpfInterpreter.of(program);
+                assert interpreter.length() == program.getInstructions().length;
+                PcapFileReader reader = PcapFileReader.open(PCAP_PATH);
+                try {
+                    ByteBuffer bytes;
+                    while ((bytes = reader.next(header)) != null) {
+                        packet.clear();
+                        packet.put(bytes).flip();
+                        assert interpreter.filter(header, packet) == Jxnet.PcapOfflineFilter(program, header, packet)
+                                : filter;
+                    }
+                } finally {
+                    reader.close();
+                }
+                for (int i = 0; i < 1000; i++) {
+                    ByteBuffer heap = packet(random, ByteBuffer.allocate(128), random.nextBoolean(),
+                            random.nextBoolean() ? 80 : 1000 + random.nextInt(2000));
+                    generated.clear();
+                    generated.put(heap).flip();
+                    PcapPktHdr h = PcapPktHdr.newInstance(generated.limit(), generated.limit() + random.nextInt(100),
+                            0, 0);
+                    assert interpreter.filter(h, generated) == Jxnet.PcapOfflineFilter(program, h, generated)
+                            : filter;
+                }
+            } finally {
+                program.close();
+            }
+        }
+        // A program that has not been compiled rejects everything.
+        BpfProgram empty = new BpfProgram();
+        try {
+            assert empty.getInstructions().length == 0;
+            assert BpfInterpreter.of(empty).filter(header, packet) == 0;
+        } finally {
+            empty.close();
+        }
+    }
+
+}
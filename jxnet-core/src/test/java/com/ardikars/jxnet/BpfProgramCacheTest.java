@@ -0,0 +1,108 @@
+package com.ardikars.jxnet;
+
+import com.ardikars.jxnet.exception.NativeException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+import java.io.IOException;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class BpfProgramCacheTest {
+
+    private static final int NETMASK = 0xffffff00;
+
+    private Pcap pcap;
+
+    @Before
+    public void init() {
+        pcap = Jxnet.PcapOpenOffline(BpfInterpreterTest.PCAP_PATH, new StringBuilder());
+    }
+
+    @Test
+    public void hitTest() {
+        BpfProgramCache cache = BpfProgramCache.newInstance(4);
+        BpfProgram icmp = cache.acquire(pcap, "icmp", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK);
+        assert cache.getMissCount() == 1 && cache.getHitCount() == 0;
+        assert cache.acquire(pcap, "icmp", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK) == icmp;
+        assert cache.getMissCount() == 1 && cache.getHitCount() == 1;
+        assert cache.acquire(pcap, "icmp", BpfProgram.BpfCompileMode.NON_OPTIMIZE, NETMASK) != icmp;
+        assert cache.acquire(pcap, "icmp", BpfProgram.BpfCompileMode.OPTIMIZE, 0) != icmp;
+        assert cache.acquire(65535, DataLinkType.EN10MB, "icmp", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK) == icmp;
+        assert cache.acquire(128, DataLinkType.EN10MB, "icmp", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK) != icmp;
+        assert cache.getMissCount() == 4 && cache.getHitCount() == 2;
+        assert cache.size() == 4 && cache.getAcquiredCount() == 4;
+        assert !cache.release(new BpfProgram());
+        cache.clear();
+        assert cache.size() == 0;
+        assert !icmp.isClosed();
+        assert cache.release(icmp) && cache.release(icmp) && !icmp.isClosed();
+        assert cache.release(icmp) && icmp.isClosed();
+        assert !cache.release(icmp);
+    }
+
+    @Test
+    public void evictionTest() {
+        BpfProgramCache cache = BpfProgramCache.newInstance(2);
+        BpfProgram icmp = cache.acquire(pcap, "icmp", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK);
+        BpfProgram arp = cache.acquire(pcap, "arp", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK);
+        assert cache.release(icmp) && cache.release(arp);
+        assert !icmp.isClosed() && !arp.isClosed(); // released, still cached
+        assert cache.acquire(pcap, "icmp", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK) == icmp; // arp is eldest now
+        BpfProgram tcp = cache.acquire(pcap, "tcp", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK);
+        assert cache.getEvictionCount() == 1 && arp.isClosed();
+        BpfProgram udp = cache.acquire(pcap, "udp", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK);
+        assert cache.getEvictionCount() == 2 && !icmp.isClosed(); // evicted while in use
+        assert cache.release(icmp) && icmp.isClosed();
+        assert cache.size() == 2 && cache.getAcquiredCount() == 2;
+        assert cache.release(tcp) && cache.release(udp);
+        assert !tcp.isClosed() && !udp.isClosed();
+        cache.clear();
+        assert tcp.isClosed() && udp.isClosed();
+        assert cache.toString() != null;
+    }
+
+    @Test
+    public void noCacheTest() {
+        BpfProgramCache cache = BpfProgramCache.newInstance(0);
+        BpfProgram icmp = cache.acquire(pcap, "icmp", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK);
+        assert cache.size() == 0;
+        assert cache.acquire(pcap, "arp", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK) != icmp;
+        assert cache.release(icmp) && icmp.isClosed();
+        assert cache.getMissCount() == 2 && cache.getEvictionCount() == 0;
+    }
+
+    @Test
+    public void errorTest() {
+        BpfProgramCache cache = BpfProgramCache.newInstance(4);
+        try {
+            cache.acquire(pcap, "icmp and", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK);
+            assert false;
+        } catch (NativeException e) {
+            assert e.getMessage() != null;
+        }
+        try {
+            cache.acquire(65535, DataLinkType.EN10MB, "no such", BpfProgram.BpfCompileMode.OPTIMIZE, NETMASK);
+            assert false;
+        } catch (NativeException e) {
+            assert e.getMessage() != null;
+        }
+        assert cache.size() == 0 && cache.getMissCount() == 0;
+    }
+
+    @After
+    public void destroy() {
+        try {
+            pcap.close();
+        } catch (IOException e) {
+            //
+        }
+    }
+
+}
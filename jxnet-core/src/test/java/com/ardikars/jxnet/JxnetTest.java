@@ -32,11 +32,13 @@ import static com.ardikars.jxnet.Jxnet.PcapDataLinkValToDescription;
 import static com.ardikars.jxnet.Jxnet.PcapDataLinkValToName;
 import static com.ardikars.jxnet.Jxnet.PcapDispatch;
 import static com.ardikars.jxnet.Jxnet.PcapDispatch0;
+import static com.ardikars.jxnet.Jxnet.PcapDispatchBatch;
 import static com.ardikars.jxnet.Jxnet.PcapDump;
 import static com.ardikars.jxnet.Jxnet.PcapDumpClose;
 import static com.ardikars.jxnet.Jxnet.PcapDumpFTell;
 import static com.ardikars.jxnet.Jxnet.PcapDumpFlush;
 import static com.ardikars.jxnet.Jxnet.PcapDumpOpen;
+import static com.ardikars.jxnet.Jxnet.PcapFileno;
 import static com.ardikars.jxnet.Jxnet.PcapFindAllDevs;
 import static com.ardikars.jxnet.Jxnet.PcapFreeCode;
 import static com.ardikars.jxnet.Jxnet.PcapGetErr;
@@ -48,10 +50,12 @@ import static com.ardikars.jxnet.Jxnet.PcapListDataLinks;
 import static com.ardikars.jxnet.Jxnet.PcapListTStampTypes;
 import static com.ardikars.jxnet.Jxnet.PcapLoop;
 import static com.ardikars.jxnet.Jxnet.PcapLoop0;
+import static com.ardikars.jxnet.Jxnet.PcapLoopReusable;
 import static com.ardikars.jxnet.Jxnet.PcapMajorVersion;
 import static com.ardikars.jxnet.Jxnet.PcapMinorVersion;
 import static com.ardikars.jxnet.Jxnet.PcapNext;
 import static com.ardikars.jxnet.Jxnet.PcapNextEx;
+import static com.ardikars.jxnet.Jxnet.PcapNextEx0;
 import static com.ardikars.jxnet.Jxnet.PcapOfflineFilter;
 import static com.ardikars.jxnet.Jxnet.PcapOpenDead;
 import static com.ardikars.jxnet.Jxnet.PcapOpenDeadWithTStampPrecision;
@@ -61,6 +65,7 @@ import static com.ardikars.jxnet.Jxnet.PcapOpenOfflineWithTStampPrecision;
 import static com.ardikars.jxnet.Jxnet.PcapPError;
 import static com.ardikars.jxnet.Jxnet.PcapSetDataLink;
 import static com.ardikars.jxnet.Jxnet.PcapSetDirection;
+import static com.ardikars.jxnet.Jxnet.PcapSetFanout;
 import static com.ardikars.jxnet.Jxnet.PcapSetFilter;
 import static com.ardikars.jxnet.Jxnet.PcapSetImmediateMode;
 import static com.ardikars.jxnet.Jxnet.PcapSetNonBlock;
@@ -83,6 +88,8 @@ import com.ardikars.common.net.MacAddress;
 import com.ardikars.common.util.Platforms;
 import com.ardikars.jxnet.exception.DeviceNotFoundException;
 import com.ardikars.jxnet.exception.NativeException;
+import com.ardikars.jxnet.exception.PacketRingCloseException;
+import com.ardikars.jxnet.exception.PcapCloseException;
 import com.ardikars.jxnet.exception.PlatformNotSupportedException;
 
 import java.io.File;
@@ -91,8 +98,11 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Method;
 import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.junit.After;
@@ -729,6 +739,323 @@ public class JxnetTest {
             logger.info(e.getMessage());
         }
     }
+
+    @Test
+    public void Test37_PcapOpenOfflinePcapDispatchBatchAndPcapClose() {
+        Pcap pcap = PcapOpenOffline(resourceDumpFile, errbuf);
+        if (pcap == null) {
+            logger.warning("PcapOpenOfflinePcapDispatchBatchAndPcapClose:PcapOpenOffline(): " + errbuf.toString());
+            return;
+        }
+        ByteBuffer headers = ByteBuffer.allocateDirect(2 * PcapBatchHandler.HEADER_SIZE).order(ByteOrder.nativeOrder());
+        ByteBuffer packets = ByteBuffer.allocateDirect(snaplen);
+        cntPkt = 0;
+        if ((resultCode = PcapDispatchBatch(pcap, maxPkt, new PcapBatchHandler<String>() {
+            @Override
+            public void nextBatch(String user, int count, ByteBuffer headers, ByteBuffer packets) {
+                assert count > 0 && count <= 2;
+                int offset = 0;
+                for (int i = 0; i < count; i++) {
+                    int index = i * PcapBatchHandler.HEADER_SIZE;
+                    int capLen = headers.getInt(index + PcapBatchHandler.CAPLEN_OFFSET);
+                    assert capLen <= headers.getInt(index + PcapBatchHandler.LEN_OFFSET);
+                    assert offset == headers.getInt(index + PcapBatchHandler.DATA_OFFSET);
+                    offset += capLen;
+                }
+                cntPkt += count;
+            }
+        }, "", headers, packets)) < 0) {
+            logger.warning("PcapOpenOfflinePcapDispatchBatchAndPcapClose:PcapDispatchBatch(): " + PcapStrError(resultCode));
+        } else {
+            assert resultCode == cntPkt;
+        }
+        PcapClose(pcap);
+    }
+
+    @Test
+    public void Test38_PcapOpenOfflinePcapLoopReusableAndPcapClose() {
+        Pcap pcap = PcapOpenOffline(resourceDumpFile, errbuf);
+        if (pcap == null) {
+            logger.warning("PcapOpenOfflinePcapLoopReusableAndPcapClose:PcapOpenOffline(): " + errbuf.toString());
+            return;
+        }
+        final PcapPktHdr[] headers = new PcapPktHdr[1];
+        final ByteBuffer[] buffers = new ByteBuffer[1];
+        if ((resultCode = PcapLoopReusable(pcap, maxPkt, new PcapHandler<String>() {
+            @Override
+            public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                if (headers[0] == null) {
+                    headers[0] = h;
+                    buffers[0] = bytes;
+                }
+                assert headers[0] == h;
+                assert buffers[0] == bytes;
+                assert bytes.position() == 0;
+                assert bytes.limit() == h.getCapLen();
+            }
+        }, "")) != OK) {
+            logger.warning("PcapOpenOfflinePcapLoopReusableAndPcapClose:PcapLoopReusable(): " + PcapStrError(resultCode));
+        } else if (buffers[0] != null) {
+            assert buffers[0].capacity() == 0;
+        }
+        PcapClose(pcap);
+    }
+
+    @Test
+    public void Test39_PcapOpenOfflineConcurrentPcapSnapshotAndPcapClose() throws InterruptedException {
+        final Pcap pcap = PcapOpenOffline(resourceDumpFile, errbuf);
+        if (pcap == null) {
+            logger.warning("PcapOpenOfflineConcurrentPcapSnapshotAndPcapClose:PcapOpenOffline(): " + errbuf.toString());
+            return;
+        }
+        final int snaplen = PcapSnapshot(pcap);
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(4);
+        final CountDownLatch done = new CountDownLatch(4);
+        for (int i = 0; i < 4; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        while (true) {
+                            if (PcapSnapshot(pcap) != snaplen) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                    } catch (PcapCloseException e) {
+                        // handle closed by main thread
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        started.await();
+        PcapClose(pcap);
+        done.await();
+        assert pcap.isClosed();
+        assert failures.get() == 0;
+        try {
+            PcapClose(pcap);
+            assert false;
+        } catch (PcapCloseException e) {
+            // already closed
+        }
+    }
+
+    @Test
+    public void Test40_PcapOpenOfflinePcapNextExAndPcapNextEx0() {
+        Pcap copy = PcapOpenOffline(resourceDumpFile, errbuf);
+        if (copy == null) {
+            logger.warning("PcapOpenOfflinePcapNextExAndPcapNextEx0:PcapOpenOffline(): " + errbuf.toString());
+            return;
+        }
+        Pcap zeroCopy = PcapOpenOffline(resourceDumpFile, errbuf);
+        if (zeroCopy == null) {
+            logger.warning("PcapOpenOfflinePcapNextExAndPcapNextEx0:PcapOpenOffline(): " + errbuf.toString());
+            PcapClose(copy);
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocateDirect(PcapSnapshot(copy));
+        PcapPktHdr copyHdr = new PcapPktHdr();
+        PcapPktHdr zeroCopyHdr = new PcapPktHdr();
+        long[] pktData = new long[2];
+        int copyResult;
+        while ((copyResult = PcapNextEx(copy, copyHdr, buffer)) == 1) {
+            assert PcapNextEx0(zeroCopy, zeroCopyHdr, pktData) == 1;
+            assert copyHdr.getCapLen() == zeroCopyHdr.getCapLen();
+            assert copyHdr.getTvUsec() == zeroCopyHdr.getTvUsec();
+            assert buffer.position() == copyHdr.getCapLen();
+            assert buffer.limit() == buffer.capacity();
+            assert pktData[0] != 0;
+            assert pktData[1] == copyHdr.getCapLen();
+        }
+        assert copyResult == -2;
+        assert PcapNextEx0(zeroCopy, zeroCopyHdr, pktData) == -2;
+        PcapClose(zeroCopy);
+        PcapClose(copy);
+    }
+
+    @Test
+    public void Test41_PcapSetFanout() {
+        if (pcap == null || !Platforms.isLinux()) {
+            return;
+        }
+        Pcap member = PcapOpenLive(source, snaplen, promisc, timeout, errbuf);
+        if (member == null) {
+            logger.warning("PcapSetFanout:PcapOpenLive(): " + errbuf.toString());
+            return;
+        }
+        assert PcapFileno(pcap) >= 0;
+        assert PcapFileno(member) >= 0;
+        int groupId = (int) (System.nanoTime() & 0xffff);
+        try {
+            PcapSetFanout(pcap, groupId, PcapFanoutMode.HASH.getValue());
+            PcapSetFanout(member, groupId, PcapFanoutMode.HASH.getValue());
+        } catch (NativeException e) {
+            logger.warning("PcapSetFanout:PcapSetFanout(): " + e.getMessage());
+            PcapClose(member);
+            return;
+        }
+        try {
+            assert PcapSetNonBlock(pcap, 1, errbuf) == OK;
+            assert PcapSetNonBlock(member, 1, errbuf) == OK;
+            assert PcapDispatch(pcap, -1, callback, null) >= 0;
+            assert PcapDispatch(member, -1, callback, null) >= 0;
+        } finally {
+            PcapSetNonBlock(pcap, 0, errbuf); // shared handle is used by the next tests
+            PcapClose(member);
+        }
+    }
+
+    @Test
+    public void Test42_PacketRing() throws Exception {
+        if (source == null || !Platforms.isLinux()) {
+            return;
+        }
+        final PacketRing ring;
+        try {
+            ring = PacketRing.builder().source(source).blockSize(1 << 16).blockCount(4).blockTimeout(10).build();
+        } catch (NativeException e) {
+            logger.warning("PacketRing:build(): " + e.getMessage());
+            return;
+        }
+        assert !ring.isClosed();
+        final AtomicInteger packets = new AtomicInteger();
+        Thread breaker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(500);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                ring.breakLoop();
+            }
+        });
+        breaker.start();
+        int result = ring.loop(-1, new PacketBlockHandler<String>() {
+            @Override
+            public void nextBlock(String user, PacketBlock block) {
+                while (block.next()) {
+                    assert block.getCapLen() <= block.getLen();
+                    packets.incrementAndGet();
+                }
+            }
+        }, null);
+        breaker.join();
+        assert result == -2;
+        ring.close();
+        assert ring.isClosed();
+        try {
+            ring.loop(1, callback0, null);
+            assert false;
+        } catch (PacketRingCloseException e) {
+            assert true;
+        }
+    }
+
+    @Test
+    public void Test43_PcapOpenOfflineRepeatedPcapDispatchOne() {
+        int expected = -1;
+        for (int i = 0; i < 100; i++) {
+            Pcap offline = PcapOpenOffline(resourceDumpFile, errbuf);
+            if (offline == null) {
+                logger.warning("PcapOpenOfflineRepeatedPcapDispatchOne:PcapOpenOffline(): " + errbuf.toString());
+                return;
+            }
+            int packets = 0;
+            while (PcapDispatch(offline, 1, callback, null) == 1) {
+                packets++;
+            }
+            PcapClose(offline);
+            assert expected < 0 || expected == packets;
+            expected = packets;
+        }
+        assert expected > 0;
+    }
+
+    @Test
+    public void Test44_PcapFileReaderMatchesPcapOpenOffline() throws IOException {
+        Pcap offline = PcapOpenOffline(resourceDumpFile, errbuf);
+        if (offline == null) {
+            logger.warning("PcapFileReaderMatchesPcapOpenOffline:PcapOpenOffline(): " + errbuf.toString());
+            return;
+        }
+        final List<PcapPktHdr> expected = new ArrayList<PcapPktHdr>();
+        PcapLoop(offline, -1, new PcapHandler<String>() {
+            @Override
+            public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                expected.add(h.copy());
+            }
+        }, null);
+        int dataLink = PcapDataLink(offline);
+        int snaplen = PcapSnapshot(offline);
+        PcapClose(offline);
+        PcapFileReader reader = PcapFileReader.open(resourceDumpFile);
+        try {
+            assert reader.getDataLinkType().getValue() == dataLink;
+            assert reader.getSnaplen() == snaplen;
+            PcapPktHdr h = new PcapPktHdr();
+            for (PcapPktHdr e : expected) {
+                assert reader.next(h) != null;
+                assert h.getCapLen() == e.getCapLen();
+                assert h.getLen() == e.getLen();
+                assert h.getTvSec() == e.getTvSec();
+                assert h.getTvUsec() == e.getTvUsec();
+            }
+            assert reader.next(h) == null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void Test45_PacketRingSetFilterAndCloseDuringLoop() throws Exception {
+        if (source == null || !Platforms.isLinux()) {
+            return;
+        }
+        final PacketRing ring;
+        try {
+            ring = PacketRing.builder().source(source).blockSize(1 << 16).blockCount(4).blockTimeout(10).build();
+        } catch (NativeException e) {
+            logger.warning("PacketRing:build(): " + e.getMessage());
+            return;
+        }
+        if ((resultCode = PcapCompileNoPcap(snaplen, DataLinkType.EN10MB.getValue(),
+                bpfProgram, filter, optimize, maskp.toInt())) != OK) {
+            logger.warning("PacketRingSetFilterAndCloseDuringLoop:PcapCompileNoPcap(): " + errbuf.toString());
+            ring.close();
+            return;
+        }
+        ring.setFilter(bpfProgram);
+        final int[] result = new int[1];
+        Thread loop = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                result[0] = ring.loop(-1, new RawPcapHandler<String>() {
+                    @Override
+                    public void nextPacket(String user, int capLen, int len, int tvSec, long tvUsec, long memoryAddress) {
+                        try {
+                            Thread.sleep(10); // Keep the block in use while the ring is closed
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                        assert capLen <= len;
+                    }
+                }, null);
+            }
+        });
+        loop.start();
+        Thread.sleep(500);
+        ring.breakLoop();
+        ring.close();
+        assert ring.isClosed();
+        loop.join();
+        assert result[0] == -2;
+    }
+
     /**
      * Destroy.
      */
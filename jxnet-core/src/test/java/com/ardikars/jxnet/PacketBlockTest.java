@@ -0,0 +1,82 @@
+package com.ardikars.jxnet;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PacketBlockTest {
+
+    private static final int FIRST = 48;
+    private static final int SECOND = 128;
+
+    private ByteBuffer block() {
+        ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.nativeOrder());
+        buffer.putInt(12, 2); // number of packets
+        buffer.putInt(16, FIRST);
+        buffer.putInt(20, 200);
+        buffer.putLong(24, 7L);
+        packet(buffer, FIRST, SECOND - FIRST, 10, 5000, 60, 60);
+        packet(buffer, SECOND, 0, 11, 1999999, 40, 1514);
+        return buffer;
+    }
+
+    private static void packet(ByteBuffer buffer, int offset, int next, int sec, int nsec, int snaplen, int len) {
+        buffer.putInt(offset, next);
+        buffer.putInt(offset + 4, sec);
+        buffer.putInt(offset + 8, nsec);
+        buffer.putInt(offset + 12, snaplen);
+        buffer.putInt(offset + 16, len);
+        buffer.putShort(offset + 24, (short) 64);
+    }
+
+    @Test
+    public void cursorTest() {
+        PacketBlock block = new PacketBlock();
+        block.set(3, block(), 1000L);
+        assert block.getIndex() == 3;
+        assert block.getPacketCount() == 2;
+        assert block.getBlockLength() == 200;
+        assert block.getSequenceNumber() == 7L;
+
+        assert block.next();
+        assert block.getRemaining() == 1;
+        assert block.getTvSec() == 10;
+        assert block.getTvUsec() == 5;
+        assert block.getCapLen() == 60;
+        assert block.getLen() == 60;
+        assert block.getPacketOffset() == FIRST + 64;
+        assert block.getPacketAddress() == 1000L + FIRST + 64;
+
+        assert block.next();
+        assert block.getRemaining() == 0;
+        PcapPktHdr pktHdr = block.header(new PcapPktHdr());
+        assert pktHdr.getCapLen() == 40;
+        assert pktHdr.getLen() == 1514;
+        assert pktHdr.getTvSec() == 11;
+        assert pktHdr.getTvUsec() == 1999;
+        assert block.getPacketOffset() == SECOND + 64;
+        assert !block.next();
+
+        block.reset();
+        assert block.next();
+        assert block.getTvSec() == 10;
+    }
+
+    @Test
+    public void emptyBlockTest() {
+        PacketBlock block = new PacketBlock();
+        ByteBuffer buffer = ByteBuffer.allocate(64).order(ByteOrder.nativeOrder());
+        buffer.putInt(16, FIRST);
+        block.set(0, buffer, 0L);
+        assert block.getPacketCount() == 0;
+        assert !block.next();
+    }
+
+}
@@ -0,0 +1,116 @@
+package com.ardikars.jxnet;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PacketBufferPoolTest {
+
+    private final PcapPktHdr header = new PcapPktHdr(4, 60, 1000, 2000L);
+
+    private final ByteBuffer bytes = ByteBuffer.allocateDirect(4).put(new byte[] {1, 2, 3, 4});
+
+    @Test
+    public void copyTest() {
+        bytes.flip();
+        PacketBufferPool pool = new PacketBufferPool.Builder().poolSize(2).slabSize(3).build();
+        PacketBuffer packet = pool.copyOf(header, bytes);
+        assert packet.getHeader().equals(header);
+        assert packet.getBuffer().position() == 0;
+        assert packet.getBuffer().limit() == 3; // truncated
+        assert packet.getBuffer().get(2) == 3;
+        assert bytes.position() == 0 && bytes.limit() == 4;
+        assert pool.getAvailable() == 1;
+        assert packet.references() == 1;
+        assert !packet.retain().release();
+        assert packet.release();
+        assert pool.getAvailable() == 2;
+        try {
+            packet.release();
+            assert false;
+        } catch (IllegalStateException e) {
+            assert packet.references() == 0;
+        }
+    }
+
+    @Test
+    public void copyRawTest() {
+        if (!MappedFileWindow.isCopyMemorySupported()) {
+            return;
+        }
+        PacketBufferPool pool = new PacketBufferPool.Builder().poolSize(1).slabSize(3).build();
+        PacketBuffer packet = pool.copyOf(4, 60, 1000, 2000L, MappedFileWindow.address(bytes));
+        assert packet.getHeader().equals(header);
+        assert packet.getBuffer().position() == 0;
+        assert packet.getBuffer().limit() == 3; // truncated
+        assert packet.getBuffer().get(0) == 1 && packet.getBuffer().get(2) == 3;
+        assert packet.release();
+    }
+
+    @Test
+    public void exhaustionPolicyTest() {
+        bytes.flip();
+        PacketBufferPool drop = new PacketBufferPool.Builder().poolSize(1).slabSize(4)
+                .exhaustionPolicy(PacketBufferPool.ExhaustionPolicy.DROP).build();
+        PacketBuffer first = drop.copyOf(header, bytes);
+        assert drop.copyOf(header, bytes) == null;
+        assert drop.getDropped() == 1;
+        first.release();
+        assert drop.copyOf(header, bytes) == first;
+
+        PacketBufferPool allocate = new PacketBufferPool.Builder().poolSize(1).slabSize(4)
+                .exhaustionPolicy(PacketBufferPool.ExhaustionPolicy.ALLOCATE).build();
+        allocate.copyOf(header, bytes);
+        PacketBuffer unpooled = allocate.copyOf(header, bytes);
+        assert unpooled.getIndex() == -1;
+        assert unpooled.getBuffer().get(3) == 4;
+        assert allocate.getAllocated() == 1;
+        assert unpooled.release();
+        assert allocate.getAvailable() == 0;
+    }
+
+    @Test
+    public void concurrentTest() throws InterruptedException {
+        final PacketBufferPool pool = new PacketBufferPool.Builder().poolSize(8).slabSize(64).build();
+        final int threads = 4;
+        final int iterations = 100000;
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int i = 0; i < threads; i++) {
+            final byte value = (byte) i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    ByteBuffer source = ByteBuffer.allocateDirect(64);
+                    while (source.hasRemaining()) {
+                        source.put(value);
+                    }
+                    source.flip();
+                    for (int j = 0; j < iterations; j++) {
+                        PacketBuffer packet = pool.copyOf(header, source);
+                        ByteBuffer buffer = packet.getBuffer();
+                        for (int k = 0; k < buffer.limit(); k++) {
+                            if (buffer.get(k) != value) {
+                                failures.incrementAndGet();
+                            }
+                        }
+                        packet.release();
+                    }
+                    done.countDown();
+                }
+            }).start();
+        }
+        done.await();
+        assert failures.get() == 0;
+        assert pool.getAvailable() == 8;
+    }
+
+}
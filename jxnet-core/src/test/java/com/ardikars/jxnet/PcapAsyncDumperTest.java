@@ -0,0 +1,214 @@
+package com.ardikars.jxnet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PcapAsyncDumperTest {
+
+    private static class RecordingSink implements PcapAsyncDumper.Sink {
+
+        private final List<PcapPktHdr> headers = new ArrayList<PcapPktHdr>();
+        private final List<byte[]> packets = new ArrayList<byte[]>();
+        private int flushes;
+
+        @Override
+        public void dump(PcapPktHdr h, ByteBuffer sp) throws IOException {
+            assert sp.isDirect();
+            assert sp.capacity() == h.getCapLen();
+            byte[] bytes = new byte[sp.capacity()];
+            sp.get(bytes);
+            headers.add(h.copy());
+            packets.add(bytes);
+        }
+
+        @Override
+        public void flush() {
+            flushes++;
+        }
+
+    }
+
+    private static ByteBuffer packet(int i) {
+        ByteBuffer buffer = ByteBuffer.allocate(60 + i % 200);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) i);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static PcapPktHdr header(int i) {
+        return new PcapPktHdr(60 + i % 200, 1514, 1000 + i, i * 7L);
+    }
+
+    @Test
+    public void orderAndWrapTest() throws IOException {
+        RecordingSink sink = new RecordingSink();
+        PcapAsyncDumper dumper = PcapAsyncDumper.builder()
+                .sink(sink)
+                .capacity(4096)
+                .build();
+        int queued = 0;
+        for (int i = 0; i < 5000; i++) {
+            while (!dumper.dump(header(i), packet(i))) {
+                Thread.yield();
+            }
+            queued++;
+        }
+        dumper.close();
+        assert dumper.isClosed();
+        assert sink.headers.size() == queued;
+        assert dumper.getWritten() == queued;
+        assert dumper.getQueuedPackets() == 0;
+        assert dumper.getQueuedBytes() == 0;
+        for (int i = 0; i < queued; i++) {
+            assert sink.headers.get(i).equals(header(i));
+            for (byte b : sink.packets.get(i)) {
+                assert b == (byte) i;
+            }
+        }
+        assert sink.flushes >= 1;
+        assert dumper.getFlushes() == sink.flushes;
+        assert !dumper.dump(header(0), packet(0));
+    }
+
+    @Test
+    public void closeWhileDumpingTest() throws IOException, InterruptedException {
+        final RecordingSink sink = new RecordingSink();
+        final PcapAsyncDumper dumper = PcapAsyncDumper.builder()
+                .sink(sink)
+                .capacity(1 << 16)
+                .build();
+        final CountDownLatch started = new CountDownLatch(1);
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                ByteBuffer direct = ByteBuffer.allocateDirect(260);
+                for (int i = 0; !dumper.isClosed(); i++) {
+                    ByteBuffer heap = packet(i);
+                    ByteBuffer sp;
+                    if (i % 3 == 0) {
+                        direct.clear();
+                        direct.put(heap);
+                        sp = direct;
+                    } else if (i % 3 == 1) {
+                        sp = heap.asReadOnlyBuffer();
+                    } else {
+                        sp = heap;
+                    }
+                    dumper.dump(header(i), sp);
+                    if (i == 1000) {
+                        started.countDown();
+                    }
+                }
+            }
+        });
+        producer.start();
+        started.await();
+        dumper.close();
+        producer.join();
+        assert dumper.getWritten() == dumper.getEnqueued();
+        assert sink.headers.size() == dumper.getEnqueued();
+        for (int i = 0; i < sink.headers.size(); i++) {
+            byte expected = (byte) (sink.headers.get(i).getTvSec() - 1000);
+            for (byte b : sink.packets.get(i)) {
+                assert b == expected;
+            }
+        }
+    }
+
+    @Test
+    public void dropOnFullTest() throws IOException, InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void dump(PcapPktHdr h, ByteBuffer sp) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e.getMessage());
+                }
+                super.dump(h, sp);
+            }
+        };
+        PcapAsyncDumper dumper = PcapAsyncDumper.builder()
+                .sink(sink)
+                .capacity(1024)
+                .build();
+        int accepted = 0;
+        for (int i = 0; i < 100; i++) {
+            if (dumper.dump(header(i), packet(i))) {
+                accepted++;
+            }
+        }
+        assert accepted < 100;
+        assert dumper.getDropped() == 100 - accepted;
+        assert dumper.getEnqueued() == accepted;
+        assert dumper.getQueuedPackets() > 0;
+        release.countDown();
+        dumper.close();
+        assert sink.headers.size() == accepted;
+        assert dumper.getWrittenBytes() > 0;
+    }
+
+    @Test
+    public void groupCommitTest() throws IOException {
+        final CountDownLatch release = new CountDownLatch(1);
+        RecordingSink sink = new RecordingSink() {
+            @Override
+            public void dump(PcapPktHdr h, ByteBuffer sp) throws IOException {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e.getMessage());
+                }
+                super.dump(h, sp);
+            }
+        };
+        PcapAsyncDumper dumper = PcapAsyncDumper.builder()
+                .sink(sink)
+                .flushSize(1000)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            assert dumper.dump(header(i), packet(i));
+        }
+        release.countDown();
+        dumper.close();
+        assert sink.headers.size() == 1000;
+        // Packets are queued before the writer runs, so the sink is flushed once per flush size, plus once when the ring drains.
+        assert sink.flushes <= dumper.getWrittenBytes() / 1000 + 2;
+    }
+
+    @Test
+    public void sinkErrorTest() throws IOException {
+        PcapAsyncDumper dumper = PcapAsyncDumper.builder()
+                .sink(new RecordingSink() {
+                    @Override
+                    public void dump(PcapPktHdr h, ByteBuffer sp) throws IOException {
+                        throw new IOException("disk full");
+                    }
+                })
+                .build();
+        dumper.dump(header(0), packet(0));
+        try {
+            dumper.close();
+            assert false;
+        } catch (IOException e) {
+            assert e.getMessage().equals("disk full");
+        }
+        assert dumper.getWritten() == 0;
+        assert !dumper.dump(header(1), packet(1));
+    }
+
+}
@@ -0,0 +1,137 @@
+package com.ardikars.jxnet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PcapFileIndexTest {
+
+    private static final int SECONDS = 100;
+    private static final int PACKETS_PER_SECOND = 50;
+    private static final int START = 1500000000;
+    private static final long START_MICROS = START * 1000000L;
+
+    private static File savefile() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PcapFileReader.GLOBAL_HEADER_SIZE
+                + SECONDS * PACKETS_PER_SECOND * (PcapFileReader.RECORD_HEADER_SIZE + 100)).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(PcapFileReader.MAGIC_NANO);
+        buffer.putShort((short) 2);
+        buffer.putShort((short) 4);
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.putInt(65535);
+        buffer.putInt(1);
+        for (int i = 0; i < SECONDS * PACKETS_PER_SECOND; i++) {
+            int caplen = 40 + i % 60;
+            buffer.putInt(START + i / PACKETS_PER_SECOND);
+            buffer.putInt((i % PACKETS_PER_SECOND) * 20000000);
+            buffer.putInt(caplen);
+            buffer.putInt(caplen);
+            buffer.position(buffer.position() + caplen);
+        }
+        File file = File.createTempFile("jxnet", ".pcap");
+        file.deleteOnExit();
+        new File(file.getPath() + PcapFileIndex.FILE_EXTENSION).deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(buffer.array(), 0, buffer.position());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    @Test
+    public void buildTest() throws IOException {
+        File file = savefile();
+        PcapFileIndex index = PcapFileIndex.build(file.getPath(), PcapFileIndex.DEFAULT_INTERVAL);
+        assert index.size() == SECONDS;
+        assert index.getOffset(START_MICROS - 1) == PcapFileReader.GLOBAL_HEADER_SIZE;
+        assert index.getOffset(START_MICROS) == PcapFileReader.GLOBAL_HEADER_SIZE;
+        assert index.getOrdinal(START_MICROS + 10500000L) == 10 * PACKETS_PER_SECOND;
+        assert index.getLimit(START_MICROS + (SECONDS - 1) * 1000000L) == -1;
+
+        PcapFileReader reader = PcapFileReader.open(file.getPath());
+        try {
+            PcapPktHdr h = new PcapPktHdr();
+            for (int i = 0; i < 10 * PACKETS_PER_SECOND; i++) {
+                assert reader.next(h) != null;
+            }
+            assert reader.getPosition() == index.getOffset(START_MICROS + 10000000L);
+        } finally {
+            reader.close();
+        }
+        assert PcapFileIndex.load(file.getPath()).size() == SECONDS;
+    }
+
+    @Test
+    public void seekTest() throws IOException {
+        File file = savefile();
+        long from = START_MICROS + 10200000L;
+        long to = START_MICROS + 20000000L;
+        PcapFileReader reader = PcapFileReader.open(file.getPath(), from, to);
+        try {
+            PcapPktHdr h = new PcapPktHdr();
+            int count = 0;
+            while (reader.next(h) != null) {
+                long timestamp = (h.getTvSec() & 0xffffffffL) * 1000000L + h.getTvUsec();
+                assert timestamp >= from && timestamp <= to;
+                count++;
+            }
+            // 10.20 .. 10.98 (40 packets), 11 .. 19.98 (450 packets), 20.00 (1 packet)
+            assert count == 40 + 9 * PACKETS_PER_SECOND + 1;
+            assert reader.getPosition() <= reader.getLimit();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void writerTest() throws IOException {
+        File file = File.createTempFile("jxnet", PcapFileIndex.FILE_EXTENSION);
+        file.deleteOnExit();
+        PcapFileIndex.Writer writer = new PcapFileIndex.Writer(file.getPath(), 10L,
+                PcapFileReader.GLOBAL_HEADER_SIZE, PcapTimestampPrecision.NANO);
+        try {
+            writer.add(1, 5000, 10);   // bucket 1000000
+            writer.add(1, 9000, 10);   // same bucket
+            writer.add(1, 10000, 20);  // bucket 1000010
+            writer.add(1, 3000, 30);   // out of order, no entry
+            writer.add(1, 25000, 40);  // bucket 1000020
+        } finally {
+            writer.close();
+        }
+        assert writer.getPackets() == 5;
+        PcapFileIndex index = PcapFileIndex.read(file.getPath());
+        assert index.size() == 3;
+        assert index.getInterval() == 10L;
+        assert index.getOffset(1000019L) == PcapFileReader.GLOBAL_HEADER_SIZE + 2 * 26;
+        assert index.getOrdinal(1000019L) == 2;
+        assert index.getOffset(1000025L) == PcapFileReader.GLOBAL_HEADER_SIZE + 2 * 26 + 36 + 46;
+        assert index.getLimit(1000000L) == PcapFileReader.GLOBAL_HEADER_SIZE + 2 * 26;
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownFormatTest() throws IOException {
+        File file = File.createTempFile("jxnet", PcapFileIndex.FILE_EXTENSION);
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(new byte[32]);
+        } finally {
+            out.close();
+        }
+        PcapFileIndex.read(file.getPath());
+    }
+
+}
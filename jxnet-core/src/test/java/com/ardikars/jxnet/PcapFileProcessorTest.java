@@ -0,0 +1,151 @@
+package com.ardikars.jxnet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PcapFileProcessorTest {
+
+    private static final int PACKETS = 2000;
+
+    /**
+     * Every third payload starts with a copy of its own record header, so resync has to skip fake boundaries.
+     */
+    private static File savefile() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(PcapFileReader.GLOBAL_HEADER_SIZE
+                + PACKETS * (PcapFileReader.RECORD_HEADER_SIZE + 200)).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(PcapFileReader.MAGIC_MICRO);
+        buffer.putShort((short) 2);
+        buffer.putShort((short) 4);
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.putInt(65535);
+        buffer.putInt(1);
+        for (int i = 0; i < PACKETS; i++) {
+            int caplen = 20 + (i * 7) % 180;
+            int copies = i % 3 == 0 ? 2 : 1;
+            for (int copy = 0; copy < copies; copy++) {
+                buffer.putInt(1500000000 + i);
+                buffer.putInt(i % 1000000);
+                buffer.putInt(caplen);
+                buffer.putInt(caplen + 10);
+            }
+            for (int j = copies == 2 ? 16 : 0; j < caplen; j++) {
+                buffer.put((byte) j);
+            }
+        }
+        File file = File.createTempFile("jxnet", ".pcap");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(buffer.array(), 0, buffer.position());
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static final PcapChunkHandler<List<Integer>> HANDLER = new PcapChunkHandler<List<Integer>>() {
+        @Override
+        public List<Integer> initialValue(int chunk) {
+            return new ArrayList<Integer>();
+        }
+
+        @Override
+        public List<Integer> merge(List<Integer> left, List<Integer> right) {
+            left.addAll(right);
+            return left;
+        }
+
+        @Override
+        public void nextPacket(List<Integer> user, int capLen, int len, int tvSec, long tvUsec, long memoryAddress) {
+            assert len == capLen + 10;
+            assert memoryAddress != 0;
+            user.add(tvSec - 1500000000);
+        }
+    };
+
+    private static void process(File file, int parallelism, long chunkSize) throws Exception {
+        PcapFileProcessor processor = PcapFileProcessor.builder()
+                .fileName(file.getPath())
+                .parallelism(parallelism)
+                .chunkSize(chunkSize)
+                .build();
+        List<Integer> packets = processor.process(HANDLER);
+        assert packets.size() == PACKETS;
+        for (int i = 0; i < PACKETS; i++) {
+            assert packets.get(i) == i;
+        }
+    }
+
+    @Test
+    public void singleChunkTest() throws Exception {
+        if (!PcapFileReader.isMemoryAddressSupported()) {
+            return;
+        }
+        process(savefile(), 1, PcapFileProcessor.DEFAULT_CHUNK_SIZE);
+    }
+
+    @Test
+    public void manyChunksTest() throws Exception {
+        if (!PcapFileReader.isMemoryAddressSupported()) {
+            return;
+        }
+        File file = savefile();
+        process(file, 4, 997);
+        process(file, 3, 10000);
+        process(file, 8, 64);
+    }
+
+    @Test
+    public void resyncTest() throws IOException {
+        File file = savefile();
+        PcapFileReader reader = PcapFileReader.open(file.getPath());
+        try {
+            assert reader.resync(0) == PcapFileReader.GLOBAL_HEADER_SIZE;
+            long boundary = PcapFileReader.GLOBAL_HEADER_SIZE;
+            for (int i = 0; i < 10; i++) {
+                long next = boundary + PcapFileReader.RECORD_HEADER_SIZE + 20 + (i * 7) % 180;
+                assert reader.resync(boundary + 1) == next;
+                boundary = next;
+            }
+            assert reader.resync(reader.getSize() - 1) == reader.getSize();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void limitTest() throws IOException {
+        File file = savefile();
+        PcapFileReader reader = PcapFileReader.open(file.getPath());
+        try {
+            long start = reader.resync(5000);
+            long end = reader.resync(9000);
+            reader.setPosition(start);
+            reader.setLimit(end);
+            PcapPktHdr h = new PcapPktHdr();
+            int count = 0;
+            while (reader.next(h) != null) {
+                count++;
+            }
+            assert count > 0;
+            assert reader.getPosition() == end;
+        } finally {
+            reader.close();
+        }
+    }
+
+}
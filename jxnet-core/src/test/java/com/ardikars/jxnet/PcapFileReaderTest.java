@@ -0,0 +1,194 @@
+package com.ardikars.jxnet;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PcapFileReaderTest {
+
+    private static final int PACKETS = 10;
+
+    private static File savefile(ByteOrder order, int magic, int packets, int truncate) throws IOException {
+        int size = PcapFileReader.GLOBAL_HEADER_SIZE;
+        for (int i = 0; i < packets; i++) {
+            size += PcapFileReader.RECORD_HEADER_SIZE + 60 + i;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(order);
+        buffer.putInt(magic);
+        buffer.putShort((short) 2);
+        buffer.putShort((short) 4);
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.putInt(65535);
+        buffer.putInt(1);
+        for (int i = 0; i < packets; i++) {
+            buffer.putInt(1000 + i);
+            buffer.putInt(magic == PcapFileReader.MAGIC_NANO ? 5000 * i : 5 * i);
+            buffer.putInt(60 + i);
+            buffer.putInt(1514);
+            for (int j = 0; j < 60 + i; j++) {
+                buffer.put((byte) i);
+            }
+        }
+        File file = File.createTempFile("jxnet", ".pcap");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(buffer.array(), 0, size - truncate);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void read(ByteOrder order, int magic, int windowSize) throws IOException {
+        File file = savefile(order, magic, PACKETS, 0);
+        PcapFileReader reader = PcapFileReader.open(file.getPath(), windowSize, PcapTimestampPrecision.MICRO);
+        try {
+            assert reader.getByteOrder() == order;
+            assert reader.isSwapped() == (order != ByteOrder.nativeOrder());
+            assert reader.getMajorVersion() == 2;
+            assert reader.getMinorVersion() == 4;
+            assert reader.getSnaplen() == 65535;
+            assert reader.getDataLinkType() == DataLinkType.EN10MB;
+            final List<PcapPktHdr> headers = new ArrayList<PcapPktHdr>();
+            int result = reader.loop(-1, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                    int i = headers.size();
+                    assert bytes.remaining() == 60 + i;
+                    assert bytes.isReadOnly();
+                    while (bytes.hasRemaining()) {
+                        assert bytes.get() == (byte) i;
+                    }
+                    headers.add(h);
+                }
+            }, null);
+            assert result == 0;
+            assert headers.size() == PACKETS;
+            for (int i = 0; i < PACKETS; i++) {
+                PcapPktHdr h = headers.get(i);
+                assert h.getCapLen() == 60 + i;
+                assert h.getLen() == 1514;
+                assert h.getTvSec() == 1000 + i;
+                assert h.getTvUsec() == 5 * i;
+            }
+            assert reader.getPosition() == reader.getSize();
+        } finally {
+            reader.close();
+        }
+        assert reader.isClosed();
+    }
+
+    @Test
+    public void bigEndianMicroTest() throws IOException {
+        read(ByteOrder.BIG_ENDIAN, PcapFileReader.MAGIC_MICRO, PcapFileReader.DEFAULT_WINDOW_SIZE);
+    }
+
+    @Test
+    public void littleEndianNanoTest() throws IOException {
+        read(ByteOrder.LITTLE_ENDIAN, PcapFileReader.MAGIC_NANO, PcapFileReader.DEFAULT_WINDOW_SIZE);
+    }
+
+    @Test
+    public void smallWindowTest() throws IOException {
+        read(ByteOrder.LITTLE_ENDIAN, PcapFileReader.MAGIC_MICRO, 100);
+        read(ByteOrder.BIG_ENDIAN, PcapFileReader.MAGIC_NANO, 128);
+    }
+
+    @Test
+    public void nanoPrecisionTest() throws IOException {
+        File file = savefile(ByteOrder.nativeOrder(), PcapFileReader.MAGIC_MICRO, PACKETS, 0);
+        PcapFileReader reader = PcapFileReader.open(file.getPath(), 4096, PcapTimestampPrecision.NANO);
+        try {
+            assert reader.getFileTimestampPrecision() == PcapTimestampPrecision.MICRO;
+            PcapPktHdr h = new PcapPktHdr();
+            assert reader.next(h) != null;
+            assert reader.next(h) != null;
+            assert h.getTvUsec() == 5000;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void dispatchAndNextExTest() throws IOException {
+        File file = savefile(ByteOrder.nativeOrder(), PcapFileReader.MAGIC_MICRO, PACKETS, 0);
+        PcapFileReader reader = PcapFileReader.open(file.getPath());
+        try {
+            final int[] count = new int[1];
+            PcapHandler<String> callback = new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                    count[0]++;
+                }
+            };
+            assert reader.dispatch(3, callback, null) == 3;
+            PcapPktHdr h = new PcapPktHdr();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(128);
+            assert reader.nextEx(h, buffer) == 1;
+            assert buffer.position() == 63;
+            assert h.getCapLen() == 63;
+            assert reader.dispatch(-1, callback, null) == PACKETS - 4;
+            assert count[0] == PACKETS - 1;
+            assert reader.nextEx(h, buffer) == -2;
+            assert reader.next(h) == null;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void breakLoopTest() throws IOException {
+        File file = savefile(ByteOrder.nativeOrder(), PcapFileReader.MAGIC_MICRO, PACKETS, 0);
+        final PcapFileReader reader = PcapFileReader.open(file.getPath());
+        try {
+            final int[] count = new int[1];
+            int result = reader.loop(-1, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                    if (++count[0] == 2) {
+                        reader.breakLoop();
+                    }
+                }
+            }, null);
+            assert result == -2;
+            assert count[0] == 2;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void truncatedTest() throws IOException {
+        File file = savefile(ByteOrder.nativeOrder(), PcapFileReader.MAGIC_MICRO, 2, 10);
+        PcapFileReader reader = PcapFileReader.open(file.getPath());
+        try {
+            PcapPktHdr h = new PcapPktHdr();
+            assert reader.next(h) != null;
+            assert reader.nextEx(h, ByteBuffer.allocate(128)) == -1;
+            assert !reader.getErr().isEmpty();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownMagicTest() throws IOException {
+        File file = savefile(ByteOrder.nativeOrder(), 0x0a0d0d0a, 1, 0);
+        PcapFileReader.open(file.getPath()).close();
+    }
+
+}
@@ -0,0 +1,203 @@
+package com.ardikars.jxnet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PcapFileWriterTest {
+
+    private static final int PACKETS = 1000;
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("jxnet", ".pcap");
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static int caplen(int i) {
+        return 1 + (i * 37) % 1600;
+    }
+
+    private static PcapPktHdr header(int i) {
+        return new PcapPktHdr(caplen(i), caplen(i) + 4, 1500000000 + i, i * 1000L);
+    }
+
+    private static ByteBuffer packet(int i, boolean direct) {
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(caplen(i) + 3) : ByteBuffer.allocate(caplen(i) + 3);
+        buffer.put((byte) -1);
+        while (buffer.position() < caplen(i) + 1) {
+            buffer.put((byte) (i + buffer.position()));
+        }
+        buffer.position(1);
+        return buffer;
+    }
+
+    private static void verify(File file, PcapTimestampPrecision precision, int packets) throws IOException {
+        PcapFileReader reader = PcapFileReader.open(file.getPath(), PcapFileReader.DEFAULT_WINDOW_SIZE, precision);
+        final List<PcapPktHdr> headers = new ArrayList<PcapPktHdr>();
+        try {
+            assert reader.getByteOrder() == ByteOrder.nativeOrder();
+            assert reader.getDataLinkType() == DataLinkType.EN10MB;
+            assert reader.getSnaplen() == 2048;
+            assert reader.getFileTimestampPrecision() == precision;
+            assert reader.loop(-1, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                    int i = headers.size();
+                    assert h.equals(header(i));
+                    assert bytes.remaining() == caplen(i);
+                    for (int j = 1; j <= caplen(i); j++) {
+                        assert bytes.get() == (byte) (i + j);
+                    }
+                    headers.add(h.copy());
+                }
+            }, null) == 0;
+        } finally {
+            reader.close();
+        }
+        assert headers.size() == packets;
+        long size = PcapFileReader.GLOBAL_HEADER_SIZE;
+        for (int i = 0; i < packets; i++) {
+            size += PcapFileReader.RECORD_HEADER_SIZE + caplen(i);
+        }
+        assert file.length() == size;
+    }
+
+    @Test
+    public void channelTest() throws IOException {
+        File file = tempFile();
+        // Buffer is smaller than the largest packets.
+        PcapFileWriter writer = PcapFileWriter.open(file.getPath(), DataLinkType.EN10MB, 2048,
+                PcapTimestampPrecision.MICRO, 1024);
+        try {
+            for (int i = 0; i < PACKETS; i++) {
+                ByteBuffer data = packet(i, i % 2 == 0);
+                writer.write(header(i), data);
+                assert data.position() == 1;
+            }
+            assert writer.getPackets() == PACKETS;
+            assert !writer.isMapped();
+        } finally {
+            writer.close();
+        }
+        assert writer.isClosed();
+        assert writer.getPosition() == file.length();
+        verify(file, PcapTimestampPrecision.MICRO, PACKETS);
+    }
+
+    @Test
+    public void mappedTest() throws IOException {
+        File file = tempFile();
+        PcapFileWriter writer = PcapFileWriter.openMapped(file.getPath(), DataLinkType.EN10MB, 2048,
+                PcapTimestampPrecision.NANO, 1 << 16);
+        try {
+            for (int i = 0; i < PACKETS; i++) {
+                writer.write(header(i), packet(i, false));
+            }
+            assert writer.isMapped();
+        } finally {
+            writer.close();
+        }
+        verify(file, PcapTimestampPrecision.NANO, PACKETS);
+    }
+
+    @Test
+    public void rawTest() throws IOException {
+        if (!MappedFileWindow.isCopyMemorySupported()) {
+            return;
+        }
+        for (int mode = 0; mode < 2; mode++) {
+            File file = tempFile();
+            PcapFileWriter writer = mode == 0
+                    ? PcapFileWriter.open(file.getPath(), DataLinkType.EN10MB, 2048, PcapTimestampPrecision.MICRO, 1024)
+                    : PcapFileWriter.openMapped(file.getPath(), DataLinkType.EN10MB, 2048, PcapTimestampPrecision.MICRO, 1 << 16);
+            try {
+                for (int i = 0; i < PACKETS; i++) {
+                    ByteBuffer data = packet(i, true);
+                    PcapPktHdr h = header(i);
+                    writer.write(h.getCapLen(), h.getLen(), h.getTvSec(), h.getTvUsec(),
+                            MappedFileWindow.address(data) + 1);
+                }
+            } finally {
+                writer.close();
+            }
+            verify(file, PcapTimestampPrecision.MICRO, PACKETS);
+        }
+    }
+
+    @Test
+    public void batchTest() throws IOException {
+        for (int mode = 0; mode < 2; mode++) {
+            File file = tempFile();
+            PcapFileWriter writer = mode == 0
+                    ? PcapFileWriter.open(file.getPath(), DataLinkType.EN10MB, 2048, PcapTimestampPrecision.MICRO, 1024)
+                    : PcapFileWriter.openMapped(file.getPath(), DataLinkType.EN10MB, 2048, PcapTimestampPrecision.MICRO, 1 << 16);
+            // Batches larger than MAX_GATHER_RECORDS, mixed with single packets.
+            int batch = PcapFileWriter.MAX_GATHER_RECORDS + 89;
+            ByteBuffer headers = ByteBuffer.allocateDirect(batch * PcapBatchHandler.HEADER_SIZE).order(ByteOrder.nativeOrder());
+            ByteBuffer packets = ByteBuffer.allocateDirect(batch * 1600);
+            try {
+                int i = 0;
+                writer.write(header(i), packet(i, false));
+                i++;
+                while (i < PACKETS) {
+                    int count = Math.min(batch, PACKETS - i);
+                    int offset = 0;
+                    for (int j = 0; j < count; j++) {
+                        PcapPktHdr h = header(i + j);
+                        int index = j * PcapBatchHandler.HEADER_SIZE;
+                        headers.putInt(index + PcapBatchHandler.CAPLEN_OFFSET, h.getCapLen());
+                        headers.putInt(index + PcapBatchHandler.LEN_OFFSET, h.getLen());
+                        headers.putInt(index + PcapBatchHandler.TV_SEC_OFFSET, h.getTvSec());
+                        headers.putInt(index + PcapBatchHandler.DATA_OFFSET, offset);
+                        headers.putLong(index + PcapBatchHandler.TV_USEC_OFFSET, h.getTvUsec());
+                        packets.position(offset);
+                        packets.put(packet(i + j, false));
+                        offset += h.getCapLen();
+                    }
+                    packets.clear();
+                    writer.write(count, headers, packets);
+                    i += count;
+                }
+            } finally {
+                writer.close();
+            }
+            verify(file, PcapTimestampPrecision.MICRO, PACKETS);
+        }
+    }
+
+    @Test
+    public void gatherTest() throws IOException {
+        File file = tempFile();
+        PcapFileWriter writer = PcapFileWriter.open(file.getPath(), DataLinkType.EN10MB, 2048,
+                PcapTimestampPrecision.MICRO, 1024);
+        PcapPktHdr[] headers = new PcapPktHdr[PACKETS];
+        ByteBuffer[] packets = new ByteBuffer[PACKETS];
+        for (int i = 0; i < PACKETS; i++) {
+            headers[i] = header(i);
+            packets[i] = packet(i, i % 3 == 0);
+        }
+        try {
+            writer.write(headers[0], packets[0]);
+            writer.write(headers, packets, 1, PACKETS - 1);
+            for (ByteBuffer packet : packets) {
+                assert packet.position() == 1;
+            }
+        } finally {
+            writer.close();
+        }
+        verify(file, PcapTimestampPrecision.MICRO, PACKETS);
+    }
+
+}
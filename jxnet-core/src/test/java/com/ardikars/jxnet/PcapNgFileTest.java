@@ -0,0 +1,214 @@
+package com.ardikars.jxnet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PcapNgFileTest {
+
+    private static final int PACKETS = 100;
+
+    private static File tempFile() throws IOException {
+        File file = File.createTempFile("jxnet", ".pcapng");
+        file.deleteOnExit();
+        return file;
+    }
+
+    /**
+     * Second interface uses DOCSIS, data link types are resolved through {@link DataLinkType#valueOf(short)}
+     * which only knows registered types.
+     */
+    private static File write(int bufferSize, int packetSize) throws IOException {
+        File file = tempFile();
+        PcapNgFileWriter writer = PcapNgFileWriter.open(file.getPath(), bufferSize);
+        try {
+            assert writer.addInterface(DataLinkType.EN10MB, 65535, PcapTimestampPrecision.MICRO, "eth0") == 0;
+            assert writer.addInterface(DataLinkType.DOCSIS, 2048, PcapTimestampPrecision.NANO, null) == 1;
+            ByteBuffer data = ByteBuffer.allocate(packetSize + PACKETS);
+            for (int i = 0; i < PACKETS; i++) {
+                int caplen = packetSize + i;
+                data.clear();
+                for (int j = 0; j < caplen; j++) {
+                    data.put((byte) i);
+                }
+                data.flip();
+                long fraction = i % 2 == 0 ? 123456 : 123456789;
+                writer.write(i % 2, new PcapPktHdr(caplen, caplen + 1, 1500000000 + i, fraction), data);
+                assert data.position() == 0;
+            }
+        } finally {
+            writer.close();
+        }
+        assert writer.isClosed();
+        return file;
+    }
+
+    private static void read(File file, int packetSize) throws IOException {
+        final PcapNgFileReader reader = PcapNgFileReader.open(file.getPath(), 4096, PcapTimestampPrecision.NANO);
+        try {
+            assert reader.getByteOrder() == ByteOrder.nativeOrder();
+            assert reader.getMajorVersion() == 1;
+            assert reader.getInterfaces().size() == 2;
+            assert reader.getDataLinkType() == DataLinkType.EN10MB;
+            PcapNgInterface eth0 = reader.getInterface(0);
+            assert "eth0".equals(eth0.getName());
+            assert eth0.getTimestampPrecision() == PcapTimestampPrecision.MICRO;
+            PcapNgInterface sll = reader.getInterface(1);
+            assert sll.getName() == null;
+            assert sll.getSnaplen() == 2048;
+            assert sll.getDataLinkType() == DataLinkType.DOCSIS;
+            assert sll.getTimestampPrecision() == PcapTimestampPrecision.NANO;
+            final List<Integer> interfaceIds = new ArrayList<Integer>();
+            final List<PcapPktHdr> headers = new ArrayList<PcapPktHdr>();
+            assert reader.loop(-1, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                    int i = headers.size();
+                    assert bytes.remaining() == h.getCapLen();
+                    while (bytes.hasRemaining()) {
+                        assert bytes.get() == (byte) i;
+                    }
+                    interfaceIds.add(reader.getInterfaceId());
+                    headers.add(h);
+                }
+            }, null) == 0;
+            assert headers.size() == PACKETS;
+            for (int i = 0; i < PACKETS; i++) {
+                PcapPktHdr h = headers.get(i);
+                assert interfaceIds.get(i) == i % 2;
+                assert h.getCapLen() == packetSize + i;
+                assert h.getLen() == packetSize + i + 1;
+                assert h.getTvSec() == 1500000000 + i;
+                assert h.getTvUsec() == (i % 2 == 0 ? 123456000 : 123456789);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void writeReadTest() throws IOException {
+        read(write(PcapNgFileWriter.DEFAULT_BUFFER_SIZE, 60), 60);
+    }
+
+    @Test
+    public void smallBufferTest() throws IOException {
+        // Packets larger than the write buffer are written directly.
+        read(write(256, 300), 300);
+    }
+
+    @Test
+    public void microPrecisionTest() throws IOException {
+        PcapNgFileReader reader = PcapNgFileReader.open(write(1024, 60).getPath());
+        try {
+            PcapPktHdr h = new PcapPktHdr();
+            assert reader.next(h) != null;
+            assert h.getTvUsec() == 123456;
+            assert reader.next(h) != null;
+            assert h.getTvUsec() == 123456;
+            assert reader.nextEx(h, ByteBuffer.allocate(256)) == 1;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Big endian section with binary timestamp resolution, a skipped block and a simple packet block.
+     */
+    @Test
+    public void bigEndianTest() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(256).order(ByteOrder.BIG_ENDIAN);
+        buffer.putInt(PcapNgFileReader.SECTION_HEADER_BLOCK).putInt(28).putInt(PcapNgFileReader.BYTE_ORDER_MAGIC)
+                .putShort((short) 1).putShort((short) 0).putLong(-1L).putInt(28);
+        buffer.putInt(PcapNgFileReader.INTERFACE_DESCRIPTION_BLOCK).putInt(32).putShort((short) 1).putShort((short) 0)
+                .putInt(64).putShort((short) 9).putShort((short) 1).put((byte) 0x94).put(new byte[3])
+                .putInt(0).putInt(32);
+        buffer.putInt(5).putInt(16).putInt(0).putInt(16); // interface statistics block, skipped
+        buffer.putInt(PcapNgFileReader.ENHANCED_PACKET_BLOCK).putInt(36).putInt(0)
+                .putInt(0).putInt((10 << 20) | (1 << 19)).putInt(4).putInt(4).putInt(0x01020304).putInt(36);
+        buffer.putInt(PcapNgFileReader.SIMPLE_PACKET_BLOCK).putInt(20).putInt(100).putInt(0x05060708).putInt(20);
+        File file = tempFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(buffer.array(), 0, buffer.position());
+        } finally {
+            out.close();
+        }
+        PcapNgFileReader reader = PcapNgFileReader.open(file.getPath());
+        try {
+            assert reader.getByteOrder() == ByteOrder.BIG_ENDIAN;
+            assert reader.getInterface(0).isBinaryTimestampResolution();
+            assert reader.getInterface(0).getTimestampExponent() == 20;
+            PcapPktHdr h = new PcapPktHdr();
+            ByteBuffer packet = reader.next(h);
+            assert h.getTvSec() == 10;
+            assert h.getTvUsec() == 500000;
+            assert packet.getInt(0) == 0x01020304;
+            packet = reader.next(h);
+            assert h.getCapLen() == 4;
+            assert h.getLen() == 100;
+            assert packet.getInt(0) == 0x05060708;
+            assert reader.next(h) == null;
+            assert reader.getErr().isEmpty();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void truncatedTest() throws IOException {
+        File source = write(1024, 60);
+        File file = tempFile();
+        byte[] bytes = new byte[(int) source.length() - 10];
+        FileInputStream in = new FileInputStream(source);
+        try {
+            assert in.read(bytes) == bytes.length;
+        } finally {
+            in.close();
+        }
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        PcapNgFileReader reader = PcapNgFileReader.open(file.getPath());
+        try {
+            assert reader.dispatch(-1, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                    // Count only.
+                }
+            }, null) == -1;
+            assert !reader.getErr().isEmpty();
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void unknownFormatTest() throws IOException {
+        File file = tempFile();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(ByteBuffer.allocate(24).putInt(PcapFileReader.MAGIC_MICRO).array());
+        } finally {
+            out.close();
+        }
+        PcapNgFileReader.open(file.getPath());
+    }
+
+}
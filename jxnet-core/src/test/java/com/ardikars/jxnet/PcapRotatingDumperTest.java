@@ -0,0 +1,270 @@
+package com.ardikars.jxnet;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PcapRotatingDumperTest {
+
+    private File directory;
+
+    /**
+     * Writes microsecond pcap files with plain Java, little endian.
+     */
+    private static class FileOutputFactory implements PcapRotatingDumper.OutputFactory {
+
+        private final List<String> opened = Collections.synchronizedList(new ArrayList<String>());
+        private volatile boolean closed;
+
+        @Override
+        public PcapRotatingDumper.Output open(String fileName, long preallocate) throws IOException {
+            final DataOutputStream out = new DataOutputStream(new FileOutputStream(fileName));
+            out.write(new byte[] { (byte) 0xd4, (byte) 0xc3, (byte) 0xb2, (byte) 0xa1, 2, 0, 4, 0 });
+            out.write(new byte[8]);
+            out.write(new byte[] { (byte) 0xff, (byte) 0xff, 0, 0, 1, 0, 0, 0 });
+            opened.add(fileName);
+            return new PcapRotatingDumper.Output() {
+                @Override
+                public void dump(PcapPktHdr h, ByteBuffer sp) throws IOException {
+                    out.writeInt(Integer.reverseBytes(h.getTvSec()));
+                    out.writeInt(Integer.reverseBytes((int) h.getTvUsec()));
+                    out.writeInt(Integer.reverseBytes(h.getCapLen()));
+                    out.writeInt(Integer.reverseBytes(h.getLen()));
+                    byte[] bytes = new byte[h.getCapLen()];
+                    sp.duplicate().get(bytes);
+                    out.write(bytes);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    out.flush();
+                }
+
+                @Override
+                public void close() throws IOException {
+                    out.close();
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+
+    }
+
+    @Before
+    public void before() throws IOException {
+        directory = File.createTempFile("jxnet", "");
+        assert directory.delete();
+        assert directory.mkdir();
+    }
+
+    @After
+    public void after() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private String fileName() {
+        return new File(directory, "capture.pcap").getPath();
+    }
+
+    private static PcapPktHdr header(int i, int second) {
+        return new PcapPktHdr(100, 100, second, i);
+    }
+
+    private static ByteBuffer packet(int i) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(100);
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) i);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static int countPackets(File file) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        try {
+            int count = 0;
+            long position = PcapRotatingDumper.FILE_HEADER_SIZE;
+            while (position < in.length()) {
+                in.seek(position + 8);
+                position += PcapRotatingDumper.RECORD_HEADER_SIZE + Integer.reverseBytes(in.readInt());
+                count++;
+            }
+            assert position == in.length();
+            return count;
+        } finally {
+            in.close();
+        }
+    }
+
+    private int countPackets() throws IOException {
+        int count = 0;
+        for (File file : directory.listFiles()) {
+            count += countPackets(file);
+        }
+        return count;
+    }
+
+    /**
+     * Wait until the rotator thread opened the next file, so the next rotation is not postponed.
+     */
+    private static void awaitOpened(FileOutputFactory factory, int files) throws InterruptedException {
+        while (factory.opened.size() < files) {
+            Thread.sleep(1);
+        }
+    }
+
+    @Test
+    public void sizeRotationTest() throws IOException, InterruptedException {
+        FileOutputFactory factory = new FileOutputFactory();
+        PcapRotatingDumper dumper = PcapRotatingDumper.builder()
+                .outputFactory(factory)
+                .fileName(fileName())
+                .maxFileSize(1000)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            awaitOpened(factory, (i + 7) / 8 + 1);
+            dumper.dump(header(i, 0), packet(i));
+        }
+        assert dumper.getCurrentFileName().equals(new File(directory, "capture-000013.pcap").getPath());
+        dumper.close();
+        assert dumper.isClosed();
+        assert factory.closed;
+        // 24 + 8 * 116 bytes per file, the preopened 14th file is deleted.
+        assert dumper.getRotations() == 12;
+        assert dumper.getLateRotations() == 0;
+        assert directory.listFiles().length == 13;
+        assert !new File(directory, "capture-000014.pcap").exists();
+        for (File file : directory.listFiles()) {
+            assert file.length() <= 1000;
+        }
+        assert countPackets() == 100;
+        assert dumper.getFileNames().size() == 13;
+        assert dumper.getFileNames().get(0).equals(new File(directory, "capture-000001.pcap").getPath());
+    }
+
+    @Test
+    public void durationRotationTest() throws IOException, InterruptedException {
+        FileOutputFactory factory = new FileOutputFactory();
+        PcapRotatingDumper dumper = PcapRotatingDumper.builder()
+                .outputFactory(factory)
+                .fileName(fileName())
+                .maxDuration(3)
+                .build();
+        for (int i = 0; i < 10; i++) {
+            awaitOpened(factory, (i + 2) / 3 + 1);
+            dumper.dump(header(i, 100 + i), packet(i));
+        }
+        dumper.close();
+        assert dumper.getRotations() == 3;
+        assert countPackets(new File(directory, "capture-000001.pcap")) == 3;
+        assert countPackets(new File(directory, "capture-000004.pcap")) == 1;
+        assert countPackets() == 10;
+    }
+
+    @Test
+    public void retentionTest() throws IOException, InterruptedException {
+        FileOutputFactory factory = new FileOutputFactory();
+        PcapRotatingDumper dumper = PcapRotatingDumper.builder()
+                .outputFactory(factory)
+                .fileName(fileName())
+                .maxFileSize(1000)
+                .maxFiles(3)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            awaitOpened(factory, (i + 7) / 8 + 1);
+            dumper.dump(header(i, 0), packet(i));
+        }
+        dumper.close();
+        assert dumper.getDeletedFiles() == 10;
+        assert directory.listFiles().length == 3;
+        assert dumper.getFileNames().get(0).equals(new File(directory, "capture-000011.pcap").getPath());
+        assert countPackets() == 100 - 10 * 8;
+
+        after();
+        before();
+        factory = new FileOutputFactory();
+        dumper = PcapRotatingDumper.builder()
+                .outputFactory(factory)
+                .fileName(fileName())
+                .maxFileSize(1000)
+                .maxTotalSize(2500)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            awaitOpened(factory, (i + 7) / 8 + 1);
+            dumper.dump(header(i, 0), packet(i));
+        }
+        dumper.close();
+        long total = 0;
+        for (File file : directory.listFiles()) {
+            total += file.length();
+        }
+        assert total <= 2500;
+        assert directory.listFiles().length == 3;
+    }
+
+    @Test
+    public void slowOpenTest() throws IOException, InterruptedException {
+        final CountDownLatch release = new CountDownLatch(1);
+        FileOutputFactory factory = new FileOutputFactory() {
+            @Override
+            public PcapRotatingDumper.Output open(String fileName, long preallocate) throws IOException {
+                if (fileName.endsWith("000002.pcap")) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException e) {
+                        throw new IOException(e.toString());
+                    }
+                }
+                return super.open(fileName, preallocate);
+            }
+        };
+        PcapRotatingDumper dumper = PcapRotatingDumper.builder()
+                .outputFactory(factory)
+                .fileName(fileName())
+                .maxFileSize(1000)
+                .build();
+        for (int i = 0; i < 20; i++) {
+            dumper.dump(header(i, 0), packet(i));
+        }
+        // The next file is not open, the writer keeps using the current one.
+        assert dumper.getRotations() == 0;
+        assert dumper.getLateRotations() == 12;
+        assert countPackets(new File(directory, "capture-000001.pcap")) <= 20;
+        release.countDown();
+        awaitOpened(factory, 2);
+        dumper.dump(header(20, 0), packet(20));
+        assert dumper.getRotations() == 1;
+        dumper.close();
+        assert countPackets(new File(directory, "capture-000001.pcap")) == 20;
+        assert countPackets(new File(directory, "capture-000002.pcap")) == 1;
+        assert countPackets() == 21;
+    }
+
+}
@@ -0,0 +1,77 @@
+package com.ardikars.jxnet;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PcapSendBufferTest {
+
+    private static ByteBuffer frame(int i) {
+        ByteBuffer frame = ByteBuffer.allocate(60 + i);
+        while (frame.hasRemaining()) {
+            frame.put((byte) i);
+        }
+        frame.flip();
+        return frame;
+    }
+
+    @Test
+    public void addTest() {
+        PcapSendBuffer buffer = PcapSendBuffer.allocate(256);
+        assert buffer.buffer().isDirect();
+        assert buffer.buffer().order() == ByteOrder.nativeOrder();
+        ByteBuffer frame = frame(0);
+        assert buffer.add(frame);
+        assert frame.position() == 0;
+        assert buffer.add(frame(1));
+        assert buffer.add(frame(2));
+        // 3 * 4 + 60 + 61 + 62 = 195, next frame doesn't fit.
+        assert buffer.size() == 195;
+        assert !buffer.add(frame(3));
+        assert buffer.count() == 3;
+        ByteBuffer bytes = buffer.buffer();
+        int offset = 0;
+        for (int i = 0; i < 3; i++) {
+            int length = bytes.getInt(offset);
+            assert length == 60 + i;
+            for (int j = 0; j < length; j++) {
+                assert bytes.get(offset + PcapSendBuffer.LENGTH_SIZE + j) == (byte) i;
+            }
+            offset += PcapSendBuffer.LENGTH_SIZE + length;
+        }
+    }
+
+    @Test
+    public void discardTest() {
+        PcapSendBuffer buffer = PcapSendBuffer.allocate(256);
+        for (int i = 0; i < 3; i++) {
+            assert buffer.add(frame(i));
+        }
+        buffer.discard(0);
+        assert buffer.count() == 3;
+        buffer.discard(2);
+        assert buffer.count() == 1;
+        assert buffer.size() == PcapSendBuffer.LENGTH_SIZE + 62;
+        assert buffer.buffer().getInt(0) == 62;
+        assert buffer.buffer().get(PcapSendBuffer.LENGTH_SIZE) == 2;
+        assert buffer.add(frame(3));
+        assert buffer.count() == 2;
+        buffer.discard(2);
+        assert buffer.count() == 0;
+        assert buffer.size() == 0;
+        try {
+            buffer.discard(1);
+            assert false;
+        } catch (IllegalArgumentException e) {
+            assert true;
+        }
+    }
+
+}
@@ -0,0 +1,285 @@
+package com.ardikars.jxnet;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.FixMethodOrder;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.junit.runners.MethodSorters;
+
+@RunWith(JUnit4.class)
+@FixMethodOrder(MethodSorters.NAME_ASCENDING)
+public class PcapStreamReaderTest {
+
+    private static final int PACKETS = 3000;
+
+    private static int length(int i) {
+        return 60 + (i * 7) % 1455;
+    }
+
+    private static byte[] savefile(ByteOrder order, int packets) {
+        int size = PcapFileReader.GLOBAL_HEADER_SIZE;
+        for (int i = 0; i < packets; i++) {
+            size += PcapFileReader.RECORD_HEADER_SIZE + length(i);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(order);
+        buffer.putInt(PcapFileReader.MAGIC_MICRO);
+        buffer.putShort((short) 2);
+        buffer.putShort((short) 4);
+        buffer.putInt(0);
+        buffer.putInt(0);
+        buffer.putInt(65535);
+        buffer.putInt(1);
+        for (int i = 0; i < packets; i++) {
+            buffer.putInt(1000 + i);
+            buffer.putInt(i % 1000000);
+            buffer.putInt(length(i));
+            buffer.putInt(length(i) + 4);
+            for (int j = 0; j < length(i); j++) {
+                buffer.put((byte) (i + j));
+            }
+        }
+        return buffer.array();
+    }
+
+    private static File write(byte[] bytes, String suffix, boolean gzip, boolean bgzf) throws IOException {
+        File file = File.createTempFile("jxnet", suffix);
+        file.deleteOnExit();
+        OutputStream out = new FileOutputStream(file);
+        if (gzip) {
+            out = new GZIPOutputStream(out);
+        } else if (bgzf) {
+            out = new BgzfOutputStream(out);
+        }
+        try {
+            out.write(bytes);
+        } finally {
+            out.close();
+        }
+        return file;
+    }
+
+    private static void read(File file, int parallelism) throws IOException {
+        PcapStreamReader reader = PcapStreamReader.open(file.getPath(), parallelism, PcapTimestampPrecision.MICRO);
+        try {
+            assert reader.getMajorVersion() == 2;
+            assert reader.getMinorVersion() == 4;
+            assert reader.getSnaplen() == 65535;
+            assert reader.getDataLinkType() == DataLinkType.EN10MB;
+            final int[] count = new int[1];
+            int result = reader.loop(-1, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                    int i = count[0]++;
+                    assert h.getTvSec() == 1000 + i;
+                    assert h.getTvUsec() == i;
+                    assert h.getCapLen() == length(i);
+                    assert h.getLen() == length(i) + 4;
+                    assert bytes.remaining() == length(i);
+                    assert bytes.isReadOnly();
+                    for (int j = 0; bytes.hasRemaining(); j++) {
+                        assert bytes.get() == (byte) (i + j);
+                    }
+                }
+            }, null);
+            assert result == 0;
+            assert count[0] == PACKETS;
+            assert reader.next(new PcapPktHdr()) == null;
+        } finally {
+            reader.close();
+        }
+        assert reader.isClosed();
+    }
+
+    @Test
+    public void plainTest() throws IOException {
+        read(write(savefile(ByteOrder.BIG_ENDIAN, PACKETS), ".pcap", false, false), 1);
+    }
+
+    @Test
+    public void gzipTest() throws IOException {
+        read(write(savefile(ByteOrder.LITTLE_ENDIAN, PACKETS), ".pcap.gz", true, false), 1);
+    }
+
+    @Test
+    public void bgzfTest() throws IOException {
+        File file = write(savefile(ByteOrder.LITTLE_ENDIAN, PACKETS), ".pcap.gz", false, true);
+        read(file, 1);
+        read(file, 4);
+    }
+
+    @Test
+    public void bgzfIsGzipTest() throws IOException {
+        byte[] bytes = savefile(ByteOrder.BIG_ENDIAN, PACKETS);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        BgzfOutputStream out = new BgzfOutputStream(compressed);
+        out.write(bytes, 0, 100);
+        out.flush();
+        out.write(bytes, 100, bytes.length - 100);
+        out.close();
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()));
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int n;
+        while ((n = in.read(buffer)) > 0) {
+            inflated.write(buffer, 0, n);
+        }
+        in.close();
+        assert Arrays.equals(bytes, inflated.toByteArray());
+    }
+
+    @Test
+    public void dispatchAndNextExTest() throws IOException {
+        byte[] bytes = savefile(ByteOrder.BIG_ENDIAN, 10);
+        PcapStreamReader reader = PcapStreamReader.open(new ByteArrayInputStream(bytes), PcapTimestampPrecision.NANO);
+        try {
+            final int[] count = new int[1];
+            int result = reader.dispatch(4, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                    assert h.getTvUsec() == count[0]++ * 1000L;
+                }
+            }, null);
+            assert result == 4;
+            PcapPktHdr h = new PcapPktHdr();
+            ByteBuffer data = ByteBuffer.allocateDirect(2048);
+            assert reader.nextEx(h, data) == 1;
+            assert h.getCapLen() == length(4);
+            assert data.position() == length(4);
+            assert data.get(0) == (byte) 4;
+            assert reader.dispatch(-1, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                }
+            }, null) == 5;
+            assert reader.nextEx(h, data) == -2;
+            assert reader.getPosition() == bytes.length;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void rawHandlerTest() throws IOException {
+        if (!PcapFileReader.isMemoryAddressSupported()) {
+            return;
+        }
+        PcapStreamReader reader = PcapStreamReader.open(
+                new ByteArrayInputStream(savefile(ByteOrder.LITTLE_ENDIAN, 10)), PcapTimestampPrecision.MICRO);
+        try {
+            final int[] count = new int[1];
+            assert reader.loop(-1, new RawPcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, int capLen, int len, int tvSec, long tvUsec, long memoryAddress) {
+                    assert capLen == length(count[0]++);
+                    assert memoryAddress != 0;
+                }
+            }, null) == 0;
+            assert count[0] == 10;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void breakLoopTest() throws IOException {
+        final PcapStreamReader reader = PcapStreamReader.open(
+                new ByteArrayInputStream(savefile(ByteOrder.BIG_ENDIAN, 10)), PcapTimestampPrecision.MICRO);
+        try {
+            int result = reader.loop(-1, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                    reader.breakLoop();
+                }
+            }, null);
+            assert result == -2;
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void truncatedTest() throws IOException {
+        byte[] bytes = savefile(ByteOrder.BIG_ENDIAN, 10);
+        PcapStreamReader reader = PcapStreamReader.open(
+                new ByteArrayInputStream(bytes, 0, bytes.length - 10), PcapTimestampPrecision.MICRO);
+        try {
+            int result = reader.loop(-1, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                }
+            }, null);
+            assert result == -1;
+            assert reader.getErr().startsWith("truncated dump file");
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void corruptedBgzfTest() throws IOException {
+        byte[] bytes = savefile(ByteOrder.BIG_ENDIAN, PACKETS);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        BgzfOutputStream out = new BgzfOutputStream(compressed, 0);
+        out.write(bytes);
+        out.close();
+        byte[] archive = compressed.toByteArray();
+        archive[archive.length / 2] ^= 0x55;
+        File file = File.createTempFile("jxnet", ".pcap.gz");
+        file.deleteOnExit();
+        FileOutputStream fos = new FileOutputStream(file);
+        try {
+            fos.write(archive);
+        } finally {
+            fos.close();
+        }
+        PcapStreamReader reader = PcapStreamReader.open(file.getPath(), 2, PcapTimestampPrecision.MICRO);
+        try {
+            reader.loop(-1, new PcapHandler<String>() {
+                @Override
+                public void nextPacket(String user, PcapPktHdr h, ByteBuffer bytes) {
+                }
+            }, null);
+            assert false;
+        } catch (IOException e) {
+            assert e.getMessage().startsWith("Corrupted BGZF member");
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void randomReadSizeTest() throws IOException {
+        byte[] bytes = new byte[200000];
+        new Random(7).nextBytes(bytes);
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        BgzfOutputStream out = new BgzfOutputStream(compressed);
+        out.write(bytes);
+        out.close();
+        BgzfInputStream in = new BgzfInputStream(new ByteArrayInputStream(compressed.toByteArray()), 3);
+        Random random = new Random(11);
+        byte[] buffer = new byte[1024];
+        int position = 0;
+        int n;
+        while ((n = in.read(buffer, 0, 1 + random.nextInt(buffer.length))) > 0) {
+            for (int i = 0; i < n; i++) {
+                assert buffer[i] == bytes[position++];
+            }
+        }
+        in.close();
+        assert position == bytes.length;
+    }
+
+}
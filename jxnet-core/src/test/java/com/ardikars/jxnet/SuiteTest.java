@@ -37,7 +37,21 @@ import org.junit.runners.Suite;
         PcapCodeTest.class,
         DatalinkTypeTest.class,
         BpfProgramTest.class,
-        PcapTest.class
+        PcapTest.class,
+        PacketBufferPoolTest.class,
+        PacketBlockTest.class,
+        PcapFileReaderTest.class,
+        PcapFileProcessorTest.class,
+        PcapFileIndexTest.class,
+        PcapNgFileTest.class,
+        PcapStreamReaderTest.class,
+        PcapAsyncDumperTest.class,
+        PcapRotatingDumperTest.class,
+        PcapFileWriterTest.class,
+        PcapSendBufferTest.class,
+        BpfInterpreterTest.class,
+        BpfCompilerTest.class,
+        BpfProgramCacheTest.class
 })
 public class SuiteTest {
 
@@ -21,6 +21,7 @@ public class ExceptionTest {
         FileCloseException fileCloseException = new FileCloseException();
         NativeException nativeException = new NativeException();
         OperationNotSupportedException operationNotSupportedException = new OperationNotSupportedException();
+        PacketRingCloseException packetRingCloseException = new PacketRingCloseException();
         PcapCloseException pcapCloseException = new PcapCloseException();
         PcapDumperCloseException pcapDumperCloseException = new PcapDumperCloseException();
         PlatformNotSupportedException platformNotSupportedException = new PlatformNotSupportedException();
@@ -32,6 +33,7 @@ public class ExceptionTest {
                 fileCloseException,
                 nativeException,
                 operationNotSupportedException,
+                packetRingCloseException,
                 pcapCloseException,
                 pcapDumperCloseException,
                 platformNotSupportedException,
@@ -48,6 +50,7 @@ public class ExceptionTest {
         FileCloseException fileCloseException = new FileCloseException(exception);
         NativeException nativeException = new NativeException(exception);
         OperationNotSupportedException operationNotSupportedException = new OperationNotSupportedException(exception);
+        PacketRingCloseException packetRingCloseException = new PacketRingCloseException(exception);
         PcapCloseException pcapCloseException = new PcapCloseException(exception);
         PcapDumperCloseException pcapDumperCloseException = new PcapDumperCloseException(exception);
         PlatformNotSupportedException platformNotSupportedException = new PlatformNotSupportedException(exception);
@@ -59,6 +62,7 @@ public class ExceptionTest {
                 fileCloseException,
                 nativeException,
                 operationNotSupportedException,
+                packetRingCloseException,
                 pcapCloseException,
                 pcapDumperCloseException,
                 platformNotSupportedException,
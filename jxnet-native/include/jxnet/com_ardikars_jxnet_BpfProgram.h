@@ -15,6 +15,22 @@ extern "C" {
 JNIEXPORT void JNICALL Java_com_ardikars_jxnet_BpfProgram_initBpfProgram
   (JNIEnv *, jobject);
 
+/*
+ * Class:     com_ardikars_jxnet_BpfProgram
+ * Method:    closeBpfProgram
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL Java_com_ardikars_jxnet_BpfProgram_closeBpfProgram
+  (JNIEnv *, jobject);
+
+/*
+ * Class:     com_ardikars_jxnet_BpfProgram
+ * Method:    getInstructions0
+ * Signature: ()[J
+ */
+JNIEXPORT jlongArray JNICALL Java_com_ardikars_jxnet_BpfProgram_getInstructions0
+  (JNIEnv *, jobject);
+
 #ifdef __cplusplus
 }
 #endif
@@ -59,6 +59,30 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDispatch
 JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDispatch0
   (JNIEnv *, jclass, jobject, jint, jobject, jobject);
 
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapDispatchBatch
+ * Signature: (Lcom/ardikars/jxnet/Pcap;ILcom/ardikars/jxnet/PcapBatchHandler;Ljava/lang/Object;Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDispatchBatch
+  (JNIEnv *, jclass, jobject, jint, jobject, jobject, jobject, jobject);
+
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapLoopReusable
+ * Signature: (Lcom/ardikars/jxnet/Pcap;ILcom/ardikars/jxnet/PcapHandler;Ljava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapLoopReusable
+  (JNIEnv *, jclass, jobject, jint, jobject, jobject);
+
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapDispatchReusable
+ * Signature: (Lcom/ardikars/jxnet/Pcap;ILcom/ardikars/jxnet/PcapHandler;Ljava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDispatchReusable
+  (JNIEnv *, jclass, jobject, jint, jobject, jobject);
+
 /*
  * Class:     com_ardikars_jxnet_Jxnet
  * Method:    PcapDumpOpen
@@ -123,6 +147,14 @@ JNIEXPORT jobject JNICALL Java_com_ardikars_jxnet_Jxnet_PcapNext
 JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapNextEx
   (JNIEnv *, jclass, jobject, jobject, jobject);
 
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapNextEx0
+ * Signature: (Lcom/ardikars/jxnet/Pcap;Lcom/ardikars/jxnet/PcapPktHdr;[J)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapNextEx0
+  (JNIEnv *, jclass, jobject, jobject, jlongArray);
+
 /*
  * Class:     com_ardikars_jxnet_Jxnet
  * Method:    PcapClose
@@ -531,6 +563,38 @@ JNIEXPORT jbyteArray JNICALL Java_com_ardikars_jxnet_Jxnet_FindHardwareAddress
 JNIEXPORT void JNICALL Java_com_ardikars_jxnet_Jxnet_initIDs
   (JNIEnv *, jclass);
 
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapFileno
+ * Signature: (Lcom/ardikars/jxnet/Pcap;)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapFileno
+  (JNIEnv *, jclass, jobject);
+
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapSetFanout
+ * Signature: (Lcom/ardikars/jxnet/Pcap;II)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetFanout
+  (JNIEnv *, jclass, jobject, jint, jint);
+
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapDumpPreallocate
+ * Signature: (Lcom/ardikars/jxnet/PcapDumper;J)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDumpPreallocate
+  (JNIEnv *, jclass, jobject, jlong);
+
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapSendBatch
+ * Signature: (Lcom/ardikars/jxnet/Pcap;Ljava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSendBatch
+  (JNIEnv *, jclass, jobject, jobject, jint);
+
 #ifdef __cplusplus
 }
 #endif
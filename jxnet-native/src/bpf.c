@@ -17,6 +17,7 @@
 
 #include <pcap.h>
 #include <stdlib.h>
+#include <stdint.h>
 
 #include "ids.h"
 #include "utils.h"
@@ -47,4 +48,54 @@ JNIEXPORT void JNICALL Java_com_ardikars_jxnet_BpfProgram_initBpfProgram
     SetBpfProgram(env, jobj, fp);
 
 }
-  
\ No newline at end of file
+  
+/*
+ * Class:     com_ardikars_jxnet_BpfProgram
+ * Method:    closeBpfProgram
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL Java_com_ardikars_jxnet_BpfProgram_closeBpfProgram
+        (JNIEnv *env, jobject jobj) {
+
+    if (CheckNotNull(env, jobj, "") == NULL) return;
+
+    // pcap_freecode() and free() are deferred until the last in-flight call on this handle returns.
+    CloseBpfProgram(env, jobj); // Exception already thrown
+
+}
+
+/*
+ * Class:     com_ardikars_jxnet_BpfProgram
+ * Method:    getInstructions0
+ * Signature: ()[J
+ */
+JNIEXPORT jlongArray JNICALL Java_com_ardikars_jxnet_BpfProgram_getInstructions0
+        (JNIEnv *env, jobject jobj) {
+
+    if (CheckNotNull(env, jobj, "") == NULL) return NULL;
+
+    struct bpf_program *fp = GetBpfProgram(env, jobj);
+
+    if (fp == NULL) {
+        return NULL;
+    }
+
+    jsize len = (fp->bf_insns == NULL) ? 0 : (jsize) fp->bf_len;
+    jlongArray jinsns = (*env)->NewLongArray(env, len);
+    if (jinsns != NULL && len > 0) {
+        jlong *insns = (*env)->GetLongArrayElements(env, jinsns, NULL);
+        if (insns != NULL) {
+            jsize i;
+            // Packed as code (16 bits), jt (8 bits), jf (8 bits) and k (32 bits), see BpfInstruction.
+            for (i = 0; i < len; i++) {
+                struct bpf_insn *insn = &fp->bf_insns[i];
+                insns[i] = (jlong) (((uint64_t) insn->code << 48) | ((uint64_t) insn->jt << 40)
+                        | ((uint64_t) insn->jf << 32) | (uint64_t) (insn->k & 0xffffffffU));
+            }
+            (*env)->ReleaseLongArrayElements(env, jinsns, insns, 0);
+        }
+    }
+
+    ReleaseBpfProgram(env, jobj);
+    return jinsns;
+}
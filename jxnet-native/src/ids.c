@@ -19,6 +19,19 @@
 
 #include "utils.h"
 
+/*
+ * Resolve class as global reference, so it stay valid after the native call which cached it returns.
+ */
+static jclass FindGlobalClass(JNIEnv *env, const char *name) {
+	jclass local = (*env)->FindClass(env, name);
+	if (local == NULL) {
+		return NULL;
+	}
+	jclass global = (jclass) (*env)->NewGlobalRef(env, local);
+	(*env)->DeleteLocalRef(env, local);
+	return global;
+}
+
 jclass StringBuilderClass = NULL;
 jmethodID StringBuilderSetLengthMID = NULL;
 jmethodID StringBuilderAppendMID = NULL;
@@ -29,7 +42,7 @@ void SetStringBuilderIDs(JNIEnv *env) {
 		return; // Already cached
 	}
 
-	StringBuilderClass = (*env)->FindClass(env, "java/lang/StringBuilder");
+	StringBuilderClass = FindGlobalClass(env, "java/lang/StringBuilder");
 
 	if (StringBuilderClass == NULL) {
 		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class java.lang.StringBuilder");
@@ -61,7 +74,7 @@ void SetListIDs(JNIEnv *env) {
 		return; // Already cached
 	}
 
-	ListClass = (*env)->FindClass(env, "java/util/List");
+	ListClass = FindGlobalClass(env, "java/util/List");
 
 	if (ListClass == NULL) {
 		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class java.util.List");
@@ -78,6 +91,7 @@ void SetListIDs(JNIEnv *env) {
 }
 
 jclass PcapIfClass = NULL;
+jmethodID PcapIfInitMID = NULL;
 jfieldID PcapIfNameFID = NULL;
 jfieldID PcapIfDescriptionFID = NULL;
 jfieldID PcapIfAddressesFID = NULL;
@@ -89,13 +103,20 @@ void SetPcapIfIDs(JNIEnv *env) {
 		return; // Alredy cached
 	}
 
-	PcapIfClass = (*env)->FindClass(env, "com/ardikars/jxnet/PcapIf");
+	PcapIfClass = FindGlobalClass(env, "com/ardikars/jxnet/PcapIf");
 
 	if (PcapIfClass == NULL) {
 		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.PcapIf");
 		return;
 	}
 
+	PcapIfInitMID = (*env)->GetMethodID(env, PcapIfClass, "<init>", "()V");
+
+	if (PcapIfInitMID == NULL) {
+		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method PcapIf()");
+		return;
+	}
+
 	PcapIfNameFID = (*env)->GetFieldID(env, PcapIfClass, "name", "Ljava/lang/String;");
 
 	if (PcapIfNameFID == NULL) {
@@ -127,6 +148,7 @@ void SetPcapIfIDs(JNIEnv *env) {
 }
 
 jclass PcapAddrClass = NULL;
+jmethodID PcapAddrInitMID = NULL;
 jfieldID PcapAddrAddrFID = NULL;
 jfieldID PcapAddrNetmaskFID = NULL;
 jfieldID PcapAddrBroadAddrFID = NULL;
@@ -138,13 +160,20 @@ void SetPcapAddrIDs(JNIEnv *env) {
 		return; // Already cached
 	}
 
-	PcapAddrClass = (*env)->FindClass(env, "com/ardikars/jxnet/PcapAddr");
+	PcapAddrClass = FindGlobalClass(env, "com/ardikars/jxnet/PcapAddr");
 
 	if (PcapAddrClass == NULL) {
 		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.PcapAddr");
 		return;
 	}
 
+	PcapAddrInitMID = (*env)->GetMethodID(env, PcapAddrClass, "<init>", "()V");
+
+	if (PcapAddrInitMID == NULL) {
+		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method PcapAddr()");
+		return;
+	}
+
 	PcapAddrAddrFID = (*env)->GetFieldID(env, PcapAddrClass, "addr", "Lcom/ardikars/jxnet/SockAddr;");
 
 	if (PcapAddrAddrFID == NULL) {
@@ -176,6 +205,7 @@ void SetPcapAddrIDs(JNIEnv *env) {
 }
 
 jclass SockAddrClass = NULL;
+jmethodID SockAddrInitMID = NULL;
 jfieldID SockAddrSaFamilyFID = NULL;
 jfieldID SockAddrDataFID = NULL;
 
@@ -185,13 +215,20 @@ void SetSockAddrIDs(JNIEnv *env) {
 		return; // Already cached
 	}
 
-	SockAddrClass = (*env)->FindClass(env, "com/ardikars/jxnet/SockAddr");
+	SockAddrClass = FindGlobalClass(env, "com/ardikars/jxnet/SockAddr");
 
 	if (SockAddrClass == NULL) {
 		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.SockAddr");
 		return;
 	}
 
+	SockAddrInitMID = (*env)->GetMethodID(env, SockAddrClass, "<init>", "()V");
+
+	if (SockAddrInitMID == NULL) {
+		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method SockAddr()");
+		return;
+	}
+
 	SockAddrSaFamilyFID = (*env)->GetFieldID(env, SockAddrClass, "sa_family", "S");
 
 	if (SockAddrSaFamilyFID == NULL) {
@@ -208,10 +245,10 @@ void SetSockAddrIDs(JNIEnv *env) {
 }
 
 jclass PcapClass = NULL;
+jmethodID PcapInitMID = NULL;
 jfieldID PcapAddressFID = NULL;
 jfieldID PcapIsDeadFID = NULL;
-jmethodID PcapGetAddressMID = NULL;
-jmethodID PcapIsDeadMID = NULL;
+jfieldID PcapStateFID = NULL;
 
 void SetPcapIDs(JNIEnv *env) {
 
@@ -219,13 +256,20 @@ void SetPcapIDs(JNIEnv *env) {
 		return; // Alredy cached
 	}
 
-	PcapClass = (*env)->FindClass(env, "com/ardikars/jxnet/Pcap");
+	PcapClass = FindGlobalClass(env, "com/ardikars/jxnet/Pcap");
 
 	if (PcapClass == NULL) {
 		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.Pcap");
 		return;
 	}
 
+	PcapInitMID = (*env)->GetMethodID(env, PcapClass, "<init>", "()V");
+
+	if (PcapInitMID == NULL) {
+		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method Pcap()");
+		return;
+	}
+
 	PcapAddressFID = (*env)->GetFieldID(env, PcapClass, "address", "J");
 
 	if (PcapAddressFID == NULL) {
@@ -240,23 +284,17 @@ void SetPcapIDs(JNIEnv *env) {
         return;
 	}
 
-	PcapGetAddressMID = (*env)->GetMethodID(env, PcapClass, "getAddress", "()J");
+	PcapStateFID = (*env)->GetFieldID(env, PcapClass, "state", "Lcom/ardikars/jxnet/HandleState;");
 
-	if (PcapGetAddressMID == NULL) {
-		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method Pcap.getAddress():long");
+	if (PcapStateFID == NULL) {
+		ThrowNew(env, NO_SUCH_FIELD_EXCEPTION, "Unable to initialize field Pcap.state:HandleState");
 		return;
 	}
 
-	PcapIsDeadMID = (*env)->GetMethodID(env, PcapClass, "isDead", "()Z");
-
-	if (PcapIsDeadMID == NULL) {
-	    ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method Pcap.isDead():boolean");
-        return;
-	}
-
 }
 
 jclass PcapPktHdrClass = NULL;
+jmethodID PcapPktHdrInitMID = NULL;
 jfieldID PcapPktHdrCaplenFID = NULL;
 jfieldID PcapPktHdrLenFID = NULL;
 jfieldID PcapPktHdrTvSecFID = NULL;
@@ -269,13 +307,20 @@ void SetPcapPktHdrIDs(JNIEnv *env) {
 		return; // Already cached
 	}
 
-	PcapPktHdrClass = (*env)->FindClass(env, "com/ardikars/jxnet/PcapPktHdr");
+	PcapPktHdrClass = FindGlobalClass(env, "com/ardikars/jxnet/PcapPktHdr");
 
 	if (PcapPktHdrClass == NULL) {
 		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.PcapPktHdr");
 		return;
 	}
 
+	PcapPktHdrInitMID = (*env)->GetMethodID(env, PcapPktHdrClass, "<init>", "()V");
+
+	if (PcapPktHdrInitMID == NULL) {
+		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method PcapPktHdr()");
+		return;
+	}
+
 	PcapPktHdrCaplenFID = (*env)->GetFieldID(env, PcapPktHdrClass, "caplen", "I");
 
 	if (PcapPktHdrCaplenFID == NULL) {
@@ -317,6 +362,10 @@ jclass ByteBufferClass = NULL;
 jmethodID ByteBufferClearMID = NULL;
 jmethodID ByteBufferPutMID = NULL;
 jfieldID ByteBufferAddressFID = NULL;
+jfieldID ByteBufferCapacityFID = NULL;
+jfieldID ByteBufferLimitFID = NULL;
+jfieldID ByteBufferPositionFID = NULL;
+jfieldID ByteBufferMarkFID = NULL;
 
 void SetByteBufferIDs(JNIEnv *env) {
 
@@ -324,7 +373,7 @@ void SetByteBufferIDs(JNIEnv *env) {
 		return; // Alredy cached
 	}
 
-	ByteBufferClass = (*env)->FindClass(env, "java/nio/ByteBuffer");
+	ByteBufferClass = FindGlobalClass(env, "java/nio/ByteBuffer");
 
 	if (ByteBufferClass == NULL) {
 		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class java.nio.ByteBuffer");
@@ -352,11 +401,40 @@ void SetByteBufferIDs(JNIEnv *env) {
         return;
 	}
 
+	ByteBufferCapacityFID = (*env)->GetFieldID(env, ByteBufferClass, "capacity", "I");
+
+	if (ByteBufferCapacityFID == NULL) {
+		ThrowNew(env, NO_SUCH_FIELD_EXCEPTION, "Unable to initialize field ByteBuffer.capacity:int");
+		return;
+	}
+
+	ByteBufferLimitFID = (*env)->GetFieldID(env, ByteBufferClass, "limit", "I");
+
+	if (ByteBufferLimitFID == NULL) {
+		ThrowNew(env, NO_SUCH_FIELD_EXCEPTION, "Unable to initialize field ByteBuffer.limit:int");
+		return;
+	}
+
+	ByteBufferPositionFID = (*env)->GetFieldID(env, ByteBufferClass, "position", "I");
+
+	if (ByteBufferPositionFID == NULL) {
+		ThrowNew(env, NO_SUCH_FIELD_EXCEPTION, "Unable to initialize field ByteBuffer.position:int");
+		return;
+	}
+
+	ByteBufferMarkFID = (*env)->GetFieldID(env, ByteBufferClass, "mark", "I");
+
+	if (ByteBufferMarkFID == NULL) {
+		ThrowNew(env, NO_SUCH_FIELD_EXCEPTION, "Unable to initialize field ByteBuffer.mark:int");
+		return;
+	}
+
 }
 
 jclass PcapDumperClass = NULL;
+jmethodID PcapDumperInitMID = NULL;
 jfieldID PcapDumperAddressFID = NULL;
-jmethodID PcapDumperGetAddressMID = NULL;
+jfieldID PcapDumperStateFID = NULL;
 
 void SetPcapDumperIDs(JNIEnv *env) {
 
@@ -364,13 +442,20 @@ void SetPcapDumperIDs(JNIEnv *env) {
 		return; // Already cached
 	}
 
-	PcapDumperClass = (*env)->FindClass(env, "com/ardikars/jxnet/PcapDumper");
+	PcapDumperClass = FindGlobalClass(env, "com/ardikars/jxnet/PcapDumper");
 
 	if (PcapDumperClass == NULL) {
 		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.PcapDumper");
 		return;
 	}
 
+	PcapDumperInitMID = (*env)->GetMethodID(env, PcapDumperClass, "<init>", "()V");
+
+	if (PcapDumperInitMID == NULL) {
+		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method PcapDumper()");
+		return;
+	}
+
 	PcapDumperAddressFID = (*env)->GetFieldID(env, PcapDumperClass, "address", "J");
 
 	if (PcapDumperAddressFID == NULL) {
@@ -378,10 +463,10 @@ void SetPcapDumperIDs(JNIEnv *env) {
 		return;
 	}
 
-	PcapDumperGetAddressMID = (*env)->GetMethodID(env, PcapDumperClass, "getAddress", "()J");
+	PcapDumperStateFID = (*env)->GetFieldID(env, PcapDumperClass, "state", "Lcom/ardikars/jxnet/HandleState;");
 
-	if (PcapDumperGetAddressMID == NULL) {
-		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method PcapDumper.getAddress(long)");
+	if (PcapDumperStateFID == NULL) {
+		ThrowNew(env, NO_SUCH_FIELD_EXCEPTION, "Unable to initialize field PcapDumper.state:HandleState");
 		return;
 	}
 
@@ -389,7 +474,7 @@ void SetPcapDumperIDs(JNIEnv *env) {
 
 jclass BpfProgramClass = NULL;
 jfieldID BpfProgramAddressFID = NULL;
-jmethodID BpfProgramGetAddressMID = NULL;
+jfieldID BpfProgramStateFID = NULL;
 
 void SetBpfProgramIDs(JNIEnv *env) {
 
@@ -397,7 +482,7 @@ void SetBpfProgramIDs(JNIEnv *env) {
 		return; // Alredy cached
 	}
 
-	BpfProgramClass = (*env)->FindClass(env, "com/ardikars/jxnet/BpfProgram");
+	BpfProgramClass = FindGlobalClass(env, "com/ardikars/jxnet/BpfProgram");
 
 	if (BpfProgramClass == NULL) {
 		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.BpfProgram");
@@ -411,10 +496,43 @@ void SetBpfProgramIDs(JNIEnv *env) {
 		return;
 	}
 
-	BpfProgramGetAddressMID = (*env)->GetMethodID(env, BpfProgramClass, "getAddress", "()J");
+	BpfProgramStateFID = (*env)->GetFieldID(env, BpfProgramClass, "state", "Lcom/ardikars/jxnet/HandleState;");
 
-	if (BpfProgramGetAddressMID == NULL) {
-		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method BpfProgram.getAddress(long)");
+	if (BpfProgramStateFID == NULL) {
+		ThrowNew(env, NO_SUCH_FIELD_EXCEPTION, "Unable to initialize field BpfProgram.state:HandleState");
+		return;
+	}
+
+}
+
+jclass PacketRingClass = NULL;
+jfieldID PacketRingAddressFID = NULL;
+jfieldID PacketRingStateFID = NULL;
+
+void SetPacketRingIDs(JNIEnv *env) {
+
+	if (PacketRingClass != NULL) {
+		return; // Already cached
+	}
+
+	PacketRingClass = FindGlobalClass(env, "com/ardikars/jxnet/PacketRing");
+
+	if (PacketRingClass == NULL) {
+		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.PacketRing");
+		return;
+	}
+
+	PacketRingAddressFID = (*env)->GetFieldID(env, PacketRingClass, "address", "J");
+
+	if (PacketRingAddressFID == NULL) {
+		ThrowNew(env, NO_SUCH_FIELD_EXCEPTION, "Unable to initialize field PacketRing.address:long");
+		return;
+	}
+
+	PacketRingStateFID = (*env)->GetFieldID(env, PacketRingClass, "state", "Lcom/ardikars/jxnet/HandleState;");
+
+	if (PacketRingStateFID == NULL) {
+		ThrowNew(env, NO_SUCH_FIELD_EXCEPTION, "Unable to initialize field PacketRing.state:HandleState");
 		return;
 	}
 
@@ -431,7 +549,7 @@ void SetPcapStatIDs(JNIEnv *env) {
 		return; // Alredy cached
 	}
 
-	PcapStatClass = (*env)->FindClass(env, "com/ardikars/jxnet/PcapStat");
+	PcapStatClass = FindGlobalClass(env, "com/ardikars/jxnet/PcapStat");
 
 	if (PcapStatClass == NULL) {
 		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.PcapStat");
@@ -470,7 +588,7 @@ void SetPcapDirectionIDs(JNIEnv *env) {
 		return; // Already cached
 	}
 
-	PcapDirectionClass = (*env)->FindClass(env, "com/ardikars/jxnet/PcapDirection");
+	PcapDirectionClass = FindGlobalClass(env, "com/ardikars/jxnet/PcapDirection");
 
 	if (PcapDirectionClass == NULL) {
 		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.PcapDirection");
@@ -485,3 +603,112 @@ void SetPcapDirectionIDs(JNIEnv *env) {
 	}
 
 }
+
+jclass HandleStateClass = NULL;
+jfieldID HandleStateControlFID = NULL;
+
+void SetHandleStateIDs(JNIEnv *env) {
+
+	if (HandleStateClass != NULL) {
+		return; // Already cached
+	}
+
+	HandleStateClass = FindGlobalClass(env, "com/ardikars/jxnet/HandleState");
+
+	if (HandleStateClass == NULL) {
+		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.HandleState");
+		return;
+	}
+
+	HandleStateControlFID = (*env)->GetFieldID(env, HandleStateClass, "control", "Ljava/nio/ByteBuffer;");
+
+	if (HandleStateControlFID == NULL) {
+		ThrowNew(env, NO_SUCH_FIELD_EXCEPTION, "Unable to initialize field HandleState.control:ByteBuffer");
+		return;
+	}
+
+}
+
+jclass IntegerClass = NULL;
+jmethodID IntegerInitMID = NULL;
+
+void SetIntegerIDs(JNIEnv *env) {
+
+	if (IntegerClass != NULL) {
+		return; // Already cached
+	}
+
+	IntegerClass = FindGlobalClass(env, "java/lang/Integer");
+
+	if (IntegerClass == NULL) {
+		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class java.lang.Integer");
+		return;
+	}
+
+	IntegerInitMID = (*env)->GetMethodID(env, IntegerClass, "<init>", "(I)V");
+
+	if (IntegerInitMID == NULL) {
+		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method Integer(int)");
+		return;
+	}
+
+}
+
+jclass PcapHandlerClass = NULL;
+jmethodID PcapHandlerNextPacketMID = NULL;
+jclass RawPcapHandlerClass = NULL;
+jmethodID RawPcapHandlerNextPacketMID = NULL;
+jclass PcapBatchHandlerClass = NULL;
+jmethodID PcapBatchHandlerNextBatchMID = NULL;
+
+void SetHandlerIDs(JNIEnv *env) {
+
+	if (PcapHandlerClass != NULL) {
+		return; // Already cached
+	}
+
+	PcapHandlerClass = FindGlobalClass(env, "com/ardikars/jxnet/PcapHandler");
+
+	if (PcapHandlerClass == NULL) {
+		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.PcapHandler");
+		return;
+	}
+
+	PcapHandlerNextPacketMID = (*env)->GetMethodID(env, PcapHandlerClass, "nextPacket",
+			"(Ljava/lang/Object;Lcom/ardikars/jxnet/PcapPktHdr;Ljava/nio/ByteBuffer;)V");
+
+	if (PcapHandlerNextPacketMID == NULL) {
+		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method PcapHandler.nextPacket(Object, PcapPktHdr, ByteBuffer)");
+		return;
+	}
+
+	RawPcapHandlerClass = FindGlobalClass(env, "com/ardikars/jxnet/RawPcapHandler");
+
+	if (RawPcapHandlerClass == NULL) {
+		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.RawPcapHandler");
+		return;
+	}
+
+	RawPcapHandlerNextPacketMID = (*env)->GetMethodID(env, RawPcapHandlerClass, "nextPacket", "(Ljava/lang/Object;IIIJJ)V");
+
+	if (RawPcapHandlerNextPacketMID == NULL) {
+		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method RawPcapHandler.nextPacket(Object, int, int, int, long, long)");
+		return;
+	}
+
+	PcapBatchHandlerClass = FindGlobalClass(env, "com/ardikars/jxnet/PcapBatchHandler");
+
+	if (PcapBatchHandlerClass == NULL) {
+		ThrowNew(env, CLASS_NOT_FOUND_EXCEPTION, "Unable to initialize class com.ardikars.jxnet.PcapBatchHandler");
+		return;
+	}
+
+	PcapBatchHandlerNextBatchMID = (*env)->GetMethodID(env, PcapBatchHandlerClass, "nextBatch",
+			"(Ljava/lang/Object;ILjava/nio/ByteBuffer;Ljava/nio/ByteBuffer;)V");
+
+	if (PcapBatchHandlerNextBatchMID == NULL) {
+		ThrowNew(env, NO_SUCH_METHOD_EXCEPTION, "Unable to initialize method PcapBatchHandler.nextBatch(Object, int, ByteBuffer, ByteBuffer)");
+		return;
+	}
+
+}
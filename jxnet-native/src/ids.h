@@ -29,6 +29,7 @@ extern jmethodID ListAddMID;
 void SetListIDs(JNIEnv *env);
 
 extern jclass PcapIfClass;
+extern jmethodID PcapIfInitMID;
 extern jfieldID PcapIfNameFID;
 extern jfieldID PcapIfDescriptionFID;
 extern jfieldID PcapIfAddressesFID;
@@ -37,6 +38,7 @@ extern jfieldID PcapIfFlagsFID;
 void SetPcapIfIDs(JNIEnv *env);
 
 extern jclass PcapAddrClass;
+extern jmethodID PcapAddrInitMID;
 extern jfieldID PcapAddrAddrFID;
 extern jfieldID PcapAddrNetmaskFID;
 extern jfieldID PcapAddrBroadAddrFID;
@@ -45,20 +47,22 @@ extern jfieldID PcapAddrDstAddrFID;
 void SetPcapAddrIDs(JNIEnv *env);
 
 extern jclass SockAddrClass;
+extern jmethodID SockAddrInitMID;
 extern jfieldID SockAddrSaFamilyFID;
 extern jfieldID SockAddrDataFID;
 
 void SetSockAddrIDs(JNIEnv *env);
 
 extern jclass PcapClass;
+extern jmethodID PcapInitMID;
 extern jfieldID PcapAddressFID;
 extern jfieldID PcapIsDeadFID;
-extern jmethodID PcapGetAddressMID;
-extern jmethodID PcapIsDeadMID;
+extern jfieldID PcapStateFID;
 
 void SetPcapIDs(JNIEnv *env);
 
 extern jclass PcapPktHdrClass;
+extern jmethodID PcapPktHdrInitMID;
 extern jfieldID PcapPktHdrCaplenFID;
 extern jfieldID PcapPktHdrLenFID;
 extern jfieldID PcapPktHdrTvSecFID;
@@ -71,18 +75,23 @@ extern jclass ByteBufferClass;
 extern jmethodID ByteBufferClearMID;
 extern jmethodID ByteBufferPutMID;
 extern jfieldID ByteBufferAddressFID;
+extern jfieldID ByteBufferCapacityFID;
+extern jfieldID ByteBufferLimitFID;
+extern jfieldID ByteBufferPositionFID;
+extern jfieldID ByteBufferMarkFID;
 
 void SetByteBufferIDs(JNIEnv *env);
 
 extern jclass PcapDumperClass;
+extern jmethodID PcapDumperInitMID;
 extern jfieldID PcapDumperAddressFID;
-extern jmethodID PcapDumperGetAddressMID;
+extern jfieldID PcapDumperStateFID;
 
 void SetPcapDumperIDs(JNIEnv *env);
 
 extern jclass BpfProgramClass;
 extern jfieldID BpfProgramAddressFID;
-extern jmethodID BpfProgramGetAddressMID;
+extern jfieldID BpfProgramStateFID;
 
 void SetBpfProgramIDs(JNIEnv *env);
 
@@ -97,3 +106,28 @@ extern jclass PcapDirectionClass;
 extern jmethodID PcapDirectionNameMID;
 
 void SetPcapDirectionIDs(JNIEnv *env);
+
+extern jclass PacketRingClass;
+extern jfieldID PacketRingAddressFID;
+extern jfieldID PacketRingStateFID;
+
+void SetPacketRingIDs(JNIEnv *env);
+
+extern jclass HandleStateClass;
+extern jfieldID HandleStateControlFID;
+
+void SetHandleStateIDs(JNIEnv *env);
+
+extern jclass IntegerClass;
+extern jmethodID IntegerInitMID;
+
+void SetIntegerIDs(JNIEnv *env);
+
+extern jclass PcapHandlerClass;
+extern jmethodID PcapHandlerNextPacketMID;
+extern jclass RawPcapHandlerClass;
+extern jmethodID RawPcapHandlerNextPacketMID;
+extern jclass PcapBatchHandlerClass;
+extern jmethodID PcapBatchHandlerNextBatchMID;
+
+void SetHandlerIDs(JNIEnv *env);
@@ -15,6 +15,10 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+#if defined(__linux__) && !defined(_GNU_SOURCE)
+#define _GNU_SOURCE // fallocate()
+#endif
+
 #include "../include/jxnet/com_ardikars_jxnet_Jxnet.h"
 #if !defined(WIN32) && !defined(_WIN64)
 #include "../include/jxnet/pcap/pcap-int.h"
@@ -35,6 +39,12 @@
 #include <sys/socket.h>
 #endif
 
+#if defined(__linux__)
+#include <errno.h>
+#include <fcntl.h>
+#include <linux/if_packet.h>
+#endif
+
 /*
  * Class:     com_ardikars_jxnet_Jxnet
  * Method:    PcapFindAllDevs
@@ -68,7 +78,7 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapFindAllDevs
 
 	while(dev != NULL) {
 
-		pcap_if = NewObject(env, "com/ardikars/jxnet/PcapIf", "<init>", "()V");
+		pcap_if = (*env)->NewObject(env, PcapIfClass, PcapIfInitMID);
 
 		if (dev->name != NULL) {
 			(*env)->SetObjectField(env, pcap_if, PcapIfNameFID,
@@ -89,7 +99,7 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapFindAllDevs
 
 		while (addr != NULL) {
 
-			pcap_addr = NewObject(env, "com/ardikars/jxnet/PcapAddr", "<init>", "()V");
+			pcap_addr = (*env)->NewObject(env, PcapAddrClass, PcapAddrInitMID);
 
 			if (addr->addr != NULL) {
 				(*env)->SetObjectField(env, pcap_addr, PcapAddrAddrFID,
@@ -203,12 +213,11 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapLoop
 	user_data.env = env;
 	user_data.callback = jcallback;
 	user_data.user = juser;
-	user_data.PcapHandlerClass = (*env)->GetObjectClass(env, jcallback);
-	user_data.PcapHandlerNextPacketMID = (*env)->GetMethodID(env,
-															 user_data.PcapHandlerClass, "nextPacket",
-															 "(Ljava/lang/Object;Lcom/ardikars/jxnet/PcapPktHdr;Ljava/nio/ByteBuffer;)V");
+	user_data.PcapHandlerNextPacketMID = PcapHandlerNextPacketMID;
 
-	return pcap_loop(pcap, (int) jcnt, pcap_callback, (u_char *) &user_data);
+	jint r = pcap_loop(pcap, (int) jcnt, pcap_callback, (u_char *) &user_data);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -235,12 +244,11 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapLoop0
 	user_data.env = env;
 	user_data.callback = jcallback;
 	user_data.user = juser;
-	user_data.PcapHandlerClass = (*env)->GetObjectClass(env, jcallback);
-	user_data.PcapHandlerNextPacketMID = (*env)->GetMethodID(env,
-															 user_data.PcapHandlerClass, "nextPacket",
-															 "(Ljava/lang/Object;IIIJJ)V");
+	user_data.PcapHandlerNextPacketMID = RawPcapHandlerNextPacketMID;
 
-	return pcap_loop(pcap, (int) jcnt, pcap_callback0, (u_char *) &user_data);
+	jint r = pcap_loop(pcap, (int) jcnt, pcap_callback0, (u_char *) &user_data);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -268,11 +276,11 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDispatch
 	user_data.env = env;
 	user_data.callback = jcallback;
 	user_data.user = juser;
-	user_data.PcapHandlerClass = (*env)->GetObjectClass(env, jcallback);
-	user_data.PcapHandlerNextPacketMID = (*env)->GetMethodID(env,
-															 user_data.PcapHandlerClass, "nextPacket", "(Ljava/lang/Object;Lcom/ardikars/jxnet/PcapPktHdr;Ljava/nio/ByteBuffer;)V");
+	user_data.PcapHandlerNextPacketMID = PcapHandlerNextPacketMID;
 
-	return pcap_dispatch(pcap, (int) jcnt, pcap_callback, (u_char *) &user_data);
+	jint r = pcap_dispatch(pcap, (int) jcnt, pcap_callback, (u_char *) &user_data);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -300,12 +308,148 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDispatch0
 	user_data.env = env;
 	user_data.callback = jcallback;
 	user_data.user = juser;
-	user_data.PcapHandlerClass = (*env)->GetObjectClass(env, jcallback);
-	user_data.PcapHandlerNextPacketMID = (*env)->GetMethodID(env,
-															 user_data.PcapHandlerClass, "nextPacket",
-															  "(Ljava/lang/Object;IIIJJ)V");
+	user_data.PcapHandlerNextPacketMID = RawPcapHandlerNextPacketMID;
+
+	jint r = pcap_dispatch(pcap, (int) jcnt, pcap_callback0, (u_char *) &user_data);
+	ReleasePcap(env, jpcap);
+	return r;
+}
+
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapDispatchBatch
+ * Signature: (Lcom/ardikars/jxnet/Pcap;ILcom/ardikars/jxnet/PcapBatchHandler;Ljava/lang/Object;Ljava/nio/ByteBuffer;Ljava/nio/ByteBuffer;)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDispatchBatch
+		(JNIEnv *env, jclass jcls, jobject jpcap, jint jcnt, jobject jcallback, jobject juser, jobject jheaders, jobject jpackets) {
 
-	return pcap_dispatch(pcap, (int) jcnt, pcap_callback0, (u_char *) &user_data);
+    UNUSED(jcls);
+
+	if (CheckNotNull(env, jpcap, NULL) == NULL) return -1;
+	if (CheckNotNull(env, jcallback, NULL) == NULL) return -1;
+	if (CheckNotNull(env, jheaders, NULL) == NULL) return -1;
+	if (CheckNotNull(env, jpackets, NULL) == NULL) return -1;
+
+	pcap_batch_user_data_t user_data;
+	memset(&user_data, 0, sizeof(user_data));
+	user_data.headers_buf = (u_char *) (*env)->GetDirectBufferAddress(env, jheaders);
+	user_data.packets_buf = (u_char *) (*env)->GetDirectBufferAddress(env, jpackets);
+	user_data.headers_capacity = (*env)->GetDirectBufferCapacity(env, jheaders);
+	user_data.packets_capacity = (*env)->GetDirectBufferCapacity(env, jpackets);
+
+	if (!CheckArgument(env, (user_data.headers_buf != NULL && user_data.packets_buf != NULL),
+			"Headers and packets buffer should be a direct buffer.")) return -1;
+	if (!CheckArgument(env, (user_data.headers_capacity >= PCAP_BATCH_HEADER_SIZE),
+			"Headers buffer capacity is too small.")) return -1;
+	if (!CheckArgument(env, (user_data.packets_capacity > 0), NULL)) return -1;
+
+	pcap_t *pcap = GetNotDeadPcap(env, jpcap); // Exception already thrown
+
+	if (pcap == NULL) {
+		return (jint) -1;
+	}
+
+	if (user_data.packets_capacity > INT32_MAX) {
+		user_data.packets_capacity = INT32_MAX;
+	}
+
+	user_data.env = env;
+	user_data.pcap = pcap;
+	user_data.callback = jcallback;
+	user_data.user = juser;
+	user_data.headers = jheaders;
+	user_data.packets = jpackets;
+	user_data.PcapBatchHandlerNextBatchMID = PcapBatchHandlerNextBatchMID;
+
+	int ret = pcap_dispatch(pcap, (int) jcnt, pcap_batch_callback, (u_char *) &user_data);
+	if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
+		ReleasePcap(env, jpcap);
+		return (jint) -1;
+	}
+	pcap_batch_flush(&user_data);
+	ReleasePcap(env, jpcap);
+	return (jint) ret;
+}
+
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapLoopReusable
+ * Signature: (Lcom/ardikars/jxnet/Pcap;ILcom/ardikars/jxnet/PcapHandler;Ljava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapLoopReusable
+		(JNIEnv *env, jclass jcls, jobject jpcap, jint jcnt, jobject jcallback, jobject juser) {
+
+    UNUSED(jcls);
+
+	if (CheckNotNull(env, jpcap, NULL) == NULL) return -1;
+	if (CheckNotNull(env, jcallback, NULL) == NULL) return -1;
+
+	pcap_t *pcap = GetNotDeadPcap(env, jpcap); // Exception already thrown
+
+	if (pcap == NULL) {
+		return (jint) -1;
+	}
+
+	pcap_user_data_t user_data;
+	memset(&user_data, 0, sizeof(user_data));
+	user_data.env = env;
+	user_data.pcap = pcap;
+	user_data.callback = jcallback;
+	user_data.user = juser;
+	user_data.PcapHandlerNextPacketMID = PcapHandlerNextPacketMID;
+
+	if (InitReusable(env, &user_data) < 0) {
+		ReleasePcap(env, jpcap);
+		return (jint) -1;
+	}
+	int ret = pcap_loop(pcap, (int) jcnt, pcap_reusable_callback, (u_char *) &user_data);
+	ReleaseReusable(env, &user_data);
+	ReleasePcap(env, jpcap);
+	if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
+		return (jint) -1;
+	}
+	return (jint) ret;
+}
+
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapDispatchReusable
+ * Signature: (Lcom/ardikars/jxnet/Pcap;ILcom/ardikars/jxnet/PcapHandler;Ljava/lang/Object;)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDispatchReusable
+		(JNIEnv *env, jclass jcls, jobject jpcap, jint jcnt, jobject jcallback, jobject juser) {
+
+    UNUSED(jcls);
+
+	if (CheckNotNull(env, jpcap, NULL) == NULL) return -1;
+	if (CheckNotNull(env, jcallback, NULL) == NULL) return -1;
+	if (!CheckArgument(env, (jcnt > 0), NULL)) return -1;
+
+	pcap_t *pcap = GetNotDeadPcap(env, jpcap); // Exception already thrown
+
+	if (pcap == NULL) {
+		return (jint) -1;
+	}
+
+	pcap_user_data_t user_data;
+	memset(&user_data, 0, sizeof(user_data));
+	user_data.env = env;
+	user_data.pcap = pcap;
+	user_data.callback = jcallback;
+	user_data.user = juser;
+	user_data.PcapHandlerNextPacketMID = PcapHandlerNextPacketMID;
+
+	if (InitReusable(env, &user_data) < 0) {
+		ReleasePcap(env, jpcap);
+		return (jint) -1;
+	}
+	int ret = pcap_dispatch(pcap, (int) jcnt, pcap_reusable_callback, (u_char *) &user_data);
+	ReleaseReusable(env, &user_data);
+	ReleasePcap(env, jpcap);
+	if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
+		return (jint) -1;
+	}
+	return (jint) ret;
 }
 
 
@@ -334,9 +478,12 @@ JNIEXPORT jobject JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDumpOpen
 
 	if (pcap_dumper == NULL) {
 		ThrowNew(env, PCAP_DUMPER_CLOSE_EXCEPTION, pcap_geterr(pcap));
+		ReleasePcap(env, jpcap);
 		return NULL;
 	}
-	return SetPcapDumper(env, pcap_dumper);
+	jobject r = SetPcapDumper(env, pcap_dumper);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -367,6 +514,7 @@ JNIEXPORT void JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDump
 	u_char *sp = (u_char *) (*env)->GetDirectBufferAddress(env, jsp);
 
 	pcap_dump((u_char *) pcap_dumper, &hdr, sp);
+	ReleasePcapDumper(env, jpcap_dumper);
 }
 
 /*
@@ -420,6 +568,7 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapCompile
 	struct bpf_program *fp = GetBpfProgram(env, jfp);
 
 	if (fp == NULL) {
+		ReleasePcap(env, jpcap);
 		return (jint) -1;
 	}
 
@@ -429,6 +578,8 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapCompile
 
 	(*env)->ReleaseStringUTFChars(env, jstr, str);
 
+	ReleaseBpfProgram(env, jfp);
+	ReleasePcap(env, jpcap);
 	return r;
 }
 
@@ -454,10 +605,15 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetFilter
 	struct bpf_program *fp = GetBpfProgram(env, jfp);
 
 	if (fp == NULL) {
+		ReleasePcap(env, jpcap);
 		return (jint) -1;
 	}
 
-	return (jint) pcap_setfilter(pcap, fp);
+	int r = pcap_setfilter(pcap, fp);
+
+	ReleaseBpfProgram(env, jfp);
+	ReleasePcap(env, jpcap);
+	return (jint) r;
 }
 
 /*
@@ -484,10 +640,13 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSendPacket
 
 	if (buf == NULL) {
 		ThrowNew(env, NULL_PTR_EXCEPTION, "Unable to retrive address from ByteBuffer");
+		ReleasePcap(env, jpcap);
 		return (jint) -1;
 	}
 
-	return (jint) pcap_sendpacket(pcap, buf + (int) 0, (int) jsize);
+	jint r = (jint) pcap_sendpacket(pcap, buf + (int) 0, (int) jsize);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -518,8 +677,11 @@ JNIEXPORT jobject JNICALL Java_com_ardikars_jxnet_Jxnet_PcapNext
 		(*env)->SetIntField(env, jh, PcapPktHdrLenFID, (jint) pkt_header.len);
 		(*env)->SetIntField(env, jh, PcapPktHdrTvSecFID, (jint) pkt_header.ts.tv_sec);
 		(*env)->SetLongField(env, jh, PcapPktHdrTvUsecFID, (jlong) pkt_header.ts.tv_usec);
-		return (*env)->NewDirectByteBuffer(env, (void *) data, pkt_header.caplen);
+		jobject r = (*env)->NewDirectByteBuffer(env, (void *) data, pkt_header.caplen);
+		ReleasePcap(env, jpcap);
+		return r;
 	} else {
+		ReleasePcap(env, jpcap);
 		return NULL;
 	}
 }
@@ -550,9 +712,20 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapNextEx
 	int r = pcap_next_ex(pcap, &pkt_header, &data);
 
 	if (data != NULL) {
-		(*env)->CallObjectMethod(env, jpkt_data, ByteBufferClearMID);
-		(*env)->CallObjectMethod(env, jpkt_data, ByteBufferPutMID,
-								 (*env)->NewDirectByteBuffer(env, (void *) data, pkt_header->caplen));
+		u_char *buf = (u_char *) (*env)->GetDirectBufferAddress(env, jpkt_data);
+		jlong capacity = (*env)->GetDirectBufferCapacity(env, jpkt_data);
+		if (buf != NULL && capacity >= (jlong) pkt_header->caplen) {
+			// Same result as clear() followed by put(), without upcalls and temporary buffer.
+			memcpy(buf, data, pkt_header->caplen);
+			(*env)->SetIntField(env, jpkt_data, ByteBufferMarkFID, (jint) -1);
+			(*env)->SetIntField(env, jpkt_data, ByteBufferLimitFID, (jint) capacity);
+			(*env)->SetIntField(env, jpkt_data, ByteBufferPositionFID, (jint) pkt_header->caplen);
+		} else {
+			// Heap buffer, or buffer too small (put() throws BufferOverflowException).
+			(*env)->CallObjectMethod(env, jpkt_data, ByteBufferClearMID);
+			(*env)->CallObjectMethod(env, jpkt_data, ByteBufferPutMID,
+									 (*env)->NewDirectByteBuffer(env, (void *) data, pkt_header->caplen));
+		}
 		(*env)->SetIntField(env, jpkt_header, PcapPktHdrCaplenFID,
 							(jint) pkt_header->caplen);
 		(*env)->SetIntField(env, jpkt_header, PcapPktHdrLenFID,
@@ -563,6 +736,53 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapNextEx
 							 (jlong) pkt_header->ts.tv_usec);
 	}
 
+	ReleasePcap(env, jpcap);
+	return r;
+}
+
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapNextEx0
+ * Signature: (Lcom/ardikars/jxnet/Pcap;Lcom/ardikars/jxnet/PcapPktHdr;[J)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapNextEx0
+		(JNIEnv *env, jclass jcls, jobject jpcap, jobject jpkt_header, jlongArray jpkt_data) {
+
+    UNUSED(jcls);
+
+	if (CheckNotNull(env, jpcap, NULL) == NULL) return -1;
+	if (CheckNotNull(env, jpkt_header, NULL) == NULL) return -1;
+	if (CheckNotNull(env, jpkt_data, NULL) == NULL) return -1;
+	if (!CheckArgument(env, ((*env)->GetArrayLength(env, jpkt_data) >= 2),
+			"Packet data array length should be greater than or equal to 2.")) return -1;
+
+	pcap_t *pcap = GetNotDeadPcap(env, jpcap); // Exception already thrown
+
+	if (pcap == NULL) {
+		return -1;
+	}
+
+	struct pcap_pkthdr *pkt_header;
+	const u_char *data = NULL;
+
+	int r = pcap_next_ex(pcap, &pkt_header, &data);
+
+	if (data != NULL) {
+		jlong pkt_data[2];
+		pkt_data[0] = PointerToJlong((void *) data);
+		pkt_data[1] = (jlong) pkt_header->caplen;
+		(*env)->SetLongArrayRegion(env, jpkt_data, 0, 2, pkt_data);
+		(*env)->SetIntField(env, jpkt_header, PcapPktHdrCaplenFID,
+							(jint) pkt_header->caplen);
+		(*env)->SetIntField(env, jpkt_header, PcapPktHdrLenFID,
+							(jint) pkt_header->len);
+		(*env)->SetIntField(env, jpkt_header, PcapPktHdrTvSecFID,
+							(jint) pkt_header->ts.tv_sec);
+		(*env)->SetLongField(env, jpkt_header, PcapPktHdrTvUsecFID,
+							 (jlong) pkt_header->ts.tv_usec);
+	}
+
+	ReleasePcap(env, jpcap);
 	return r;
 }
 
@@ -578,14 +798,8 @@ JNIEXPORT void JNICALL Java_com_ardikars_jxnet_Jxnet_PcapClose
 
 	if (CheckNotNull(env, jpcap, NULL) == NULL) return;
 
-	pcap_t *pcap = GetPcap(env, jpcap); // Exception already thrown
-
-	if (pcap == NULL) {
-		return;
-	}
-
-	pcap_close(pcap);
-	(*env)->SetLongField(env, jpcap, PcapAddressFID, (jlong) 0);
+	// pcap_close() is deferred until the last in-flight call on this handle returns.
+	ClosePcap(env, jpcap); // Exception already thrown
 }
 
 /*
@@ -606,7 +820,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDumpFlush
         return -1;
     }
 
-	return (jint) pcap_dump_flush(pcap_dumper);
+	jint r = (jint) pcap_dump_flush(pcap_dumper);
+	ReleasePcapDumper(env, jpcap_dumper);
+	return r;
 }
 
 /*
@@ -621,15 +837,8 @@ JNIEXPORT void JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDumpClose
 
 	if (CheckNotNull(env, jpcap_dumper, NULL) == NULL) return;
 
-    pcap_dumper_t *pcap_dumper = GetPcapDumper(env, jpcap_dumper);
-
-	if (pcap_dumper == NULL) {
-		return;
-	}
-
-	pcap_dump_close(pcap_dumper);
-
-	(*env)->SetLongField(env, jpcap_dumper, PcapDumperAddressFID, (jlong) 0);
+	// pcap_dump_close() is deferred until the last in-flight call on this handle returns.
+	ClosePcapDumper(env, jpcap_dumper); // Exception already thrown
 }
 
 /*
@@ -650,7 +859,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDataLink
 		return (jint) -1;
 	}
 
-	return (jint) pcap_datalink(pcap);
+	jint r = (jint) pcap_datalink(pcap);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -672,7 +883,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetDataLink
 		return (jint) -1;
 	}
 
-	return (jint) pcap_set_datalink(pcap, (int) jdtl);
+	jint r = (jint) pcap_set_datalink(pcap, (int) jdtl);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -694,6 +907,7 @@ JNIEXPORT void JNICALL Java_com_ardikars_jxnet_Jxnet_PcapBreakLoop
 	}
 
 	pcap_breakloop(pcap);
+	ReleasePcap(env, jpcap);
 }
 
 /*
@@ -744,7 +958,9 @@ JNIEXPORT jstring JNICALL Java_com_ardikars_jxnet_Jxnet_PcapGetErr
 		return NULL;
 	}
 
-	return (jstring) (*env)->NewStringUTF(env, pcap_geterr(pcap));
+	jstring r = (jstring) (*env)->NewStringUTF(env, pcap_geterr(pcap));
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -778,7 +994,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapIsSwapped
 		return (jint) -1;
 	}
 
-	return (jint) pcap_is_swapped(pcap);
+	jint r = (jint) pcap_is_swapped(pcap);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -799,7 +1017,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSnapshot
 		return (jint) -1;
 	}
 
-	return (jint) pcap_snapshot(pcap);
+	jint r = (jint) pcap_snapshot(pcap);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -833,7 +1053,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapMajorVersion
 		return (jint) -1;
 	}
 
-	return (jint) pcap_major_version(pcap);
+	jint r = (jint) pcap_major_version(pcap);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -854,7 +1076,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapMinorVersion
 		return (jint) -1;
 	}
 
-	return (jint) pcap_minor_version(pcap);
+	jint r = (jint) pcap_minor_version(pcap);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -935,6 +1159,7 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetNonBlock
 
 	SetStringBuilder(env, jerrbuf, errbuf);
 
+	ReleasePcap(env, jpcap);
 	return (jint) r;
 }
 
@@ -962,6 +1187,7 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapGetNonBlock
 
 	int r = pcap_getnonblock(pcap, errbuf);
 
+	ReleasePcap(env, jpcap);
 	return (jint) r;
 }
 
@@ -1001,7 +1227,9 @@ JNIEXPORT jlong JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDumpFTell
 		return -1;
 	}
 
-	return (jlong) pcap_dump_ftell(pcap_dumper);
+	jlong r = (jlong) pcap_dump_ftell(pcap_dumper);
+	ReleasePcapDumper(env, jpcap_dumper);
+	return r;
 }
 
 /*
@@ -1023,6 +1251,7 @@ JNIEXPORT void JNICALL Java_com_ardikars_jxnet_Jxnet_PcapFreeCode
 	}
 
 	pcap_freecode(fp);
+	ReleaseBpfProgram(env, jfp);
 }
 
 /*
@@ -1055,6 +1284,7 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapStats
 		(*env)->SetLongField(env, jpcap_stat, PcapStatPsIfDropFID, (jlong) stats.ps_ifdrop);
 	}
 
+	ReleasePcap(env, jpcap);
 	return r;
 }
 
@@ -1088,6 +1318,7 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapCompileNoPcap
 
 	(*env)->ReleaseStringUTFChars(env, jbuf, buf);
 
+	ReleaseBpfProgram(env, jprogram);
 	return r;
 }
 
@@ -1114,6 +1345,7 @@ JNIEXPORT void JNICALL Java_com_ardikars_jxnet_Jxnet_PcapPError
 
 	pcap_perror(pcap, (char *) prefix);
 	(*env)->ReleaseStringUTFChars(env, jprefix, prefix);
+	ReleasePcap(env, jpcap);
 }
 
 /*
@@ -1162,7 +1394,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetSnaplen
 	    return -1;
 	}
 
-	return pcap_set_snaplen(pcap, jsnaplen);
+	jint r = pcap_set_snaplen(pcap, jsnaplen);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -1184,7 +1418,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetPromisc
 	    return -1;
 	}
 
-	return pcap_set_promisc(pcap, jpromisc);
+	jint r = pcap_set_promisc(pcap, jpromisc);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -1206,7 +1442,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetTimeout
 	    return -1;
 	}
 
-	return pcap_set_timeout(pcap, jtimeout);
+	jint r = pcap_set_timeout(pcap, jtimeout);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -1228,7 +1466,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetBufferSize
 	    return -1;
 	}
 
-	return pcap_set_buffer_size(pcap, jbuffer_size);
+	jint r = pcap_set_buffer_size(pcap, jbuffer_size);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -1249,7 +1489,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapCanSetRfMon
 	    return -1;
 	}
 
-	return pcap_can_set_rfmon(pcap);
+	jint r = pcap_can_set_rfmon(pcap);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -1271,7 +1513,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetRfMon
 	    return -1;
 	}
 
-	return pcap_set_rfmon(pcap, jrfmon);
+	jint r = pcap_set_rfmon(pcap, jrfmon);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -1301,11 +1545,16 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetImmediateMode
 	 * sets a default mintocopy value of 16000 bytes. 
 	 */
 	if (jimmediate == 1) {
-		return pcap_setmintocopy(pcap, 0);
+		jint r = pcap_setmintocopy(pcap, 0);
+		ReleasePcap(env, jpcap);
+		return r;
 	}
+	ReleasePcap(env, jpcap);
 	return 0; // sets to a default mintocopy value (16000 bytes).
 #else
-	return pcap_set_immediate_mode(pcap, jimmediate);
+	jint r = pcap_set_immediate_mode(pcap, jimmediate);
+	ReleasePcap(env, jpcap);
+	return r;
 #endif
 	return -1;
 }
@@ -1328,7 +1577,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapActivate
 	    return -1;
 	}
 
-	return pcap_activate(pcap);
+	jint r = pcap_activate(pcap);
+	ReleasePcap(env, jpcap);
+	return r;
 }
 
 /*
@@ -1373,6 +1624,7 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetDirection
 
 	(*env)->ReleaseStringUTFChars(env, direction, enumName);
 	(*env)->DeleteLocalRef(env, direction);
+	ReleasePcap(env, jpcap);
 	return ret;
 #endif
 	return -1;
@@ -1399,7 +1651,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetTStampPrecision
         return -1;
     }
 
-	return pcap_set_tstamp_precision(pcap, jtstamp_precision);
+	jint r = pcap_set_tstamp_precision(pcap, jtstamp_precision);
+	ReleasePcap(env, jpcap);
+	return r;
 #endif
     return -1;
 }
@@ -1425,7 +1679,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetTStampType
         return -1;
     }
 
-	return pcap_set_tstamp_type(pcap, jtype);
+	jint r = pcap_set_tstamp_type(pcap, jtype);
+	ReleasePcap(env, jpcap);
+	return r;
 #endif
     return -1;
 }
@@ -1451,7 +1707,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapGetTStampPrecision
         return -1;
     }
 
-	return pcap_get_tstamp_precision(pcap);
+	jint r = pcap_get_tstamp_precision(pcap);
+	ReleasePcap(env, jpcap);
+	return r;
 #endif
     return -1;
 }
@@ -1481,14 +1739,16 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapListDataLinks
 	int count = pcap_list_datalinks(pcap, &dtl_buffer);
 	int i;
 	for (i=0; i<count; i++) {
-		jclass jclazz = (*env)->FindClass(env, "java/lang/Integer");
-		jobject jinteger = (*env)->NewObject(env, jclazz, (*env)->GetMethodID(env, jclazz, "<init>", "(I)V"), dtl_buffer[i]);
+		jobject jinteger = (*env)->NewObject(env, IntegerClass, IntegerInitMID, dtl_buffer[i]);
 		if ((*env)->CallBooleanMethod(env, jdtl_buffer, ListAddMID, jinteger) == JNI_FALSE) {
 			(*env)->DeleteLocalRef(env, jinteger);
+			ReleasePcap(env, jpcap);
 			return (jint) -1;
 		}
+		(*env)->DeleteLocalRef(env, jinteger);
 	}
 	pcap_free_datalinks(dtl_buffer);
+	ReleasePcap(env, jpcap);
 	return count;
 #endif
     return -1;
@@ -1519,14 +1779,16 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapListTStampTypes
 	int count = pcap_list_tstamp_types(pcap, &list_tstamp_type);
 	int i;
 	for (i=0; i<count; i++) {
-		jclass jclazz = (*env)->FindClass(env, "java/lang/Integer");
-		jobject jinteger = (*env)->NewObject(env, jclazz, (*env)->GetMethodID(env, jclazz, "<init>", "(I)V"), list_tstamp_type[i]);
+		jobject jinteger = (*env)->NewObject(env, IntegerClass, IntegerInitMID, list_tstamp_type[i]);
 		if ((*env)->CallBooleanMethod(env, jtstamp_typesp, ListAddMID, jinteger) == JNI_FALSE) {
 			(*env)->DeleteLocalRef(env, jinteger);
+			ReleasePcap(env, jpcap);
 			return (jint) -1;
 		}
+		(*env)->DeleteLocalRef(env, jinteger);
 	}
 	pcap_free_tstamp_types(list_tstamp_type);
+	ReleasePcap(env, jpcap);
 	return count;
 #endif
     return -1;
@@ -1667,7 +1929,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapOfflineFilter
 
 	u_char *sp = (u_char *) (*env)->GetDirectBufferAddress(env, jpkt);
 
-	return (jint) pcap_offline_filter(fp, &hdr, sp);
+	jint r = (jint) pcap_offline_filter(fp, &hdr, sp);
+	ReleaseBpfProgram(env, jfp);
+	return r;
 }
 
 /*
@@ -1732,10 +1996,13 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapInject
 
 	if (buf == NULL) {
 		ThrowNew(env, NULL_PTR_EXCEPTION, "Unable to retrive address from ByteBuffer");
+		ReleasePcap(env, jpcap);
 		return (jint) -1;
 	}
 
-	return (jint) pcap_inject(pcap, buf + (int) 0, (int) jsize);
+	jint r = (jint) pcap_inject(pcap, buf + (int) 0, (int) jsize);
+	ReleasePcap(env, jpcap);
+	return r;
 #endif
     return -1;
 }
@@ -1759,7 +2026,9 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapCheckActivated
    	}
 
    	//return (jint) pcap_check_activated(pcap);
-	if (pcap->activated) {
+	int activated = pcap->activated;
+	ReleasePcap(env, jpcap);
+	if (activated) {
 		return (-1);
 	}
 	return (0);
@@ -1832,6 +2101,223 @@ JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapCheckActivated
 //  }
 
 
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapFileno
+ * Signature: (Lcom/ardikars/jxnet/Pcap;)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapFileno
+  (JNIEnv *env, jclass jcls, jobject jpcap) {
+
+    UNUSED(jcls);
+
+    if (CheckNotNull(env, jpcap, NULL) == NULL) return -1;
+
+	pcap_t *pcap = GetNotDeadPcap(env, jpcap); // Exception already thrown
+
+	if (pcap == NULL) {
+		return (jint) -1;
+	}
+
+	jint r = (jint) pcap_fileno(pcap);
+	ReleasePcap(env, jpcap);
+	return r;
+  }
+
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapSetFanout
+ * Signature: (Lcom/ardikars/jxnet/Pcap;II)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSetFanout
+  (JNIEnv *env, jclass jcls, jobject jpcap, jint jgroup_id, jint jmode) {
+
+    UNUSED(jcls);
+
+#if !defined(__linux__) || !defined(PACKET_FANOUT)
+    UNUSED(jpcap);
+    UNUSED(jgroup_id);
+    UNUSED(jmode);
+    ThrowNew(env, PLATFORM_NOT_SUPPORTED_EXCEPTION, "PcapSetFanout() only supported on linux.");
+    return -1;
+#else
+    if (CheckNotNull(env, jpcap, NULL) == NULL) return -1;
+    if (!CheckArgument(env, (jgroup_id >= 0 && jgroup_id <= 0xffff), "Fanout group id should be between 0 and 65535.")) return -1;
+
+	pcap_t *pcap = GetNotDeadPcap(env, jpcap); // Exception already thrown
+
+	if (pcap == NULL) {
+		return (jint) -1;
+	}
+
+	int fd = pcap_fileno(pcap);
+	if (fd < 0) {
+		ReleasePcap(env, jpcap);
+		ThrowNew(env, NATIVE_EXCEPTION, "PcapSetFanout() requires an activated live handle.");
+		return -1;
+	}
+
+	// Low 16 bit is the group id, high 16 bit is the fanout mode and flags.
+	int fanout = (int) (jgroup_id & 0xffff) | ((int) jmode << 16);
+	if (setsockopt(fd, SOL_PACKET, PACKET_FANOUT, &fanout, sizeof(fanout)) < 0) {
+		ReleasePcap(env, jpcap);
+		ThrowNew(env, NATIVE_EXCEPTION, strerror(errno));
+		return -1;
+	}
+	ReleasePcap(env, jpcap);
+	return 0;
+#endif
+  }
+
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapDumpPreallocate
+ * Signature: (Lcom/ardikars/jxnet/PcapDumper;J)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapDumpPreallocate
+  (JNIEnv *env, jclass jcls, jobject jpcap_dumper, jlong jlength) {
+
+    UNUSED(jcls);
+
+#if !defined(__linux__) || !defined(FALLOC_FL_KEEP_SIZE)
+    UNUSED(jpcap_dumper);
+    UNUSED(jlength);
+    ThrowNew(env, PLATFORM_NOT_SUPPORTED_EXCEPTION, "PcapDumpPreallocate() only supported on linux.");
+    return -1;
+#else
+    if (CheckNotNull(env, jpcap_dumper, NULL) == NULL) return -1;
+    if (!CheckArgument(env, (jlength > 0), "Length should be greater than 0.")) return -1;
+
+	pcap_dumper_t *pcap_dumper = GetPcapDumper(env, jpcap_dumper); // Exception already thrown
+
+	if (pcap_dumper == NULL) {
+		return -1;
+	}
+
+	// Keep the file size, so pcap_dump() still appends after the last packet.
+	int fd = fileno(pcap_dump_file(pcap_dumper));
+	if (fd < 0) {
+		ReleasePcapDumper(env, jpcap_dumper);
+		ThrowNew(env, NATIVE_EXCEPTION, "PcapDumpPreallocate() requires a savefile, the dumper has no file descriptor.");
+		return -1;
+	}
+	long offset = pcap_dump_ftell(pcap_dumper);
+	if (offset < 0) {
+		ReleasePcapDumper(env, jpcap_dumper);
+		ThrowNew(env, NATIVE_EXCEPTION, "PcapDumpPreallocate() unable to get the savefile position.");
+		return -1;
+	}
+	if (fallocate(fd, FALLOC_FL_KEEP_SIZE, (off_t) offset, (off_t) jlength) < 0) {
+		ReleasePcapDumper(env, jpcap_dumper);
+		ThrowNew(env, NATIVE_EXCEPTION, strerror(errno));
+		return -1;
+	}
+	ReleasePcapDumper(env, jpcap_dumper);
+	return 0;
+#endif
+  }
+
+#define SEND_BATCH_CHUNK 64
+
+/*
+ * Class:     com_ardikars_jxnet_Jxnet
+ * Method:    PcapSendBatch
+ * Signature: (Lcom/ardikars/jxnet/Pcap;Ljava/nio/ByteBuffer;I)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_Jxnet_PcapSendBatch
+  (JNIEnv *env, jclass jcls, jobject jpcap, jobject jbuf, jint jsize) {
+
+    UNUSED(jcls);
+
+	if (CheckNotNull(env, jpcap, NULL) == NULL) return -1;
+	if (CheckNotNull(env, jbuf, NULL) == NULL) return -1;
+	if (!CheckArgument(env, (jsize >= 0 && jsize <= (*env)->GetDirectBufferCapacity(env, jbuf)),
+			"Size should be between 0 and buffer capacity.")) return -1;
+
+	pcap_t *pcap = GetNotDeadPcap(env, jpcap); // Exception already thrown
+
+	if (pcap == NULL) {
+		return (jint) -1;
+	}
+
+	u_char *buf = (u_char *) (*env)->GetDirectBufferAddress(env, jbuf);
+
+	if (buf == NULL) {
+		ThrowNew(env, NULL_PTR_EXCEPTION, "Unable to retrive address from ByteBuffer");
+		ReleasePcap(env, jpcap);
+		return (jint) -1;
+	}
+
+	// Each frame is prefixed by its length (native byte order int), frames are not padded.
+	// Validate all frames first, so a malformed batch is rejected before anything is sent.
+	jint offset = 0;
+	while (offset < jsize) {
+		int length = 0;
+		if (jsize - offset >= (jint) sizeof(length)) {
+			memcpy(&length, buf + offset, sizeof(length));
+		}
+		if (length <= 0 || length > jsize - offset - (jint) sizeof(length)) {
+			ReleasePcap(env, jpcap);
+			ThrowNew(env, ILLEGAL_ARGUMENT_EXCEPTION, "Malformed frame length.");
+			return -1;
+		}
+		offset += (jint) sizeof(length) + length;
+	}
+
+	u_char *frames[SEND_BATCH_CHUNK];
+	int lengths[SEND_BATCH_CHUNK];
+#if defined(__linux__)
+	struct mmsghdr msgs[SEND_BATCH_CHUNK];
+	struct iovec iovs[SEND_BATCH_CHUNK];
+	int fd = pcap_fileno(pcap);
+#endif
+	jint sent = 0;
+	offset = 0;
+	while (offset < jsize) {
+		int n = 0;
+		while (n < SEND_BATCH_CHUNK && offset < jsize) {
+			int length;
+			memcpy(&length, buf + offset, sizeof(length));
+			frames[n] = buf + offset + sizeof(length);
+			lengths[n] = length;
+			offset += (jint) sizeof(length) + length;
+			n++;
+		}
+		int r = 0;
+#if defined(__linux__)
+		if (fd >= 0) {
+			int i;
+			memset(msgs, 0, sizeof(struct mmsghdr) * n);
+			for (i = 0; i < n; i++) {
+				iovs[i].iov_base = frames[i];
+				iovs[i].iov_len = (size_t) lengths[i];
+				msgs[i].msg_hdr.msg_iov = &iovs[i];
+				msgs[i].msg_hdr.msg_iovlen = 1;
+			}
+			r = sendmmsg(fd, msgs, (unsigned int) n, 0);
+			if (r < 0) {
+				snprintf(pcap->errbuf, PCAP_ERRBUF_SIZE, "sendmmsg: %s", strerror(errno));
+				r = 0;
+			}
+		} else
+#endif
+		{
+			while (r < n && pcap_sendpacket(pcap, frames[r], lengths[r]) == 0) {
+				r++;
+			}
+		}
+		sent += r;
+		if (r < n) {
+			break; // Partial batch, caller decides to resend or drop the rest.
+		}
+	}
+	ReleasePcap(env, jpcap);
+	if (sent == 0 && jsize > 0) {
+		return -1;
+	}
+	return sent;
+  }
+
 /**
  * Non pcap functions
  */
@@ -1919,4 +2405,13 @@ JNIEXPORT void JNICALL Java_com_ardikars_jxnet_Jxnet_initIDs
     SetSockAddrIDs(env);
     SetPcapIDs(env);
     SetBpfProgramIDs(env);
+    SetHandleStateIDs(env);
+    SetPacketRingIDs(env);
+    SetPcapPktHdrIDs(env);
+    SetByteBufferIDs(env);
+    SetPcapDumperIDs(env);
+    SetPcapStatIDs(env);
+    SetPcapDirectionIDs(env);
+    SetIntegerIDs(env);
+    SetHandlerIDs(env);
   }
@@ -0,0 +1,361 @@
+/**
+ * Copyright (C) 2015-2018 Jxnet
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+#include <pcap.h>
+#include <stdlib.h>
+#include <string.h>
+
+#include "ids.h"
+#include "utils.h"
+#include "preconditions.h"
+#include "../include/jxnet/com_ardikars_jxnet_PacketRing.h"
+
+#if defined(__linux__)
+#include <errno.h>
+#include <poll.h>
+#include <unistd.h>
+#include <net/if.h>
+#include <arpa/inet.h>
+#include <sys/mman.h>
+#include <sys/socket.h>
+#include <linux/if_ether.h>
+#include <linux/if_packet.h>
+#include <linux/filter.h>
+#endif
+
+#define UNUSED(x) (void)(x)
+
+#if defined(__linux__) && defined(TPACKET3_HDRLEN)
+
+static void PacketRingFree(packet_ring_t *ring) {
+    if (ring->map != NULL && ring->map != MAP_FAILED) {
+        munmap(ring->map, ring->map_size);
+    }
+    if (ring->fd >= 0) {
+        close(ring->fd);
+    }
+    free(ring);
+}
+
+static struct tpacket_block_desc *PacketRingBlock(packet_ring_t *ring, jint index) {
+    return (struct tpacket_block_desc *) (ring->map + (size_t) index * ring->block_size);
+}
+
+#endif
+
+/*
+ * Class:     com_ardikars_jxnet_PacketRing
+ * Method:    openPacketRing
+ * Signature: (Ljava/lang/String;IIIIZI)V
+ */
+JNIEXPORT void JNICALL Java_com_ardikars_jxnet_PacketRing_openPacketRing
+        (JNIEnv *env, jobject jobj, jstring jsource, jint jblock_size, jint jblock_count,
+        jint jframe_size, jint jblock_timeout, jboolean jpromiscuous, jint jfanout) {
+
+#if !defined(__linux__) || !defined(TPACKET3_HDRLEN)
+    UNUSED(jobj);
+    UNUSED(jsource);
+    UNUSED(jblock_size);
+    UNUSED(jblock_count);
+    UNUSED(jframe_size);
+    UNUSED(jblock_timeout);
+    UNUSED(jpromiscuous);
+    UNUSED(jfanout);
+    ThrowNew(env, PLATFORM_NOT_SUPPORTED_EXCEPTION, "PacketRing only supported on linux.");
+#else
+    if (CheckNotNull(env, jobj, NULL) == NULL) return;
+    if (CheckNotNull(env, jsource, "Source should be not null.") == NULL) return;
+    if (!CheckArgument(env, (jblock_size > 0 && jblock_count > 0 && jframe_size > 0),
+            "Block size, block count and frame size should be greater than zero.")) return;
+
+    SetPacketRingIDs(env);
+
+    packet_ring_t *ring = (packet_ring_t *) malloc(sizeof(packet_ring_t));
+    if (ring == NULL) {
+        ThrowNew(env, NATIVE_EXCEPTION, "PacketRing out of memory");
+        return;
+    }
+    ring->map = NULL;
+    ring->block_size = (unsigned int) jblock_size;
+    ring->block_count = (unsigned int) jblock_count;
+    ring->map_size = (size_t) ring->block_size * ring->block_count;
+
+    const char *source = (*env)->GetStringUTFChars(env, jsource, 0);
+    unsigned int ifindex = if_nametoindex(source);
+    (*env)->ReleaseStringUTFChars(env, jsource, source);
+    if (ifindex == 0) {
+        free(ring);
+        ThrowNew(env, NATIVE_EXCEPTION, "No such device.");
+        return;
+    }
+
+    ring->fd = socket(AF_PACKET, SOCK_RAW, htons(ETH_P_ALL));
+    if (ring->fd < 0) {
+        free(ring);
+        ThrowNew(env, NATIVE_EXCEPTION, strerror(errno));
+        return;
+    }
+
+    int version = TPACKET_V3;
+    struct tpacket_req3 req;
+    memset(&req, 0, sizeof(req));
+    req.tp_block_size = ring->block_size;
+    req.tp_block_nr = ring->block_count;
+    req.tp_frame_size = (unsigned int) jframe_size;
+    req.tp_frame_nr = (unsigned int) (ring->map_size / (size_t) jframe_size);
+    req.tp_retire_blk_tov = (unsigned int) jblock_timeout;
+    req.tp_feature_req_word = TP_FT_REQ_FILL_RXHASH;
+
+    struct sockaddr_ll addr;
+    memset(&addr, 0, sizeof(addr));
+    addr.sll_family = AF_PACKET;
+    addr.sll_protocol = htons(ETH_P_ALL);
+    addr.sll_ifindex = (int) ifindex;
+
+    if (setsockopt(ring->fd, SOL_PACKET, PACKET_VERSION, &version, sizeof(version)) < 0
+            || setsockopt(ring->fd, SOL_PACKET, PACKET_RX_RING, &req, sizeof(req)) < 0) {
+        ThrowNew(env, NATIVE_EXCEPTION, strerror(errno));
+        PacketRingFree(ring);
+        return;
+    }
+
+    ring->map = (u_char *) mmap(NULL, ring->map_size, PROT_READ | PROT_WRITE, MAP_SHARED, ring->fd, 0);
+    if (ring->map == MAP_FAILED) {
+        ThrowNew(env, NATIVE_EXCEPTION, strerror(errno));
+        PacketRingFree(ring);
+        return;
+    }
+
+    if (bind(ring->fd, (struct sockaddr *) &addr, sizeof(addr)) < 0) {
+        ThrowNew(env, NATIVE_EXCEPTION, strerror(errno));
+        PacketRingFree(ring);
+        return;
+    }
+
+    if (jpromiscuous == JNI_TRUE) {
+        struct packet_mreq mreq;
+        memset(&mreq, 0, sizeof(mreq));
+        mreq.mr_ifindex = (int) ifindex;
+        mreq.mr_type = PACKET_MR_PROMISC;
+        if (setsockopt(ring->fd, SOL_PACKET, PACKET_ADD_MEMBERSHIP, &mreq, sizeof(mreq)) < 0) {
+            ThrowNew(env, NATIVE_EXCEPTION, strerror(errno));
+            PacketRingFree(ring);
+            return;
+        }
+    }
+
+    if (jfanout >= 0) {
+        int fanout = (int) jfanout; // Low 16 bit is the group id, high 16 bit is the fanout mode and flags.
+        if (setsockopt(ring->fd, SOL_PACKET, PACKET_FANOUT, &fanout, sizeof(fanout)) < 0) {
+            ThrowNew(env, NATIVE_EXCEPTION, strerror(errno));
+            PacketRingFree(ring);
+            return;
+        }
+    }
+
+    SetPacketRing(env, jobj, ring);
+#endif
+
+}
+
+/*
+ * Class:     com_ardikars_jxnet_PacketRing
+ * Method:    mapping0
+ * Signature: ()Ljava/nio/ByteBuffer;
+ */
+JNIEXPORT jobject JNICALL Java_com_ardikars_jxnet_PacketRing_mapping0
+        (JNIEnv *env, jobject jobj) {
+
+    if (CheckNotNull(env, jobj, NULL) == NULL) return NULL;
+
+    packet_ring_t *ring = GetPacketRing(env, jobj); // Exception already thrown
+
+    if (ring == NULL) {
+        return NULL;
+    }
+
+    jobject buffer = (*env)->NewDirectByteBuffer(env, ring->map, (jlong) ring->map_size);
+    ReleasePacketRing(env, jobj);
+    return buffer;
+
+}
+
+/*
+ * Class:     com_ardikars_jxnet_PacketRing
+ * Method:    mappingAddress0
+ * Signature: ()J
+ */
+JNIEXPORT jlong JNICALL Java_com_ardikars_jxnet_PacketRing_mappingAddress0
+        (JNIEnv *env, jobject jobj) {
+
+    if (CheckNotNull(env, jobj, NULL) == NULL) return 0;
+
+    packet_ring_t *ring = GetPacketRing(env, jobj); // Exception already thrown
+
+    if (ring == NULL) {
+        return 0;
+    }
+
+    jlong address = PointerToJlong(ring->map);
+    ReleasePacketRing(env, jobj);
+    return address;
+
+}
+
+/*
+ * Class:     com_ardikars_jxnet_PacketRing
+ * Method:    nextBlock0
+ * Signature: (II)I
+ */
+JNIEXPORT jint JNICALL Java_com_ardikars_jxnet_PacketRing_nextBlock0
+        (JNIEnv *env, jobject jobj, jint jindex, jint jtimeout) {
+
+#if !defined(__linux__) || !defined(TPACKET3_HDRLEN)
+    UNUSED(jobj);
+    UNUSED(jindex);
+    UNUSED(jtimeout);
+    ThrowNew(env, PLATFORM_NOT_SUPPORTED_EXCEPTION, "PacketRing only supported on linux.");
+    return -1;
+#else
+    if (CheckNotNull(env, jobj, NULL) == NULL) return -1;
+
+    packet_ring_t *ring = GetPacketRing(env, jobj); // Exception already thrown
+
+    if (ring == NULL) {
+        return -1;
+    }
+
+    if (jindex < 0 || (unsigned int) jindex >= ring->block_count) {
+        ReleasePacketRing(env, jobj);
+        ThrowNew(env, ILLEGAL_ARGUMENT_EXCEPTION, "Block index out of range.");
+        return -1;
+    }
+
+    volatile struct tpacket_block_desc *desc = PacketRingBlock(ring, jindex);
+    if ((desc->hdr.bh1.block_status & TP_STATUS_USER) == 0) {
+        struct pollfd pfd;
+        pfd.fd = ring->fd;
+        pfd.events = POLLIN | POLLERR;
+        pfd.revents = 0;
+        if (poll(&pfd, 1, (int) jtimeout) < 0 && errno != EINTR) {
+            ReleasePacketRing(env, jobj);
+            ThrowNew(env, NATIVE_EXCEPTION, strerror(errno));
+            return -1;
+        }
+        if ((desc->hdr.bh1.block_status & TP_STATUS_USER) == 0) {
+            ReleasePacketRing(env, jobj);
+            return -1; // Timeout, no retired block yet
+        }
+    }
+    __sync_synchronize(); // Read block content after block status
+    return jindex; // Keep the reference until releaseBlock0(), the ring is not unmapped while the block is in use
+#endif
+
+}
+
+/*
+ * Class:     com_ardikars_jxnet_PacketRing
+ * Method:    releaseBlock0
+ * Signature: (I)V
+ */
+JNIEXPORT void JNICALL Java_com_ardikars_jxnet_PacketRing_releaseBlock0
+        (JNIEnv *env, jobject jobj, jint jindex) {
+
+#if !defined(__linux__) || !defined(TPACKET3_HDRLEN)
+    UNUSED(jobj);
+    UNUSED(jindex);
+    ThrowNew(env, PLATFORM_NOT_SUPPORTED_EXCEPTION, "PacketRing only supported on linux.");
+#else
+    if (CheckNotNull(env, jobj, NULL) == NULL) return;
+
+    packet_ring_t *ring = GetHeldPacketRing(env, jobj); // Reference taken by nextBlock0(), even if closed meanwhile
+
+    if (ring == NULL) {
+        ThrowNew(env, PACKET_RING_CLOSE_EXCEPTION, NULL);
+        return;
+    }
+
+    if (jindex < 0 || (unsigned int) jindex >= ring->block_count) {
+        ReleasePacketRing(env, jobj); // Drop the reference of the block anyway, or the ring is never unmapped
+        ThrowNew(env, ILLEGAL_ARGUMENT_EXCEPTION, "Block index out of range.");
+        return;
+    }
+
+    volatile struct tpacket_block_desc *desc = PacketRingBlock(ring, jindex);
+    __sync_synchronize(); // Finish reading block content before handing it back to the kernel
+    desc->hdr.bh1.block_status = TP_STATUS_KERNEL;
+    ReleasePacketRing(env, jobj); // Drop the reference of the block, the ring is unmapped here if closed
+#endif
+
+}
+
+/*
+ * Class:     com_ardikars_jxnet_PacketRing
+ * Method:    setFilter0
+ * Signature: (Lcom/ardikars/jxnet/BpfProgram;)V
+ */
+JNIEXPORT void JNICALL Java_com_ardikars_jxnet_PacketRing_setFilter0
+        (JNIEnv *env, jobject jobj, jobject jfp) {
+
+#if !defined(__linux__) || !defined(TPACKET3_HDRLEN)
+    UNUSED(jobj);
+    UNUSED(jfp);
+    ThrowNew(env, PLATFORM_NOT_SUPPORTED_EXCEPTION, "PacketRing only supported on linux.");
+#else
+    if (CheckNotNull(env, jobj, NULL) == NULL) return;
+    if (CheckNotNull(env, jfp, NULL) == NULL) return;
+
+    packet_ring_t *ring = GetPacketRing(env, jobj); // Exception already thrown
+
+    if (ring == NULL) {
+        return;
+    }
+
+    struct bpf_program *fp = GetBpfProgram(env, jfp);
+
+    if (fp == NULL) {
+        ReleasePacketRing(env, jobj);
+        return;
+    }
+
+    struct sock_fprog fprog;
+    fprog.len = (unsigned short) fp->bf_len;
+    fprog.filter = (struct sock_filter *) fp->bf_insns; // Same layout as struct bpf_insn
+    // The kernel replaces the previous filter atomically, no packet is seen without a filter.
+    if (setsockopt(ring->fd, SOL_SOCKET, SO_ATTACH_FILTER, &fprog, sizeof(fprog)) < 0) {
+        ThrowNew(env, NATIVE_EXCEPTION, strerror(errno));
+    }
+
+    ReleaseBpfProgram(env, jfp);
+    ReleasePacketRing(env, jobj);
+#endif
+
+}
+
+/*
+ * Class:     com_ardikars_jxnet_PacketRing
+ * Method:    closePacketRing
+ * Signature: ()V
+ */
+JNIEXPORT void JNICALL Java_com_ardikars_jxnet_PacketRing_closePacketRing
+        (JNIEnv *env, jobject jobj) {
+
+    if (CheckNotNull(env, jobj, NULL) == NULL) return;
+
+    ClosePacketRing(env, jobj); // Exception already thrown
+
+}
@@ -22,6 +22,8 @@
 #include "utils.h"
 
 #include <sys/time.h>
+#include <stdlib.h>
+#include <string.h>
 
 #if defined(WIN32) || defined(WIN64)
 #include <winsock2.h>
@@ -32,13 +34,10 @@
 #include <netinet/in.h>
 #endif
 
-void SetContextIDs(JNIEnv *env) {
-    SetPcapDirectionIDs(env);
-    SetPcapDumperIDs(env);
-    SetPcapStatIDs(env);
-    SetPcapPktHdrIDs(env);
-    SetByteBufferIDs(env);
-}
+#if defined(__linux__)
+#include <unistd.h>
+#include <sys/mman.h>
+#endif
 
 void ThrowNew(JNIEnv *env, const char *class_name, const char *message) {
 	(*env)->ThrowNew(env, (*env)->FindClass(env, class_name), message);
@@ -74,11 +73,6 @@ void SetStringBuilder(JNIEnv *env, jobject obj, const char *str) {
 	(*env)->CallObjectMethod(env, obj, StringBuilderAppendMID, (*env)->NewStringUTF(env, str));
 }
 
-jobject NewObject(JNIEnv *env, const char *class_name, const char *name, const char *signature) {
-	jclass class = (*env)->FindClass(env, class_name);
-	return (*env)->NewObject(env, class, (*env)->GetMethodID(env, class, name, signature));
-}
-
 jbyteArray NewByteAddr(JNIEnv *env, struct sockaddr *addr) {
     if (addr == NULL) {
         return (*env)->NewByteArray(env, 0);
@@ -101,7 +95,7 @@ jbyteArray NewByteAddr(JNIEnv *env, struct sockaddr *addr) {
 }
 
 jobject NewSockAddr(JNIEnv *env, struct sockaddr *addr) {
-    jobject sockaddr = NewObject(env, "com/ardikars/jxnet/SockAddr", "<init>", "()V");
+    jobject sockaddr = (*env)->NewObject(env, SockAddrClass, SockAddrInitMID);
     if (addr == NULL) {
         (*env)->SetShortField(env, sockaddr, SockAddrSaFamilyFID, (jshort) 0);
         (*env)->SetObjectField(env, sockaddr, SockAddrDataFID, NewByteAddr(env, NULL));
@@ -113,31 +107,145 @@ jobject NewSockAddr(JNIEnv *env, struct sockaddr *addr) {
 }
 
 jobject SetPcap(JNIEnv *env, pcap_t *pcap) {
-	jobject obj = NewObject(env, "com/ardikars/jxnet/Pcap", "<init>", "()V");
+	jobject obj = (*env)->NewObject(env, PcapClass, PcapInitMID);
 	(*env)->SetLongField(env, obj, PcapAddressFID, PointerToJlong(pcap));
-	SetContextIDs(env);
 	return obj;
 }
 
 jobject SetDeadPcap(JNIEnv *env, pcap_t *pcap) {
-	jobject obj = NewObject(env, "com/ardikars/jxnet/Pcap", "<init>", "()V");
+	jobject obj = (*env)->NewObject(env, PcapClass, PcapInitMID);
 	(*env)->SetLongField(env, obj, PcapAddressFID, PointerToJlong(pcap));
 	(*env)->SetBooleanField(env, obj, PcapIsDeadFID, JNI_TRUE);
-	SetContextIDs(env);
 	return obj;
 }
 
+/*
+ * Native handle state, see com.ardikars.jxnet.HandleState.
+ * Word at offset 0 is closed flag and reference count, and the word at offset 8
+ * hold native pointer waiting to be freed by the last reference.
+ */
+#define HANDLE_CLOSED ((jint) 0x80000000)
+#define HANDLE_PENDING_OFFSET 8
+
+#define HANDLE_PCAP 0
+#define HANDLE_PCAP_DUMPER 1
+#define HANDLE_BPF_PROGRAM 2
+#define HANDLE_PACKET_RING 3
+
+#if defined(WIN32) || defined(WIN64)
+#define HANDLE_LOAD(ptr) InterlockedCompareExchange((volatile LONG *) (ptr), 0, 0)
+#define HANDLE_CAS(ptr, expected, desired) \
+	(InterlockedCompareExchange((volatile LONG *) (ptr), (LONG) (desired), (LONG) (expected)) == (LONG) (expected))
+#define HANDLE_DECREMENT(ptr) InterlockedDecrement((volatile LONG *) (ptr))
+#else
+#define HANDLE_LOAD(ptr) __sync_fetch_and_add((ptr), 0)
+#define HANDLE_CAS(ptr, expected, desired) __sync_bool_compare_and_swap((ptr), (expected), (desired))
+#define HANDLE_DECREMENT(ptr) __sync_sub_and_fetch((ptr), 1)
+#endif
+
+static volatile jint *HandleControl(JNIEnv *env, jobject obj, jfieldID state_fid) {
+	jobject state = (*env)->GetObjectField(env, obj, state_fid);
+	if (state == NULL) {
+		return NULL;
+	}
+	jobject control = (*env)->GetObjectField(env, state, HandleStateControlFID);
+	(*env)->DeleteLocalRef(env, state);
+	if (control == NULL) {
+		return NULL;
+	}
+	volatile jint *ctl = (volatile jint *) (*env)->GetDirectBufferAddress(env, control);
+	(*env)->DeleteLocalRef(env, control);
+	return ctl;
+}
+
+static void HandleFree(int type, void *pointer) {
+	if (pointer == NULL) {
+		return;
+	}
+	switch (type) {
+		case HANDLE_PCAP:
+			pcap_close((pcap_t *) pointer);
+			break;
+		case HANDLE_PCAP_DUMPER:
+			pcap_dump_close((pcap_dumper_t *) pointer);
+			break;
+		case HANDLE_BPF_PROGRAM:
+			pcap_freecode((struct bpf_program *) pointer);
+			free(pointer);
+			break;
+		case HANDLE_PACKET_RING:
+#if defined(__linux__)
+			munmap(((packet_ring_t *) pointer)->map, ((packet_ring_t *) pointer)->map_size);
+			close(((packet_ring_t *) pointer)->fd);
+#endif
+			free(pointer);
+			break;
+		default:
+			break;
+	}
+}
+
+static void *HandleAcquire(JNIEnv *env, jobject obj, jfieldID state_fid, jfieldID address_fid, int type, const char *exception) {
+	volatile jint *ctl = HandleControl(env, obj, state_fid);
+	jint value;
+	if (ctl == NULL) {
+		ThrowNew(env, exception, NULL);
+		return NULL;
+	}
+	do {
+		value = HANDLE_LOAD(ctl);
+		if ((value & HANDLE_CLOSED) != 0) {
+			ThrowNew(env, exception, NULL);
+			return NULL;
+		}
+	} while (!HANDLE_CAS(ctl, value, value + 1));
+	jlong address = (*env)->GetLongField(env, obj, address_fid);
+	if (address == 0) {
+		if (HANDLE_DECREMENT(ctl) == HANDLE_CLOSED) {
+			HandleFree(type, JlongToPointer(*(volatile jlong *) ((char *) ctl + HANDLE_PENDING_OFFSET)));
+		}
+		ThrowNew(env, exception, NULL);
+		return NULL;
+	}
+	return JlongToPointer(address);
+}
+
+static void HandleRelease(JNIEnv *env, jobject obj, jfieldID state_fid, int type) {
+	volatile jint *ctl = HandleControl(env, obj, state_fid);
+	if (ctl == NULL) {
+		return;
+	}
+	if (HANDLE_DECREMENT(ctl) == HANDLE_CLOSED) { // Last reference of closed handle
+		HandleFree(type, JlongToPointer(*(volatile jlong *) ((char *) ctl + HANDLE_PENDING_OFFSET)));
+	}
+}
+
+static int HandleClose(JNIEnv *env, jobject obj, jfieldID state_fid, jfieldID address_fid, int type, const char *exception) {
+	volatile jint *ctl = HandleControl(env, obj, state_fid);
+	jint value;
+	if (ctl == NULL) {
+		ThrowNew(env, exception, NULL);
+		return -1;
+	}
+	do {
+		value = HANDLE_LOAD(ctl);
+		if ((value & HANDLE_CLOSED) != 0) {
+			ThrowNew(env, exception, NULL);
+			return -1;
+		}
+	} while (!HANDLE_CAS(ctl, value, value | HANDLE_CLOSED));
+	*(volatile jlong *) ((char *) ctl + HANDLE_PENDING_OFFSET) = (*env)->GetLongField(env, obj, address_fid);
+	(*env)->SetLongField(env, obj, address_fid, (jlong) 0);
+	HandleRelease(env, obj, state_fid, type); // Drop owner reference
+	return 0;
+}
+
 pcap_t *GetPcap(JNIEnv *env, jobject jpcap) {
 	if (jpcap == NULL) {
 		ThrowNew(env, NULL_PTR_EXCEPTION, NULL);
 		return NULL;
 	}
-	jlong pcap = 0;
-	if ((pcap = (*env)->CallLongMethod(env, jpcap, PcapGetAddressMID)) == 0) {
-		ThrowNew(env, PCAP_CLOSE_EXCEPTION, NULL);
-		return NULL;
-	}
-	return JlongToPointer(pcap);
+	return (pcap_t *) HandleAcquire(env, jpcap, PcapStateFID, PcapAddressFID, HANDLE_PCAP, PCAP_CLOSE_EXCEPTION);
 }
 
 pcap_t *GetNotDeadPcap(JNIEnv *env, jobject jpcap) {
@@ -145,20 +253,23 @@ pcap_t *GetNotDeadPcap(JNIEnv *env, jobject jpcap) {
 		ThrowNew(env, NULL_PTR_EXCEPTION, NULL);
 		return NULL;
 	}
-	if (JNI_TRUE == (*env)->CallBooleanMethod(env, jpcap, PcapIsDeadMID)) {
+	if (JNI_TRUE == (*env)->GetBooleanField(env, jpcap, PcapIsDeadFID)) {
         ThrowNew(env, NATIVE_EXCEPTION, "Operation not supported on a PcapOpenDead():Pcap.");
         return NULL;
     }
-	jlong pcap = 0;
-	if ((pcap = (*env)->CallLongMethod(env, jpcap, PcapGetAddressMID)) == 0) {
-		ThrowNew(env, PCAP_CLOSE_EXCEPTION, NULL);
-		return NULL;
-	}
-	return JlongToPointer(pcap);
+	return (pcap_t *) HandleAcquire(env, jpcap, PcapStateFID, PcapAddressFID, HANDLE_PCAP, PCAP_CLOSE_EXCEPTION);
+}
+
+void ReleasePcap(JNIEnv *env, jobject jpcap) {
+	HandleRelease(env, jpcap, PcapStateFID, HANDLE_PCAP);
+}
+
+int ClosePcap(JNIEnv *env, jobject jpcap) {
+	return HandleClose(env, jpcap, PcapStateFID, PcapAddressFID, HANDLE_PCAP, PCAP_CLOSE_EXCEPTION);
 }
 
 jobject SetPcapDumper(JNIEnv *env, pcap_dumper_t *pcap_dumper) {
-	jobject obj = NewObject(env, "com/ardikars/jxnet/PcapDumper", "<init>", "()V");
+	jobject obj = (*env)->NewObject(env, PcapDumperClass, PcapDumperInitMID);
 	(*env)->SetLongField(env, obj, PcapDumperAddressFID, PointerToJlong(pcap_dumper));
 	return obj;
 }
@@ -168,12 +279,17 @@ pcap_dumper_t *GetPcapDumper(JNIEnv *env, jobject jpcap_dumper) {
 		ThrowNew(env, NULL_PTR_EXCEPTION, NULL);
 		return NULL;
 	}
-	jlong pcap_dumper = 0;
-	if ((pcap_dumper = (*env)->CallLongMethod(env, jpcap_dumper, PcapDumperGetAddressMID)) == 0) {
-		ThrowNew(env, PCAP_DUMPER_CLOSE_EXCEPTION, NULL);
-		return NULL;
-	}
-	return JlongToPointer(pcap_dumper);
+	return (pcap_dumper_t *) HandleAcquire(env, jpcap_dumper, PcapDumperStateFID, PcapDumperAddressFID,
+			HANDLE_PCAP_DUMPER, PCAP_DUMPER_CLOSE_EXCEPTION);
+}
+
+void ReleasePcapDumper(JNIEnv *env, jobject jpcap_dumper) {
+	HandleRelease(env, jpcap_dumper, PcapDumperStateFID, HANDLE_PCAP_DUMPER);
+}
+
+int ClosePcapDumper(JNIEnv *env, jobject jpcap_dumper) {
+	return HandleClose(env, jpcap_dumper, PcapDumperStateFID, PcapDumperAddressFID,
+			HANDLE_PCAP_DUMPER, PCAP_DUMPER_CLOSE_EXCEPTION);
 }
 
 jobject SetBpfProgram(JNIEnv *env, jobject obj, struct bpf_program *fp) {
@@ -186,12 +302,49 @@ struct bpf_program *GetBpfProgram(JNIEnv *env, jobject jbpf_program) {
 		ThrowNew(env, NULL_PTR_EXCEPTION, NULL);
 		return NULL;
 	}
-	jlong bpf_program = 0;
-	if ((bpf_program = (*env)->CallLongMethod(env, jbpf_program, BpfProgramGetAddressMID)) == 0) {
-		ThrowNew(env, BPF_PROGRAM_CLOSE_EXCEPTION, NULL);
+	return (struct bpf_program *) HandleAcquire(env, jbpf_program, BpfProgramStateFID, BpfProgramAddressFID,
+			HANDLE_BPF_PROGRAM, BPF_PROGRAM_CLOSE_EXCEPTION);
+}
+
+void ReleaseBpfProgram(JNIEnv *env, jobject jbpf_program) {
+	HandleRelease(env, jbpf_program, BpfProgramStateFID, HANDLE_BPF_PROGRAM);
+}
+
+int CloseBpfProgram(JNIEnv *env, jobject jbpf_program) {
+	return HandleClose(env, jbpf_program, BpfProgramStateFID, BpfProgramAddressFID,
+			HANDLE_BPF_PROGRAM, BPF_PROGRAM_CLOSE_EXCEPTION);
+}
+
+jobject SetPacketRing(JNIEnv *env, jobject obj, packet_ring_t *ring) {
+	(*env)->SetLongField(env, obj, PacketRingAddressFID, PointerToJlong(ring));
+	return obj;
+}
+
+packet_ring_t *GetPacketRing(JNIEnv *env, jobject jpacket_ring) {
+	if (jpacket_ring == NULL) {
+		ThrowNew(env, NULL_PTR_EXCEPTION, NULL);
 		return NULL;
 	}
-	return JlongToPointer(bpf_program);
+	return (packet_ring_t *) HandleAcquire(env, jpacket_ring, PacketRingStateFID, PacketRingAddressFID,
+			HANDLE_PACKET_RING, PACKET_RING_CLOSE_EXCEPTION);
+}
+
+packet_ring_t *GetHeldPacketRing(JNIEnv *env, jobject jpacket_ring) {
+	volatile jint *ctl = HandleControl(env, jpacket_ring, PacketRingStateFID);
+	jlong address = (*env)->GetLongField(env, jpacket_ring, PacketRingAddressFID);
+	if (address == 0 && ctl != NULL) { // Closed, the pointer is kept until the caller drops its reference
+		address = *(volatile jlong *) ((char *) ctl + HANDLE_PENDING_OFFSET);
+	}
+	return (packet_ring_t *) JlongToPointer(address);
+}
+
+void ReleasePacketRing(JNIEnv *env, jobject jpacket_ring) {
+	HandleRelease(env, jpacket_ring, PacketRingStateFID, HANDLE_PACKET_RING);
+}
+
+int ClosePacketRing(JNIEnv *env, jobject jpacket_ring) {
+	return HandleClose(env, jpacket_ring, PacketRingStateFID, PacketRingAddressFID,
+			HANDLE_PACKET_RING, PACKET_RING_CLOSE_EXCEPTION);
 }
 
 void pcap_callback(u_char *user, const struct pcap_pkthdr *pkt_header, const u_char *pkt_data) {
@@ -202,13 +355,14 @@ void pcap_callback(u_char *user, const struct pcap_pkthdr *pkt_header, const u_c
 													 (jint) pkt_header->len,
 													 (jint) pkt_header->ts.tv_sec,
 													 (jlong) pkt_header->ts.tv_usec);
-	(*env)->CallNonvirtualVoidMethod(env,
-									 user_data->callback,
-									 user_data->PcapHandlerClass,
-									 user_data->PcapHandlerNextPacketMID,
-									 user_data->user,
-									 pkt_hdr,
-									 (*env)->NewDirectByteBuffer(env, (void *) pkt_data, (jint) pkt_header->caplen));
+	jobject buffer = (*env)->NewDirectByteBuffer(env, (void *) pkt_data, (jint) pkt_header->caplen);
+	(*env)->CallVoidMethod(env,
+						   user_data->callback,
+						   user_data->PcapHandlerNextPacketMID,
+						   user_data->user,
+						   pkt_hdr,
+						   buffer);
+	(*env)->DeleteLocalRef(env, buffer);
 	(*env)->DeleteLocalRef(env, pkt_hdr);
 }
 
@@ -217,15 +371,138 @@ void pcap_callback0(u_char *user, const struct pcap_pkthdr *pkt_header, const u_
 	pcap_user_data_t *user_data = (pcap_user_data_t *) user;
 	JNIEnv *env = user_data->env;
 
-	(*env)->CallNonvirtualVoidMethod(env,
-									 user_data->callback,
-									 user_data->PcapHandlerClass,
-									 user_data->PcapHandlerNextPacketMID,
-									 user_data->user,
-									 (jint) pkt_header->caplen,
-									 (jint) pkt_header->len,
-									 (jint) pkt_header->ts.tv_sec,
-									 (jlong) pkt_header->ts.tv_usec,
-									 PointerToJlong((void*) pkt_data));
+	(*env)->CallVoidMethod(env,
+						   user_data->callback,
+						   user_data->PcapHandlerNextPacketMID,
+						   user_data->user,
+						   (jint) pkt_header->caplen,
+						   (jint) pkt_header->len,
+						   (jint) pkt_header->ts.tv_sec,
+						   (jlong) pkt_header->ts.tv_usec,
+						   PointerToJlong((void*) pkt_data));
+
+}
+
+int InitReusable(JNIEnv *env, pcap_user_data_t *user_data) {
+	user_data->pkt_hdr = (*env)->NewObject(env, PcapPktHdrClass, PcapPktHdrInitMID);
+	if (user_data->pkt_hdr == NULL) {
+		return -1;
+	}
+	user_data->buffer = (*env)->NewDirectByteBuffer(env, (void *) user_data, 0);
+	if (user_data->buffer == NULL) {
+		return -1;
+	}
+	return 0;
+}
+
+void ReleaseReusable(JNIEnv *env, pcap_user_data_t *user_data) {
+	jthrowable pending = (*env)->ExceptionOccurred(env);
+	if (pending != NULL) { // Thrown by the handler, given back once the buffer is detached
+		(*env)->ExceptionClear(env);
+	}
+	// Detach buffer from the last packet, so leaked reference can't touch freed memory
+	(*env)->SetLongField(env, user_data->buffer, ByteBufferAddressFID, (jlong) 0);
+	(*env)->SetIntField(env, user_data->buffer, ByteBufferCapacityFID, (jint) 0);
+	(*env)->SetIntField(env, user_data->buffer, ByteBufferLimitFID, (jint) 0);
+	(*env)->SetIntField(env, user_data->buffer, ByteBufferPositionFID, (jint) 0);
+	(*env)->SetIntField(env, user_data->buffer, ByteBufferMarkFID, (jint) -1);
+	(*env)->DeleteLocalRef(env, user_data->buffer);
+	(*env)->DeleteLocalRef(env, user_data->pkt_hdr);
+	if (pending != NULL) {
+		(*env)->Throw(env, pending);
+		(*env)->DeleteLocalRef(env, pending);
+	}
+}
+
+void pcap_reusable_callback(u_char *user, const struct pcap_pkthdr *pkt_header, const u_char *pkt_data) {
+
+	pcap_user_data_t *user_data = (pcap_user_data_t *) user;
+	JNIEnv *env = user_data->env;
+
+	if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
+		return;
+	}
+
+	(*env)->SetIntField(env, user_data->pkt_hdr, PcapPktHdrCaplenFID, (jint) pkt_header->caplen);
+	(*env)->SetIntField(env, user_data->pkt_hdr, PcapPktHdrLenFID, (jint) pkt_header->len);
+	(*env)->SetIntField(env, user_data->pkt_hdr, PcapPktHdrTvSecFID, (jint) pkt_header->ts.tv_sec);
+	(*env)->SetLongField(env, user_data->pkt_hdr, PcapPktHdrTvUsecFID, (jlong) pkt_header->ts.tv_usec);
+
+	(*env)->SetLongField(env, user_data->buffer, ByteBufferAddressFID, PointerToJlong((void *) pkt_data));
+	(*env)->SetIntField(env, user_data->buffer, ByteBufferCapacityFID, (jint) pkt_header->caplen);
+	(*env)->SetIntField(env, user_data->buffer, ByteBufferLimitFID, (jint) pkt_header->caplen);
+	(*env)->SetIntField(env, user_data->buffer, ByteBufferPositionFID, (jint) 0);
+	(*env)->SetIntField(env, user_data->buffer, ByteBufferMarkFID, (jint) -1);
+
+	(*env)->CallVoidMethod(env,
+						   user_data->callback,
+						   user_data->PcapHandlerNextPacketMID,
+						   user_data->user,
+						   user_data->pkt_hdr,
+						   user_data->buffer);
+	if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
+		pcap_breakloop(user_data->pcap);
+	}
+
+}
+
+int pcap_batch_flush(pcap_batch_user_data_t *user_data) {
+	JNIEnv *env = user_data->env;
+	if (user_data->count == 0) {
+		return 0;
+	}
+	(*env)->CallVoidMethod(env,
+						   user_data->callback,
+						   user_data->PcapBatchHandlerNextBatchMID,
+						   user_data->user,
+						   user_data->count,
+						   user_data->headers,
+						   user_data->packets);
+	user_data->count = 0;
+	user_data->offset = 0;
+	if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
+		pcap_breakloop(user_data->pcap);
+		return -1;
+	}
+	return 0;
+}
+
+void pcap_batch_callback(u_char *user, const struct pcap_pkthdr *pkt_header, const u_char *pkt_data) {
+
+	pcap_batch_user_data_t *user_data = (pcap_batch_user_data_t *) user;
+	JNIEnv *env = user_data->env;
+
+	if ((*env)->ExceptionCheck(env) == JNI_TRUE) {
+		return;
+	}
+
+	jint caplen = (jint) pkt_header->caplen;
+	if (caplen > user_data->packets_capacity) {
+		caplen = (jint) user_data->packets_capacity; // Truncate, len still holds the original length
+	}
+	if ((jlong) (user_data->offset + caplen) > user_data->packets_capacity) {
+		if (pcap_batch_flush(user_data) < 0) {
+			return;
+		}
+	}
+
+	jint len = (jint) pkt_header->len;
+	jint tv_sec = (jint) pkt_header->ts.tv_sec;
+	jlong tv_usec = (jlong) pkt_header->ts.tv_usec;
+	u_char *header = user_data->headers_buf + (user_data->count * PCAP_BATCH_HEADER_SIZE);
+
+	memcpy(header, &caplen, sizeof(jint));
+	memcpy(header + 4, &len, sizeof(jint));
+	memcpy(header + 8, &tv_sec, sizeof(jint));
+	memcpy(header + 12, &user_data->offset, sizeof(jint));
+	memcpy(header + 16, &tv_usec, sizeof(jlong));
+	memcpy(user_data->packets_buf + user_data->offset, pkt_data, (size_t) caplen);
+
+	user_data->offset += caplen;
+	user_data->count++;
+
+	if ((jlong) (user_data->count + 1) * PCAP_BATCH_HEADER_SIZE > user_data->headers_capacity) {
+		pcap_batch_flush(user_data);
+	}
 
 }
@@ -30,15 +30,47 @@
 #define PCAP_DUMPER_CLOSE_EXCEPTION "com/ardikars/jxnet/exception/PcapDumperCloseException"
 #define PLATFORM_NOT_SUPPORTED_EXCEPTION "com/ardikars/jxnet/exception/PlatformNotSupportedException"
 #define ILLEGAL_ARGUMENT_EXCEPTION "java/lang/IllegalArgumentException"
+#define PACKET_RING_CLOSE_EXCEPTION "com/ardikars/jxnet/exception/PacketRingCloseException"
 
 typedef struct pcap_user_data_t {
     JNIEnv *env;
+    pcap_t *pcap;
     jobject callback;
     jobject user;
-    jclass PcapHandlerClass;
     jmethodID PcapHandlerNextPacketMID;
+    jobject pkt_hdr;
+    jobject buffer;
 } pcap_user_data_t;
 
+#define PCAP_BATCH_HEADER_SIZE 24
+
+typedef struct pcap_batch_user_data_t {
+    JNIEnv *env;
+    pcap_t *pcap;
+    jobject callback;
+    jobject user;
+    jmethodID PcapBatchHandlerNextBatchMID;
+    jobject headers;
+    jobject packets;
+    u_char *headers_buf;
+    u_char *packets_buf;
+    jlong headers_capacity;
+    jlong packets_capacity;
+    jint count;
+    jint offset;
+} pcap_batch_user_data_t;
+
+/*
+ * Memory mapped TPACKET_V3 receive ring, see com.ardikars.jxnet.PacketRing.
+ */
+typedef struct packet_ring_t {
+    int fd;
+    u_char *map;
+    size_t map_size;
+    unsigned int block_size;
+    unsigned int block_count;
+} packet_ring_t;
+
 jlong PointerToJlong(void *pointer);
 
 void *JlongToPointer(jlong address);
@@ -47,8 +79,6 @@ void ThrowNew(JNIEnv *env, const char *class_name, const char *message);
 
 void SetStringBuilder(JNIEnv *env, jobject obj, const char *str);
 
-jobject NewObject(JNIEnv *env, const char *class_name, const char *name, const char *signature);
-
 jbyteArray NewByteAddr(JNIEnv *env, struct sockaddr *addr);
 
 jobject NewSockAddr(JNIEnv *env, struct sockaddr *addr);
@@ -61,14 +91,46 @@ pcap_t *GetPcap(JNIEnv *env, jobject jpcap);
 
 pcap_t *GetNotDeadPcap(JNIEnv *env, jobject jpcap);
 
+void ReleasePcap(JNIEnv *env, jobject jpcap);
+
+int ClosePcap(JNIEnv *env, jobject jpcap);
+
 jobject SetPcapDumper(JNIEnv *env, pcap_dumper_t *pcap_dumper);
 
 pcap_dumper_t *GetPcapDumper(JNIEnv *env, jobject jpcap_dumper);
 
+void ReleasePcapDumper(JNIEnv *env, jobject jpcap_dumper);
+
+int ClosePcapDumper(JNIEnv *env, jobject jpcap_dumper);
+
 jobject SetBpfProgram(JNIEnv *env, jobject obj, struct bpf_program *fp);
 
 struct bpf_program *GetBpfProgram(JNIEnv *env, jobject jbpf_program);
 
+void ReleaseBpfProgram(JNIEnv *env, jobject jbpf_program);
+
+int CloseBpfProgram(JNIEnv *env, jobject jbpf_program);
+
+jobject SetPacketRing(JNIEnv *env, jobject obj, packet_ring_t *ring);
+
+packet_ring_t *GetPacketRing(JNIEnv *env, jobject jpacket_ring);
+
+packet_ring_t *GetHeldPacketRing(JNIEnv *env, jobject jpacket_ring);
+
+void ReleasePacketRing(JNIEnv *env, jobject jpacket_ring);
+
+int ClosePacketRing(JNIEnv *env, jobject jpacket_ring);
+
 void pcap_callback(u_char *user, const struct pcap_pkthdr *pkt_header, const u_char *pkt_data);
 
 void pcap_callback0(u_char *user, const struct pcap_pkthdr *pkt_header, const u_char *pkt_data);
+
+int InitReusable(JNIEnv *env, pcap_user_data_t *user_data);
+
+void ReleaseReusable(JNIEnv *env, pcap_user_data_t *user_data);
+
+void pcap_reusable_callback(u_char *user, const struct pcap_pkthdr *pkt_header, const u_char *pkt_data);
+
+void pcap_batch_callback(u_char *user, const struct pcap_pkthdr *pkt_header, const u_char *pkt_data);
+
+int pcap_batch_flush(pcap_batch_user_data_t *user_data);
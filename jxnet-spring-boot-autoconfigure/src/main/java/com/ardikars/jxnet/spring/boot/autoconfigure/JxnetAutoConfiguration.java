@@ -27,6 +27,7 @@ import static com.ardikars.jxnet.spring.boot.autoconfigure.constant.JxnetObjectN
 import static com.ardikars.jxnet.spring.boot.autoconfigure.constant.JxnetObjectName.JXNET_AUTO_CONFIGURATION_BEAN_NAME;
 import static com.ardikars.jxnet.spring.boot.autoconfigure.constant.JxnetObjectName.MAC_ADDRESS_BEAN_NAME;
 import static com.ardikars.jxnet.spring.boot.autoconfigure.constant.JxnetObjectName.NETMASK_BEAN_NAME;
+import static com.ardikars.jxnet.spring.boot.autoconfigure.constant.JxnetObjectName.PACKET_BUFFER_POOL_BEAN_NAME;
 import static com.ardikars.jxnet.spring.boot.autoconfigure.constant.JxnetObjectName.PCAP_BUILDER_BEAN_NAME;
 import static com.ardikars.jxnet.spring.boot.autoconfigure.constant.JxnetObjectName.PCAP_IF_BEAN_NAME;
 
@@ -37,10 +38,14 @@ import com.ardikars.common.net.MacAddress;
 import com.ardikars.common.util.Platforms;
 import com.ardikars.jxnet.DataLinkType;
 import com.ardikars.jxnet.Jxnet;
+import com.ardikars.jxnet.PacketBufferPool;
+import com.ardikars.jxnet.PacketRing;
 import com.ardikars.jxnet.Pcap;
 import com.ardikars.jxnet.PcapAddr;
 import com.ardikars.jxnet.PcapCode;
+import com.ardikars.jxnet.PcapFileReader;
 import com.ardikars.jxnet.PcapIf;
+import com.ardikars.jxnet.PromiscuousMode;
 import com.ardikars.jxnet.SockAddr;
 import com.ardikars.jxnet.context.Application;
 import com.ardikars.jxnet.context.Context;
@@ -50,6 +55,7 @@ import com.ardikars.jxnet.exception.PlatformNotSupportedException;
 import com.ardikars.jxnet.exception.UnknownNetmaskException;
 import com.ardikars.jxnet.spring.boot.autoconfigure.memory.MemoryConfigurationProperties;
 
+import java.io.IOException;
 import java.net.SocketException;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -65,6 +71,7 @@ import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
 
 /**
  * Spring autoconfiguration.
@@ -254,6 +261,27 @@ public class JxnetAutoConfiguration {
         return Executors.newFixedThreadPool(this.properties.getNumberOfThread());
     }
 
+    /**
+     * Off-heap packet buffer pool, used by asynchronous handlers to hand packets over to the thread pool.
+     * Created only when an asynchronous handler is configured.
+     * @param memoryProperties memory configuration properties.
+     * @return returns {@link PacketBufferPool} object.
+     */
+    @ConditionalOnClass({PacketBufferPool.class})
+    @Lazy
+    @Bean(PACKET_BUFFER_POOL_BEAN_NAME)
+    public PacketBufferPool packetBufferPool(MemoryConfigurationProperties memoryProperties) {
+        PacketBufferPool pool = new PacketBufferPool.Builder()
+                .poolSize(memoryProperties.getPoolSize())
+                .slabSize(memoryProperties.getSlabSize())
+                .exhaustionPolicy(memoryProperties.getPoolExhaustionPolicy())
+                .build();
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("Packet buffer pool: {}.", pool);
+        }
+        return pool;
+    }
+
     /**
      * Pcap builder.
      * @param pcapIf pcap if.
@@ -287,13 +315,15 @@ public class JxnetAutoConfiguration {
      * Jxnet application context.
      * @param builder pcap builder.
      * @param netmask netmask.
+     * @param pcapIf pcap if, also used as packet ring source.
      * @return returns application context.
      */
     @ConditionalOnClass({Pcap.class, Inet4Address.class, Context.class})
     //@ConditionalOnBean({Pcap.Builder.class, Inet4Address.class})
     @Bean(CONTEXT_BEAN_NAME)
     public Context context(@Qualifier(PCAP_BUILDER_BEAN_NAME) Pcap.Builder builder,
-                           @Qualifier(NETMASK_BEAN_NAME) Inet4Address netmask) {
+                           @Qualifier(NETMASK_BEAN_NAME) Inet4Address netmask,
+                           @Qualifier(PCAP_IF_BEAN_NAME) PcapIf pcapIf) {
 
         switch (properties.getPcapType()) {
             case DEAD:
@@ -315,7 +345,40 @@ public class JxnetAutoConfiguration {
                 builder.pcapType(Pcap.PcapType.LIVE);
                 break;
         }
-        Application.run(applicationName, applicationDisplayName, applicationVersion, builder);
+        PacketRing.Builder packetRingBuilder = null;
+        if (properties.getPacketRing() && properties.getPcapType() == Pcap.PcapType.LIVE) {
+            packetRingBuilder = PacketRing.builder()
+                    .source(pcapIf.getName())
+                    .blockSize(properties.getPacketRingBlockSize())
+                    .blockCount(properties.getPacketRingBlockCount())
+                    .blockTimeout(properties.getPacketRingBlockTimeout())
+                    .promiscuous(properties.getPromiscuous() == PromiscuousMode.PROMISCUOUS);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug("Opening packet ring : {}", packetRingBuilder);
+            }
+        }
+        PcapFileReader fileReader = null;
+        if (properties.getMappedFile() && properties.getPcapType() == Pcap.PcapType.OFFLINE) {
+            if (properties.getFilter() != null) {
+                // memory mapped reader doesn't have a pcap handle to compile and set a filter.
+                throw new IllegalStateException("jxnet.filter is not supported with jxnet.mappedFile, "
+                        + "disable jxnet.mappedFile or remove jxnet.filter.");
+            }
+            try {
+                fileReader = PcapFileReader.open(properties.getFile(), PcapFileReader.DEFAULT_WINDOW_SIZE,
+                        properties.getTimestampPrecision());
+                if (LOGGER.isDebugEnabled()) {
+                    LOGGER.debug("Opening memory mapped pcap file : {}", fileReader);
+                }
+            } catch (IOException e) {
+                LOGGER.error(e.getMessage());
+            }
+        }
+        if (fileReader != null) {
+            Application.run(applicationName, applicationDisplayName, applicationVersion, fileReader);
+        } else {
+            Application.run(applicationName, applicationDisplayName, applicationVersion, builder, packetRingBuilder);
+        }
         Context context =  Application.getApplicationContext();
         if (properties.getFilter() != null) {
             if (context.pcapCompile(properties.getFilter(),
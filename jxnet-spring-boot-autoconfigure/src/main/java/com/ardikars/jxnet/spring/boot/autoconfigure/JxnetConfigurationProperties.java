@@ -70,6 +70,8 @@ public class JxnetConfigurationProperties {
 
     private String file;
 
+    private Boolean mappedFile;
+
     private BpfProgram.BpfCompileMode bpfCompileMode;
 
     private String filter;
@@ -78,6 +80,14 @@ public class JxnetConfigurationProperties {
 
     private Integer numberOfThread;
 
+    private Boolean packetRing;
+
+    private Integer packetRingBlockSize;
+
+    private Integer packetRingBlockCount;
+
+    private Integer packetRingBlockTimeout;
+
     /**
      * Initialize properties.
      */
@@ -97,6 +107,7 @@ public class JxnetConfigurationProperties {
         }
         pcap();
         bpf();
+        packetRing();
         if (numberOfThread == null) {
             numberOfThread = Runtime.getRuntime().availableProcessors();
         }
@@ -128,6 +139,9 @@ public class JxnetConfigurationProperties {
         if (file == null) {
             file = null;
         }
+        if (mappedFile == null) {
+            mappedFile = false;
+        }
     }
 
     private void bpf() {
@@ -139,6 +153,21 @@ public class JxnetConfigurationProperties {
         }
     }
 
+    private void packetRing() {
+        if (packetRing == null) {
+            packetRing = false;
+        }
+        if (packetRingBlockSize == null || packetRingBlockSize <= 0) {
+            packetRingBlockSize = 1 << 20;
+        }
+        if (packetRingBlockCount == null || packetRingBlockCount <= 0) {
+            packetRingBlockCount = 32;
+        }
+        if (packetRingBlockTimeout == null || packetRingBlockTimeout <= 0) {
+            packetRingBlockTimeout = 64;
+        }
+    }
+
     private void log() {
         LOGGER.debug("Source                       : {}", source);
         LOGGER.debug("Snapshot length              : {}", snapshot);
@@ -152,10 +181,12 @@ public class JxnetConfigurationProperties {
         LOGGER.debug("Direction                    : {}", direction);
         LOGGER.debug("Datalink                     : {}", datalink);
         LOGGER.debug("Pcap file                    : {}", file);
+        LOGGER.debug("Memory mapped pcap file      : {}", mappedFile);
         LOGGER.debug("Bpf compile mode             : {}", bpfCompileMode);
         LOGGER.debug("Filter                       : {}", filter);
         LOGGER.debug("Pcap type                    : {}", pcapType);
         LOGGER.debug("Number of thread             : {}", numberOfThread);
+        LOGGER.debug("Packet ring                  : {}", packetRing);
     }
 
     public String getSource() {
@@ -262,6 +293,14 @@ public class JxnetConfigurationProperties {
         this.filter = filter;
     }
 
+    public Boolean getMappedFile() {
+        return mappedFile;
+    }
+
+    public void setMappedFile(Boolean mappedFile) {
+        this.mappedFile = mappedFile;
+    }
+
     public BpfProgram.BpfCompileMode getBpfCompileMode() {
         return bpfCompileMode;
     }
@@ -286,4 +325,36 @@ public class JxnetConfigurationProperties {
         this.numberOfThread = numberOfThread;
     }
 
+    public Boolean getPacketRing() {
+        return packetRing;
+    }
+
+    public void setPacketRing(Boolean packetRing) {
+        this.packetRing = packetRing;
+    }
+
+    public Integer getPacketRingBlockSize() {
+        return packetRingBlockSize;
+    }
+
+    public void setPacketRingBlockSize(Integer packetRingBlockSize) {
+        this.packetRingBlockSize = packetRingBlockSize;
+    }
+
+    public Integer getPacketRingBlockCount() {
+        return packetRingBlockCount;
+    }
+
+    public void setPacketRingBlockCount(Integer packetRingBlockCount) {
+        this.packetRingBlockCount = packetRingBlockCount;
+    }
+
+    public Integer getPacketRingBlockTimeout() {
+        return packetRingBlockTimeout;
+    }
+
+    public void setPacketRingBlockTimeout(Integer packetRingBlockTimeout) {
+        this.packetRingBlockTimeout = packetRingBlockTimeout;
+    }
+
 }
@@ -43,6 +43,7 @@ public final class JxnetObjectName {
     public static final String JXPACKET_ASYNC_RAW_HANDLER_CONFIGURATION_BEAN_NAME = "com.ardikras.jxnet.jxpacketAsyncRawHandlerConfiguration";
     public static final String JXPACKET_ASYNC_HANDLER_CONFIGURATION_BEAN_NAME = "com.ardikras.jxnet.jxpacketAsyncHandlerConfiguration";
     public static final String PCAP_BUILDER_BEAN_NAME = "com.ardikras.jxnet.pcapBuilder";
+    public static final String PACKET_BUFFER_POOL_BEAN_NAME = "com.ardikras.jxnet.packetBufferPool";
 
     private final String prefix;
     private final String separator;
@@ -18,39 +18,62 @@
 package com.ardikars.jxnet.spring.boot.autoconfigure.jxpacket;
 
 import static com.ardikars.jxnet.spring.boot.autoconfigure.constant.JxnetObjectName.JXPACKET_ASYNC_HANDLER_CONFIGURATION_BEAN_NAME;
+import static com.ardikars.jxnet.spring.boot.autoconfigure.constant.JxnetObjectName.PACKET_BUFFER_POOL_BEAN_NAME;
 
 import com.ardikars.common.logging.Logger;
 import com.ardikars.common.logging.LoggerFactory;
 import com.ardikars.common.memory.Memory;
 import com.ardikars.common.tuple.Pair;
 import com.ardikars.common.tuple.Tuple;
+import com.ardikars.jxnet.PacketBuffer;
+import com.ardikars.jxnet.PacketBufferPool;
 import com.ardikars.jxnet.PcapHandler;
 import com.ardikars.jxnet.PcapPktHdr;
 import com.ardikars.jxnet.spring.boot.autoconfigure.HandlerConfigurer;
 import com.ardikars.jxpacket.common.Packet;
 import java.nio.ByteBuffer;
 import java.util.concurrent.ExecutionException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Configuration;
 
+/**
+ * Decode packets on the thread pool. Each packet is copied into a slab of the packet buffer pool
+ * on the capture thread, the slab is released after the handler returns,
+ * so decoded packet should not be retained after {@link com.ardikars.jxnet.spring.boot.autoconfigure.Handler#next}.
+ *
+ * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
+ * @since 1.5.4
+ */
 @ConditionalOnClass({Packet.class, Memory.class})
 @Configuration(JXPACKET_ASYNC_HANDLER_CONFIGURATION_BEAN_NAME)
 public class JxpacketAsyncHandlerConfiguration<T> extends HandlerConfigurer<T, Pair<PcapPktHdr, Packet>> implements PcapHandler<T> {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JxpacketHandlerConfiguration.class);
 
+    @Autowired
+    @Qualifier(PACKET_BUFFER_POOL_BEAN_NAME)
+    private PacketBufferPool packetBufferPool;
+
     @Override
     public void nextPacket(final T user, final PcapPktHdr h, final ByteBuffer bytes) {
+        final PacketBuffer packet = packetBufferPool.copyOf(h, bytes);
+        if (packet == null) {
+            return; // dropped, packet buffer pool exhausted
+        }
         executorService.execute(new Runnable() {
             @Override
             public void run() {
                 try {
-                    getHandler().next(user, Tuple.of(h, decode(bytes)));
+                    getHandler().next(user, Tuple.of(packet.getHeader(), decode(packet.getBuffer())));
                 } catch (ExecutionException e) {
                     LOGGER.warn(e);
                 } catch (InterruptedException e) {
                     LOGGER.warn(e);
                     Thread.currentThread().interrupt();
+                } finally {
+                    packet.release();
                 }
             }
         });
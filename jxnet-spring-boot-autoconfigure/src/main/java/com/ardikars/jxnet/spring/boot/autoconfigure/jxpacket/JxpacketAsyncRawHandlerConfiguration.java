@@ -18,12 +18,15 @@
 package com.ardikars.jxnet.spring.boot.autoconfigure.jxpacket;
 
 import static com.ardikars.jxnet.spring.boot.autoconfigure.constant.JxnetObjectName.JXPACKET_ASYNC_RAW_HANDLER_CONFIGURATION_BEAN_NAME;
+import static com.ardikars.jxnet.spring.boot.autoconfigure.constant.JxnetObjectName.PACKET_BUFFER_POOL_BEAN_NAME;
 
 import com.ardikars.common.logging.Logger;
 import com.ardikars.common.logging.LoggerFactory;
 import com.ardikars.common.memory.Memory;
 import com.ardikars.common.tuple.Pair;
 import com.ardikars.common.tuple.Tuple;
+import com.ardikars.jxnet.PacketBuffer;
+import com.ardikars.jxnet.PacketBufferPool;
 import com.ardikars.jxnet.PcapPktHdr;
 import com.ardikars.jxnet.RawPcapHandler;
 import com.ardikars.jxnet.spring.boot.autoconfigure.HandlerConfigurer;
@@ -31,11 +34,16 @@ import com.ardikars.jxpacket.common.Packet;
 
 import java.util.concurrent.ExecutionException;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.context.annotation.Configuration;
 
 /**
- * Jxpacket handler.
+ * Decode raw packets on the thread pool. Each packet is copied into a slab of the packet buffer pool
+ * on the capture thread, because libpcap reuses its memory once the callback returns.
+ * The slab is released after the handler returns,
+ * so decoded packet should not be retained after {@link com.ardikars.jxnet.spring.boot.autoconfigure.Handler#next}.
  *
  * @author <a href="mailto:contact@ardikars.com">Ardika Rommy Sanjaya</a>
  * @since 1.4.9
@@ -46,18 +54,28 @@ public class JxpacketAsyncRawHandlerConfiguration<T> extends HandlerConfigurer<T
 
     private static final Logger LOGGER = LoggerFactory.getLogger(JxpacketAsyncRawHandlerConfiguration.class);
 
+    @Autowired
+    @Qualifier(PACKET_BUFFER_POOL_BEAN_NAME)
+    private PacketBufferPool packetBufferPool;
+
     @Override
     public void nextPacket(final T user, final int capLen, final int len, final int tvSec, final long tvUsec, final long memoryAddress) {
+        final PacketBuffer packet = packetBufferPool.copyOf(capLen, len, tvSec, tvUsec, memoryAddress);
+        if (packet == null) {
+            return; // dropped, packet buffer pool exhausted
+        }
         executorService.execute(new Runnable() {
             @Override
             public void run() {
                 try {
-                    getHandler().next(user, Tuple.of(PcapPktHdr.newInstance(capLen, len, tvSec, tvUsec), decodeRawBuffer(memoryAddress, len)));
+                    getHandler().next(user, Tuple.of(packet.getHeader(), decode(packet.getBuffer())));
                 } catch (ExecutionException e) {
                     LOGGER.warn(e);
                 } catch (InterruptedException e) {
                     LOGGER.warn(e);
                     Thread.currentThread().interrupt();
+                } finally {
+                    packet.release();
                 }
             }
         });
@@ -29,6 +29,7 @@ import com.ardikars.common.memory.Memory;
 import com.ardikars.common.tuple.Pair;
 import com.ardikars.common.tuple.Tuple;
 import com.ardikars.jxnet.DataLinkType;
+import com.ardikars.jxnet.PcapCode;
 import com.ardikars.jxnet.PcapPktHdr;
 import com.ardikars.jxnet.context.Context;
 import com.ardikars.jxnet.spring.boot.autoconfigure.memory.MemoryConfigurationProperties;
@@ -51,7 +52,6 @@ import com.ardikars.jxpacket.core.ip.ip6.HopByHopOptions;
 import com.ardikars.jxpacket.core.ip.ip6.Routing;
 import com.ardikars.jxpacket.core.tcp.Tcp;
 import com.ardikars.jxpacket.core.udp.Udp;
-import java.nio.ByteBuffer;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
@@ -139,11 +139,13 @@ public class JxpacketAutoconfiguration implements JxpacketContext {
             @Override
             public Pair<PcapPktHdr, Packet> call() throws Exception {
                 PcapPktHdr pktHdr = new PcapPktHdr();
-                ByteBuffer bytes = null;
-                while (bytes == null) {
-                    bytes = context.pcapNext(pktHdr);
-                }
-                Memory buffer = Memories.wrap(bytes, checkBounds);
+                long[] pktData = new long[2];
+                PcapCode code;
+                do {
+                    code = context.pcapNextEx0(pktHdr, pktData);
+                } while (code != PcapCode.PCAP_OK);
+                Memory buffer = Memories.wrap(pktData[0], (int) pktData[1], checkBounds);
+                buffer.writerIndex(buffer.capacity());
                 Packet packet;
                 if (rawDataLinkType == 1) {
                     packet = Ethernet.newPacket(buffer);
@@ -19,6 +19,7 @@ package com.ardikars.jxnet.spring.boot.autoconfigure.memory;
 
 import com.ardikars.common.logging.Logger;
 import com.ardikars.common.logging.LoggerFactory;
+import com.ardikars.jxnet.PacketBufferPool;
 import com.ardikars.jxpacket.common.Packet;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.context.properties.ConfigurationProperties;
@@ -32,6 +33,12 @@ public class MemoryConfigurationProperties {
 
     private Boolean checkBounds;
 
+    private Integer poolSize;
+
+    private Integer slabSize;
+
+    private PacketBufferPool.ExhaustionPolicy poolExhaustionPolicy;
+
     /**
      * Initialize properties.
      */
@@ -39,7 +46,19 @@ public class MemoryConfigurationProperties {
         if (checkBounds == null) {
             this.checkBounds = false;
         }
+        if (poolSize == null) {
+            this.poolSize = 1024;
+        }
+        if (slabSize == null) {
+            this.slabSize = 65535;
+        }
+        if (poolExhaustionPolicy == null) {
+            this.poolExhaustionPolicy = PacketBufferPool.ExhaustionPolicy.BLOCK;
+        }
         LOGGER.debug("Memory checkBounds: {}", checkBounds);
+        LOGGER.debug("Memory poolSize: {}", poolSize);
+        LOGGER.debug("Memory slabSize: {}", slabSize);
+        LOGGER.debug("Memory poolExhaustionPolicy: {}", poolExhaustionPolicy);
     }
 
     public Boolean getCheckBounds() {
@@ -50,4 +69,28 @@ public class MemoryConfigurationProperties {
         this.checkBounds = checkBounds;
     }
 
+    public Integer getPoolSize() {
+        return poolSize;
+    }
+
+    public void setPoolSize(Integer poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public Integer getSlabSize() {
+        return slabSize;
+    }
+
+    public void setSlabSize(Integer slabSize) {
+        this.slabSize = slabSize;
+    }
+
+    public PacketBufferPool.ExhaustionPolicy getPoolExhaustionPolicy() {
+        return poolExhaustionPolicy;
+    }
+
+    public void setPoolExhaustionPolicy(PacketBufferPool.ExhaustionPolicy poolExhaustionPolicy) {
+        this.poolExhaustionPolicy = poolExhaustionPolicy;
+    }
+
 }